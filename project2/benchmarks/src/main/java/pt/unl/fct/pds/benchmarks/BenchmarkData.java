@@ -0,0 +1,82 @@
+package pt.unl.fct.pds.project2.benchmarks;
+
+import pt.unl.fct.pds.project2.model.RelayTable;
+import pt.unl.fct.pds.project2.utils.ConsensusParser;
+import pt.unl.fct.pds.project2.utils.GeoResolver;
+import pt.unl.fct.pds.project2.utils.PathSelector;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Dados comuns aos benchmarks: o consensus.txt incluído no project2 e a base GeoLite2.
+ *
+ * A base é a GeoLite2-Country.mmdb do classpath (como no Project2) ou, se definida,
+ * a indicada em -Dgeoip.database=...; sem base todos os países ficam desconhecidos.
+ */
+final class BenchmarkData {
+
+    static final String CONSENSUS = "consensus.txt";
+
+    private static GeoResolver geo;
+
+    private BenchmarkData() {}
+
+    // Cópia do consensus para um ficheiro temporário (o parser lê de um ficheiro)
+    static Path consensusFile() {
+        try (InputStream in = BenchmarkData.class.getClassLoader().getResourceAsStream(CONSENSUS)) {
+            if (in == null) throw new IllegalStateException(CONSENSUS + " not found in classpath");
+            Path file = Files.createTempFile("consensus", ".txt");
+            file.toFile().deleteOnExit();
+            Files.copy(in, file, StandardCopyOption.REPLACE_EXISTING);
+            return file;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Conteúdo do consensus num buffer direto, como o mapeado pelo parser
+    static ByteBuffer consensusBuffer() {
+        try {
+            byte[] bytes = Files.readAllBytes(consensusFile());
+            ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+            buffer.put(bytes).flip();
+            return buffer;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static synchronized GeoResolver geo() {
+        if (geo == null) {
+            String database = System.getProperty("geoip.database");
+            try {
+                geo = database == null ? GeoResolver.getDefault() : new GeoResolver(new File(database));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            if (!geo.isAvailable()) {
+                System.err.println("GeoLite2 database not available: every country will be unknown");
+            }
+        }
+        return geo;
+    }
+
+    // Tabela do consensus com os países preenchidos
+    static RelayTable table() {
+        ConsensusParser parser = new ConsensusParser();
+        RelayTable table = parser.parse(consensusBuffer());
+        geo().resolveAll(table);
+        return table;
+    }
+
+    static PathSelector selector() {
+        return new PathSelector(table());
+    }
+}
@@ -0,0 +1,39 @@
+package pt.unl.fct.pds.project2.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+
+/**
+ * Ponto de entrada do JAR: aceita as opções normais do JMH (padrões de benchmarks,
+ * -t, -f, -wi, -i, -prof, ...) e acrescenta sempre o profiler gc, para cada
+ * benchmark reportar ops/s e a taxa de alocação (gc.alloc.rate e gc.alloc.rate.norm).
+ */
+public class Benchmarks {
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException, IOException {
+        CommandLineOptions cli = new CommandLineOptions(args);
+        if (cli.shouldHelp()) {
+            cli.showHelp();
+            return;
+        }
+        if (cli.shouldList() || cli.shouldListWithParams() || cli.shouldListProfilers()
+                || cli.shouldListResultFormats()) {
+            // Listagens tratadas pelo Main do JMH
+            org.openjdk.jmh.Main.main(args);
+            return;
+        }
+
+        ChainedOptionsBuilder options = new OptionsBuilder().parent(cli);
+        boolean hasGc = cli.getProfilers().stream()
+                .anyMatch(p -> p.getKlass().equals(GCProfiler.class.getName()) || p.getKlass().equals("gc"));
+        if (!hasGc) options.addProfiler(GCProfiler.class);
+        new Runner(options.build()).run();
+    }
+}
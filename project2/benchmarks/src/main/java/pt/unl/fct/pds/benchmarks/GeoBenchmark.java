@@ -0,0 +1,73 @@
+package pt.unl.fct.pds.project2.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.infra.Blackhole;
+import pt.unl.fct.pds.project2.model.RelayTable;
+import pt.unl.fct.pds.project2.utils.GeoIPUtils;
+import pt.unl.fct.pds.project2.utils.GeoResolver;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * País de cada IP do consensus: GeoResolver.resolve (com a cache de prefixos /24),
+ * resolveAll da tabela inteira e GeoIPUtils.getCountryFromIP (a partir da string).
+ * As operações são por IP; getCountryFromIP usa sempre a base do classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class GeoBenchmark {
+
+    // Número de IPs por invocação (o consensus incluído tem ~9000 relays)
+    static final int IPS = 8192;
+
+    private GeoResolver geo;
+    private RelayTable table;
+    private int[] ips;
+    private String[] addresses;
+
+    @Setup
+    public void setup() {
+        geo = BenchmarkData.geo();
+        table = BenchmarkData.table();
+        ips = new int[IPS];
+        addresses = new String[IPS];
+        for (int k = 0; k < IPS; k++) {
+            ips[k] = table.getIpv4(k % table.size());
+            addresses[k] = RelayTable.formatIpv4(ips[k]);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(IPS)
+    public void resolve(Blackhole bh) {
+        for (int ip : ips) bh.consume(geo.resolve(ip));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(IPS)
+    @Threads(Threads.MAX)
+    public void resolveParallel(Blackhole bh) {
+        for (int ip : ips) bh.consume(geo.resolve(ip));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(IPS)
+    public short[] resolveAll() {
+        return geo.resolveAll(ips);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(IPS)
+    public void getCountryFromIP(Blackhole bh) {
+        for (String ip : addresses) bh.consume(GeoIPUtils.getCountryFromIP(ip));
+    }
+}
@@ -0,0 +1,132 @@
+package pt.unl.fct.pds.project2.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import pt.unl.fct.pds.Project2;
+import pt.unl.fct.pds.project2.model.Circuit;
+import pt.unl.fct.pds.project2.model.Node;
+import pt.unl.fct.pds.project2.model.RelayTable;
+import pt.unl.fct.pds.project2.simulation.CircuitMetrics;
+import pt.unl.fct.pds.project2.utils.PathSelector;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Métricas dos circuitos: o registo de cada circuito e o cálculo da diversidade e
+ * da entropia sobre contagens de 1M circuitos já registados, com o CircuitMetrics
+ * da simulação e com as funções sobre Node do Project2 (updateMetrics e
+ * calculateEntropy, com sets e maps por Node), sobre os mesmos circuitos.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class MetricsBenchmark {
+
+    // Circuitos pré-gerados, registados por invocação
+    static final int CIRCUITS = 4096;
+
+    private int[] paths;
+    private int[] minBandwidths;
+    private CircuitMetrics recording;
+    private CircuitMetrics recorded;
+
+    // Os mesmos circuitos e contagens para as funções do Project2
+    private Circuit[] circuits;
+    private final Set<Node> guardSet = new HashSet<>();
+    private final Set<Node> middleSet = new HashSet<>();
+    private final Set<Node> exitSet = new HashSet<>();
+    private final Set<Node> globalSet = new HashSet<>();
+    private final Map<Node, Integer> guardCounts = new HashMap<>();
+    private final Map<Node, Integer> middleCounts = new HashMap<>();
+    private final Map<Node, Integer> exitCounts = new HashMap<>();
+    private final Map<Node, Integer> globalCounts = new HashMap<>();
+    private final List<Integer> bandwidths = new ArrayList<>();
+    private final Map<Node, Integer> recordedGlobalCounts = new HashMap<>();
+
+    @Setup
+    @SuppressWarnings("deprecation")
+    public void setup() {
+        PathSelector selector = BenchmarkData.selector();
+        RelayTable table = selector.getTable();
+        SplittableRandom rng = new SplittableRandom(42);
+        int[] path = new int[3];
+
+        paths = new int[3 * CIRCUITS];
+        minBandwidths = new int[CIRCUITS];
+        circuits = new Circuit[CIRCUITS];
+        for (int c = 0; c < CIRCUITS; c++) {
+            selector.selectPathIds(rng, path);
+            System.arraycopy(path, 0, paths, 3 * c, 3);
+            minBandwidths[c] = Math.min(table.getBandwidth(path[0]),
+                    Math.min(table.getBandwidth(path[1]), table.getBandwidth(path[2])));
+            Node[] nodes = {table.node(path[0]), table.node(path[1]), table.node(path[2])};
+            circuits[c] = new Circuit(c, nodes, minBandwidths[c]);
+        }
+
+        recording = new CircuitMetrics(table.size());
+        recorded = new CircuitMetrics(table.size());
+        for (int k = 0; k < 1_000_000; k++) {
+            selector.selectPathGeoIds(rng, 0.5, 0.2, path);
+            recorded.update(path[0], path[1], path[2], 0);
+            for (int id : path) Project2.increment(recordedGlobalCounts, table.node(id));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CIRCUITS)
+    public CircuitMetrics update() {
+        for (int c = 0; c < CIRCUITS; c++) {
+            recording.update(paths[3 * c], paths[3 * c + 1], paths[3 * c + 2], minBandwidths[c]);
+        }
+        return recording;
+    }
+
+    // Como update(); a lista de bandwidths é esvaziada a cada invocação para não crescer sem limite
+    @Benchmark
+    @OperationsPerInvocation(CIRCUITS)
+    @SuppressWarnings("deprecation")
+    public Map<Node, Integer> updateMetricsProject2() {
+        bandwidths.clear();
+        for (Circuit circuit : circuits) {
+            Project2.updateMetrics(circuit, guardSet, middleSet, exitSet, globalSet,
+                    guardCounts, middleCounts, exitCounts, globalCounts, bandwidths);
+        }
+        return globalCounts;
+    }
+
+    @Benchmark
+    public double globalEntropy() {
+        return recorded.globalEntropy();
+    }
+
+    // Como globalEntropy(), sobre o map de contagens por Node
+    @Benchmark
+    @SuppressWarnings("deprecation")
+    public double calculateEntropyProject2() {
+        return Project2.calculateEntropy(recordedGlobalCounts, 3_000_000);
+    }
+
+    @Benchmark
+    public double entropyAllPositions() {
+        return recorded.guardEntropy() + recorded.middleEntropy() + recorded.exitEntropy()
+                + recorded.globalEntropy();
+    }
+
+    @Benchmark
+    public int globalDiversity() {
+        return recorded.globalDiversity();
+    }
+}
@@ -0,0 +1,51 @@
+package pt.unl.fct.pds.project2.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import pt.unl.fct.pds.project2.model.Node;
+import pt.unl.fct.pds.project2.model.RelayTable;
+import pt.unl.fct.pds.project2.utils.ConsensusParser;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Leitura do consensus: só o parse do buffer, o parseRelayTable completo (ficheiro
+ * mapeado e GeoIP, sem snapshot) e o parseConsensus usado pelo Project2 (com os Nodes).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ParserBenchmark {
+
+    private ByteBuffer buffer;
+    private ConsensusParser parser;
+
+    @Setup
+    public void setup() {
+        buffer = BenchmarkData.consensusBuffer();
+        parser = new ConsensusParser(BenchmarkData.consensusFile().toString());
+        parser.setSnapshotEnabled(false);
+        parser.setGeoResolver(BenchmarkData.geo());
+    }
+
+    @Benchmark
+    public RelayTable parseBuffer() {
+        return parser.parse(buffer.duplicate());
+    }
+
+    @Benchmark
+    public RelayTable parseRelayTable() {
+        return parser.parseRelayTable();
+    }
+
+    @Benchmark
+    public Node[] parseConsensus() {
+        return parser.parseConsensus();
+    }
+}
@@ -0,0 +1,84 @@
+package pt.unl.fct.pds.project2.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import pt.unl.fct.pds.project2.model.Node;
+import pt.unl.fct.pds.project2.utils.PathSelector;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Seleção de caminhos Original e Geo-Aware para várias combinações de alpha e beta.
+ *
+ * selectPath/selectPathGeo são os métodos com Nodes usados pelo Project2; as variantes
+ * *Ids são as do SimulationEngine (ids, gerador por thread, sem alocação). As variantes
+ * *Parallel correm em todas as CPUs sobre o mesmo PathSelector.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class PathSelectionBenchmark {
+
+    @Param({"0.0", "0.5", "1.0"})
+    public double alpha;
+
+    @Param({"0.0", "0.2", "0.5"})
+    public double beta;
+
+    private PathSelector selector;
+
+    @State(Scope.Thread)
+    public static class ThreadState {
+        final SplittableRandom rng = new SplittableRandom(42);
+        final int[] path = new int[3];
+    }
+
+    @Setup
+    public void setup() {
+        selector = BenchmarkData.selector();
+    }
+
+    @Benchmark
+    public Node[] selectPath() {
+        return selector.selectPath();
+    }
+
+    @Benchmark
+    public Node[] selectPathGeo() {
+        return selector.selectPathGeo(alpha, beta);
+    }
+
+    @Benchmark
+    public int[] selectPathIds(ThreadState state) {
+        selector.selectPathIds(state.rng, state.path);
+        return state.path;
+    }
+
+    @Benchmark
+    public int[] selectPathGeoIds(ThreadState state) {
+        selector.selectPathGeoIds(state.rng, alpha, beta, state.path);
+        return state.path;
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public int[] selectPathIdsParallel(ThreadState state) {
+        selector.selectPathIds(state.rng, state.path);
+        return state.path;
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public int[] selectPathGeoIdsParallel(ThreadState state) {
+        selector.selectPathGeoIds(state.rng, alpha, beta, state.path);
+        return state.path;
+    }
+}
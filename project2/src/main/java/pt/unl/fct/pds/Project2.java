@@ -1,100 +1,196 @@
 package pt.unl.fct.pds;
 
+import pt.unl.fct.pds.project2.instrumentation.PrometheusExporter;
+import pt.unl.fct.pds.project2.instrumentation.SelectionMetrics;
+import pt.unl.fct.pds.project2.instrumentation.SelectionProbe;
 import pt.unl.fct.pds.project2.model.Node;
 import pt.unl.fct.pds.project2.model.Circuit;
+import pt.unl.fct.pds.project2.model.CountryDictionary;
+import pt.unl.fct.pds.project2.model.RelayTable;
+import pt.unl.fct.pds.project2.simulation.CircuitMetrics;
+import pt.unl.fct.pds.project2.simulation.CircuitRecordReader;
+import pt.unl.fct.pds.project2.simulation.CircuitRecordWriter;
+import pt.unl.fct.pds.project2.simulation.CircuitStore;
+import pt.unl.fct.pds.project2.simulation.ConsensusReplay;
+import pt.unl.fct.pds.project2.simulation.LoadResult;
+import pt.unl.fct.pds.project2.simulation.LoadSimulator;
+import pt.unl.fct.pds.project2.simulation.ParameterSweep;
+import pt.unl.fct.pds.project2.simulation.PopulationResult;
+import pt.unl.fct.pds.project2.simulation.PopulationSimulator;
+import pt.unl.fct.pds.project2.simulation.ReplayStep;
+import pt.unl.fct.pds.project2.simulation.SimulationEngine;
+import pt.unl.fct.pds.project2.simulation.SelectionDistribution;
+import pt.unl.fct.pds.project2.simulation.SelectionStats;
+import pt.unl.fct.pds.project2.simulation.SimulationResult;
+import pt.unl.fct.pds.project2.simulation.SweepPoint;
+import pt.unl.fct.pds.project2.service.PathServer;
+import pt.unl.fct.pds.project2.service.PathService;
 import pt.unl.fct.pds.project2.utils.ConsensusParser;
+import pt.unl.fct.pds.project2.utils.LatencyModel;
 import pt.unl.fct.pds.project2.utils.PathSelector;
 
-import java.io.FileWriter;
 import java.io.IOException;
-import java.util.*;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
 
 public class Project2 {
 
+    // Instrumentação: -Dproject2.metrics=<ficheiro .prom> [-Dproject2.metrics.interval=<segundos>]
+    public static final String METRICS_PROPERTY = "project2.metrics";
+    public static final String METRICS_INTERVAL_PROPERTY = "project2.metrics.interval";
+
     public static void main(String[] args) {
         System.out.println("Welcome to the Circuit Simulator!");
 
+        // ---------------- Conversão de registos: convert <entrada> <saída> ----------------
+        if (args.length == 3 && args[0].equals("convert")) {
+            convertRecords(Paths.get(args[1]), Paths.get(args[2]));
+            return;
+        }
+
+        // ---------------- Histórico de consensus: replay <diretório|.tar|.tar.gz> [saída.csv] ----------------
+        if ((args.length == 2 || args.length == 3) && args[0].equals("replay")) {
+            replay(Paths.get(args[1]), Paths.get(args.length == 3 ? args[2] : "replay.csv"));
+            return;
+        }
+
         // ---------------- Carregar nodes do consensus ----------------
         ConsensusParser parser = new ConsensusParser("src/main/resources/consensus.txt"); // Caminho correto
-        Node[] allNodesArray = parser.parseConsensus();
+        RelayTable relays = parser.parseRelayTable();
+        System.out.printf("Consensus %s: %d relays, %.2f MB in %.1f ms (%.0f MB/s)\n",
+                parser.isLastFromSnapshot() ? "loaded from snapshot" : "parsed",
+                relays.size(), parser.getLastBytes() / 1e6, parser.getLastParseNanos() / 1e6,
+                parser.getLastThroughput());
 
-        if (allNodesArray == null || allNodesArray.length < 3) {
+        if (relays.size() < 3) {
             System.err.println("Erro: não há nodes suficientes para construir circuitos!");
-            System.err.println("Nodes carregados: " + (allNodesArray != null ? allNodesArray.length : 0));
+            System.err.println("Nodes carregados: " + relays.size());
             return; // Sai do programa
         }
 
-        List<Node> allNodes = Arrays.asList(allNodesArray);
-        PathSelector selector = new PathSelector(allNodes);
+        PathSelector selector = new PathSelector(relays);
+
+        // ---------------- Serviço residente: serve [porto] ----------------
+        if ((args.length == 1 || args.length == 2) && args[0].equals("serve")) {
+            serve(selector, args.length == 2 ? Integer.parseInt(args[1]) : 9090);
+            return;
+        }
+
+        if (System.getProperty(METRICS_PROPERTY) != null) startInstrumentation(new SelectionMetrics(selector));
+
+        // ---------------- População de clientes: population <clientes> <dias> [circuitos/dia] ----------------
+        if ((args.length == 3 || args.length == 4) && args[0].equals("population")) {
+            simulatePopulation(selector, Integer.parseInt(args[1]), Integer.parseInt(args[2]),
+                    args.length == 4 ? Integer.parseInt(args[3]) : 10);
+            return;
+        }
+
+        // ---------------- Grelha de parâmetros: sweep <alphas> <betas> [circuitos] [saída.csv] ----------------
+        // valores em lista ("0,0.5,1") ou intervalo ("0:1:20" = 20 pontos de 0 a 1)
+        if (args.length >= 3 && args.length <= 5 && args[0].equals("sweep")) {
+            sweep(selector, ParameterSweep.parseValues(args[1]), ParameterSweep.parseValues(args[2]),
+                    args.length >= 4 ? Long.parseLong(args[3]) : 100000,
+                    Paths.get(args.length == 5 ? args[4] : "sweep.csv"));
+            return;
+        }
+
+        // ---------------- Distribuições exatas: exact [alpha beta] [circuitos Monte Carlo] ----------------
+        if ((args.length == 1 || args.length == 3 || args.length == 4) && args[0].equals("exact")) {
+            exact(selector, args.length >= 3 ? Double.parseDouble(args[1]) : 0.5,
+                    args.length >= 3 ? Double.parseDouble(args[2]) : 0.2,
+                    args.length == 4 ? Long.parseLong(args[3]) : 1000000);
+            return;
+        }
+
+        // ---------------- Circuitos em memória: store <circuitos> [ficheiro mapeado] ----------------
+        if ((args.length == 2 || args.length == 3) && args[0].equals("store")) {
+            store(selector, Long.parseLong(args[1]), args.length == 3 ? Paths.get(args[2]) : null);
+            return;
+        }
+
+        // ---------------- Carga partilhada: load [circuitos/s] [duração média s] [horizonte s] ----------------
+        if (args.length >= 1 && args.length <= 4 && args[0].equals("load")) {
+            load(selector, args.length >= 2 ? Double.parseDouble(args[1]) : 1000,
+                    args.length >= 3 ? Double.parseDouble(args[2]) : LoadSimulator.DEFAULT_MEAN_DURATION,
+                    args.length == 4 ? Double.parseDouble(args[3]) : 600);
+            return;
+        }
 
         // ---------------- Parâmetros da simulação ----------------
         int numCircuits = 1000;
         double alpha = 0.5;
         double beta = 0.2;
+        long seed = new Random().nextLong();
+        int threads = Runtime.getRuntime().availableProcessors();
 
-        // ---------------- Estruturas de métricas ----------------
-        // Original
-        Set<Node> guardSetOld = new HashSet<>();
-        Set<Node> middleSetOld = new HashSet<>();
-        Set<Node> exitSetOld = new HashSet<>();
-        Set<Node> globalSetOld = new HashSet<>();
-        Map<Node,Integer> guardCountsOld = new HashMap<>();
-        Map<Node,Integer> middleCountsOld = new HashMap<>();
-        Map<Node,Integer> exitCountsOld = new HashMap<>();
-        Map<Node,Integer> globalCountsOld = new HashMap<>();
-        List<Integer> bandwidthsOld = new ArrayList<>();
-
-        // Geo-Aware
-        Set<Node> guardSetNew = new HashSet<>();
-        Set<Node> middleSetNew = new HashSet<>();
-        Set<Node> exitSetNew = new HashSet<>();
-        Set<Node> globalSetNew = new HashSet<>();
-        Map<Node,Integer> guardCountsNew = new HashMap<>();
-        Map<Node,Integer> middleCountsNew = new HashMap<>();
-        Map<Node,Integer> exitCountsNew = new HashMap<>();
-        Map<Node,Integer> globalCountsNew = new HashMap<>();
-        List<Integer> bandwidthsNew = new ArrayList<>();
-
-        // ---------------- Loop de simulação ----------------
-        for (int i = 0; i < numCircuits; i++) {
-            Circuit circuitOld = selectPathCurrent(selector);
-            Circuit circuitNew = selectPathNew(selector, alpha, beta);
-
-            updateMetrics(circuitOld, guardSetOld, middleSetOld, exitSetOld, globalSetOld,
-                    guardCountsOld, middleCountsOld, exitCountsOld, globalCountsOld, bandwidthsOld);
-
-            updateMetrics(circuitNew, guardSetNew, middleSetNew, exitSetNew, globalSetNew,
-                    guardCountsNew, middleCountsNew, exitCountsNew, globalCountsNew, bandwidthsNew);
+        // ---------------- Simulação (multi-thread) ----------------
+        // Registos por circuito escritos em streaming durante a simulação
+        Path recordsFile = Paths.get("circuits.csv");
+        SimulationEngine engine = new SimulationEngine(selector, threads);
+        SimulationResult result;
+        try (CircuitRecordWriter writer = new CircuitRecordWriter(recordsFile, formatFor(recordsFile))) {
+            result = engine.run(numCircuits, seed, alpha, beta, writer);
+        } catch (IOException e) {
+            System.err.println("Error writing circuit records: " + e.getMessage());
+            return;
         }
+        System.out.println("Circuit records exported to: " + recordsFile);
+
+        CircuitMetrics old = result.getOriginal();
+        CircuitMetrics geo = result.getGeoAware();
+
+        System.out.printf("Simulated %d circuits per algorithm on %d threads (seed=%d, %.0f circuits/s)\n",
+                numCircuits, threads, seed, result.circuitsPerSecond());
 
         // ---------------- Resultados ----------------
         System.out.println("\n=== Node Diversity ===");
         System.out.printf("Original: Guard=%d, Middle=%d, Exit=%d, Global=%d\n",
-                guardSetOld.size(), middleSetOld.size(), exitSetOld.size(), globalSetOld.size());
+                old.guardDiversity(), old.middleDiversity(), old.exitDiversity(), old.globalDiversity());
         System.out.printf("Geo-Aware: Guard=%d, Middle=%d, Exit=%d, Global=%d\n",
-                guardSetNew.size(), middleSetNew.size(), exitSetNew.size(), globalSetNew.size());
+                geo.guardDiversity(), geo.middleDiversity(), geo.exitDiversity(), geo.globalDiversity());
 
         System.out.println("\n=== Entropy ===");
         System.out.printf("Original: Global=%.4f, Guard=%.4f, Middle=%.4f, Exit=%.4f\n",
-                calculateEntropy(globalCountsOld, numCircuits*3),
-                calculateEntropy(guardCountsOld, numCircuits),
-                calculateEntropy(middleCountsOld, numCircuits),
-                calculateEntropy(exitCountsOld, numCircuits));
+                old.globalEntropy(), old.guardEntropy(), old.middleEntropy(), old.exitEntropy());
         System.out.printf("Geo-Aware: Global=%.4f, Guard=%.4f, Middle=%.4f, Exit=%.4f\n",
-                calculateEntropy(globalCountsNew, numCircuits*3),
-                calculateEntropy(guardCountsNew, numCircuits),
-                calculateEntropy(middleCountsNew, numCircuits),
-                calculateEntropy(exitCountsNew, numCircuits));
+                geo.globalEntropy(), geo.guardEntropy(), geo.middleEntropy(), geo.exitEntropy());
 
         System.out.println("\n=== Bandwidth stats ===");
-        System.out.println("Original: " + summarizeBandwidth(bandwidthsOld));
-        System.out.println("Geo-Aware: " + summarizeBandwidth(bandwidthsNew));
+        System.out.println("Original: " + old.bandwidthSummary());
+        System.out.println("Geo-Aware: " + geo.bandwidthSummary());
+
+        System.out.println("\n=== Country / subnet correlation ===");
+        System.out.println("Original: " + old.getCorrelation().summary(5));
+        System.out.println("Geo-Aware: " + geo.getCorrelation().summary(5));
 
-        // ---------------- Exportar para CSV para gráficos ----------------
-        exportBandwidthCSV("bandwidth_comparison.csv", bandwidthsOld, bandwidthsNew);
+        System.out.println("\n=== Expected circuit RTT (" + engine.getLatency() + ") ===");
+        System.out.println("Original: " + old.latencySummary());
+        System.out.println("Geo-Aware: " + geo.latencySummary());
+        double gamma = 1.0;
+        CircuitMetrics penalized = latencyPenalized(selector, engine.getLatency(), gamma, numCircuits, seed);
+        System.out.printf("Latency-penalized (gamma=%.1f): %s\n", gamma, penalized.latencySummary());
+        System.out.println("Latency-penalized bandwidth: " + penalized.bandwidthSummary());
     }
 
     // ================= Funções auxiliares =================
+    public static int calculateMinBandwidth(Node guard, Node middle, Node exit) {
+        return Math.min(guard.getBandwidth(), Math.min(middle.getBandwidth(), exit.getBandwidth()));
+    }
+
+    // Métricas sobre Node, anteriores ao CircuitMetrics (que as substitui na simulação);
+    // mantidas para quem as chama diretamente
+
+    /** @deprecated usar {@link CircuitMetrics#update(int, int, int, int)} */
+    @Deprecated
     public static void updateMetrics(Circuit circuit,
                                      Set<Node> guardSet, Set<Node> middleSet, Set<Node> exitSet, Set<Node> globalSet,
                                      Map<Node,Integer> guardCounts, Map<Node,Integer> middleCounts,
@@ -103,7 +199,6 @@ public class Project2 {
         Node[] nodes = circuit.getNodes();
         if (nodes == null || nodes.length < 3) return; // Evita IndexOutOfBounds
 
-        // Diversidade
         guardSet.add(nodes[0]);
         middleSet.add(nodes[1]);
         exitSet.add(nodes[2]);
@@ -111,7 +206,6 @@ public class Project2 {
         globalSet.add(nodes[1]);
         globalSet.add(nodes[2]);
 
-        // Contagem para entropia
         increment(guardCounts, nodes[0]);
         increment(middleCounts, nodes[1]);
         increment(exitCounts, nodes[2]);
@@ -119,14 +213,17 @@ public class Project2 {
         increment(globalCounts, nodes[1]);
         increment(globalCounts, nodes[2]);
 
-        // Bandwidth mínimo
         bandwidths.add(calculateMinBandwidth(nodes[0], nodes[1], nodes[2]));
     }
 
+    /** @deprecated usar {@link CircuitMetrics} */
+    @Deprecated
     public static void increment(Map<Node,Integer> map, Node node) {
         map.put(node, map.getOrDefault(node,0)+1);
     }
 
+    /** @deprecated usar {@link CircuitMetrics#globalEntropy()} e afins */
+    @Deprecated
     public static double calculateEntropy(Map<Node,Integer> counts, int totalSelections) {
         double entropy = 0.0;
         for (int count : counts.values()) {
@@ -136,10 +233,8 @@ public class Project2 {
         return entropy;
     }
 
-    public static int calculateMinBandwidth(Node guard, Node middle, Node exit) {
-        return Math.min(guard.getBandwidth(), Math.min(middle.getBandwidth(), exit.getBandwidth()));
-    }
-
+    /** @deprecated usar {@link CircuitMetrics#bandwidthSummary()} */
+    @Deprecated
     public static String summarizeBandwidth(List<Integer> bandwidths) {
         if (bandwidths.isEmpty()) return "No data";
         int min = Integer.MAX_VALUE;
@@ -150,33 +245,277 @@ public class Project2 {
             if (bw < min) min = bw;
             if (bw > max) max = bw;
         }
-        double avg = sum / bandwidths.size();
-        return String.format("min=%d, max=%d, avg=%.2f", min, max, avg);
+        return String.format(Locale.ROOT, "min=%d, max=%d, avg=%.2f", min, max, sum / bandwidths.size());
+    }
+
+    // Circuitos do modo penalizado pela latência (uma thread), com as mesmas métricas da simulação
+    public static CircuitMetrics latencyPenalized(PathSelector selector, LatencyModel latency, double gamma,
+                                                  long circuits, long seed) {
+        RelayTable table = selector.getTable();
+        CircuitMetrics metrics = new CircuitMetrics(table.size(), null, latency.forTable(table));
+        SplittableRandom rng = new SplittableRandom(seed);
+        int[] path = new int[3];
+        for (long i = 0; i < circuits; i++) {
+            selector.selectPathLatencyIds(rng, latency, gamma, path);
+            if (path[0] < 0 || path[1] < 0 || path[2] < 0) continue;
+            metrics.update(path[0], path[1], path[2], Math.min(table.getBandwidth(path[0]),
+                    Math.min(table.getBandwidth(path[1]), table.getBandwidth(path[2]))));
+        }
+        return metrics;
+    }
+
+    // Binário se a extensão for .bin, CSV caso contrário
+    public static CircuitRecordWriter.Format formatFor(Path file) {
+        return file.toString().endsWith(".bin") ? CircuitRecordWriter.Format.BINARY : CircuitRecordWriter.Format.CSV;
+    }
+
+    public static void convertRecords(Path in, Path out) {
+        try {
+            long t0 = System.nanoTime();
+            long records = CircuitRecordReader.convert(in, out, formatFor(out));
+            System.out.printf("Converted %d records from %s to %s in %.1f ms\n",
+                    records, in, out, (System.nanoTime() - t0) / 1e6);
+        } catch (IOException e) {
+            System.err.println("Error converting records: " + e.getMessage());
+        }
+    }
+
+    // O processo continua ativo enquanto o servidor HTTP estiver a correr
+    public static void serve(PathSelector selector, int port) {
+        int threads = Runtime.getRuntime().availableProcessors();
+        PathService service = new PathService(selector, threads);
+        if (System.getProperty(METRICS_PROPERTY) != null) {
+            SelectionProbe probe = new SelectionProbe();
+            selector.setProbe(probe);
+            startInstrumentation(new SelectionMetrics(probe, service::getSelector));
+        }
+        try {
+            PathServer server = new PathServer(service, port, threads);
+            server.start();
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                server.close();
+                service.close();
+            }));
+            System.out.printf("Serving paths on http://%s:%d (%d threads): /paths, /batch, /consensus\n",
+                    server.getAddress().getHostString(), server.getAddress().getPort(), threads);
+        } catch (IOException e) {
+            System.err.println("Could not start path server: " + e.getMessage());
+            service.close();
+        }
+    }
+
+    public static void replay(Path source, Path out) {
+        ConsensusReplay replay = new ConsensusReplay();
+        replay.setSimulation(10000, new Random().nextLong(), 0.5, 0.2);
+        if (System.getProperty(METRICS_PROPERTY) != null) {
+            SelectionProbe probe = new SelectionProbe();
+            replay.setProbe(probe);
+            startInstrumentation(new SelectionMetrics(probe, replay::getSelector));
+        }
+        long t0 = System.nanoTime();
+        try (Writer writer = Files.newBufferedWriter(out)) {
+            writer.write(ReplayStep.CSV_HEADER);
+            replay.replay(source, step -> writer.write(step.toCsv()));
+        } catch (IOException e) {
+            System.err.println("Error replaying consensuses: " + e.getMessage());
+            return;
+        }
+        System.out.printf("Replayed %d consensuses (%d distinct relays) in %.1f s, metrics exported to: %s\n",
+                replay.getSteps(), replay.getTable().size(), (System.nanoTime() - t0) / 1e9, out);
+    }
+
+    public static void simulatePopulation(PathSelector selector, int clients, int days, int circuitsPerDay) {
+        int threads = Runtime.getRuntime().availableProcessors();
+        long seed = new Random().nextLong();
+        PopulationSimulator population = new PopulationSimulator(selector, clients, threads);
+        PopulationResult result = population.run(days, circuitsPerDay, seed, 0.5, 0.2);
+
+        System.out.printf("Simulated %d clients (%d bytes each) for %d days, %d circuits/day on %d threads in %.1f s (seed=%d)\n",
+                clients, population.bytesPerClient(), days, circuitsPerDay, threads,
+                result.getElapsedNanos() / 1e9, seed);
+        System.out.println("\n=== Guard exposure ===");
+        System.out.println(result.exposureSummary(5));
+        System.out.println("\n=== Entropy (circuits through persistent guards) ===");
+        CircuitMetrics old = result.getOriginal();
+        CircuitMetrics geo = result.getGeoAware();
+        System.out.printf("Original: Global=%.4f, Guard=%.4f, Middle=%.4f, Exit=%.4f\n",
+                old.globalEntropy(), old.guardEntropy(), old.middleEntropy(), old.exitEntropy());
+        System.out.printf("Geo-Aware: Global=%.4f, Guard=%.4f, Middle=%.4f, Exit=%.4f\n",
+                geo.globalEntropy(), geo.guardEntropy(), geo.middleEntropy(), geo.exitEntropy());
     }
 
-    public static void exportBandwidthCSV(String filename, List<Integer> oldBW, List<Integer> newBW) {
-        try (FileWriter writer = new FileWriter(filename)) {
-            writer.write("Circuit,Original,GeoAware\n");
-            int size = Math.min(oldBW.size(), newBW.size());
-            for (int i = 0; i < size; i++) {
-                writer.write(String.format("%d,%d,%d\n", i+1, oldBW.get(i), newBW.get(i)));
+    /**
+     * Entropias exatas de cada posição (por relay, /16 e país) para o Original e o
+     * Geo-Aware, ao lado das de uma simulação Monte Carlo com a distância de variação total.
+     */
+    public static void exact(PathSelector selector, double alpha, double beta, long circuits) {
+        SelectionDistribution original = SelectionDistribution.compute(selector, 0, 0);
+        SelectionDistribution geo = SelectionDistribution.compute(selector, alpha, beta);
+        System.out.printf("Exact distributions in %.1f ms (Original) and %.1f ms (Geo-Aware, alpha=%.3f, beta=%.3f)\n",
+                original.getComputeNanos() / 1e6, geo.getComputeNanos() / 1e6, alpha, beta);
+
+        SimulationResult result = null;
+        if (circuits > 0) {
+            int threads = Runtime.getRuntime().availableProcessors();
+            result = new SimulationEngine(selector, threads).run(circuits, new Random().nextLong(), alpha, beta);
+            System.out.printf("Monte Carlo check: %d circuits per algorithm in %.1f ms\n",
+                    circuits, result.getElapsedNanos() / 1e6);
+        }
+
+        String[] positions = {"Guard", "Middle", "Exit", "Global"};
+        System.out.println("\n=== Entropy (bits): exact relay / subnet / country | Monte Carlo relay, total variation ===");
+        for (int a = SimulationEngine.ORIGINAL; a <= SimulationEngine.GEO_AWARE; a++) {
+            SelectionDistribution d = a == SimulationEngine.ORIGINAL ? original : geo;
+            for (int pos = SelectionStats.GUARD; pos <= SelectionStats.GLOBAL; pos++) {
+                System.out.printf("%-9s %-7s %.4f / %.4f / %.4f (support %d)",
+                        SimulationEngine.algorithmName(a), positions[pos],
+                        d.entropy(pos), d.subnetEntropy(pos), d.countryEntropy(pos), d.support(pos));
+                if (result != null) {
+                    SelectionStats sampled = (a == SimulationEngine.ORIGINAL ? result.getOriginal()
+                            : result.getGeoAware()).getSelections();
+                    System.out.printf(" | %.4f, TV=%.4f", sampled.entropy(pos), d.totalVariation(sampled, pos));
+                }
+                System.out.println();
+            }
+        }
+    }
+
+    public static void store(PathSelector selector, long circuits, Path file) {
+        int threads = Runtime.getRuntime().availableProcessors();
+        RelayTable table = selector.getTable();
+        try (CircuitStore store = file == null ? new CircuitStore() : new CircuitStore(file)) {
+            long base = store.size() / 2;
+            SimulationResult result = new SimulationEngine(selector, threads)
+                    .run(circuits, new Random().nextLong(), 0.5, 0.2, (index, algorithm, guard, middle, exit, bw) ->
+                            store.onCircuit(base + index, algorithm, guard, middle, exit, bw));
+            System.out.printf("Stored %d circuits (%.1f MB %s) in %.1f ms\n", store.count(), store.bytes() / 1e6,
+                    store.isMapped() ? "mapped in " + file : "on heap", result.getElapsedNanos() / 1e6);
+
+            long t0 = System.nanoTime();
+            long[] byCountry = store.countBy(CircuitStore.Key.EXIT_COUNTRY, table);
+            long t1 = System.nanoTime();
+            long[] offsets = store.sortBy(CircuitStore.Key.GUARD, table);
+            long t2 = System.nanoTime();
+            System.out.printf("Group-by exit country in %.1f ms, sort by guard in %.1f ms\n", (t1 - t0) / 1e6, (t2 - t1) / 1e6);
+
+            int busiest = 0;
+            for (int g = 1; g < offsets.length - 2; g++) {
+                if (offsets[g + 1] - offsets[g] > offsets[busiest + 1] - offsets[busiest]) busiest = g;
+            }
+            System.out.printf("Busiest guard: %s (%d circuits)\n", table.getNickname(busiest),
+                    offsets[busiest + 1] - offsets[busiest]);
+            System.out.print("Exit countries:");
+            for (int c = 0; c < byCountry.length - 1; c++) {
+                if (byCountry[c] > 0) System.out.printf(" %s=%d", CountryDictionary.code((short) c), byCountry[c]);
             }
-            System.out.println("Bandwidth CSV exported to: " + filename);
+            System.out.println();
+            if (store.size() > 0) System.out.println("First circuit: " + circuitToString(store.circuit(0, table)));
         } catch (IOException e) {
-            System.err.println("Error writing CSV: " + e.getMessage());
+            System.err.println("Error storing circuits: " + e.getMessage());
         }
     }
 
+    public static void load(PathSelector selector, double arrivalRate, double meanDuration, double horizon) {
+        long seed = new Random().nextLong();
+        System.out.printf("Load: %.0f circuits/s, mean duration %.0f s, %.0f s simulated (seed=%d)\n",
+                arrivalRate, meanDuration, horizon, seed);
+        for (int algorithm : new int[]{SimulationEngine.ORIGINAL, SimulationEngine.GEO_AWARE}) {
+            LoadResult result = new LoadSimulator(selector, algorithm, 0.5, 0.2)
+                    .run(arrivalRate, meanDuration, horizon, seed);
+            String name = SimulationEngine.algorithmName(algorithm);
+            System.out.println(name + ": " + result.summary());
+            System.out.println(name + " realized throughput: " + result.getThroughputs().summary());
+            System.out.println(name + " isolated throughput: " + result.getIsolated().summary());
+        }
+    }
+
+    private static String circuitToString(Circuit circuit) {
+        StringBuilder sb = new StringBuilder();
+        for (Node n : circuit.getNodes()) sb.append(sb.length() == 0 ? "" : " -> ").append(n.getNickname());
+        return sb.append(" (").append(circuit.getMinBandwidth()).append(" KB/s)").toString();
+    }
+
+    public static void sweep(PathSelector selector, double[] alphas, double[] betas, long circuits, Path out) {
+        int threads = Runtime.getRuntime().availableProcessors();
+        long seed = new Random().nextLong();
+        long t0 = System.nanoTime();
+        List<SweepPoint> points = new ParameterSweep(selector, threads).run(alphas, betas, circuits, seed);
+        double seconds = (System.nanoTime() - t0) / 1e9;
+
+        try (Writer writer = Files.newBufferedWriter(out)) {
+            writer.write(SweepPoint.CSV_HEADER);
+            for (SweepPoint p : points) writer.write(p.toCsv());
+        } catch (IOException e) {
+            System.err.println("Error writing sweep results: " + e.getMessage());
+            return;
+        }
+        System.out.printf("Swept %d x %d points, %d circuits each, on %d threads in %.1f s (seed=%d), results exported to: %s\n",
+                alphas.length, betas.length, circuits, threads, seconds, seed, out);
+
+        // Melhor ponto por entropia global
+        SweepPoint best = points.get(0);
+        for (SweepPoint p : points) {
+            if (p.entropy(SelectionStats.GLOBAL) > best.entropy(SelectionStats.GLOBAL)) best = p;
+        }
+        SweepPoint original = points.get(0);
+        System.out.printf("Original: Global entropy=%.4f, median bandwidth=%d\n",
+                original.entropy(SelectionStats.GLOBAL), original.bandwidthMedian());
+        System.out.printf("Highest global entropy: %s (alpha=%.3f, beta=%.3f) entropy=%.4f, median bandwidth=%d\n",
+                SimulationEngine.algorithmName(best.getAlgorithm()), best.getAlpha(), best.getBeta(),
+                best.entropy(SelectionStats.GLOBAL), best.bandwidthMedian());
+    }
+
+    /**
+     * Regista as métricas no JMX e escreve-as periodicamente no ficheiro indicado em
+     * -Dproject2.metrics; à saída escreve os valores finais e mostra um resumo.
+     */
+    public static void startInstrumentation(SelectionMetrics metrics) {
+        Path file = Paths.get(System.getProperty(METRICS_PROPERTY));
+        long interval = Long.getLong(METRICS_INTERVAL_PROPERTY, 10);
+        try {
+            metrics.register();
+        } catch (Exception e) {
+            System.err.println("Could not register the metrics MBean: " + e.getMessage());
+        }
+        PrometheusExporter exporter = new PrometheusExporter(metrics, file, interval, TimeUnit.SECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                exporter.close();
+            } catch (IOException e) {
+                System.err.println("Could not write metrics to " + file + ": " + e.getMessage());
+            }
+            System.out.println("\n=== Instrumentation (" + file + ") ===");
+            System.out.println(metrics.getSummary());
+        }));
+        System.out.printf("Instrumentation enabled: JMX %s, %s every %d s\n", SelectionMetrics.OBJECT_NAME, file, interval);
+    }
+
     // ================= Algoritmos =================
     public static Circuit selectPathCurrent(PathSelector selector) {
         Node[] path = selector.selectPath();
         if (path == null || path.length < 3) return new Circuit(0, new Node[0], 0);
-        return new Circuit(0, path, calculateMinBandwidth(path[0], path[1], path[2]));
+        return withRtt(selector, new Circuit(0, path, calculateMinBandwidth(path[0], path[1], path[2])));
     }
 
     public static Circuit selectPathNew(PathSelector selector, double alpha, double beta) {
         Node[] path = selector.selectPathGeo(alpha, beta);
         if (path == null || path.length < 3) return new Circuit(0, new Node[0], 0);
-        return new Circuit(0, path, calculateMinBandwidth(path[0], path[1], path[2]));
+        return withRtt(selector, new Circuit(0, path, calculateMinBandwidth(path[0], path[1], path[2])));
+    }
+
+    public static Circuit selectPathLatency(PathSelector selector, LatencyModel latency, double gamma) {
+        Node[] path = selector.selectPathLatency(latency, gamma);
+        if (path == null || path.length < 3 || path[0] == null || path[1] == null || path[2] == null) {
+            return new Circuit(0, new Node[0], 0);
+        }
+        return withRtt(selector, new Circuit(0, path, calculateMinBandwidth(path[0], path[1], path[2])));
+    }
+
+    // RTT esperado do circuito pelo modelo por omissão
+    private static Circuit withRtt(PathSelector selector, Circuit circuit) {
+        Node[] path = circuit.getNodes();
+        circuit.setExpectedRtt(LatencyModel.getDefault().circuitRttMicros(selector.getTable(),
+                path[0].getId(), path[1].getId(), path[2].getId()) / 1000.0);
+        return circuit;
     }
 }
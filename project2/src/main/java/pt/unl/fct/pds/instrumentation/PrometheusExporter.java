@@ -0,0 +1,62 @@
+package pt.unl.fct.pds.project2.instrumentation;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Escreve periodicamente as {@link SelectionMetrics} num ficheiro no formato de texto
+ * do Prometheus (para o textfile collector do node_exporter, ou para ler à mão).
+ * O ficheiro é substituído atomicamente, pelo que quem o lê nunca vê metade.
+ */
+public class PrometheusExporter implements Closeable {
+
+    private final SelectionMetrics metrics;
+    private final Path file;
+    private final ScheduledExecutorService scheduler;
+
+    public PrometheusExporter(SelectionMetrics metrics, Path file, long period, TimeUnit unit) {
+        this.metrics = metrics;
+        this.file = file;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "prometheus-exporter");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleAtFixedRate(this::tryWrite, period, period, unit);
+    }
+
+    public Path getFile() {return file;}
+
+    public void write() throws IOException {
+        Path dir = file.toAbsolutePath().getParent();
+        Path tmp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+        try {
+            Files.write(tmp, metrics.prometheus().getBytes(StandardCharsets.UTF_8));
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private void tryWrite() {
+        try {
+            write();
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Could not write metrics to " + file + ": " + e.getMessage());
+        }
+    }
+
+    // Para a escrita periódica e escreve os valores finais
+    @Override
+    public void close() throws IOException {
+        scheduler.shutdownNow();
+        write();
+    }
+}
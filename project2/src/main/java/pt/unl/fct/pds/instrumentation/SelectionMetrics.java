@@ -0,0 +1,320 @@
+package pt.unl.fct.pds.project2.instrumentation;
+
+import pt.unl.fct.pds.project2.simulation.LogHistogram;
+import pt.unl.fct.pds.project2.utils.PathSelector;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Supplier;
+
+/**
+ * Métricas de um {@link SelectionProbe} e do {@link PathSelector} instrumentado
+ * (tamanho dos pools), mais os contadores de GC e de alocação da JVM.
+ *
+ * Pode ser registado no servidor JMX da plataforma ({@link #register}) e convertido
+ * para o formato de texto do Prometheus ({@link #prometheus}), que o
+ * {@link PrometheusExporter} escreve periodicamente num ficheiro.
+ */
+public class SelectionMetrics implements SelectionMetricsMBean {
+
+    public static final String OBJECT_NAME = "pt.unl.fct.pds.project2:type=SelectionMetrics";
+
+    private static final String[] STAGE_KEYS = {"exit", "guard", "middle", "exit-geo", "guard-geo", "middle-geo"};
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99};
+
+    private final SelectionProbe probe;
+    // O selector pode mudar ou ainda não existir (replay); null dá pools vazios
+    private final Supplier<PathSelector> selector;
+
+    // Última amostra para o débito de caminhos
+    private long lastPaths;
+    private long lastNanos = System.nanoTime();
+    private double pathsPerSecond;
+
+    public SelectionMetrics(PathSelector selector) {
+        this(selector.getProbe() != null ? selector.getProbe() : new SelectionProbe(), () -> selector);
+        selector.setProbe(probe);
+    }
+
+    public SelectionMetrics(SelectionProbe probe, Supplier<PathSelector> selector) {
+        this.probe = probe;
+        this.selector = selector;
+    }
+
+    public SelectionProbe getProbe() {return probe;}
+
+    /**
+     * Regista (ou substitui) o MBean com o nome {@link #OBJECT_NAME}.
+     */
+    public ObjectName register() throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(OBJECT_NAME);
+        try {
+            server.registerMBean(this, name);
+        } catch (InstanceAlreadyExistsException e) {
+            server.unregisterMBean(name);
+            server.registerMBean(this, name);
+        }
+        return name;
+    }
+
+    public void unregister() throws JMException {
+        ObjectName name = new ObjectName(OBJECT_NAME);
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        if (server.isRegistered(name)) server.unregisterMBean(name);
+    }
+
+    // ---------------- Contadores ----------------
+
+    @Override
+    public long getPaths() {return probe.snapshot().paths(false);}
+
+    @Override
+    public long getGeoPaths() {return probe.snapshot().paths(true);}
+
+    @Override
+    public long getCompletedCircuits() {return probe.snapshot().getCompletedCircuits();}
+
+    @Override
+    public long getFailedCircuits() {return probe.snapshot().getFailedCircuits();}
+
+    /**
+     * Caminhos selecionados por segundo (dos dois modos) desde a amostra anterior;
+     * amostras com menos de 1 s de intervalo devolvem o valor anterior.
+     */
+    @Override
+    public synchronized double getCircuitsPerSecond() {
+        return circuitsPerSecond(probe.snapshot());
+    }
+
+    private synchronized double circuitsPerSecond(SelectionProbe.Snapshot snapshot) {
+        long now = System.nanoTime();
+        long paths = snapshot.paths(false) + snapshot.paths(true);
+        if (paths < lastPaths) lastPaths = 0; // depois de reset
+        if (now - lastNanos >= 1_000_000_000L) {
+            pathsPerSecond = (paths - lastPaths) / ((now - lastNanos) / 1e9);
+            lastPaths = paths;
+            lastNanos = now;
+        }
+        return pathsPerSecond;
+    }
+
+    // ---------------- Pools ----------------
+
+    @Override
+    public int getExitPoolSize() {
+        PathSelector s = selector.get();
+        return s == null ? 0 : s.getExitPoolSize();
+    }
+
+    @Override
+    public int getGuardPoolSize() {
+        PathSelector s = selector.get();
+        return s == null ? 0 : s.getGuardPoolSize();
+    }
+
+    @Override
+    public int getMiddlePoolSize() {
+        PathSelector s = selector.get();
+        return s == null ? 0 : s.getMiddlePoolSize();
+    }
+
+    @Override
+    public int getExitClasses() {
+        PathSelector s = selector.get();
+        return s == null ? 0 : s.getExitClassCount();
+    }
+
+    @Override
+    public double getMeanMiddlesExcludedBySubnet() {
+        SelectionProbe.Snapshot snapshot = probe.snapshot();
+        long n = snapshot.selections(SelectionProbe.MIDDLE) + snapshot.selections(SelectionProbe.MIDDLE_GEO);
+        return n == 0 ? 0 : (double) (snapshot.excludedBySubnet(SelectionProbe.MIDDLE)
+                + snapshot.excludedBySubnet(SelectionProbe.MIDDLE_GEO)) / n;
+    }
+
+    @Override
+    public double getMeanMiddlesWeightedByCountry() {
+        SelectionProbe.Snapshot snapshot = probe.snapshot();
+        long n = snapshot.selections(SelectionProbe.MIDDLE_GEO);
+        return n == 0 ? 0 : (double) snapshot.weightedByCountry(SelectionProbe.MIDDLE_GEO) / n;
+    }
+
+    // ---------------- JVM ----------------
+
+    @Override
+    public long getGcCollections() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, gc.getCollectionCount());
+        }
+        return total;
+    }
+
+    @Override
+    public long getGcTimeMillis() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, gc.getCollectionTime());
+        }
+        return total;
+    }
+
+    /**
+     * Bytes alocados pelas threads vivas (0 se a JVM não o suportar).
+     */
+    @Override
+    public long getAllocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) return 0;
+        com.sun.management.ThreadMXBean hotspot = (com.sun.management.ThreadMXBean) threads;
+        if (!hotspot.isThreadAllocatedMemorySupported() || !hotspot.isThreadAllocatedMemoryEnabled()) return 0;
+        long total = 0;
+        for (long bytes : hotspot.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+            if (bytes > 0) total += bytes;
+        }
+        return total;
+    }
+
+    // ---------------- Latências ----------------
+
+    @Override
+    public String[] getStages() {return STAGE_KEYS.clone();}
+
+    @Override
+    public long latencyPercentile(String stage, double percentile) {
+        return probe.snapshot().latency(stageOf(stage)).percentile(percentile);
+    }
+
+    @Override
+    public double meanLatency(String stage) {
+        return probe.snapshot().latency(stageOf(stage)).getMean();
+    }
+
+    private static int stageOf(String key) {
+        for (int stage = 0; stage < STAGE_KEYS.length; stage++) {
+            if (STAGE_KEYS[stage].equalsIgnoreCase(key)) return stage;
+        }
+        throw new IllegalArgumentException("Unknown stage: " + key);
+    }
+
+    @Override
+    public void reset() {
+        probe.reset();
+    }
+
+    @Override
+    public String getSummary() {
+        SelectionProbe.Snapshot snapshot = probe.snapshot();
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.ROOT, "paths=%d, geoPaths=%d, %.0f paths/s, pools: guard=%d, middle=%d, exit=%d",
+                snapshot.paths(false), snapshot.paths(true), circuitsPerSecond(snapshot),
+                getGuardPoolSize(), getMiddlePoolSize(), getExitPoolSize()));
+        for (int stage = 0; stage < SelectionProbe.NUM_STAGES; stage++) {
+            LogHistogram latency = snapshot.latency(stage);
+            if (latency.getCount() == 0) continue;
+            sb.append(String.format(Locale.ROOT, "\n  %-10s n=%d, p50=%dns, p99=%dns, excluded/16=%.1f, weighted/country=%.1f",
+                    STAGE_KEYS[stage], latency.getCount(), latency.percentile(50), latency.percentile(99),
+                    (double) snapshot.excludedBySubnet(stage) / latency.getCount(),
+                    (double) snapshot.weightedByCountry(stage) / latency.getCount()));
+        }
+        return sb.toString();
+    }
+
+    // ---------------- Prometheus ----------------
+
+    /**
+     * Todas as métricas no formato de texto do Prometheus (versão 0.0.4).
+     */
+    @Override
+    public String prometheus() {
+        SelectionProbe.Snapshot snapshot = probe.snapshot();
+        StringBuilder sb = new StringBuilder(4096);
+
+        header(sb, "project2_selection_latency_seconds", "summary", "Latency of each path selection stage");
+        for (int stage = 0; stage < SelectionProbe.NUM_STAGES; stage++) {
+            LogHistogram latency = snapshot.latency(stage);
+            String labels = stageLabels(stage);
+            for (double q : QUANTILES) {
+                sample(sb, "project2_selection_latency_seconds", labels + ",quantile=\"" + q + "\"",
+                        latency.percentile(100 * q) / 1e9);
+            }
+            sample(sb, "project2_selection_latency_seconds_sum", labels, latency.getMean() * latency.getCount() / 1e9);
+            sample(sb, "project2_selection_latency_seconds_count", labels, latency.getCount());
+        }
+
+        header(sb, "project2_selection_excluded_candidates_total", "counter",
+                "Pool candidates excluded by the /16 rule (subnet16) or down-weighted by country (country)");
+        for (int stage = 0; stage < SelectionProbe.NUM_STAGES; stage++) {
+            sample(sb, "project2_selection_excluded_candidates_total", stageLabels(stage) + ",reason=\"subnet16\"",
+                    snapshot.excludedBySubnet(stage));
+            if (SelectionProbe.isGeo(stage)) {
+                sample(sb, "project2_selection_excluded_candidates_total", stageLabels(stage) + ",reason=\"country\"",
+                        snapshot.weightedByCountry(stage));
+            }
+        }
+
+        header(sb, "project2_pool_relays", "gauge", "Relays in each selection pool");
+        sample(sb, "project2_pool_relays", "role=\"guard\"", getGuardPoolSize());
+        sample(sb, "project2_pool_relays", "role=\"middle\"", getMiddlePoolSize());
+        sample(sb, "project2_pool_relays", "role=\"exit\"", getExitPoolSize());
+        header(sb, "project2_exit_port_classes", "gauge", "Exit pools built per destination port class");
+        sample(sb, "project2_exit_port_classes", null, getExitClasses());
+
+        header(sb, "project2_paths_total", "counter", "Paths selected");
+        sample(sb, "project2_paths_total", "mode=\"plain\"", snapshot.paths(false));
+        sample(sb, "project2_paths_total", "mode=\"geo\"", snapshot.paths(true));
+        header(sb, "project2_paths_per_second", "gauge", "Paths selected per second since the previous sample");
+        sample(sb, "project2_paths_per_second", null, circuitsPerSecond(snapshot));
+        header(sb, "project2_circuits_total", "counter", "Circuits recorded by the simulations");
+        sample(sb, "project2_circuits_total", "result=\"completed\"", snapshot.getCompletedCircuits());
+        sample(sb, "project2_circuits_total", "result=\"failed\"", snapshot.getFailedCircuits());
+
+        List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+        header(sb, "jvm_gc_collections_total", "counter", "Garbage collections");
+        for (GarbageCollectorMXBean gc : collectors) {
+            sample(sb, "jvm_gc_collections_total", "gc=\"" + escape(gc.getName()) + "\"", Math.max(0, gc.getCollectionCount()));
+        }
+        header(sb, "jvm_gc_collection_seconds_total", "counter", "Time spent in garbage collection");
+        for (GarbageCollectorMXBean gc : collectors) {
+            sample(sb, "jvm_gc_collection_seconds_total", "gc=\"" + escape(gc.getName()) + "\"",
+                    Math.max(0, gc.getCollectionTime()) / 1e3);
+        }
+        header(sb, "jvm_threads_allocated_bytes", "gauge", "Bytes allocated by the live threads");
+        sample(sb, "jvm_threads_allocated_bytes", null, getAllocatedBytes());
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        header(sb, "jvm_memory_heap_used_bytes", "gauge", "Used heap");
+        sample(sb, "jvm_memory_heap_used_bytes", null, heap.getUsed());
+        return sb.toString();
+    }
+
+    private static String stageLabels(int stage) {
+        return "stage=\"" + SelectionProbe.stageName(stage) + "\",mode=\"" + (SelectionProbe.isGeo(stage) ? "geo" : "plain") + "\"";
+    }
+
+    private static void header(StringBuilder sb, String name, String type, String help) {
+        sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(StringBuilder sb, String name, String labels, double value) {
+        sb.append(name);
+        if (labels != null) sb.append('{').append(labels).append('}');
+        sb.append(' ');
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) sb.append((long) value);
+        else sb.append(String.format(Locale.ROOT, "%.9g", value));
+        sb.append('\n');
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
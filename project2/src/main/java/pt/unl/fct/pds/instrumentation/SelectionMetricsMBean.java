@@ -0,0 +1,35 @@
+package pt.unl.fct.pds.project2.instrumentation;
+
+/**
+ * Interface JMX de {@link SelectionMetrics} (latências em nanossegundos).
+ */
+public interface SelectionMetricsMBean {
+
+    long getPaths();
+    long getGeoPaths();
+    long getCompletedCircuits();
+    long getFailedCircuits();
+    double getCircuitsPerSecond();
+
+    int getExitPoolSize();
+    int getGuardPoolSize();
+    int getMiddlePoolSize();
+    int getExitClasses();
+
+    // Médias por seleção de middle (a etapa com mais exclusões)
+    double getMeanMiddlesExcludedBySubnet();
+    double getMeanMiddlesWeightedByCountry();
+
+    long getGcCollections();
+    long getGcTimeMillis();
+    long getAllocatedBytes();
+
+    // Etapas: exit, guard, middle, exit-geo, guard-geo, middle-geo
+    String[] getStages();
+    long latencyPercentile(String stage, double percentile);
+    double meanLatency(String stage);
+
+    String getSummary();
+    String prometheus();
+    void reset();
+}
@@ -0,0 +1,143 @@
+package pt.unl.fct.pds.project2.instrumentation;
+
+import pt.unl.fct.pds.project2.simulation.LogHistogram;
+
+/**
+ * Registo da seleção de caminhos: latência de cada etapa (exit, guard, middle, nos
+ * modos Original e Geo-Aware), candidatos excluídos pela regra das /16 e candidatos
+ * cujo peso foi alterado pelo país, e circuitos completos ou falhados.
+ *
+ * Só existe quando a instrumentação está ligada: o {@link
+ * pt.unl.fct.pds.project2.utils.PathSelector} sem probe faz apenas um teste a null por
+ * caminho. Os registos vão para um de vários "stripes" escolhido pela thread, cada um
+ * com o seu lock, pelo que a memória é fixa (não cresce com as threads das simulações)
+ * e as threads raramente disputam o mesmo lock; o {@link #snapshot} combina-os.
+ */
+public class SelectionProbe {
+
+    public static final int EXIT = 0;
+    public static final int GUARD = 1;
+    public static final int MIDDLE = 2;
+    public static final int EXIT_GEO = 3;
+    public static final int GUARD_GEO = 4;
+    public static final int MIDDLE_GEO = 5;
+    public static final int NUM_STAGES = 6;
+
+    private static final String[] STAGE_NAMES = {"exit", "guard", "middle", "exit", "guard", "middle"};
+
+    private final Stripe[] stripes;
+    private final int mask;
+
+    public SelectionProbe() {
+        // Uma potência de 2 >= número de CPUs (cada stripe tem ~350 KB de histogramas)
+        int cpus = Runtime.getRuntime().availableProcessors();
+        int n = cpus <= 1 ? 1 : Integer.highestOneBit(cpus - 1) << 1;
+        stripes = new Stripe[n];
+        for (int k = 0; k < n; k++) stripes[k] = new Stripe();
+        mask = n - 1;
+    }
+
+    // Papel do relay escolhido na etapa
+    public static String stageName(int stage) {return STAGE_NAMES[stage];}
+
+    public static boolean isGeo(int stage) {return stage >= EXIT_GEO;}
+
+    private Stripe stripe() {
+        long id = Thread.currentThread().getId();
+        return stripes[(int) (id ^ (id >>> 16)) & mask];
+    }
+
+    /**
+     * Etapa concluída em 'nanos'; bySubnet são os candidatos do pool excluídos pelas /16
+     * e byCountry os que tiveram o peso alterado pelo país (só no modo Geo-Aware).
+     */
+    public void record(int stage, long nanos, int bySubnet, int byCountry) {
+        Stripe s = stripe();
+        synchronized (s) {
+            s.latency[stage].record(nanos);
+            s.bySubnet[stage] += bySubnet;
+            s.byCountry[stage] += byCountry;
+        }
+    }
+
+    // Circuitos registados por uma simulação (failed: sem caminho válido)
+    public void recordCircuits(long completed, long failed) {
+        Stripe s = stripe();
+        synchronized (s) {
+            s.completed += completed;
+            s.failed += failed;
+        }
+    }
+
+    public Snapshot snapshot() {
+        Snapshot snapshot = new Snapshot();
+        for (Stripe s : stripes) {
+            synchronized (s) {
+                for (int stage = 0; stage < NUM_STAGES; stage++) {
+                    snapshot.latency[stage].merge(s.latency[stage]);
+                    snapshot.bySubnet[stage] += s.bySubnet[stage];
+                    snapshot.byCountry[stage] += s.byCountry[stage];
+                }
+                snapshot.completed += s.completed;
+                snapshot.failed += s.failed;
+            }
+        }
+        return snapshot;
+    }
+
+    public void reset() {
+        for (Stripe s : stripes) {
+            synchronized (s) {
+                s.reset();
+            }
+        }
+    }
+
+    private static class Stripe {
+        final LogHistogram[] latency = new LogHistogram[NUM_STAGES];
+        final long[] bySubnet = new long[NUM_STAGES];
+        final long[] byCountry = new long[NUM_STAGES];
+        long completed;
+        long failed;
+
+        Stripe() {
+            for (int stage = 0; stage < NUM_STAGES; stage++) latency[stage] = new LogHistogram();
+        }
+
+        void reset() {
+            for (int stage = 0; stage < NUM_STAGES; stage++) {
+                latency[stage].reset();
+                bySubnet[stage] = 0;
+                byCountry[stage] = 0;
+            }
+            completed = 0;
+            failed = 0;
+        }
+    }
+
+    /**
+     * Valores acumulados de todas as threads num instante.
+     */
+    public static class Snapshot {
+        private final LogHistogram[] latency = new LogHistogram[NUM_STAGES];
+        private final long[] bySubnet = new long[NUM_STAGES];
+        private final long[] byCountry = new long[NUM_STAGES];
+        private long completed;
+        private long failed;
+
+        Snapshot() {
+            for (int stage = 0; stage < NUM_STAGES; stage++) latency[stage] = new LogHistogram();
+        }
+
+        // Latências (ns) da etapa
+        public LogHistogram latency(int stage) {return latency[stage];}
+        public long excludedBySubnet(int stage) {return bySubnet[stage];}
+        public long weightedByCountry(int stage) {return byCountry[stage];}
+        public long selections(int stage) {return latency[stage].getCount();}
+        public long getCompletedCircuits() {return completed;}
+        public long getFailedCircuits() {return failed;}
+
+        // Caminhos selecionados no modo (contados pela etapa do middle)
+        public long paths(boolean geo) {return selections(geo ? MIDDLE_GEO : MIDDLE);}
+    }
+}
@@ -0,0 +1,118 @@
+package pt.unl.fct.pds.project2.model;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Linha bandwidth-weights do consensus (Wgg=5978 Wmd=531 ...): fator, em unidades
+ * de 1/10000, pelo qual a bandwidth de um relay é multiplicada em cada posição do
+ * circuito, conforme as suas flags Guard e Exit (dir-spec, secção 3.8.3).
+ *
+ * Como no Tor, um relay com BadExit conta como não-exit e um relay só com Exit
+ * tem peso 0 na posição de guard.
+ */
+public final class BandwidthWeights {
+
+    public static final int SCALE = 10000;
+
+    // Posições (mesma ordem que SelectionStats)
+    public static final int GUARD = 0;
+    public static final int MIDDLE = 1;
+    public static final int EXIT = 2;
+
+    // Classes de relays pelas flags (ver classOf)
+    public static final int FLAG_CLASSES = 4;
+    private static final int PLAIN = 0;
+    private static final int GUARD_ONLY = 1;
+    private static final int EXIT_ONLY = 2;
+    private static final int GUARD_EXIT = 3;
+
+    // Letras das chaves: W<posição><classe>
+    private static final String POSITIONS = "gme";
+    private static final String CLASSES = "mged";
+
+    private final Map<String, Integer> values;
+    private final int[] factors = new int[12];
+
+    public BandwidthWeights(Map<String, Integer> values) {
+        this.values = Collections.unmodifiableMap(new TreeMap<>(values));
+        for (int position = 0; position < 3; position++) {
+            for (int c = 0; c < 4; c++) {
+                String key = "W" + POSITIONS.charAt(position) + CLASSES.charAt(c);
+                Integer value = values.get(key);
+                int factor = value != null ? Math.max(0, value) : SCALE;
+                if (position == GUARD && c == EXIT_ONLY) factor = 0; // Wge não é publicado
+                factors[position * 4 + c] = factor;
+            }
+        }
+    }
+
+    /**
+     * Lê os pares "Wxx=N" de uma linha (com ou sem a palavra bandwidth-weights);
+     * tokens mal formados são ignorados.
+     */
+    public static BandwidthWeights parse(String line) {
+        Map<String, Integer> values = new TreeMap<>();
+        for (String token : line.trim().split("\\s+")) {
+            int eq = token.indexOf('=');
+            if (eq <= 0) continue;
+            try {
+                values.put(token.substring(0, eq), Integer.parseInt(token.substring(eq + 1)));
+            } catch (NumberFormatException e) {
+                // ignorado
+            }
+        }
+        return new BandwidthWeights(values);
+    }
+
+    public Map<String, Integer> getValues() {return values;}
+
+    // Fator (em 1/SCALE) para um relay com estas flags na posição dada
+    public int factor(int position, int flags) {
+        return factors[position * 4 + classOf(flags)];
+    }
+
+    // Fator (em 1/SCALE) da classe de flags (0..FLAG_CLASSES-1) na posição dada
+    public int classFactor(int position, int flagClass) {
+        return factors[position * 4 + flagClass];
+    }
+
+    // Classe do relay pelas flags Guard e Exit (BadExit conta como não-exit)
+    public static int classOf(int flags) {
+        boolean guard = (flags & RelayTable.FLAG_GUARD) != 0;
+        boolean exit = (flags & RelayTable.FLAG_EXIT) != 0 && (flags & RelayTable.FLAG_BAD_EXIT) == 0;
+        return guard ? (exit ? GUARD_EXIT : GUARD_ONLY) : (exit ? EXIT_ONLY : PLAIN);
+    }
+
+    /**
+     * Peso de cada relay da tabela na posição dada, em unidades de bandwidth/SCALE
+     * (a escala comum não altera as probabilidades e evita arredondamentos).
+     */
+    public long[] vector(RelayTable table, int position) {
+        long[] weights = new long[table.size()];
+        for (int i = 0; i < weights.length; i++) weights[i] = weight(table, i, position);
+        return weights;
+    }
+
+    public long weight(RelayTable table, int relay, int position) {
+        return (long) Math.max(0, table.getBandwidth(relay)) * factor(position, table.getFlags(relay));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof BandwidthWeights && values.equals(((BandwidthWeights) o).values);
+    }
+
+    @Override
+    public int hashCode() {
+        return values.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("bandwidth-weights");
+        for (Map.Entry<String, Integer> e : values.entrySet()) sb.append(' ').append(e.getKey()).append('=').append(e.getValue());
+        return sb.toString();
+    }
+}
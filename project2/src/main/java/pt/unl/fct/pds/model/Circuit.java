@@ -8,6 +8,7 @@ public class Circuit {
     int id;
     Node[] nodes;
     int minBandwidth;
+    double expectedRtt;                  // ms, soma dos hops entre relays (LatencyModel)
     
     public Circuit() {}
     public Circuit(
@@ -23,9 +24,11 @@ public class Circuit {
     public int getId() {return id;}
     public Node[] getNodes() {return nodes;}
     public int getMinBandwidth() {return minBandwidth;}
+    public double getExpectedRtt() {return expectedRtt;}
 
     
     public void setId(int id) {this.id = id;}
     public void setNodes(Node[] nodes) {this.nodes = Arrays.copyOf(nodes, nodes.length);}
     public void setMinBandwidth() {this.minBandwidth = minBandwidth;}
+    public void setExpectedRtt(double expectedRtt) {this.expectedRtt = expectedRtt;}
 }
@@ -0,0 +1,49 @@
+package pt.unl.fct.pds.project2.model;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Dicionário global de países: cada código ISO é internado num id (short) estável,
+ * partilhado por todas as tabelas de relays, para que as comparações de país sejam
+ * comparações primitivas.
+ */
+public final class CountryDictionary {
+
+    public static final String UNKNOWN = "Unknown";
+    public static final short UNKNOWN_ID = 0;
+
+    private static final Map<String, Short> ids = new HashMap<>();
+    private static volatile String[] codes = {UNKNOWN};
+
+    static {
+        ids.put(UNKNOWN.toUpperCase(), UNKNOWN_ID);
+    }
+
+    private CountryDictionary() {}
+
+    public static short intern(String code) {
+        if (code == null || code.isEmpty()) return UNKNOWN_ID;
+        String key = code.toUpperCase();
+        synchronized (ids) {
+            Short id = ids.get(key);
+            if (id != null) return id;
+            if (codes.length > Short.MAX_VALUE) return UNKNOWN_ID;
+
+            short newId = (short) codes.length;
+            String[] grown = Arrays.copyOf(codes, codes.length + 1);
+            grown[newId] = key;
+            codes = grown;
+            ids.put(key, newId);
+            return newId;
+        }
+    }
+
+    public static String code(short id) {
+        String[] current = codes;
+        return (id >= 0 && id < current.length) ? current[id] : UNKNOWN;
+    }
+
+    public static int size() {return codes.length;}
+}
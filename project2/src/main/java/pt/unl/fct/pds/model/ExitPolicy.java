@@ -0,0 +1,137 @@
+package pt.unl.fct.pds.project2.model;
+
+import java.util.Arrays;
+
+/**
+ * Exit policy (linha "p" do consensus) compilada uma única vez e partilhada
+ * por todos os relays com o mesmo resumo.
+ *
+ * O resumo ("accept 80,443" ou "reject 25,465,587,2525") é convertido em
+ * intervalos de portos aceites, ordenados e disjuntos; um reject é guardado
+ * como o complemento em [1, 65535]. Duas policies com os mesmos intervalos são
+ * iguais (equals/hashCode), o que permite agrupar resumos equivalentes.
+ */
+public final class ExitPolicy {
+
+    public static final int MIN_PORT = 1;
+    public static final int MAX_PORT = 65535;
+
+    private static final int[] NONE = new int[0];
+
+    private final String summary;
+    // Pares [início, fim] (inclusivos) dos portos aceites
+    private final int[] accepted;
+
+    public ExitPolicy(String summary) {
+        this.summary = summary;
+        this.accepted = compile(summary);
+    }
+
+    public String getSummary() {return summary;}
+
+    // Exit se aceitar pelo menos um porto
+    public boolean canExit() {return accepted.length > 0;}
+
+    public boolean allows(int port) {
+        // último intervalo com início <= port
+        int lo = 0, hi = accepted.length / 2 - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (accepted[2 * mid] <= port) lo = mid + 1;
+            else hi = mid - 1;
+        }
+        return hi >= 0 && port <= accepted[2 * hi + 1];
+    }
+
+    public int[] getAcceptedRanges() {return accepted.clone();}
+
+    public int acceptedPorts() {
+        int count = 0;
+        for (int k = 0; k < accepted.length; k += 2) count += accepted[k + 1] - accepted[k] + 1;
+        return count;
+    }
+
+    /**
+     * Compila um resumo "accept|reject lista" em intervalos aceites.
+     * Um resumo mal formado não aceita nenhum porto.
+     */
+    static int[] compile(String summary) {
+        if (summary == null) return NONE;
+        String s = summary.trim();
+        int space = s.indexOf(' ');
+        if (space < 0) return NONE;
+
+        String action = s.substring(0, space);
+        boolean accept;
+        if (action.equalsIgnoreCase("accept")) accept = true;
+        else if (action.equalsIgnoreCase("reject")) accept = false;
+        else return NONE;
+
+        int[] ranges = parseRanges(s.substring(space + 1).trim());
+        if (ranges == null) return NONE;
+        return accept ? ranges : complement(ranges);
+    }
+
+    // "80,443,6660-6669" -> intervalos ordenados e fundidos; null se inválido
+    private static int[] parseRanges(String list) {
+        String[] items = list.split(",");
+        long[] packed = new long[items.length];
+        for (int k = 0; k < items.length; k++) {
+            String item = items[k].trim();
+            int dash = item.indexOf('-');
+            int start, end;
+            try {
+                start = Integer.parseInt(dash < 0 ? item : item.substring(0, dash));
+                end = dash < 0 ? start : Integer.parseInt(item.substring(dash + 1));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+            if (start < MIN_PORT || end > MAX_PORT || start > end) return null;
+            packed[k] = ((long) start << 32) | end;
+        }
+        Arrays.sort(packed);
+
+        int[] ranges = new int[2 * packed.length];
+        int n = 0;
+        for (long p : packed) {
+            int start = (int) (p >>> 32);
+            int end = (int) p;
+            if (n > 0 && start <= ranges[n - 1] + 1) {
+                ranges[n - 1] = Math.max(ranges[n - 1], end);
+            } else {
+                ranges[n++] = start;
+                ranges[n++] = end;
+            }
+        }
+        return Arrays.copyOf(ranges, n);
+    }
+
+    private static int[] complement(int[] ranges) {
+        int[] result = new int[ranges.length + 2];
+        int n = 0;
+        int next = MIN_PORT;
+        for (int k = 0; k < ranges.length; k += 2) {
+            if (ranges[k] > next) {
+                result[n++] = next;
+                result[n++] = ranges[k] - 1;
+            }
+            next = ranges[k + 1] + 1;
+        }
+        if (next <= MAX_PORT) {
+            result[n++] = next;
+            result[n++] = MAX_PORT;
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof ExitPolicy && Arrays.equals(accepted, ((ExitPolicy) o).accepted);
+    }
+
+    @Override
+    public int hashCode() {return Arrays.hashCode(accepted);}
+
+    @Override
+    public String toString() {return summary;}
+}
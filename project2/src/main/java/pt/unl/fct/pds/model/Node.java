@@ -4,6 +4,7 @@ import java.time.LocalDateTime;
 import java.util.Arrays;
 
 public class Node {
+    private int id = -1;                 // índice na RelayTable de origem (-1 se não houver)
     private String nickname;
     private String fingerprint;
     private LocalDateTime timePublished;
@@ -16,8 +17,6 @@ public class Node {
     private String country;
     private String exitPolicy;
 
-    public double tempWeight;
-
     public Node() {}
 
     public Node(
@@ -44,9 +43,9 @@ public class Node {
         this.bandwidth = bandwidth;
         this.country = country;
         this.exitPolicy = exitPolicy;
-        this.tempWeight = 0;
     }
 
+    public int getId() {return id;}
     public String getNickname() {return nickname;}
     public String getFingerprint() {return fingerprint;}
     public LocalDateTime getTimePublished() {return timePublished;}
@@ -60,6 +59,7 @@ public class Node {
     public String getExitPolicy() {return exitPolicy;}
 
     
+    public void setId(int id) {this.id = id;}
     public void setNickname(String nickname) {this.nickname = nickname;}
     public void setFingerprint(String fingerprint) {this.fingerprint = fingerprint;}
     public void setTimePublished(LocalDateTime timePublished) {this.timePublished =timePublished;}
@@ -0,0 +1,297 @@
+package pt.unl.fct.pds.project2.model;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Histórico de muitos consensus (p.ex. um ano de consensus horários) num formato compacto.
+ *
+ * Cada fingerprint é internado num id estável, e o fingerprint e o nickname ficam guardados
+ * uma única vez por relay. Versões e exit policies passam por dicionários (resumos
+ * equivalentes partilham a mesma policy, como na {@link RelayTable}); as flags já são uma
+ * máscara de 14 bits e são guardadas diretamente.
+ *
+ * Cada consensus ("hora") é um bloco de observações de 20 bytes (id, bandwidth, IPv4,
+ * flags, policy, versão, país), ordenadas por id, em segmentos fora do heap: buffers
+ * diretos ou, com um ficheiro, regiões mapeadas em memória. O heap só guarda os
+ * dicionários e um índice por hora, pelo que um ano (~80M observações) ocupa poucos MB
+ * de heap e ~1.6 GB fora dele.
+ *
+ * Não é thread-safe para escrita; depois de carregado pode ser lido em paralelo.
+ */
+public class RelayStore implements Closeable {
+
+    public static final int RECORD_SIZE = 20;
+
+    // Deslocamentos dentro de uma observação
+    private static final int RELAY = 0;
+    private static final int BANDWIDTH = 4;
+    private static final int IPV4 = 8;
+    private static final int FLAGS = 12;
+    private static final int POLICY = 14;
+    private static final int VERSION = 16;
+    private static final int COUNTRY = 18;
+
+    private static final int SEGMENT_BITS = 22;                  // 4M observações (80 MB) por segmento
+    private static final int SEGMENT_RECORDS = 1 << SEGMENT_BITS;
+    private static final long SEGMENT_BYTES = (long) SEGMENT_RECORDS * RECORD_SIZE;
+
+    private final FileChannel channel;                         // null: segmentos diretos
+    private final List<ByteBuffer> segments = new ArrayList<>();
+
+    // Relays: fingerprint -> id
+    private final Map<String, Integer> ids = new HashMap<>();
+    private String[] fingerprints = new String[1024];
+    private String[] nicknames = new String[1024];
+
+    // Dicionários
+    private final List<ExitPolicy> policies = new ArrayList<>();
+    private final Map<String, Integer> policyIds = new HashMap<>();
+    private final Map<ExitPolicy, Integer> policyClassIds = new HashMap<>();
+    private final List<String> versions = new ArrayList<>();
+    private final Map<String, Integer> versionIds = new HashMap<>();
+
+    // Índice por hora: primeira observação (a hora h ocupa [hourStart[h], hourStart[h + 1]))
+    private long[] hourStart = new long[1025];
+    private long[] validAfter = new long[1024];
+    private BandwidthWeights[] bandwidthWeights = new BandwidthWeights[1024];
+    private int hours;
+
+    public RelayStore() {
+        this.channel = null;
+    }
+
+    /**
+     * Observações guardadas num ficheiro mapeado em memória (criado ou substituído).
+     */
+    public RelayStore(Path file) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    // ---------------- Escrita ----------------
+
+    public int intern(String fingerprint, String nickname) {
+        Integer id = ids.get(fingerprint);
+        if (id == null) {
+            id = ids.size();
+            ids.put(fingerprint, id);
+            if (id == fingerprints.length) {
+                fingerprints = Arrays.copyOf(fingerprints, 2 * id);
+                nicknames = Arrays.copyOf(nicknames, 2 * id);
+            }
+            fingerprints[id] = fingerprint;
+        }
+        nicknames[id] = nickname;
+        return id;
+    }
+
+    /**
+     * Acrescenta um consensus como a hora seguinte; o país é o da coluna da tabela
+     * (resolvido pelo GeoIP antes, se for preciso). Devolve o índice da hora.
+     */
+    public int addConsensus(RelayTable consensus) throws IOException {
+        int n = consensus.size();
+
+        // Ids de policies e versões do consensus -> dicionários do store (uma vez por valor)
+        List<ExitPolicy> tablePolicies = consensus.getPolicies();
+        int[] policyMap = new int[tablePolicies.size()];
+        for (int p = 0; p < policyMap.length; p++) policyMap[p] = internPolicy(tablePolicies.get(p).getSummary());
+        Map<String, Integer> localVersions = new HashMap<>();
+
+        // Ordena por id de relay para permitir pesquisa binária
+        long[] order = new long[n];
+        for (int j = 0; j < n; j++) {
+            order[j] = ((long) intern(consensus.getFingerprint(j), consensus.getNickname(j)) << 32) | j;
+        }
+        Arrays.sort(order);
+
+        if (hours + 1 == hourStart.length) {
+            hourStart = Arrays.copyOf(hourStart, 2 * hourStart.length);
+            validAfter = Arrays.copyOf(validAfter, 2 * validAfter.length);
+            bandwidthWeights = Arrays.copyOf(bandwidthWeights, 2 * bandwidthWeights.length);
+        }
+        long record = hourStart[hours];
+        int previous = -1;
+        for (long key : order) {
+            int id = (int) (key >>> 32);
+            if (id == previous) continue; // fingerprint repetido
+            previous = id;
+            int j = (int) key;
+
+            int policy = consensus.getExitPolicyId(j) < 0 ? -1 : policyMap[consensus.getExitPolicyId(j)];
+            String v = consensus.getVersion(j);
+            int version = -1;
+            if (v != null) {
+                Integer local = localVersions.get(v);
+                if (local == null) {
+                    local = internVersion(v);
+                    localVersions.put(v, local);
+                }
+                version = local;
+            }
+
+            ByteBuffer segment = segmentFor(record);
+            int offset = (int) (record & (SEGMENT_RECORDS - 1)) * RECORD_SIZE;
+            segment.putInt(offset + RELAY, id);
+            segment.putInt(offset + BANDWIDTH, consensus.getBandwidth(j));
+            segment.putInt(offset + IPV4, consensus.getIpv4(j));
+            segment.putShort(offset + FLAGS, (short) consensus.getFlags(j));
+            segment.putShort(offset + POLICY, (short) policy);
+            segment.putShort(offset + VERSION, (short) version);
+            segment.putShort(offset + COUNTRY, consensus.getCountry(j));
+            record++;
+        }
+
+        validAfter[hours] = consensus.getValidAfter();
+        bandwidthWeights[hours] = consensus.getBandwidthWeights();
+        hourStart[++hours] = record;
+        return hours - 1;
+    }
+
+    private int internPolicy(String summary) {
+        Integer id = policyIds.get(summary);
+        if (id == null) {
+            ExitPolicy policy = new ExitPolicy(summary);
+            id = policyClassIds.get(policy);
+            if (id == null) {
+                id = policies.size();
+                if (id > Short.MAX_VALUE) throw new IllegalStateException("Too many distinct exit policies");
+                policies.add(policy);
+                policyClassIds.put(policy, id);
+            }
+            policyIds.put(summary, id);
+        }
+        return id;
+    }
+
+    private int internVersion(String version) {
+        Integer id = versionIds.get(version);
+        if (id == null) {
+            id = versions.size();
+            if (id > Short.MAX_VALUE) throw new IllegalStateException("Too many distinct versions");
+            versions.add(version);
+            versionIds.put(version, id);
+        }
+        return id;
+    }
+
+    private ByteBuffer segmentFor(long record) throws IOException {
+        int index = (int) (record >>> SEGMENT_BITS);
+        while (segments.size() <= index) {
+            ByteBuffer segment = channel == null
+                    ? ByteBuffer.allocateDirect((int) SEGMENT_BYTES)
+                    : channel.map(FileChannel.MapMode.READ_WRITE, segments.size() * SEGMENT_BYTES, SEGMENT_BYTES);
+            segments.add(segment.order(ByteOrder.nativeOrder()));
+        }
+        return segments.get(index);
+    }
+
+    // ---------------- Leitura ----------------
+
+    public int hours() {return hours;}
+    public int relays() {return ids.size();}
+    public long observations() {return hourStart[hours];}
+    public long getValidAfter(int hour) {return validAfter[hour];}
+    public BandwidthWeights getBandwidthWeights(int hour) {return bandwidthWeights[hour];}
+    public int size(int hour) {return (int) (hourStart[hour + 1] - hourStart[hour]);}
+
+    public int idOf(String fingerprint) {
+        Integer id = ids.get(fingerprint);
+        return id == null ? -1 : id;
+    }
+
+    public String getFingerprint(int relay) {return fingerprints[relay];}
+    // Último nickname visto
+    public String getNickname(int relay) {return nicknames[relay];}
+
+    public List<ExitPolicy> getPolicies() {return policies;}
+    public List<String> getVersions() {return versions;}
+
+    /**
+     * Posição k (0..size(hour)-1) da observação do relay nessa hora, ou -1 se não estava presente.
+     */
+    public int find(int hour, int relay) {
+        int lo = 0, hi = size(hour) - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int id = getRelay(hour, mid);
+            if (id < relay) lo = mid + 1;
+            else if (id > relay) hi = mid - 1;
+            else return mid;
+        }
+        return -1;
+    }
+
+    // Acesso à k-ésima observação da hora (por ordem de id)
+    public int getRelay(int hour, int k) {return intAt(hour, k, RELAY);}
+    public int getBandwidth(int hour, int k) {return intAt(hour, k, BANDWIDTH);}
+    public int getIpv4(int hour, int k) {return intAt(hour, k, IPV4);}
+    public int getFlags(int hour, int k) {return shortAt(hour, k, FLAGS) & 0xFFFF;}
+    public short getCountry(int hour, int k) {return (short) shortAt(hour, k, COUNTRY);}
+    public int getExitPolicyId(int hour, int k) {return shortAt(hour, k, POLICY);}
+
+    public ExitPolicy getExitPolicy(int hour, int k) {
+        int policy = getExitPolicyId(hour, k);
+        return policy < 0 ? null : policies.get(policy);
+    }
+
+    public String getVersion(int hour, int k) {
+        int version = shortAt(hour, k, VERSION);
+        return version < 0 ? null : versions.get(version);
+    }
+
+    private int intAt(int hour, int k, int field) {
+        long record = hourStart[hour] + k;
+        return segments.get((int) (record >>> SEGMENT_BITS))
+                .getInt((int) (record & (SEGMENT_RECORDS - 1)) * RECORD_SIZE + field);
+    }
+
+    private int shortAt(int hour, int k, int field) {
+        long record = hourStart[hour] + k;
+        return segments.get((int) (record >>> SEGMENT_BITS))
+                .getShort((int) (record & (SEGMENT_RECORDS - 1)) * RECORD_SIZE + field);
+    }
+
+    /**
+     * Reconstrói a {@link RelayTable} de uma hora (por ordem de id), para simular sobre ela.
+     * A data de publicação e os portos não são guardados no histórico e ficam a 0.
+     */
+    public RelayTable toRelayTable(int hour) {
+        int n = size(hour);
+        RelayTable table = new RelayTable(n);
+        table.setValidAfter(validAfter[hour]);
+        table.setBandwidthWeights(bandwidthWeights[hour]);
+        for (int k = 0; k < n; k++) {
+            int relay = getRelay(hour, k);
+            int i = table.add(nicknames[relay], fingerprints[relay], 0, getIpv4(hour, k), 0, 0);
+            table.setBandwidth(i, getBandwidth(hour, k));
+            table.setFlags(i, getFlags(hour, k));
+            table.setCountry(i, getCountry(hour, k));
+            table.setVersion(i, getVersion(hour, k));
+            ExitPolicy policy = getExitPolicy(hour, k);
+            table.setExitPolicy(i, policy == null ? null : policy.getSummary());
+        }
+        return table;
+    }
+
+    // Bytes ocupados fora do heap (segmentos já reservados)
+    public long offHeapBytes() {
+        return segments.size() * SEGMENT_BYTES;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null) channel.close();
+    }
+}
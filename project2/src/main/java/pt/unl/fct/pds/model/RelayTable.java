@@ -0,0 +1,442 @@
+package pt.unl.fct.pds.project2.model;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tabela colunar (struct-of-arrays) com todos os relays de um consensus.
+ * O relay i é descrito pela posição i de cada coluna; as colunas "quentes"
+ * (bandwidth, flags, IPv4, país, exit policy) são primitivas para que os
+ * filtros da seleção de caminhos sejam comparações de inteiros.
+ * Os objetos {@link Node} continuam disponíveis como vistas para compatibilidade.
+ */
+public class RelayTable {
+
+    // ---------------- Flags (bitmask) ----------------
+    public static final int FLAG_AUTHORITY       = 1;
+    public static final int FLAG_BAD_EXIT        = 1 << 1;
+    public static final int FLAG_EXIT            = 1 << 2;
+    public static final int FLAG_FAST            = 1 << 3;
+    public static final int FLAG_GUARD           = 1 << 4;
+    public static final int FLAG_HSDIR           = 1 << 5;
+    public static final int FLAG_MIDDLE_ONLY     = 1 << 6;
+    public static final int FLAG_NO_ED_CONSENSUS = 1 << 7;
+    public static final int FLAG_RUNNING         = 1 << 8;
+    public static final int FLAG_STABLE          = 1 << 9;
+    public static final int FLAG_STALE_DESC      = 1 << 10;
+    public static final int FLAG_SYBIL           = 1 << 11;
+    public static final int FLAG_V2DIR           = 1 << 12;
+    public static final int FLAG_VALID           = 1 << 13;
+
+    // Mesma ordem que os bits acima (known-flags do consensus)
+    private static final String[] FLAG_NAMES = {
+            "Authority", "BadExit", "Exit", "Fast", "Guard", "HSDir", "MiddleOnly",
+            "NoEdConsensus", "Running", "Stable", "StaleDesc", "Sybil", "V2Dir", "Valid"
+    };
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private int size;
+    private long validAfter;             // valid-after do consensus (epoch seconds UTC), 0 se desconhecido
+    private BandwidthWeights bandwidthWeights;  // null: pesos iguais à bandwidth em todas as posições
+
+    // Colunas quentes
+    private int[] bandwidth;
+    private int[] flags;
+    private int[] ipv4;
+    private short[] country;
+    private int[] exitPolicy;            // índice em policies, -1 se não houver linha "p"
+
+    // Colunas frias (só usadas pelas vistas Node)
+    private String[] nickname;
+    private String[] fingerprint;
+    private String[] version;
+    private long[] published;            // epoch seconds (UTC)
+    private int[] orPort;
+    private int[] dirPort;
+
+    // Exit policies deduplicadas: resumos que compilam para os mesmos intervalos
+    // de portos partilham a mesma policy (e o mesmo id)
+    private final List<ExitPolicy> policies = new ArrayList<>();
+    private final Map<String, Integer> policyIds = new HashMap<>();
+    private final Map<ExitPolicy, Integer> policyClassIds = new HashMap<>();
+
+    private volatile Node[] views;
+
+    public RelayTable() {
+        this(INITIAL_CAPACITY);
+    }
+
+    public RelayTable(int capacity) {
+        capacity = Math.max(1, capacity);
+        bandwidth = new int[capacity];
+        flags = new int[capacity];
+        ipv4 = new int[capacity];
+        country = new short[capacity];
+        exitPolicy = new int[capacity];
+        nickname = new String[capacity];
+        fingerprint = new String[capacity];
+        version = new String[capacity];
+        published = new long[capacity];
+        orPort = new int[capacity];
+        dirPort = new int[capacity];
+    }
+
+    /**
+     * Constrói uma tabela a partir de nodes já existentes. Os próprios objetos
+     * passam a ser as vistas da tabela (o id de cada um é atualizado).
+     */
+    public static RelayTable fromNodes(List<Node> nodes) {
+        RelayTable table = new RelayTable(nodes.size());
+        for (Node n : nodes) {
+            LocalDateTime time = n.getTimePublished();
+            int i = table.add(n.getNickname(), n.getFingerprint(),
+                    time != null ? time.toEpochSecond(ZoneOffset.UTC) : 0,
+                    parseIpv4(n.getIpAddress()), n.getOrPort(), n.getDirPort());
+            table.setFlags(i, parseFlags(n.getFlags()));
+            table.setVersion(i, n.getVersion());
+            table.setBandwidth(i, n.getBandwidth());
+            table.setCountry(i, CountryDictionary.intern(n.getCountry()));
+            table.setExitPolicy(i, n.getExitPolicy());
+            n.setId(i);
+        }
+        table.views = nodes.toArray(new Node[0]);
+        return table;
+    }
+
+    // ---------------- Construção ----------------
+
+    public int add(String nickname, String fingerprint, long published, int ipv4, int orPort, int dirPort) {
+        if (size == bandwidth.length) grow();
+        int i = size++;
+        this.nickname[i] = nickname;
+        this.fingerprint[i] = fingerprint;
+        this.published[i] = published;
+        this.ipv4[i] = ipv4;
+        this.orPort[i] = orPort;
+        this.dirPort[i] = dirPort;
+        this.exitPolicy[i] = -1;
+        views = null;
+        return i;
+    }
+
+    private void grow() {
+        int capacity = bandwidth.length * 2;
+        bandwidth = Arrays.copyOf(bandwidth, capacity);
+        flags = Arrays.copyOf(flags, capacity);
+        ipv4 = Arrays.copyOf(ipv4, capacity);
+        country = Arrays.copyOf(country, capacity);
+        exitPolicy = Arrays.copyOf(exitPolicy, capacity);
+        nickname = Arrays.copyOf(nickname, capacity);
+        fingerprint = Arrays.copyOf(fingerprint, capacity);
+        version = Arrays.copyOf(version, capacity);
+        published = Arrays.copyOf(published, capacity);
+        orPort = Arrays.copyOf(orPort, capacity);
+        dirPort = Arrays.copyOf(dirPort, capacity);
+    }
+
+    public void setBandwidth(int i, int bw) {bandwidth[i] = bw; views = null;}
+    public void setFlags(int i, int mask) {flags[i] = mask; views = null;}
+    public void setCountry(int i, short id) {country[i] = id; views = null;}
+    public void setVersion(int i, String v) {version[i] = v; views = null;}
+    public void setIpv4(int i, int address) {ipv4[i] = address; views = null;}
+    public void setPublished(int i, long epochSeconds) {published[i] = epochSeconds; views = null;}
+    public void setNickname(int i, String name) {nickname[i] = name; views = null;}
+    public void setPorts(int i, int or, int dir) {orPort[i] = or; dirPort[i] = dir; views = null;}
+
+    public void setExitPolicy(int i, String summary) {
+        setExitPolicyId(i, internPolicy(summary));
+    }
+
+    // id em getPolicies() (-1 para nenhuma policy)
+    public void setExitPolicyId(int i, int id) {
+        exitPolicy[i] = id;
+        views = null;
+    }
+
+    /**
+     * Id da policy do resumo, criando-a se ainda não existir uma equivalente; -1 se for null.
+     */
+    public int internPolicy(String summary) {
+        if (summary == null) return -1;
+        Integer id = policyIds.get(summary);
+        if (id == null) {
+            ExitPolicy policy = new ExitPolicy(summary);
+            id = policyClassIds.get(policy);
+            if (id == null) {
+                id = policies.size();
+                policies.add(policy);
+                policyClassIds.put(policy, id);
+            }
+            policyIds.put(summary, id);
+        }
+        return id;
+    }
+
+    // ---------------- Acesso ----------------
+
+    public int size() {return size;}
+    public long getValidAfter() {return validAfter;}
+    public void setValidAfter(long validAfter) {this.validAfter = validAfter;}
+    public BandwidthWeights getBandwidthWeights() {return bandwidthWeights;}
+    public void setBandwidthWeights(BandwidthWeights weights) {this.bandwidthWeights = weights;}
+
+    public int getBandwidth(int i) {return bandwidth[i];}
+    public int getFlags(int i) {return flags[i];}
+    public boolean hasFlag(int i, int flag) {return (flags[i] & flag) != 0;}
+    public int getIpv4(int i) {return ipv4[i];}
+    public int getSubnet16(int i) {return ipv4[i] >>> 16;}
+    public boolean same16Subnet(int a, int b) {return (ipv4[a] >>> 16) == (ipv4[b] >>> 16);}
+    public short getCountry(int i) {return country[i];}
+    public int getExitPolicyId(int i) {return exitPolicy[i];}
+    public ExitPolicy getExitPolicy(int i) {return exitPolicy[i] < 0 ? null : policies.get(exitPolicy[i]);}
+    public boolean canExit(int i) {return exitPolicy[i] >= 0 && policies.get(exitPolicy[i]).canExit();}
+    public boolean canExit(int i, int port) {return exitPolicy[i] >= 0 && policies.get(exitPolicy[i]).allows(port);}
+    public List<ExitPolicy> getPolicies() {return policies;}
+
+    public String getNickname(int i) {return nickname[i];}
+    public String getFingerprint(int i) {return fingerprint[i];}
+    public String getVersion(int i) {return version[i];}
+    public long getPublished(int i) {return published[i];}
+    public int getOrPort(int i) {return orPort[i];}
+    public int getDirPort(int i) {return dirPort[i];}
+
+    // ---------------- Vistas Node ----------------
+
+    public Node node(int i) {
+        return nodes()[i];
+    }
+
+    public Node[] toNodes() {
+        return Arrays.copyOf(nodes(), size);
+    }
+
+    private Node[] nodes() {
+        Node[] current = views;
+        if (current == null) {
+            synchronized (this) {
+                current = views;
+                if (current == null) {
+                    current = new Node[size];
+                    for (int i = 0; i < size; i++) current[i] = buildNode(i);
+                    views = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    private Node buildNode(int i) {
+        ExitPolicy policy = getExitPolicy(i);
+        Node n = new Node(nickname[i], fingerprint[i],
+                LocalDateTime.ofEpochSecond(published[i], 0, ZoneOffset.UTC),
+                formatIpv4(ipv4[i]), orPort[i], dirPort[i],
+                flagNames(flags[i]), version[i], bandwidth[i],
+                CountryDictionary.code(country[i]),
+                policy != null ? policy.getSummary() : null);
+        n.setId(i);
+        return n;
+    }
+
+    // ---------------- Serialização (snapshot binário) ----------------
+
+    /**
+     * Escreve a tabela em binário (big-endian). Os países são guardados pelo código
+     * ISO, porque os ids do {@link CountryDictionary} só são estáveis dentro de uma
+     * execução; versões e exit policies são guardadas uma vez por valor distinto.
+     */
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(size);
+        out.writeLong(validAfter);
+        if (bandwidthWeights == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(bandwidthWeights.getValues().size());
+            for (Map.Entry<String, Integer> e : bandwidthWeights.getValues().entrySet()) {
+                writeString(out, e.getKey());
+                out.writeInt(e.getValue());
+            }
+        }
+
+        int[] localCountry = new int[CountryDictionary.size()];
+        Arrays.fill(localCountry, -1);
+        List<String> countryCodes = new ArrayList<>();
+        short[] countryColumn = new short[size];
+        for (int i = 0; i < size; i++) {
+            short id = country[i];
+            if (localCountry[id] < 0) {
+                localCountry[id] = countryCodes.size();
+                countryCodes.add(CountryDictionary.code(id));
+            }
+            countryColumn[i] = (short) localCountry[id];
+        }
+        out.writeInt(countryCodes.size());
+        for (String code : countryCodes) writeString(out, code);
+
+        out.writeInt(policies.size());
+        for (ExitPolicy policy : policies) writeString(out, policy.getSummary());
+
+        Map<String, Integer> versionIds = new HashMap<>();
+        List<String> versions = new ArrayList<>();
+        int[] versionColumn = new int[size];
+        for (int i = 0; i < size; i++) {
+            if (version[i] == null) {
+                versionColumn[i] = -1;
+                continue;
+            }
+            Integer id = versionIds.get(version[i]);
+            if (id == null) {
+                id = versions.size();
+                versionIds.put(version[i], id);
+                versions.add(version[i]);
+            }
+            versionColumn[i] = id;
+        }
+        out.writeInt(versions.size());
+        for (String v : versions) writeString(out, v);
+
+        for (int[] column : new int[][]{bandwidth, flags, ipv4, exitPolicy, orPort, dirPort, versionColumn}) {
+            for (int i = 0; i < size; i++) out.writeInt(column[i]);
+        }
+        for (int i = 0; i < size; i++) out.writeLong(published[i]);
+        for (int i = 0; i < size; i++) out.writeShort(countryColumn[i]);
+        for (int i = 0; i < size; i++) {
+            writeString(out, nickname[i]);
+            writeString(out, fingerprint[i]);
+        }
+    }
+
+    /**
+     * Lê uma tabela escrita por {@link #writeTo}; as colunas primitivas são copiadas
+     * em bloco do buffer (que pode ser um ficheiro mapeado em memória).
+     */
+    public static RelayTable readFrom(ByteBuffer buf) {
+        int n = buf.getInt();
+        if (n < 0) throw new IllegalArgumentException("Invalid relay count: " + n);
+        RelayTable table = new RelayTable(n);
+        table.size = n;
+        table.validAfter = buf.getLong();
+        int numWeights = buf.getInt();
+        if (numWeights >= 0) {
+            Map<String, Integer> weights = new HashMap<>();
+            for (int w = 0; w < numWeights; w++) weights.put(readString(buf), buf.getInt());
+            table.bandwidthWeights = new BandwidthWeights(weights);
+        }
+
+        short[] countryIds = new short[buf.getInt()];
+        for (int c = 0; c < countryIds.length; c++) countryIds[c] = CountryDictionary.intern(readString(buf));
+
+        int numPolicies = buf.getInt();
+        for (int p = 0; p < numPolicies; p++) {
+            String summary = readString(buf);
+            ExitPolicy policy = new ExitPolicy(summary);
+            table.policies.add(policy);
+            table.policyIds.put(summary, p);
+            table.policyClassIds.putIfAbsent(policy, p);
+        }
+
+        String[] versions = new String[buf.getInt()];
+        for (int v = 0; v < versions.length; v++) versions[v] = readString(buf);
+
+        int[] versionColumn = new int[n];
+        for (int[] column : new int[][]{table.bandwidth, table.flags, table.ipv4, table.exitPolicy,
+                table.orPort, table.dirPort, versionColumn}) {
+            buf.asIntBuffer().get(column, 0, n);
+            buf.position(buf.position() + 4 * n);
+        }
+        buf.asLongBuffer().get(table.published, 0, n);
+        buf.position(buf.position() + 8 * n);
+        buf.asShortBuffer().get(table.country, 0, n);
+        buf.position(buf.position() + 2 * n);
+
+        for (int i = 0; i < n; i++) {
+            table.country[i] = countryIds[table.country[i]];
+            table.version[i] = versionColumn[i] < 0 ? null : versions[versionColumn[i]];
+            table.nickname[i] = readString(buf);
+            table.fingerprint[i] = readString(buf);
+        }
+        return table;
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buf) {
+        int length = buf.getInt();
+        if (length < 0) return null;
+        if (length > buf.remaining()) throw new IllegalArgumentException("Invalid string length: " + length);
+        byte[] bytes = new byte[length];
+        buf.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // ---------------- Conversões ----------------
+
+    public static int flagBit(String name) {
+        for (int b = 0; b < FLAG_NAMES.length; b++) {
+            if (FLAG_NAMES[b].equalsIgnoreCase(name)) return 1 << b;
+        }
+        return 0;
+    }
+
+    public static int parseFlags(String[] names) {
+        int mask = 0;
+        if (names == null) return mask;
+        for (String f : names) mask |= flagBit(f);
+        return mask;
+    }
+
+    public static String[] flagNames(int mask) {
+        String[] names = new String[Integer.bitCount(mask)];
+        int k = 0;
+        for (int b = 0; b < FLAG_NAMES.length; b++) {
+            if ((mask & (1 << b)) != 0) names[k++] = FLAG_NAMES[b];
+        }
+        return names;
+    }
+
+    // IPv4 "a.b.c.d" -> int (a nos 8 bits mais significativos); 0 se inválido
+    public static int parseIpv4(String ip) {
+        if (ip == null) return 0;
+        int value = 0;
+        int octet = 0;
+        int dots = 0;
+        int digits = 0;
+        for (int k = 0; k < ip.length(); k++) {
+            char c = ip.charAt(k);
+            if (c >= '0' && c <= '9') {
+                octet = octet * 10 + (c - '0');
+                if (octet > 255 || ++digits > 3) return 0;
+            } else if (c == '.' && digits > 0 && dots < 3) {
+                value = (value << 8) | octet;
+                octet = 0;
+                digits = 0;
+                dots++;
+            } else {
+                return 0;
+            }
+        }
+        if (dots != 3 || digits == 0) return 0;
+        return (value << 8) | octet;
+    }
+
+    public static String formatIpv4(int ip) {
+        return (ip >>> 24) + "." + ((ip >>> 16) & 0xFF) + "." + ((ip >>> 8) & 0xFF) + "." + (ip & 0xFF);
+    }
+}
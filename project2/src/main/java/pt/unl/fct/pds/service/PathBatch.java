@@ -0,0 +1,73 @@
+package pt.unl.fct.pds.project2.service;
+
+import pt.unl.fct.pds.project2.model.RelayTable;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Caminhos de um {@link PathRequest}: {guard, middle, exit} por caminho num único
+ * int[] (-1 nas posições sem candidatos), mais a tabela do consensus com que foram
+ * escolhidos, para traduzir os ids.
+ */
+public final class PathBatch {
+
+    private final PathRequest request;
+    private final RelayTable table;
+    private final int[] paths;
+    private long elapsedNanos;
+
+    PathBatch(PathRequest request, RelayTable table) {
+        this.request = request;
+        this.table = table;
+        this.paths = new int[3 * request.getCount()];
+    }
+
+    public PathRequest getRequest() {return request;}
+    public RelayTable getTable() {return table;}
+    public long getValidAfter() {return table.getValidAfter();}
+    public int size() {return request.getCount();}
+    public long getElapsedNanos() {return elapsedNanos;}
+    void setElapsedNanos(long nanos) {this.elapsedNanos = nanos;}
+
+    // Array interno (3 ints por caminho): não deve ser alterado
+    int[] paths() {return paths;}
+
+    public int guard(int k) {return paths[3 * k];}
+    public int middle(int k) {return paths[3 * k + 1];}
+    public int exit(int k) {return paths[3 * k + 2];}
+
+    public int[] path(int k) {
+        return new int[]{paths[3 * k], paths[3 * k + 1], paths[3 * k + 2]};
+    }
+
+    // Caminhos completos (com os três relays)
+    public int completed() {
+        int n = 0;
+        for (int k = 0; k < size(); k++) {
+            if (paths[3 * k] >= 0 && paths[3 * k + 1] >= 0 && paths[3 * k + 2] >= 0) n++;
+        }
+        return n;
+    }
+
+    /**
+     * Uma linha "guard,middle,exit" por caminho, com os ids ou as fingerprints
+     * (campo vazio numa posição sem relay).
+     */
+    public void appendCsv(StringBuilder sb, boolean fingerprints) {
+        for (int k = 0; k < paths.length; k += 3) {
+            for (int j = 0; j < 3; j++) {
+                int id = paths[k + j];
+                if (j > 0) sb.append(',');
+                if (!fingerprints) sb.append(id);
+                else if (id >= 0) sb.append(table.getFingerprint(id));
+            }
+            sb.append('\n');
+        }
+    }
+
+    // Ids em big-endian, 12 bytes por caminho
+    public void writeTo(ByteBuffer buf) {
+        buf.asIntBuffer().put(paths);
+        buf.position(buf.position() + 4 * paths.length);
+    }
+}
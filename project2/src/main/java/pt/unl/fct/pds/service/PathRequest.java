@@ -0,0 +1,81 @@
+package pt.unl.fct.pds.project2.service;
+
+import pt.unl.fct.pds.project2.model.ExitPolicy;
+import pt.unl.fct.pds.project2.simulation.SimulationEngine;
+
+import java.util.Locale;
+
+/**
+ * Pedido de caminhos ao {@link PathService}: modo (Original ou Geo-Aware), parâmetros,
+ * número de caminhos e semente; opcionalmente o porto de destino (0 para qualquer).
+ * A mesma semente sobre o mesmo consensus dá sempre os mesmos caminhos.
+ */
+public final class PathRequest {
+
+    // Limite por pedido (3 ints por caminho)
+    public static final int MAX_COUNT = 1 << 24;
+
+    private final int mode;
+    private final double alpha;
+    private final double beta;
+    private final int count;
+    private final long seed;
+    private final int port;
+
+    public PathRequest(int mode, double alpha, double beta, int count, long seed) {
+        this(mode, alpha, beta, count, seed, 0);
+    }
+
+    public PathRequest(int mode, double alpha, double beta, int count, long seed, int port) {
+        if (mode != SimulationEngine.ORIGINAL && mode != SimulationEngine.GEO_AWARE) {
+            throw new IllegalArgumentException("Invalid mode: " + mode);
+        }
+        if (count < 0 || count > MAX_COUNT) throw new IllegalArgumentException("Invalid count: " + count);
+        if (!(alpha >= 0) || !(beta >= 0)) throw new IllegalArgumentException("Invalid alpha/beta: " + alpha + ", " + beta);
+        if (port != 0 && (port < ExitPolicy.MIN_PORT || port > ExitPolicy.MAX_PORT)) {
+            throw new IllegalArgumentException("Invalid port: " + port);
+        }
+        this.mode = mode;
+        this.alpha = alpha;
+        this.beta = beta;
+        this.count = count;
+        this.seed = seed;
+        this.port = port;
+    }
+
+    /**
+     * "&lt;modo&gt; &lt;alpha&gt; &lt;beta&gt; &lt;caminhos&gt; &lt;semente&gt; [porto]", separados por espaços ou vírgulas.
+     */
+    public static PathRequest parse(String line) {
+        String[] f = line.trim().split("[\\s,]+");
+        if (f.length != 5 && f.length != 6) throw new IllegalArgumentException("Invalid request: " + line);
+        try {
+            return new PathRequest(parseMode(f[0]), Double.parseDouble(f[1]), Double.parseDouble(f[2]),
+                    Integer.parseInt(f[3]), Long.parseLong(f[4]), f.length == 6 ? Integer.parseInt(f[5]) : 0);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid request: " + line, e);
+        }
+    }
+
+    // "original"/"0" ou "geo"/"geo-aware"/"1"
+    public static int parseMode(String mode) {
+        switch (mode.toLowerCase(Locale.ROOT)) {
+            case "original": case "0": return SimulationEngine.ORIGINAL;
+            case "geo": case "geo-aware": case "geoaware": case "1": return SimulationEngine.GEO_AWARE;
+            default: throw new IllegalArgumentException("Invalid mode: " + mode);
+        }
+    }
+
+    public int getMode() {return mode;}
+    public double getAlpha() {return alpha;}
+    public double getBeta() {return beta;}
+    public int getCount() {return count;}
+    public long getSeed() {return seed;}
+    public int getPort() {return port;}
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "%s %s %s %d %d %d", mode == SimulationEngine.ORIGINAL ? "original" : "geo",
+                alpha, beta, count, seed, port);
+    }
+}
@@ -0,0 +1,213 @@
+package pt.unl.fct.pds.project2.service;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import pt.unl.fct.pds.project2.model.RelayTable;
+import pt.unl.fct.pds.project2.utils.ConsensusParser;
+import pt.unl.fct.pds.project2.utils.PathSelector;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Frente HTTP local (só no endereço de loopback) para o {@link PathService}:
+ *
+ *   GET  /paths?mode=geo&amp;alpha=0.5&amp;beta=0.2&amp;count=1000&amp;seed=42[&amp;port=443][&amp;format=...]
+ *   POST /batch       um pedido por linha ("geo 0.5 0.2 1000 42 [porto]"), atendidos num só lote
+ *   GET  /consensus   estado do consensus servido e contadores do serviço
+ *   POST /consensus   caminho de um ficheiro de consensus: lido e trocado atomicamente
+ *
+ * Formatos: csv (ids, por omissão), fingerprint (fingerprints) ou binary (ints
+ * big-endian, 12 bytes por caminho). Nas respostas de /batch em csv cada linha
+ * começa pelo índice do pedido. O cabeçalho X-Valid-After indica o consensus usado.
+ */
+public class PathServer implements Closeable {
+
+    private final PathService service;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    public PathServer(PathService service, int port, int threads) throws IOException {
+        this(service, new InetSocketAddress(InetAddress.getLoopbackAddress(), port), threads);
+    }
+
+    public PathServer(PathService service, InetSocketAddress address, int threads) throws IOException {
+        this.service = service;
+        this.server = HttpServer.create(address, 0);
+        this.executor = Executors.newFixedThreadPool(Math.max(1, threads), r -> {
+            Thread t = new Thread(r, "path-server");
+            t.setDaemon(true);
+            return t;
+        });
+        server.setExecutor(executor);
+        server.createContext("/paths", handler(this::paths));
+        server.createContext("/batch", handler(this::batch));
+        server.createContext("/consensus", handler(this::consensus));
+    }
+
+    public void start() {server.start();}
+
+    public InetSocketAddress getAddress() {return server.getAddress();}
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private interface Endpoint {
+        void handle(HttpExchange exchange) throws IOException;
+    }
+
+    // Pedidos inválidos dão 400 com a mensagem; o resto 500
+    private static HttpHandler handler(Endpoint endpoint) {
+        return exchange -> {
+            try {
+                endpoint.handle(exchange);
+            } catch (IllegalArgumentException e) {
+                send(exchange, 400, "text/plain", (e.getMessage() + "\n").getBytes(StandardCharsets.UTF_8));
+            } catch (IOException | RuntimeException e) {
+                send(exchange, 500, "text/plain", (e + "\n").getBytes(StandardCharsets.UTF_8));
+            } finally {
+                exchange.close();
+            }
+        };
+    }
+
+    private void paths(HttpExchange exchange) throws IOException {
+        requireMethod(exchange, "GET");
+        Map<String, String> query = query(exchange);
+        PathRequest request = new PathRequest(
+                PathRequest.parseMode(query.getOrDefault("mode", "original")),
+                Double.parseDouble(query.getOrDefault("alpha", "0.5")),
+                Double.parseDouble(query.getOrDefault("beta", "0.2")),
+                Integer.parseInt(query.getOrDefault("count", "1")),
+                Long.parseLong(query.getOrDefault("seed", "0")),
+                Integer.parseInt(query.getOrDefault("port", "0")));
+        List<PathBatch> results = new ArrayList<>();
+        results.add(service.selectPaths(request));
+        respond(exchange, results, query.getOrDefault("format", "csv"), false);
+    }
+
+    private void batch(HttpExchange exchange) throws IOException {
+        requireMethod(exchange, "POST");
+        List<PathRequest> requests = new ArrayList<>();
+        long total = 0;
+        for (String line : body(exchange).split("\n")) {
+            if (line.trim().isEmpty() || line.trim().startsWith("#")) continue;
+            PathRequest request = PathRequest.parse(line);
+            total += request.getCount();
+            if (total > PathRequest.MAX_COUNT) throw new IllegalArgumentException("Batch too large: " + total + " paths");
+            requests.add(request);
+        }
+        respond(exchange, service.selectPaths(requests), query(exchange).getOrDefault("format", "csv"), true);
+    }
+
+    private void consensus(HttpExchange exchange) throws IOException {
+        if ("POST".equals(exchange.getRequestMethod())) {
+            String file = body(exchange).trim();
+            if (!Files.isRegularFile(Paths.get(file))) throw new IllegalArgumentException("No such consensus: " + file);
+            ConsensusParser parser = new ConsensusParser(file);
+            RelayTable table = parser.parseRelayTable();
+            if (table.size() < 3) throw new IllegalArgumentException("Not enough relays in " + file);
+            service.swap(table);
+        } else {
+            requireMethod(exchange, "GET");
+        }
+        PathSelector selector = service.getSelector();
+        String status = String.format(Locale.ROOT, "valid-after=%d relays=%d guards=%d middles=%d exits=%d"
+                        + " weights=%b threads=%d requests=%d paths=%d swaps=%d\n",
+                selector.getTable().getValidAfter(), selector.getTable().size(), selector.getGuardPoolSize(),
+                selector.getMiddlePoolSize(), selector.getExitPoolSize(), selector.getBandwidthWeights() != null,
+                service.getThreads(), service.getRequests(), service.getPaths(), service.getSwaps());
+        send(exchange, 200, "text/plain", status.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void respond(HttpExchange exchange, List<PathBatch> results, String format,
+                                boolean indexed) throws IOException {
+        if (!results.isEmpty()) {
+            exchange.getResponseHeaders().set("X-Valid-After", Long.toString(results.get(0).getValidAfter()));
+        }
+        if (format.equals("binary")) {
+            long paths = 0;
+            for (PathBatch result : results) paths += result.size();
+            ByteBuffer buf = ByteBuffer.allocate((int) (12 * paths));
+            for (PathBatch result : results) result.writeTo(buf);
+            send(exchange, 200, "application/octet-stream", buf.array());
+            return;
+        }
+        boolean fingerprints = format.equals("fingerprint");
+        if (!fingerprints && !format.equals("csv")) throw new IllegalArgumentException("Invalid format: " + format);
+
+        StringBuilder sb = new StringBuilder();
+        for (int r = 0; r < results.size(); r++) {
+            if (!indexed) {
+                results.get(r).appendCsv(sb, fingerprints);
+                continue;
+            }
+            StringBuilder lines = new StringBuilder();
+            results.get(r).appendCsv(lines, fingerprints);
+            int from = 0;
+            for (int eol = lines.indexOf("\n"); eol >= 0; from = eol + 1, eol = lines.indexOf("\n", from)) {
+                sb.append(r).append(',').append(lines, from, eol + 1);
+            }
+        }
+        send(exchange, 200, "text/csv", sb.toString().getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static void send(HttpExchange exchange, int status, String type, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", type);
+        exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+        if (body.length > 0) {
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+
+    private static void requireMethod(HttpExchange exchange, String method) {
+        if (!method.equals(exchange.getRequestMethod())) {
+            throw new IllegalArgumentException("Method not allowed: " + exchange.getRequestMethod());
+        }
+    }
+
+    private static String body(HttpExchange exchange) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[8192];
+        try (InputStream in = exchange.getRequestBody()) {
+            int n;
+            while ((n = in.read(buf)) > 0) out.write(buf, 0, n);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static Map<String, String> query(HttpExchange exchange) throws IOException {
+        Map<String, String> params = new HashMap<>();
+        String raw = exchange.getRequestURI().getRawQuery();
+        if (raw == null) return params;
+        for (String pair : raw.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq <= 0) continue;
+            params.put(URLDecoder.decode(pair.substring(0, eq), "UTF-8"), URLDecoder.decode(pair.substring(eq + 1), "UTF-8"));
+        }
+        return params;
+    }
+}
@@ -0,0 +1,175 @@
+package pt.unl.fct.pds.project2.service;
+
+import pt.unl.fct.pds.project2.instrumentation.SelectionProbe;
+import pt.unl.fct.pds.project2.model.RelayTable;
+import pt.unl.fct.pds.project2.simulation.SimulationEngine;
+import pt.unl.fct.pds.project2.utils.PathSelector;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Serviço residente de seleção de caminhos: o consensus e os samplers são
+ * construídos uma vez e servem todos os pedidos (API em JVM; {@link PathServer}
+ * expõe-na por HTTP local).
+ *
+ * Um lote de pedidos é dividido em blocos de {@link #CHUNK_SIZE} caminhos,
+ * distribuídos pelas threads do serviço e pela thread que chama; cada bloco tem um
+ * SplittableRandom derivado só da semente do pedido e do índice do bloco, pelo que
+ * os caminhos não dependem do número de threads nem dos outros pedidos do lote.
+ *
+ * Um consensus novo é aplicado com {@link #swap}: o selector é substituído
+ * atomicamente e cada lote usa do princípio ao fim o selector que leu ao começar.
+ */
+public class PathService implements Closeable {
+
+    public static final int CHUNK_SIZE = 1 << 12;
+
+    private final AtomicReference<PathSelector> selector;
+    private final int threads;
+    private final ExecutorService pool;
+
+    // Contadores para o estado do serviço
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong paths = new AtomicLong();
+    private final AtomicLong swaps = new AtomicLong();
+
+    public PathService(PathSelector selector, int threads) {
+        this.selector = new AtomicReference<>(selector);
+        this.threads = Math.max(1, threads);
+        // A thread que chama também seleciona: threads - 1 no pool
+        this.pool = this.threads == 1 ? null : Executors.newFixedThreadPool(this.threads - 1, r -> {
+            Thread t = new Thread(r, "path-service");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public PathSelector getSelector() {return selector.get();}
+    public RelayTable getTable() {return selector.get().getTable();}
+    public int getThreads() {return threads;}
+    public long getRequests() {return requests.get();}
+    public long getPaths() {return paths.get();}
+    public long getSwaps() {return swaps.get();}
+
+    /**
+     * Passa a servir o novo selector (a instrumentação do anterior é mantida) e
+     * devolve o anterior. Os lotes já começados terminam com o selector antigo.
+     */
+    public PathSelector swap(PathSelector next) {
+        PathSelector previous = selector.get();
+        if (next.getProbe() == null) next.setProbe(previous.getProbe());
+        selector.set(next);
+        swaps.incrementAndGet();
+        return previous;
+    }
+
+    // Constrói os samplers do novo consensus fora do caminho dos pedidos e troca
+    public PathSelector swap(RelayTable table) {
+        return swap(new PathSelector(table));
+    }
+
+    public PathBatch selectPaths(int mode, double alpha, double beta, int count, long seed) {
+        return selectPaths(new PathRequest(mode, alpha, beta, count, seed));
+    }
+
+    public PathBatch selectPaths(PathRequest request) {
+        return selectPaths(Collections.singletonList(request)).get(0);
+    }
+
+    /**
+     * Atende um lote de pedidos sobre o mesmo consensus, com os blocos de todos os
+     * pedidos repartidos pelas threads.
+     */
+    public List<PathBatch> selectPaths(List<PathRequest> batch) {
+        long start = System.nanoTime();
+        PathSelector current = selector.get();
+        List<PathBatch> results = new ArrayList<>(batch.size());
+        // Primeiro bloco global de cada pedido (prefixos)
+        int[] firstChunk = new int[batch.size() + 1];
+        for (int r = 0; r < batch.size(); r++) {
+            PathRequest request = batch.get(r);
+            results.add(new PathBatch(request, current.getTable()));
+            firstChunk[r + 1] = firstChunk[r] + (request.getCount() + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        }
+        int numChunks = firstChunk[batch.size()];
+
+        AtomicInteger nextChunk = new AtomicInteger();
+        Runnable worker = () -> work(current, results, firstChunk, numChunks, nextChunk);
+        int helpers = pool == null ? 0 : Math.min(threads, numChunks) - 1;
+        List<Future<?>> futures = new ArrayList<>();
+        for (int w = 0; w < helpers; w++) futures.add(pool.submit(worker));
+        worker.run();
+        try {
+            for (Future<?> f : futures) f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Path selection interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Path selection failed", e.getCause());
+        }
+
+        long elapsed = System.nanoTime() - start;
+        long total = 0;
+        for (PathBatch result : results) {
+            result.setElapsedNanos(elapsed);
+            total += result.size();
+        }
+        requests.addAndGet(batch.size());
+        paths.addAndGet(total);
+        return results;
+    }
+
+    private static void work(PathSelector selector, List<PathBatch> results, int[] firstChunk,
+                             int numChunks, AtomicInteger nextChunk) {
+        SelectionProbe probe = selector.getProbe();
+        int[] path = new int[3];
+        int r = 0;
+        int chunk;
+        while ((chunk = nextChunk.getAndIncrement()) < numChunks) {
+            while (firstChunk[r + 1] <= chunk) r++;
+            PathBatch result = results.get(r);
+            PathRequest request = result.getRequest();
+            int local = chunk - firstChunk[r];
+            SplittableRandom rng = SimulationEngine.chunkRandom(request.getSeed(), local);
+
+            int[] out = result.paths();
+            int end = Math.min(request.getCount(), (local + 1) * CHUNK_SIZE);
+            int completed = 0;
+            for (int k = local * CHUNK_SIZE; k < end; k++) {
+                select(selector, request, rng, path);
+                out[3 * k] = path[0];
+                out[3 * k + 1] = path[1];
+                out[3 * k + 2] = path[2];
+                if (path[0] >= 0 && path[1] >= 0 && path[2] >= 0) completed++;
+            }
+            if (probe != null) probe.recordCircuits(completed, end - local * CHUNK_SIZE - completed);
+        }
+    }
+
+    private static void select(PathSelector selector, PathRequest request, SplittableRandom rng, int[] path) {
+        int port = request.getPort();
+        if (request.getMode() == SimulationEngine.ORIGINAL) {
+            if (port == 0) selector.selectPathIds(rng, path);
+            else selector.selectPathIds(rng, port, path);
+        } else {
+            if (port == 0) selector.selectPathGeoIds(rng, request.getAlpha(), request.getBeta(), path);
+            else selector.selectPathGeoIds(rng, port, request.getAlpha(), request.getBeta(), path);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (pool != null) pool.shutdownNow();
+    }
+}
@@ -0,0 +1,16 @@
+package pt.unl.fct.pds.project2.simulation;
+
+/**
+ * Recebe cada circuito gerado pelo {@link SimulationEngine}.
+ * É chamado em paralelo pelas threads de trabalho, por isso tem de ser thread-safe.
+ */
+public interface CircuitListener {
+
+    void onCircuit(long index, int algorithm, int guard, int middle, int exit, int minBandwidth);
+
+    /**
+     * Chamado por cada thread de trabalho quando deixa de produzir circuitos (também
+     * se falhar), para libertar o estado que o listener lhe tenha associado.
+     */
+    default void onThreadDone() {}
+}
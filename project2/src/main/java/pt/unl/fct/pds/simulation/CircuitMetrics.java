@@ -0,0 +1,86 @@
+package pt.unl.fct.pds.project2.simulation;
+
+import pt.unl.fct.pds.project2.utils.LatencyModel;
+
+import java.util.Locale;
+
+/**
+ * Métricas de diversidade, entropia e bandwidth de um conjunto de circuitos.
+ * Cada thread de trabalho acumula a sua instância; no fim são combinadas com {@link #merge}.
+ */
+public class CircuitMetrics {
+
+    private long circuits;
+
+    // Contagem por relay (id na RelayTable) para diversidade e entropia
+    private final SelectionStats selections;
+    // Distribuição do bandwidth mínimo (gargalo) de cada circuito
+    private final LogHistogram bandwidths = new LogHistogram();
+    // Países e /16 partilhados pelos hops (null: não medidos)
+    private final CorrelationMetrics correlation;
+    // RTT esperado de cada circuito em µs (null: não medido)
+    private final LatencyModel.Table latency;
+    private final LogHistogram rtts = new LogHistogram();
+
+    public CircuitMetrics(int numRelays) {
+        this(numRelays, null, null);
+    }
+
+    public CircuitMetrics(int numRelays, CorrelationMetrics.Ids ids) {
+        this(numRelays, ids, null);
+    }
+
+    public CircuitMetrics(int numRelays, CorrelationMetrics.Ids ids, LatencyModel.Table latency) {
+        this.selections = new SelectionStats(numRelays);
+        this.correlation = ids == null ? null : new CorrelationMetrics(ids);
+        this.latency = latency;
+    }
+
+    public void update(int guard, int middle, int exit, int minBandwidth) {
+        if (guard < 0 || middle < 0 || exit < 0) return;
+        circuits++;
+        selections.record(guard, middle, exit);
+        bandwidths.record(minBandwidth);
+        if (correlation != null) correlation.record(guard, middle, exit);
+        if (latency != null) rtts.record(latency.circuitRttMicros(guard, middle, exit));
+    }
+
+    public void merge(CircuitMetrics other) {
+        circuits += other.circuits;
+        selections.merge(other.selections);
+        bandwidths.merge(other.bandwidths);
+        if (correlation != null && other.correlation != null) correlation.merge(other.correlation);
+        rtts.merge(other.rtts);
+    }
+
+    public long getCircuits() {return circuits;}
+    public SelectionStats getSelections() {return selections;}
+    public LogHistogram getBandwidths() {return bandwidths;}
+    public CorrelationMetrics getCorrelation() {return correlation;}
+    public LogHistogram getRtts() {return rtts;}
+
+    // ---------------- Diversidade ----------------
+    public int guardDiversity() {return selections.diversity(SelectionStats.GUARD);}
+    public int middleDiversity() {return selections.diversity(SelectionStats.MIDDLE);}
+    public int exitDiversity() {return selections.diversity(SelectionStats.EXIT);}
+    public int globalDiversity() {return selections.diversity(SelectionStats.GLOBAL);}
+
+    // ---------------- Entropia ----------------
+    public double guardEntropy() {return selections.entropy(SelectionStats.GUARD);}
+    public double middleEntropy() {return selections.entropy(SelectionStats.MIDDLE);}
+    public double exitEntropy() {return selections.entropy(SelectionStats.EXIT);}
+    public double globalEntropy() {return selections.entropy(SelectionStats.GLOBAL);}
+
+    // ---------------- Bandwidth ----------------
+    public String bandwidthSummary() {
+        return bandwidths.summary();
+    }
+
+    // ---------------- Latência ----------------
+    public String latencySummary() {
+        if (rtts.getCount() == 0) return "No data";
+        return String.format(Locale.ROOT, "mean=%.1f ms, p5=%.1f ms, p50=%.1f ms, p90=%.1f ms, p95=%.1f ms, p99=%.1f ms",
+                rtts.getMean() / 1000, rtts.percentile(5) / 1000.0, rtts.percentile(50) / 1000.0,
+                rtts.percentile(90) / 1000.0, rtts.percentile(95) / 1000.0, rtts.percentile(99) / 1000.0);
+    }
+}
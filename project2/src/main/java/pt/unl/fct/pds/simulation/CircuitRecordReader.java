@@ -0,0 +1,114 @@
+package pt.unl.fct.pds.project2.simulation;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Lê ficheiros de registos de circuitos escritos pelo {@link CircuitRecordWriter}
+ * (o formato é detetado pelo cabeçalho) e converte entre CSV e binário.
+ * O formato binário é lido por memory-mapping, em janelas alinhadas ao registo.
+ */
+public final class CircuitRecordReader {
+
+    // Janela de mapeamento (múltiplo do tamanho do registo)
+    private static final long WINDOW = (1L << 30) / CircuitRecordWriter.RECORD_SIZE * CircuitRecordWriter.RECORD_SIZE;
+
+    private CircuitRecordReader() {}
+
+    public static CircuitRecordWriter.Format detectFormat(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(4);
+            while (magic.hasRemaining() && channel.read(magic) > 0) { }
+            magic.flip();
+            if (magic.remaining() == 4 && magic.getInt() == CircuitRecordWriter.MAGIC) {
+                return CircuitRecordWriter.Format.BINARY;
+            }
+            return CircuitRecordWriter.Format.CSV;
+        }
+    }
+
+    /**
+     * Entrega cada registo do ficheiro ao listener, pela ordem em que foi escrito.
+     *
+     * @return número de registos lidos
+     */
+    public static long read(Path file, CircuitListener listener) throws IOException {
+        if (detectFormat(file) == CircuitRecordWriter.Format.BINARY) {
+            return readBinary(file, listener);
+        }
+        return readCsv(file, listener);
+    }
+
+    private static long readBinary(Path file, CircuitListener listener) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(CircuitRecordWriter.HEADER_SIZE);
+            while (header.hasRemaining() && channel.read(header) > 0) { }
+            header.flip();
+            header.getInt();
+            int version = header.getInt();
+            int recordSize = header.getInt();
+            if (version != CircuitRecordWriter.VERSION || recordSize != CircuitRecordWriter.RECORD_SIZE) {
+                throw new IOException("Unsupported circuit record file: version " + version
+                        + ", record size " + recordSize);
+            }
+
+            long records = 0;
+            long size = channel.size();
+            for (long pos = CircuitRecordWriter.HEADER_SIZE; pos < size; pos += WINDOW) {
+                long length = Math.min(WINDOW, size - pos);
+                length -= length % recordSize;
+                if (length == 0) break;
+                MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, pos, length);
+                while (map.remaining() >= recordSize) {
+                    long id = map.getLong();
+                    int guard = map.getInt();
+                    int middle = map.getInt();
+                    int exit = map.getInt();
+                    int bandwidth = map.getInt();
+                    int algorithm = map.get();
+                    listener.onCircuit(id, algorithm, guard, middle, exit, bandwidth);
+                    records++;
+                }
+            }
+            return records;
+        }
+    }
+
+    private static long readCsv(Path file, CircuitListener listener) throws IOException {
+        long records = 0;
+        try (BufferedReader br = Files.newBufferedReader(file, StandardCharsets.US_ASCII)) {
+            String line = br.readLine(); // cabeçalho
+            while ((line = br.readLine()) != null) {
+                if (line.isEmpty()) continue;
+                String[] parts = line.split(",");
+                if (parts.length < 6) continue; // Ignorar linhas inválidas
+                listener.onCircuit(Long.parseLong(parts[0]),
+                        SimulationEngine.algorithmId(parts[1]),
+                        Integer.parseInt(parts[2]),
+                        Integer.parseInt(parts[3]),
+                        Integer.parseInt(parts[4]),
+                        Integer.parseInt(parts[5]));
+                records++;
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Converte um ficheiro de registos (CSV ou binário) para o formato pedido.
+     *
+     * @return número de registos convertidos
+     */
+    public static long convert(Path in, Path out, CircuitRecordWriter.Format format) throws IOException {
+        try (CircuitRecordWriter writer = new CircuitRecordWriter(out, format)) {
+            return read(in, writer);
+        }
+    }
+}
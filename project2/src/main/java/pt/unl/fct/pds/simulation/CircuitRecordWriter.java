@@ -0,0 +1,281 @@
+package pt.unl.fct.pds.project2.simulation;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Escreve um registo por circuito (id, algoritmo, guard, middle, exit, bandwidth)
+ * enquanto a simulação corre, em CSV ou num formato binário de largura fixa.
+ *
+ * Cada thread codifica os registos num buffer NIO próprio; os buffers cheios passam
+ * por uma fila limitada para uma thread de escrita em segundo plano, que os grava
+ * no FileChannel e os devolve ao conjunto livre. O número de buffers é fixo, por
+ * isso a memória é limitada e, se o disco não acompanhar, os produtores esperam
+ * por um buffer livre (back-pressure).
+ *
+ * Cada thread fica com um buffer parcial até chamar {@link #onThreadDone()} (o
+ * {@link SimulationEngine} fá-lo no fim de cada worker) ou até {@link #close()}; sem
+ * isso, threads que terminam deixariam os seus buffers fora do conjunto.
+ *
+ * {@link #close()} só deve ser chamado depois de todas as threads produtoras terminarem.
+ */
+public class CircuitRecordWriter implements CircuitListener, Closeable {
+
+    public enum Format { CSV, BINARY }
+
+    // Cabeçalho binário: magic "CIRC", versão, tamanho do registo
+    public static final int MAGIC = 0x43495243;
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 12;
+    // long id, int guard, int middle, int exit, int bandwidth, byte algoritmo
+    public static final int RECORD_SIZE = 25;
+    public static final String CSV_HEADER = "Circuit,Algorithm,Guard,Middle,Exit,Bandwidth\n";
+
+    private static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+    private static final int DEFAULT_MAX_BUFFERS = 16;
+    private static final int MAX_CSV_LINE = 96;
+
+    private final FileChannel channel;
+    private final Format format;
+    private final int bufferSize;
+    private final int maxBuffers;
+
+    private final BlockingQueue<ByteBuffer> filled;
+    private final BlockingQueue<ByteBuffer> free;
+    private int allocated;
+
+    // Buffer corrente de cada thread produtora (registados para o flush final)
+    private final List<Slot> slots = new ArrayList<>();
+    private final ThreadLocal<Slot> current = new ThreadLocal<>();
+
+    private final Thread flusher;
+    private volatile IOException failure;
+    private volatile boolean closed;
+    private long records;
+
+    private static final class Slot {
+        ByteBuffer buffer;
+        long records;
+    }
+
+    public CircuitRecordWriter(Path file, Format format) throws IOException {
+        this(file, format, DEFAULT_BUFFER_SIZE, DEFAULT_MAX_BUFFERS);
+    }
+
+    public CircuitRecordWriter(Path file, Format format, int bufferSize, int maxBuffers) throws IOException {
+        this.format = format;
+        this.bufferSize = Math.max(bufferSize, 4 * MAX_CSV_LINE);
+        // Pelo menos um buffer por thread mais um em trânsito, para não bloquear no fim
+        this.maxBuffers = Math.max(maxBuffers, 2 * Runtime.getRuntime().availableProcessors() + 1);
+        this.filled = new ArrayBlockingQueue<>(this.maxBuffers + 1);
+        this.free = new ArrayBlockingQueue<>(this.maxBuffers);
+
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        writeHeader();
+
+        this.flusher = new Thread(this::flushLoop, "circuit-record-writer");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    public Format getFormat() {return format;}
+
+    private void writeHeader() throws IOException {
+        ByteBuffer header;
+        if (format == Format.BINARY) {
+            header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putInt(RECORD_SIZE);
+            header.flip();
+        } else {
+            header = ByteBuffer.wrap(CSV_HEADER.getBytes(StandardCharsets.US_ASCII));
+        }
+        while (header.hasRemaining()) channel.write(header);
+    }
+
+    private Slot newSlot() {
+        Slot slot = new Slot();
+        synchronized (slots) {
+            slots.add(slot);
+        }
+        current.set(slot);
+        return slot;
+    }
+
+    /**
+     * Envia o buffer parcial da thread atual e liberta o seu slot (se voltar a escrever,
+     * a thread recebe um slot novo).
+     */
+    @Override
+    public void onThreadDone() {
+        Slot slot = current.get();
+        if (slot == null) return;
+        current.remove();
+        synchronized (slots) {
+            slots.remove(slot);
+            records += slot.records;
+        }
+        ByteBuffer buf = slot.buffer;
+        slot.buffer = null;
+        if (buf == null) return;
+        if (buf.position() > 0) {
+            submit(buf);
+        } else {
+            buf.clear();
+            free.offer(buf);
+        }
+    }
+
+    @Override
+    public void onCircuit(long index, int algorithm, int guard, int middle, int exit, int minBandwidth) {
+        write(index, algorithm, guard, middle, exit, minBandwidth);
+    }
+
+    public void write(long id, int algorithm, int guard, int middle, int exit, int bandwidth) {
+        Slot slot = current.get();
+        if (slot == null) slot = newSlot();
+        ByteBuffer buf = slot.buffer;
+        if (buf == null || buf.remaining() < MAX_CSV_LINE) {
+            if (buf != null) submit(buf);
+            buf = slot.buffer = acquire();
+        }
+
+        if (format == Format.BINARY) {
+            buf.putLong(id).putInt(guard).putInt(middle).putInt(exit).putInt(bandwidth).put((byte) algorithm);
+        } else {
+            putLong(buf, id);
+            buf.put((byte) ',');
+            putAscii(buf, SimulationEngine.algorithmName(algorithm));
+            buf.put((byte) ',');
+            putLong(buf, guard);
+            buf.put((byte) ',');
+            putLong(buf, middle);
+            buf.put((byte) ',');
+            putLong(buf, exit);
+            buf.put((byte) ',');
+            putLong(buf, bandwidth);
+            buf.put((byte) '\n');
+        }
+        slot.records++;
+    }
+
+    // ---------------- Codificação CSV sem Strings intermédias ----------------
+
+    private static void putAscii(ByteBuffer buf, String s) {
+        for (int i = 0; i < s.length(); i++) buf.put((byte) s.charAt(i));
+    }
+
+    private static void putLong(ByteBuffer buf, long v) {
+        if (v < 0) {
+            buf.put((byte) '-');
+            v = -v;
+        }
+        if (v < 10) {
+            buf.put((byte) ('0' + v));
+            return;
+        }
+        int start = buf.position();
+        while (v > 0) {
+            buf.put((byte) ('0' + (v % 10)));
+            v /= 10;
+        }
+        // inverte os dígitos escritos ao contrário
+        int end = buf.position() - 1;
+        while (start < end) {
+            byte t = buf.get(start);
+            buf.put(start++, buf.get(end));
+            buf.put(end--, t);
+        }
+    }
+
+    // ---------------- Buffers e escrita em segundo plano ----------------
+
+    private ByteBuffer acquire() {
+        checkFailure();
+        ByteBuffer buf = free.poll();
+        if (buf == null) {
+            synchronized (this) {
+                if (allocated < maxBuffers) {
+                    allocated++;
+                    return ByteBuffer.allocateDirect(bufferSize);
+                }
+            }
+            try {
+                buf = free.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for a buffer", e);
+            }
+        }
+        buf.clear();
+        return buf;
+    }
+
+    private void submit(ByteBuffer buf) {
+        checkFailure();
+        buf.flip();
+        try {
+            filled.put(buf);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while submitting a buffer", e);
+        }
+    }
+
+    private void flushLoop() {
+        try {
+            while (true) {
+                ByteBuffer buf = filled.take();
+                if (buf.capacity() == 0) break; // marcador de fim
+                try {
+                    while (buf.hasRemaining()) channel.write(buf);
+                } catch (IOException e) {
+                    failure = e;
+                }
+                buf.clear();
+                free.offer(buf);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void checkFailure() {
+        if (failure != null) throw new UncheckedIOException("Error writing circuit records", failure);
+    }
+
+    public long getRecords() {return records;}
+
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        try {
+            synchronized (slots) {
+                for (Slot slot : slots) {
+                    if (slot.buffer != null && slot.buffer.position() > 0) submit(slot.buffer);
+                    slot.buffer = null;
+                    records += slot.records;
+                }
+            }
+            filled.put(ByteBuffer.allocate(0));
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while closing circuit record writer", e);
+        } finally {
+            channel.close();
+        }
+        if (failure != null) throw failure;
+    }
+}
@@ -0,0 +1,264 @@
+package pt.unl.fct.pds.project2.simulation;
+
+import pt.unl.fct.pds.project2.model.Circuit;
+import pt.unl.fct.pds.project2.model.CountryDictionary;
+import pt.unl.fct.pds.project2.model.RelayTable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.function.LongConsumer;
+
+/**
+ * Muitos circuitos (10^7 ou mais) guardados como {@link PackedCircuit}, 8 bytes cada,
+ * em segmentos de 1M circuitos: arrays no heap ou, com um ficheiro, regiões mapeadas
+ * em memória (o ficheiro fica com os longs em little-endian, sem cabeçalho).
+ *
+ * Os circuitos são percorridos diretamente sobre os segmentos; a ordenação por uma
+ * chave (guard, exit, país...) é um bucket sort no próprio armazenamento (O(n + chaves),
+ * sem memória extra por circuito) e devolve o início de cada grupo. As vistas
+ * {@link Circuit} só são criadas a pedido.
+ *
+ * Como {@link CircuitListener}, o circuito (index, algoritmo) vai para a posição
+ * 2 * index + algoritmo, pelo que as threads da simulação escrevem em posições
+ * distintas sem sincronização. {@link #add} não é thread-safe.
+ *
+ * Os caminhos que falham não chegam ao listener: as suas posições ficam com
+ * {@link PackedCircuit#EMPTY} (os segmentos novos são preenchidos com esse valor),
+ * que {@link #scan}, {@link #countBy} e {@link #sortBy} ignoram. {@link #size()} conta
+ * posições, incluindo as vazias; {@link #count()} só os circuitos.
+ */
+public class CircuitStore implements CircuitListener, Closeable {
+
+    public enum Key { ALGORITHM, GUARD, MIDDLE, EXIT, GUARD_COUNTRY, MIDDLE_COUNTRY, EXIT_COUNTRY }
+
+    private static final int SEGMENT_BITS = 20;
+    private static final int SEGMENT_SIZE = 1 << SEGMENT_BITS;
+    private static final long SEGMENT_BYTES = 8L * SEGMENT_SIZE;
+
+    private final FileChannel channel;                         // null: segmentos no heap
+    private volatile LongBuffer[] segments = new LongBuffer[0];
+    private final LongAccumulator size = new LongAccumulator(Math::max, 0);
+
+    public CircuitStore() {
+        this.channel = null;
+    }
+
+    /**
+     * Store mapeado no ficheiro (criado ou acrescentado; os circuitos já existentes
+     * são mantidos).
+     */
+    public CircuitStore(Path file) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        long existing = channel.size() / 8;
+        if (existing > 0) segment(existing - 1);
+        size.accumulate(existing);
+    }
+
+    public boolean isMapped() {return channel != null;}
+
+    public long size() {return size.get();}
+
+    // Número de circuitos (posições não vazias)
+    public long count() {
+        long[] count = new long[1];
+        scan(c -> count[0]++);
+        return count[0];
+    }
+
+    // ---------------- Escrita ----------------
+
+    public void add(long circuit) {
+        long index = size.get();
+        set(index, circuit);
+        size.accumulate(index + 1);
+    }
+
+    public void add(int algorithm, int guard, int middle, int exit) {
+        add(PackedCircuit.encode(algorithm, guard, middle, exit));
+    }
+
+    @Override
+    public void onCircuit(long index, int algorithm, int guard, int middle, int exit, int minBandwidth) {
+        long position = 2 * index + algorithm;
+        set(position, PackedCircuit.encode(algorithm, guard, middle, exit));
+        size.accumulate(position + 1);
+    }
+
+    public void set(long index, long circuit) {
+        segment(index).put((int) (index & (SEGMENT_SIZE - 1)), circuit);
+    }
+
+    // Segmento do índice, criado se ainda não existir (raro: sincronizado)
+    private LongBuffer segment(long index) {
+        int s = (int) (index >>> SEGMENT_BITS);
+        LongBuffer[] current = segments;
+        if (s < current.length && current[s] != null) return current[s];
+        synchronized (this) {
+            current = segments;
+            if (s >= current.length || current[s] == null) {
+                LongBuffer[] grown = s < current.length ? current
+                        : Arrays.copyOf(current, Math.max(s + 1, 2 * current.length));
+                try {
+                    for (int k = 0; k <= s; k++) if (grown[k] == null) grown[k] = allocate(k);
+                } catch (IOException e) {
+                    throw new IllegalStateException("Could not map circuit segment " + s, e);
+                }
+                segments = grown;
+                current = grown;
+            }
+            return current[s];
+        }
+    }
+
+    // Segmento novo com as posições ainda não escritas a EMPTY
+    private LongBuffer allocate(int segment) throws IOException {
+        if (channel == null) {
+            long[] circuits = new long[SEGMENT_SIZE];
+            Arrays.fill(circuits, PackedCircuit.EMPTY);
+            return LongBuffer.wrap(circuits);
+        }
+        // Os bytes além do fim atual do ficheiro vêm a zero (um circuito válido)
+        long written = Math.max(0, channel.size() - segment * SEGMENT_BYTES) / 8;
+        LongBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, segment * SEGMENT_BYTES, SEGMENT_BYTES)
+                .order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+        for (int k = (int) Math.min(written, SEGMENT_SIZE); k < SEGMENT_SIZE; k++) buffer.put(k, PackedCircuit.EMPTY);
+        return buffer;
+    }
+
+    // ---------------- Leitura ----------------
+
+    public long get(long index) {
+        if (index < 0 || index >= size()) throw new IndexOutOfBoundsException("Circuit " + index);
+        return segments[(int) (index >>> SEGMENT_BITS)].get((int) (index & (SEGMENT_SIZE - 1)));
+    }
+
+    // Percorre os circuitos das posições [from, to) por ordem, sem as vazias
+    public void scan(long from, long to, LongConsumer consumer) {
+        to = Math.min(to, size());
+        LongBuffer[] current = segments;
+        for (long i = from; i < to; ) {
+            LongBuffer segment = current[(int) (i >>> SEGMENT_BITS)];
+            int start = (int) (i & (SEGMENT_SIZE - 1));
+            int end = (int) Math.min(SEGMENT_SIZE, start + (to - i));
+            for (int k = start; k < end; k++) {
+                long circuit = segment.get(k);
+                if (circuit != PackedCircuit.EMPTY) consumer.accept(circuit);
+            }
+            i += end - start;
+        }
+    }
+
+    public void scan(LongConsumer consumer) {
+        scan(0, size(), consumer);
+    }
+
+    // Vista Circuit do circuito (criada a cada chamada)
+    public Circuit circuit(long index, RelayTable table) {
+        return PackedCircuit.toCircuit((int) index, get(index), table);
+    }
+
+    // ---------------- Agrupamento ----------------
+
+    // Número de valores da chave (ids 0..n-1); o grupo n são os circuitos sem valor
+    public static int numKeys(Key key, RelayTable table) {
+        switch (key) {
+            case ALGORITHM: return 4;
+            case GUARD: case MIDDLE: case EXIT: return table.size();
+            default: return CountryDictionary.size();
+        }
+    }
+
+    // Valor da chave para o circuito; -1 se não tiver (posição sem relay)
+    public static int keyOf(Key key, long circuit, RelayTable table) {
+        switch (key) {
+            case ALGORITHM: return PackedCircuit.algorithm(circuit);
+            case GUARD: return PackedCircuit.guard(circuit);
+            case MIDDLE: return PackedCircuit.middle(circuit);
+            case EXIT: return PackedCircuit.exit(circuit);
+            case GUARD_COUNTRY: return countryOf(table, PackedCircuit.guard(circuit));
+            case MIDDLE_COUNTRY: return countryOf(table, PackedCircuit.middle(circuit));
+            default: return countryOf(table, PackedCircuit.exit(circuit));
+        }
+    }
+
+    private static int countryOf(RelayTable table, int relay) {
+        return relay < 0 ? -1 : table.getCountry(relay);
+    }
+
+    /**
+     * Número de circuitos por valor da chave (group-by sem ordenar), com
+     * {@link #numKeys} + 1 posições.
+     */
+    public long[] countBy(Key key, RelayTable table) {
+        int numKeys = numKeys(key, table);
+        long[] counts = new long[numKeys + 1];
+        scan(c -> counts[bucket(key, c, table, numKeys)]++);
+        return counts;
+    }
+
+    private static int bucket(Key key, long circuit, RelayTable table, int numKeys) {
+        if (circuit == PackedCircuit.EMPTY) return numKeys + 1;
+        int k = keyOf(key, circuit, table);
+        return k < 0 || k >= numKeys ? numKeys : k;
+    }
+
+    /**
+     * Ordena os circuitos pela chave (bucket sort no lugar, sem ordem definida dentro de
+     * cada grupo) e devolve o início de cada grupo: os circuitos com o valor k ficam
+     * em [offsets[k], offsets[k + 1]); os sem valor no último grupo. As posições vazias
+     * passam para o fim, em [offsets[numKeys + 1], size()).
+     */
+    public long[] sortBy(Key key, RelayTable table) {
+        int numKeys = numKeys(key, table);
+        long[] counts = countBy(key, table);
+        long[] offsets = new long[counts.length + 1];
+        for (int b = 0; b < counts.length; b++) offsets[b + 1] = offsets[b] + counts[b];
+
+        // Cada circuito fora do seu grupo é trocado para a próxima posição livre do grupo;
+        // o grupo extra counts.length são as posições vazias
+        long[] ends = Arrays.copyOf(offsets, counts.length + 2);
+        ends[counts.length + 1] = size();
+        long[] next = Arrays.copyOf(offsets, counts.length + 1);
+        for (int b = 0; b <= counts.length; b++) {
+            while (next[b] < ends[b + 1]) {
+                long circuit = get(next[b]);
+                int target = bucket(key, circuit, table, numKeys);
+                while (target != b) {
+                    long displaced = get(next[target]);
+                    set(next[target]++, circuit);
+                    circuit = displaced;
+                    target = bucket(key, circuit, table, numKeys);
+                }
+                set(next[b]++, circuit);
+            }
+        }
+        return offsets;
+    }
+
+    // Bytes ocupados pelos segmentos já criados
+    public long bytes() {
+        long bytes = 0;
+        for (LongBuffer segment : segments) if (segment != null) bytes += SEGMENT_BYTES;
+        return bytes;
+    }
+
+    /**
+     * Com um ficheiro, corta-o ao tamanho dos circuitos escritos (pode ser reaberto
+     * com {@link #CircuitStore(Path)}).
+     */
+    @Override
+    public void close() throws IOException {
+        if (channel == null) return;
+        segments = new LongBuffer[0];
+        channel.truncate(size() * 8);
+        channel.close();
+    }
+}
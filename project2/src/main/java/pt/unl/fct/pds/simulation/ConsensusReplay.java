@@ -0,0 +1,312 @@
+package pt.unl.fct.pds.project2.simulation;
+
+import pt.unl.fct.pds.project2.instrumentation.SelectionProbe;
+import pt.unl.fct.pds.project2.model.ExitPolicy;
+import pt.unl.fct.pds.project2.model.RelayStore;
+import pt.unl.fct.pds.project2.model.RelayTable;
+import pt.unl.fct.pds.project2.utils.ConsensusParser;
+import pt.unl.fct.pds.project2.utils.GeoResolver;
+import pt.unl.fct.pds.project2.utils.PathSelector;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Replay de um histórico de consensus (por exemplo, um por hora durante meses) sobre
+ * uma única {@link RelayTable} e um único {@link PathSelector}.
+ *
+ * Cada fingerprint fica com um id fixo durante todo o replay. Cada consensus é
+ * comparado com o estado anterior e só os relays que entraram, saíram ou mudaram
+ * (bandwidth, flags, endereço ou exit policy) são passados a
+ * {@link PathSelector#update}, que atualiza os samplers em O(log n) por relay.
+ * O GeoIP só é consultado para relays novos ou com outro endereço. Relays ausentes
+ * ficam na tabela sem flags nem bandwidth, fora de todos os pools.
+ *
+ * Depois de cada consensus pode correr-se uma simulação Original vs Geo-Aware com a
+ * mesma semente (números aleatórios comuns entre horas).
+ */
+public class ConsensusReplay {
+
+    private static final int TAR_BLOCK = 512;
+
+    private final ConsensusParser parser = new ConsensusParser();
+    private final GeoResolver geo;
+    private final RelayTable table = new RelayTable();
+    private final Map<String, Integer> ids = new HashMap<>();
+    private PathSelector selector;
+    private RelayStore store;
+    private SelectionProbe probe;
+
+    // Consensus em que cada relay apareceu pela última vez, e os presentes no atual
+    private int[] lastSeen = new int[0];
+    private int[] present = new int[0];
+    private int numPresent;
+    private int steps;
+
+    // Simulação por consensus (0 circuitos para só aplicar as alterações)
+    private long circuitsPerStep;
+    private long seed;
+    private double alpha;
+    private double beta;
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    public ConsensusReplay() {
+        this(GeoResolver.getDefault());
+    }
+
+    public ConsensusReplay(GeoResolver geo) {
+        this.geo = geo;
+    }
+
+    public RelayTable getTable() {return table;}
+    public PathSelector getSelector() {return selector;}
+    public int getSteps() {return steps;}
+
+    public void setSimulation(long circuitsPerStep, long seed, double alpha, double beta) {
+        this.circuitsPerStep = circuitsPerStep;
+        this.seed = seed;
+        this.alpha = alpha;
+        this.beta = beta;
+    }
+
+    public void setThreads(int threads) {this.threads = Math.max(1, threads);}
+
+    // Histórico onde cada consensus aplicado é também guardado (null para nenhum)
+    public RelayStore getStore() {return store;}
+    public void setStore(RelayStore store) {this.store = store;}
+
+    // Instrumentação do PathSelector do replay (também quando ainda não existe)
+    public void setProbe(SelectionProbe probe) {
+        this.probe = probe;
+        if (selector != null) selector.setProbe(probe);
+    }
+
+    /**
+     * Replay de um diretório (ficheiros por ordem do nome, como os do CollecTor)
+     * ou de um arquivo .tar / .tar.gz (entradas pela ordem do arquivo).
+     */
+    public void replay(Path source, ReplayListener listener) throws IOException {
+        String name = source.getFileName() == null ? "" : source.getFileName().toString();
+        if (Files.isDirectory(source)) {
+            replayDirectory(source, listener);
+        } else if (name.endsWith(".tar")) {
+            try (InputStream in = new BufferedInputStream(Files.newInputStream(source))) {
+                replayTar(in, listener);
+            }
+        } else if (name.endsWith(".tar.gz") || name.endsWith(".tgz")) {
+            try (InputStream in = new GZIPInputStream(new BufferedInputStream(Files.newInputStream(source)))) {
+                replayTar(in, listener);
+            }
+        } else {
+            replayFile(source, listener);
+        }
+    }
+
+    private void replayDirectory(Path dir, ReplayListener listener) throws IOException {
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(dir)) {
+            files = walk.filter(Files::isRegularFile)
+                    .filter(p -> !p.getFileName().toString().startsWith("."))
+                    .filter(p -> !p.getFileName().toString().endsWith(".snapshot"))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+        for (Path file : files) replayFile(file, listener);
+    }
+
+    private void replayFile(Path file, ReplayListener listener) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) throw new IOException("Consensus too large to map: " + file);
+            step(channel.map(FileChannel.MapMode.READ_ONLY, 0, size), listener);
+        }
+    }
+
+    // Leitura sequencial de um tar (ustar/GNU): só as entradas regulares são consensus
+    private void replayTar(InputStream in, ReplayListener listener) throws IOException {
+        byte[] header = new byte[TAR_BLOCK];
+        byte[] data = new byte[1 << 22];
+        while (readFully(in, header, TAR_BLOCK)) {
+            if (isZero(header)) break;
+            long size = parseOctal(header, 124, 12);
+            byte type = header[156];
+            long padded = (size + TAR_BLOCK - 1) / TAR_BLOCK * TAR_BLOCK;
+            if (type != '0' && type != 0) {
+                skipFully(in, padded);
+                continue;
+            }
+            if (size > Integer.MAX_VALUE - TAR_BLOCK) throw new IOException("Tar entry too large: " + size);
+            if (data.length < padded) data = new byte[(int) padded];
+            if (!readFully(in, data, (int) padded)) throw new EOFException("Truncated tar entry");
+            step(ByteBuffer.wrap(data, 0, (int) size), listener);
+        }
+    }
+
+    private void step(ByteBuffer consensus, ReplayListener listener) throws IOException {
+        long start = System.nanoTime();
+        RelayTable next = parser.parse(consensus);
+        long parseNanos = System.nanoTime() - start;
+        if (next.size() == 0) return; // não é um consensus
+
+        ReplayStep step = apply(next, parseNanos);
+        if (store != null) store.addConsensus(next);
+        if (circuitsPerStep > 0) {
+            step.setResult(new SimulationEngine(selector, threads).run(circuitsPerStep, seed, alpha, beta));
+        }
+        if (listener != null) listener.onStep(step);
+    }
+
+    /**
+     * Aplica um consensus já lido (sem GeoIP) ao estado do replay; o país de cada
+     * relay do consensus fica preenchido com o do estado do replay.
+     */
+    public ReplayStep apply(RelayTable next) {
+        return apply(next, 0);
+    }
+
+    private ReplayStep apply(RelayTable next, long parseNanos) {
+        long start = System.nanoTime();
+        int current = ++steps;
+
+        // Policies do consensus -> ids na tabela do replay (uma vez por policy distinta)
+        List<ExitPolicy> policies = next.getPolicies();
+        int[] policyIds = new int[policies.size()];
+        for (int p = 0; p < policyIds.length; p++) policyIds[p] = table.internPolicy(policies.get(p).getSummary());
+
+        int[] changed = new int[next.size() + numPresent];
+        int numChanged = 0;
+        int[] nowPresent = new int[next.size()];
+        int numNow = 0;
+        int joined = 0;
+
+        for (int j = 0; j < next.size(); j++) {
+            String fingerprint = next.getFingerprint(j);
+            Integer id = ids.get(fingerprint);
+            boolean isNew = id == null;
+            if (isNew) {
+                id = table.add(next.getNickname(j), fingerprint, 0, next.getIpv4(j), 0, 0);
+                ids.put(fingerprint, id);
+                if (id >= lastSeen.length) lastSeen = Arrays.copyOf(lastSeen, Math.max(1024, 2 * lastSeen.length));
+            }
+            int i = id;
+            if (lastSeen[i] == current) continue; // fingerprint repetido no mesmo consensus
+
+            boolean dirty = isNew || lastSeen[i] != current - 1;
+            if (dirty) joined++;
+            lastSeen[i] = current;
+            nowPresent[numNow++] = i;
+
+            if (isNew || table.getIpv4(i) != next.getIpv4(j)) {
+                table.setIpv4(i, next.getIpv4(j));
+                table.setCountry(i, geo.resolve(next.getIpv4(j)));
+                dirty = true;
+            }
+            next.setCountry(j, table.getCountry(i));
+            if (table.getBandwidth(i) != next.getBandwidth(j)) {
+                table.setBandwidth(i, next.getBandwidth(j));
+                dirty = true;
+            }
+            if (table.getFlags(i) != next.getFlags(j)) {
+                table.setFlags(i, next.getFlags(j));
+                dirty = true;
+            }
+            int policy = next.getExitPolicyId(j) < 0 ? -1 : policyIds[next.getExitPolicyId(j)];
+            if (table.getExitPolicyId(i) != policy) {
+                table.setExitPolicyId(i, policy);
+                dirty = true;
+            }
+
+            // Colunas que não afetam a seleção (só escritas se mudarem, para não invalidar as vistas)
+            if (table.getPublished(i) != next.getPublished(j)) table.setPublished(i, next.getPublished(j));
+            if (!Objects.equals(table.getNickname(i), next.getNickname(j))) table.setNickname(i, next.getNickname(j));
+            if (!Objects.equals(table.getVersion(i), next.getVersion(j))) table.setVersion(i, next.getVersion(j));
+            if (table.getOrPort(i) != next.getOrPort(j) || table.getDirPort(i) != next.getDirPort(j)) {
+                table.setPorts(i, next.getOrPort(j), next.getDirPort(j));
+            }
+
+            if (dirty) changed[numChanged++] = i;
+        }
+
+        // Relays do consensus anterior que não aparecem neste
+        int left = 0;
+        for (int k = 0; k < numPresent; k++) {
+            int i = present[k];
+            if (lastSeen[i] == current) continue;
+            table.setFlags(i, 0);
+            table.setBandwidth(i, 0);
+            changed[numChanged++] = i;
+            left++;
+        }
+        present = nowPresent;
+        numPresent = numNow;
+        table.setValidAfter(next.getValidAfter());
+        table.setBandwidthWeights(next.getBandwidthWeights());
+
+        if (selector == null) {
+            selector = new PathSelector(table);
+            selector.setProbe(probe);
+        } else {
+            selector.update(changed, numChanged);
+        }
+
+        return new ReplayStep(current, next.getValidAfter(), numNow, joined, left, numChanged,
+                parseNanos, System.nanoTime() - start);
+    }
+
+    private static boolean readFully(InputStream in, byte[] buf, int length) throws IOException {
+        int read = 0;
+        while (read < length) {
+            int n = in.read(buf, read, length - read);
+            if (n < 0) {
+                if (read == 0) return false;
+                throw new EOFException("Truncated tar archive");
+            }
+            read += n;
+        }
+        return true;
+    }
+
+    private static void skipFully(InputStream in, long length) throws IOException {
+        while (length > 0) {
+            long n = in.skip(length);
+            if (n <= 0) {
+                if (in.read() < 0) throw new EOFException("Truncated tar archive");
+                n = 1;
+            }
+            length -= n;
+        }
+    }
+
+    private static boolean isZero(byte[] block) {
+        for (byte b : block) if (b != 0) return false;
+        return true;
+    }
+
+    private static long parseOctal(byte[] header, int offset, int length) {
+        long value = 0;
+        for (int k = offset; k < offset + length; k++) {
+            byte b = header[k];
+            if (b == 0 || b == ' ') {
+                if (value != 0) break;
+                continue;
+            }
+            value = (value << 3) + (b - '0');
+        }
+        return value;
+    }
+}
@@ -0,0 +1,259 @@
+package pt.unl.fct.pds.project2.simulation;
+
+import pt.unl.fct.pds.project2.model.CountryDictionary;
+import pt.unl.fct.pds.project2.model.RelayTable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Sobreposição de jurisdições e de redes nos circuitos: matrizes de coocorrência
+ * de países guard x exit e guard x middle x exit, e contagens de hops na mesma /16.
+ *
+ * Os países e as /16 de cada relay são convertidos uma vez por execução em ids
+ * densos ({@link Ids}), partilhados por todas as threads; cada circuito custa três
+ * leituras de arrays, dois incrementos em matrizes primitivas e três comparações.
+ * Cada thread acumula a sua instância e no fim são combinadas com {@link #merge}
+ * (a matriz de triplos tem C^3 longs: ~6 MB para os ~90 países de um consensus real).
+ *
+ * Circuitos com dois hops de país desconhecido não contam como mesmo país.
+ */
+public class CorrelationMetrics {
+
+    // Pares de posições
+    public static final int GUARD_MIDDLE = 0;
+    public static final int GUARD_EXIT = 1;
+    public static final int MIDDLE_EXIT = 2;
+
+    /**
+     * Ids densos por relay: país (0..numCountries-1) e /16 (0..numSubnets-1).
+     */
+    public static final class Ids {
+        final int[] country;
+        final int[] subnet;
+        final short[] countryCodes;   // id denso -> id do CountryDictionary
+        final int numSubnets;
+        final int unknown;            // id denso do país desconhecido (-1 se não houver)
+
+        private Ids(int[] country, int[] subnet, short[] countryCodes, int numSubnets) {
+            this.country = country;
+            this.subnet = subnet;
+            this.countryCodes = countryCodes;
+            this.numSubnets = numSubnets;
+            int u = -1;
+            for (int c = 0; c < countryCodes.length; c++) if (countryCodes[c] == CountryDictionary.UNKNOWN_ID) u = c;
+            this.unknown = u;
+        }
+
+        public static Ids of(RelayTable table) {
+            int n = table.size();
+            int[] country = new int[n];
+            int[] subnet = new int[n];
+            int[] countryIds = new int[CountryDictionary.size()];
+            int[] subnetIds = new int[1 << 16];
+            Arrays.fill(countryIds, -1);
+            Arrays.fill(subnetIds, -1);
+            short[] codes = new short[Math.min(countryIds.length, Math.max(1, n))];
+            int numCountries = 0;
+            int numSubnets = 0;
+            for (int i = 0; i < n; i++) {
+                short c = (short) Math.max(0, table.getCountry(i));
+                if (countryIds[c] < 0) {
+                    codes[numCountries] = c;
+                    countryIds[c] = numCountries++;
+                }
+                country[i] = countryIds[c];
+                int s = table.getSubnet16(i);
+                if (subnetIds[s] < 0) subnetIds[s] = numSubnets++;
+                subnet[i] = subnetIds[s];
+            }
+            return new Ids(country, subnet, Arrays.copyOf(codes, numCountries), numSubnets);
+        }
+
+        public int numCountries() {return countryCodes.length;}
+        public int numSubnets() {return numSubnets;}
+        public short countryCode(int dense) {return countryCodes[dense];}
+    }
+
+    /**
+     * Par (país do guard, país do exit) com a fração dos circuitos que o usam.
+     */
+    public static final class CountryPair {
+        private final short guard;
+        private final short exit;
+        private final long count;
+        private final double fraction;
+
+        CountryPair(short guard, short exit, long count, double fraction) {
+            this.guard = guard;
+            this.exit = exit;
+            this.count = count;
+            this.fraction = fraction;
+        }
+
+        public short getGuard() {return guard;}
+        public short getExit() {return exit;}
+        public long getCount() {return count;}
+        public double getFraction() {return fraction;}
+        public boolean isSameCountry() {return guard == exit;}
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%s-%s=%.4f",
+                    CountryDictionary.code(guard), CountryDictionary.code(exit), fraction);
+        }
+    }
+
+    private final Ids ids;
+    private final int numCountries;
+    private long circuits;
+
+    // guardExit[g * C + e]; triples[(g * C + e) * C + m]
+    private final long[] guardExit;
+    private final long[] triples;
+    private final long[] sameSubnet = new long[3];
+
+    public CorrelationMetrics(Ids ids) {
+        this.ids = ids;
+        this.numCountries = ids.numCountries();
+        this.guardExit = new long[numCountries * numCountries];
+        this.triples = new long[numCountries * numCountries * numCountries];
+    }
+
+    public Ids getIds() {return ids;}
+    public long getCircuits() {return circuits;}
+
+    public void record(int guard, int middle, int exit) {
+        circuits++;
+        int[] country = ids.country;
+        int ge = country[guard] * numCountries + country[exit];
+        guardExit[ge]++;
+        triples[ge * numCountries + country[middle]]++;
+
+        int[] subnet = ids.subnet;
+        int sg = subnet[guard];
+        int sm = subnet[middle];
+        int se = subnet[exit];
+        if (sg == sm) sameSubnet[GUARD_MIDDLE]++;
+        if (sg == se) sameSubnet[GUARD_EXIT]++;
+        if (sm == se) sameSubnet[MIDDLE_EXIT]++;
+    }
+
+    public void merge(CorrelationMetrics other) {
+        if (other.numCountries != numCountries) throw new IllegalArgumentException("Different country ids");
+        circuits += other.circuits;
+        for (int k = 0; k < guardExit.length; k++) guardExit[k] += other.guardExit[k];
+        for (int k = 0; k < triples.length; k++) triples[k] += other.triples[k];
+        for (int k = 0; k < 3; k++) sameSubnet[k] += other.sameSubnet[k];
+    }
+
+    // Circuitos do par (ids do CountryDictionary)
+    public long pairCount(short guardCountry, short exitCountry) {
+        int g = dense(guardCountry);
+        int e = dense(exitCountry);
+        return g < 0 || e < 0 ? 0 : guardExit[g * numCountries + e];
+    }
+
+    private int dense(short country) {
+        for (int c = 0; c < numCountries; c++) if (ids.countryCodes[c] == country) return c;
+        return -1;
+    }
+
+    // ---------------- Mesmo país / mesma /16 ----------------
+
+    /**
+     * Fração dos circuitos com os dois hops do par (GUARD_MIDDLE, GUARD_EXIT ou
+     * MIDDLE_EXIT) no mesmo país conhecido.
+     */
+    public double sameCountryRate(int pair) {
+        if (circuits == 0) return 0;
+        long same = 0;
+        for (int g = 0; g < numCountries; g++) {
+            for (int e = 0; e < numCountries; e++) {
+                for (int m = 0; m < numCountries; m++) {
+                    int a = pair == MIDDLE_EXIT ? m : g;
+                    int b = pair == GUARD_MIDDLE ? m : e;
+                    if (a == b && a != ids.unknown) same += triples[(g * numCountries + e) * numCountries + m];
+                }
+            }
+        }
+        return (double) same / circuits;
+    }
+
+    // Fração dos circuitos com os três hops no mesmo país conhecido
+    public double allSameCountryRate() {
+        if (circuits == 0) return 0;
+        long same = 0;
+        for (int c = 0; c < numCountries; c++) {
+            if (c != ids.unknown) same += triples[(c * numCountries + c) * numCountries + c];
+        }
+        return (double) same / circuits;
+    }
+
+    public double sameSubnetRate(int pair) {
+        return circuits == 0 ? 0 : (double) sameSubnet[pair] / circuits;
+    }
+
+    // ---------------- Entropia ----------------
+
+    // Entropia (bits) da distribuição dos pares (país do guard, país do exit)
+    public double countryPairEntropy() {
+        return entropy(guardExit);
+    }
+
+    // Entropia (bits) da distribuição dos triplos de países
+    public double countryTripleEntropy() {
+        return entropy(triples);
+    }
+
+    private double entropy(long[] counts) {
+        if (circuits == 0) return 0.0;
+        double h = 0.0;
+        for (long c : counts) {
+            if (c == 0) continue;
+            double p = (double) c / circuits;
+            h -= p * (Math.log(p) / Math.log(2));
+        }
+        return h;
+    }
+
+    // ---------------- Pares mais arriscados ----------------
+
+    /**
+     * Os k pares (país do guard, país do exit) mais frequentes: um adversário com
+     * acesso aos dois países observa essa fração dos circuitos. Com sameCountryOnly
+     * só entram pares do mesmo país conhecido.
+     */
+    public List<CountryPair> topPairs(int k, boolean sameCountryOnly) {
+        Integer[] order = new Integer[guardExit.length];
+        int n = 0;
+        for (int ge = 0; ge < guardExit.length; ge++) {
+            int g = ge / numCountries;
+            if (guardExit[ge] == 0) continue;
+            if (sameCountryOnly && (g != ge % numCountries || g == ids.unknown)) continue;
+            order[n++] = ge;
+        }
+        Arrays.sort(order, 0, n, (a, b) -> Long.compare(guardExit[b], guardExit[a]));
+        List<CountryPair> top = new ArrayList<>();
+        for (int j = 0; j < Math.min(k, n); j++) {
+            int ge = order[j];
+            top.add(new CountryPair(ids.countryCodes[ge / numCountries], ids.countryCodes[ge % numCountries],
+                    guardExit[ge], (double) guardExit[ge] / circuits));
+        }
+        return top;
+    }
+
+    public String summary(int k) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.ROOT, "same country: guard-exit=%.4f, guard-middle=%.4f, middle-exit=%.4f, all=%.4f;"
+                        + " same /16: guard-exit=%.4f, guard-middle=%.4f, middle-exit=%.4f;"
+                        + " pair entropy=%.4f, triple entropy=%.4f; top pairs:",
+                sameCountryRate(GUARD_EXIT), sameCountryRate(GUARD_MIDDLE), sameCountryRate(MIDDLE_EXIT),
+                allSameCountryRate(), sameSubnetRate(GUARD_EXIT), sameSubnetRate(GUARD_MIDDLE),
+                sameSubnetRate(MIDDLE_EXIT), countryPairEntropy(), countryTripleEntropy()));
+        for (CountryPair pair : topPairs(k, false)) sb.append(' ').append(pair);
+        return sb.toString();
+    }
+}
@@ -0,0 +1,82 @@
+package pt.unl.fct.pds.project2.simulation;
+
+import java.util.Arrays;
+
+/**
+ * Fila de eventos para simulação discreta: heap mínimo 4-ário sobre arrays primitivos
+ * (instante e um int de payload por evento), sem objetos por evento. Com 4 filhos por
+ * nó a altura é metade da de um heap binário e os filhos de um nó estão contíguos,
+ * o que reduz as falhas de cache ao retirar eventos de filas grandes. Eventos com o
+ * mesmo instante saem por ordem arbitrária.
+ */
+public class EventQueue {
+
+    private double[] times;
+    private int[] payloads;
+    private int size;
+
+    public EventQueue() {
+        this(1024);
+    }
+
+    public EventQueue(int capacity) {
+        this.times = new double[Math.max(2, capacity)];
+        this.payloads = new int[times.length];
+    }
+
+    public int size() {return size;}
+    public boolean isEmpty() {return size == 0;}
+
+    public void push(double time, int payload) {
+        if (size == times.length) {
+            times = Arrays.copyOf(times, 2 * size);
+            payloads = Arrays.copyOf(payloads, 2 * size);
+        }
+        // Sobe a partir da última posição
+        int i = size++;
+        while (i > 0) {
+            int parent = (i - 1) >>> 2;
+            if (times[parent] <= time) break;
+            times[i] = times[parent];
+            payloads[i] = payloads[parent];
+            i = parent;
+        }
+        times[i] = time;
+        payloads[i] = payload;
+    }
+
+    // Instante do próximo evento (a fila não pode estar vazia)
+    public double peekTime() {return times[0];}
+
+    public int peekPayload() {return payloads[0];}
+
+    /**
+     * Retira o próximo evento e devolve o seu payload (o instante é o de
+     * {@link #peekTime} antes da chamada).
+     */
+    public int pop() {
+        if (size == 0) throw new IllegalStateException("Empty event queue");
+        int top = payloads[0];
+        double time = times[--size];
+        int payload = payloads[size];
+
+        // Desce o último elemento a partir da raiz, pelo menor dos filhos
+        int i = 0;
+        while (true) {
+            int first = 4 * i + 1;
+            if (first >= size) break;
+            int child = first;
+            int last = Math.min(first + 4, size);
+            for (int c = first + 1; c < last; c++) if (times[c] < times[child]) child = c;
+            if (time <= times[child]) break;
+            times[i] = times[child];
+            payloads[i] = payloads[child];
+            i = child;
+        }
+        times[i] = time;
+        payloads[i] = payload;
+        return top;
+    }
+
+    public void clear() {size = 0;}
+}
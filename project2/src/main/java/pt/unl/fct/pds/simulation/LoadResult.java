@@ -0,0 +1,106 @@
+package pt.unl.fct.pds.project2.simulation;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Resultado de um {@link LoadSimulator}: débito realizado de cada circuito (KB/s, com a
+ * capacidade partilhada) face ao débito isolado (bandwidth mínimo do circuito, como em
+ * calculateMinBandwidth) e utilização de cada relay (volume entregue / capacidade x tempo).
+ */
+public class LoadResult {
+
+    private final int algorithm;
+    private final double arrivalRate;
+    private final double meanDuration;
+    private final double horizon;
+    private final long circuits;
+    private final long failed;
+    private final long events;
+    private final int peakActive;
+    private final double meanActive;
+    private final LogHistogram throughputs;
+    private final LogHistogram isolated;
+    private final double[] utilization;
+    private final long[] relayCircuits;
+    private final long elapsedNanos;
+
+    // Utilizações dos relays com pelo menos um circuito, por ordem crescente
+    private final double[] usedUtilization;
+
+    LoadResult(int algorithm, double arrivalRate, double meanDuration, double horizon, long circuits, long failed,
+               long events, int peakActive, double meanActive, LogHistogram throughputs, LogHistogram isolated,
+               double[] utilization, long[] relayCircuits, long elapsedNanos) {
+        this.algorithm = algorithm;
+        this.arrivalRate = arrivalRate;
+        this.meanDuration = meanDuration;
+        this.horizon = horizon;
+        this.circuits = circuits;
+        this.failed = failed;
+        this.events = events;
+        this.peakActive = peakActive;
+        this.meanActive = meanActive;
+        this.throughputs = throughputs;
+        this.isolated = isolated;
+        this.utilization = utilization;
+        this.relayCircuits = relayCircuits;
+        this.elapsedNanos = elapsedNanos;
+
+        int used = 0;
+        double[] values = new double[utilization.length];
+        for (int r = 0; r < utilization.length; r++) if (relayCircuits[r] > 0) values[used++] = utilization[r];
+        this.usedUtilization = Arrays.copyOf(values, used);
+        Arrays.sort(usedUtilization);
+    }
+
+    public int getAlgorithm() {return algorithm;}
+    public double getArrivalRate() {return arrivalRate;}
+    public double getMeanDuration() {return meanDuration;}
+    public double getHorizon() {return horizon;}
+    public long getCircuits() {return circuits;}
+    public long getFailed() {return failed;}
+    public long getEvents() {return events;}
+    public int getPeakActive() {return peakActive;}
+    public double getMeanActive() {return meanActive;}
+    public LogHistogram getThroughputs() {return throughputs;}
+    public LogHistogram getIsolated() {return isolated;}
+    public long getElapsedNanos() {return elapsedNanos;}
+
+    public double eventsPerSecond() {
+        return elapsedNanos == 0 ? 0 : events * 1e9 / elapsedNanos;
+    }
+
+    public double utilization(int relay) {return utilization[relay];}
+    public long relayCircuits(int relay) {return relayCircuits[relay];}
+
+    // Relays usados por pelo menos um circuito
+    public int usedRelays() {return usedUtilization.length;}
+
+    // Percentil (0-100) da utilização dos relays usados
+    public double utilizationPercentile(double p) {
+        if (usedUtilization.length == 0) return 0;
+        int rank = (int) Math.ceil(p / 100 * usedUtilization.length) - 1;
+        return usedUtilization[Math.max(0, Math.min(usedUtilization.length - 1, rank))];
+    }
+
+    // Relays usados com utilização >= threshold
+    public int relaysAbove(double threshold) {
+        int n = 0;
+        for (double u : usedUtilization) if (u >= threshold) n++;
+        return n;
+    }
+
+    // Débito realizado médio face ao isolado
+    public double throughputRatio() {
+        return isolated.getMean() == 0 ? 0 : throughputs.getMean() / isolated.getMean();
+    }
+
+    public String summary() {
+        return String.format(Locale.ROOT, "%d circuits (%d failed), %d events in %.1f ms (%.0f events/s);"
+                        + " active circuits: mean=%.0f, peak=%d; realized/isolated throughput=%.3f;"
+                        + " utilization of %d used relays: p50=%.3f, p90=%.3f, p99=%.3f, max=%.3f, >=0.9: %d",
+                circuits, failed, events, elapsedNanos / 1e6, eventsPerSecond(), meanActive, peakActive,
+                throughputRatio(), usedRelays(), utilizationPercentile(50), utilizationPercentile(90),
+                utilizationPercentile(99), utilizationPercentile(100), relaysAbove(0.9));
+    }
+}
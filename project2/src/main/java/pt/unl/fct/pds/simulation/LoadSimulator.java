@@ -0,0 +1,207 @@
+package pt.unl.fct.pds.project2.simulation;
+
+import pt.unl.fct.pds.project2.model.RelayTable;
+import pt.unl.fct.pds.project2.utils.PathSelector;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Simulação de eventos discretos da carga dos circuitos sobre os relays.
+ *
+ * Os circuitos chegam num processo de Poisson, ficam abertos durante um tempo
+ * exponencial e transferem continuamente (clientes sempre com dados). A capacidade de
+ * cada relay é o bandwidth do consensus, partilhada em partes iguais pelos circuitos
+ * ativos nesse momento (processor sharing). Os eventos (chegadas e fechos) estão numa
+ * {@link EventQueue}.
+ *
+ * A carga é mantida de forma incremental: cada relay guarda o número de circuitos
+ * ativos e um relógio virtual com o volume acumulado que um circuito recebeu desde o
+ * início (integral de capacidade / ativos). Um circuito guarda o relógio de cada relay
+ * ao abrir; ao fechar, o volume que cada relay lhe ofereceu é a diferença, e o débito
+ * realizado é o do relay mais restritivo (o mínimo das médias, uma aproximação por cima
+ * do mínimo instantâneo). Cada evento custa O(log n) na fila e O(1) por relay.
+ *
+ * As chegadas e as durações usam um gerador e a seleção de caminhos outro, pelo que
+ * Original e Geo-Aware com a mesma semente veem exatamente a mesma procura.
+ */
+public class LoadSimulator {
+
+    public static final double DEFAULT_MEAN_DURATION = 60.0;
+
+    // Payload do evento de chegada; os fechos usam o slot do circuito
+    private static final int ARRIVAL = -1;
+
+    private final PathSelector selector;
+    private final int algorithm;
+    private final double alpha;
+    private final double beta;
+
+    // Estado por relay, intercalado (um acesso à memória por relay em cada evento):
+    // relógio virtual (KB recebidos por um circuito desde o início), último instante
+    // atualizado, capacidade (KB/s) e circuitos ativos
+    private static final int CLOCK = 0;
+    private static final int LAST_UPDATE = 1;
+    private static final int CAPACITY = 2;
+    private static final int ACTIVE = 3;
+    private static final int RELAY_STRIDE = 4;
+
+    private double[] relays;
+    private double[] delivered;       // volume (KB) entregue aos circuitos já fechados
+    private long[] relayCircuits;
+
+    // Estado por circuito aberto (slot): instante de abertura e relógio de cada relay nessa altura
+    private static final int SLOT_STRIDE = 4;
+    private int[] paths = new int[3 * 1024];
+    private double[] slots = new double[SLOT_STRIDE * 1024];
+    private int[] freeSlots = new int[1024];
+    private int numFree;
+    private int numSlots;
+
+    public LoadSimulator(PathSelector selector, int algorithm, double alpha, double beta) {
+        if (algorithm != SimulationEngine.ORIGINAL && algorithm != SimulationEngine.GEO_AWARE) {
+            throw new IllegalArgumentException("Invalid algorithm: " + algorithm);
+        }
+        this.selector = selector;
+        this.algorithm = algorithm;
+        this.alpha = alpha;
+        this.beta = beta;
+    }
+
+    /**
+     * @param arrivalRate circuitos abertos por segundo
+     * @param meanDuration duração média de um circuito (s)
+     * @param horizon instante final (s); os circuitos ainda abertos fecham nesse instante
+     */
+    public LoadResult run(double arrivalRate, double meanDuration, double horizon, long seed) {
+        if (arrivalRate <= 0 || meanDuration <= 0 || horizon <= 0) {
+            throw new IllegalArgumentException("Invalid load: rate=" + arrivalRate + ", duration=" + meanDuration
+                    + ", horizon=" + horizon);
+        }
+        long start = System.nanoTime();
+        RelayTable table = selector.getTable();
+        reset(table);
+
+        SplittableRandom arrivals = new SplittableRandom(seed);
+        SplittableRandom choices = arrivals.split();
+        LogHistogram throughputs = new LogHistogram();
+        LogHistogram isolated = new LogHistogram();
+        int[] path = new int[3];
+        EventQueue queue = new EventQueue(Math.max(1024, (int) Math.min(1 << 24, 2 * arrivalRate * meanDuration)));
+
+        long circuits = 0;
+        long failed = 0;
+        long events = 0;
+        int open = 0;
+        int peak = 0;
+        double activeArea = 0;
+        double now = 0;
+
+        queue.push(exponential(arrivals, 1 / arrivalRate), ARRIVAL);
+        while (!queue.isEmpty() && queue.peekTime() <= horizon) {
+            double t = queue.peekTime();
+            int event = queue.pop();
+            events++;
+            activeArea += (t - now) * open;
+            now = t;
+
+            if (event == ARRIVAL) {
+                queue.push(t + exponential(arrivals, 1 / arrivalRate), ARRIVAL);
+                double duration = exponential(arrivals, meanDuration);
+                if (algorithm == SimulationEngine.ORIGINAL) selector.selectPathIds(choices, path);
+                else selector.selectPathGeoIds(choices, alpha, beta, path);
+                circuits++;
+                if (path[0] < 0 || path[1] < 0 || path[2] < 0) {
+                    failed++;
+                    continue;
+                }
+                queue.push(t + duration, open(path, t));
+                peak = Math.max(peak, ++open);
+            } else {
+                close(event, t, throughputs, isolated);
+                open--;
+            }
+        }
+        activeArea += (horizon - now) * open;
+
+        // Circuitos ainda abertos no horizonte
+        while (!queue.isEmpty()) {
+            int event = queue.pop();
+            if (event != ARRIVAL) close(event, horizon, throughputs, isolated);
+        }
+
+        double[] utilization = new double[table.size()];
+        for (int r = 0; r < utilization.length; r++) {
+            double capacity = relays[r * RELAY_STRIDE + CAPACITY];
+            utilization[r] = capacity > 0 ? delivered[r] / (capacity * horizon) : 0;
+        }
+        return new LoadResult(algorithm, arrivalRate, meanDuration, horizon, circuits, failed, events, peak,
+                activeArea / horizon, throughputs, isolated, utilization, relayCircuits, System.nanoTime() - start);
+    }
+
+    private void reset(RelayTable table) {
+        int n = table.size();
+        relays = new double[n * RELAY_STRIDE];
+        for (int r = 0; r < n; r++) relays[r * RELAY_STRIDE + CAPACITY] = Math.max(0, table.getBandwidth(r));
+        delivered = new double[n];
+        relayCircuits = new long[n];
+        numFree = 0;
+        numSlots = 0;
+    }
+
+    private static double exponential(SplittableRandom rng, double mean) {
+        return -mean * Math.log(1 - rng.nextDouble());
+    }
+
+    // Avança o relógio virtual do relay (posição base em relays) até t com os circuitos ativos até agora
+    private void advance(int base, double t) {
+        double n = relays[base + ACTIVE];
+        if (n > 0) relays[base + CLOCK] += (t - relays[base + LAST_UPDATE]) * relays[base + CAPACITY] / n;
+        relays[base + LAST_UPDATE] = t;
+    }
+
+    private int open(int[] path, double t) {
+        int slot = allocate();
+        slots[SLOT_STRIDE * slot] = t;
+        for (int k = 0; k < 3; k++) {
+            int relay = path[k];
+            int base = relay * RELAY_STRIDE;
+            advance(base, t);
+            relays[base + ACTIVE]++;
+            relayCircuits[relay]++;
+            paths[3 * slot + k] = relay;
+            slots[SLOT_STRIDE * slot + 1 + k] = relays[base + CLOCK];
+        }
+        return slot;
+    }
+
+    private void close(int slot, double t, LogHistogram throughputs, LogHistogram isolated) {
+        double duration = t - slots[SLOT_STRIDE * slot];
+        double volume = Double.MAX_VALUE;
+        double bottleneck = Double.MAX_VALUE;
+        for (int k = 0; k < 3; k++) {
+            int base = paths[3 * slot + k] * RELAY_STRIDE;
+            advance(base, t);
+            relays[base + ACTIVE]--;
+            volume = Math.min(volume, relays[base + CLOCK] - slots[SLOT_STRIDE * slot + 1 + k]);
+            bottleneck = Math.min(bottleneck, relays[base + CAPACITY]);
+        }
+        for (int k = 0; k < 3; k++) delivered[paths[3 * slot + k]] += volume;
+        if (duration > 0) {
+            throughputs.record(Math.round(volume / duration));
+            isolated.record(Math.round(bottleneck));
+        }
+        freeSlots[numFree++] = slot;
+    }
+
+    private int allocate() {
+        if (numFree > 0) return freeSlots[--numFree];
+        if (numSlots == freeSlots.length) {
+            int grown = 2 * freeSlots.length;
+            paths = Arrays.copyOf(paths, 3 * grown);
+            slots = Arrays.copyOf(slots, SLOT_STRIDE * grown);
+            freeSlots = Arrays.copyOf(freeSlots, grown);
+        }
+        return numSlots++;
+    }
+}
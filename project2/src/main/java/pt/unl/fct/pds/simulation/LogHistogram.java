@@ -0,0 +1,116 @@
+package pt.unl.fct.pds.project2.simulation;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Histograma de memória fixa com buckets logarítmicos (estilo HdrHistogram)
+ * para valores inteiros não negativos.
+ *
+ * Os valores abaixo de 2 * 2^SUB_BITS são contados exatamente; acima disso cada
+ * potência de 2 é dividida em 2^SUB_BITS sub-buckets, o que limita o erro relativo
+ * dos percentis a 2^-SUB_BITS (~0,8%). Média e variância são exatas (Welford) e
+ * duas instâncias combinam-se com {@link #merge}, pelo que cada thread pode ter
+ * o seu histograma.
+ */
+public class LogHistogram {
+
+    private static final int SUB_BITS = 7;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int NUM_BUCKETS = 2 * SUB_COUNT + (63 - SUB_BITS) * SUB_COUNT;
+
+    private final long[] counts = new long[NUM_BUCKETS];
+    private long count;
+    private long min = Long.MAX_VALUE;
+    private long max = Long.MIN_VALUE;
+    private double mean;
+    private double m2;                   // soma dos quadrados dos desvios (Welford)
+
+    public void record(long value) {
+        if (value < 0) value = 0;
+        counts[indexOf(value)]++;
+        count++;
+        if (value < min) min = value;
+        if (value > max) max = value;
+
+        double delta = value - mean;
+        mean += delta / count;
+        m2 += delta * (value - mean);
+    }
+
+    public void merge(LogHistogram other) {
+        if (other.count == 0) return;
+        for (int i = 0; i < NUM_BUCKETS; i++) counts[i] += other.counts[i];
+
+        long total = count + other.count;
+        double delta = other.mean - mean;
+        m2 += other.m2 + delta * delta * ((double) count * other.count / total);
+        mean += delta * other.count / total;
+        count = total;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    public void reset() {
+        Arrays.fill(counts, 0);
+        count = 0;
+        min = Long.MAX_VALUE;
+        max = Long.MIN_VALUE;
+        mean = 0;
+        m2 = 0;
+    }
+
+    // Bucket 0 cobre [0, 2*SUB_COUNT) com resolução 1; o bucket k >= 1 cobre
+    // [SUB_COUNT * 2^k, SUB_COUNT * 2^(k+1)) com resolução 2^k
+    private static int indexOf(long value) {
+        int k = Math.max(0, 63 - Long.numberOfLeadingZeros(value) - SUB_BITS);
+        if (k == 0) return (int) value;
+        return 2 * SUB_COUNT + (k - 1) * SUB_COUNT + (int) ((value >>> k) - SUB_COUNT);
+    }
+
+    private static long lowestValue(int index) {
+        if (index < 2 * SUB_COUNT) return index;
+        int k = (index - 2 * SUB_COUNT) / SUB_COUNT + 1;
+        long sub = (index - 2 * SUB_COUNT) % SUB_COUNT + SUB_COUNT;
+        return sub << k;
+    }
+
+    private static long bucketWidth(int index) {
+        if (index < 2 * SUB_COUNT) return 1;
+        return 1L << ((index - 2 * SUB_COUNT) / SUB_COUNT + 1);
+    }
+
+    public long getCount() {return count;}
+    public long getMin() {return count == 0 ? 0 : min;}
+    public long getMax() {return count == 0 ? 0 : max;}
+    public double getMean() {return mean;}
+    public double getVariance() {return count < 2 ? 0 : m2 / (count - 1);}
+    public double getStdDev() {return Math.sqrt(getVariance());}
+
+    /**
+     * Valor no percentil p (0-100): ponto médio do bucket que contém essa posição,
+     * limitado ao mínimo e máximo observados.
+     */
+    public long percentile(double p) {
+        if (count == 0) return 0;
+        long rank = (long) Math.ceil(p / 100.0 * count);
+        rank = Math.max(1, Math.min(count, rank));
+
+        long seen = 0;
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                long mid = lowestValue(i) + (bucketWidth(i) - 1) / 2;
+                return Math.max(min, Math.min(max, mid));
+            }
+        }
+        return max;
+    }
+
+    public String summary() {
+        if (count == 0) return "No data";
+        return String.format(Locale.ROOT, "min=%d, max=%d, avg=%.2f, var=%.2f, p1=%d, p5=%d, p50=%d, p95=%d, p99=%d",
+                getMin(), getMax(), getMean(), getVariance(),
+                percentile(1), percentile(5), percentile(50), percentile(95), percentile(99));
+    }
+}
@@ -0,0 +1,90 @@
+package pt.unl.fct.pds.project2.simulation;
+
+import pt.unl.fct.pds.project2.model.Circuit;
+import pt.unl.fct.pds.project2.model.Node;
+import pt.unl.fct.pds.project2.model.RelayTable;
+import pt.unl.fct.pds.project2.utils.LatencyModel;
+
+/**
+ * Circuito codificado num long: algoritmo nos bits 60-61 e os ids do guard, middle e
+ * exit em campos de 20 bits (59-40, 39-20, 19-0). Um campo com todos os bits a 1
+ * representa a falta de relay nessa posição (-1).
+ *
+ * Com o guard nos bits mais altos, a ordem natural dos longs agrupa os circuitos
+ * por algoritmo e depois por guard.
+ */
+public final class PackedCircuit {
+
+    public static final int RELAY_BITS = 20;
+    // Maior id de relay representável (o valor seguinte marca a falta de relay)
+    public static final int MAX_RELAY = (1 << RELAY_BITS) - 2;
+    // Posição sem circuito (todos os bits a 1: algoritmo 3, nunca usado, e nenhum relay)
+    public static final long EMPTY = -1L;
+
+    private static final long RELAY_MASK = (1L << RELAY_BITS) - 1;
+    private static final int GUARD_SHIFT = 2 * RELAY_BITS;
+    private static final int MIDDLE_SHIFT = RELAY_BITS;
+    private static final int ALGORITHM_SHIFT = 3 * RELAY_BITS;
+
+    private PackedCircuit() {}
+
+    public static long encode(int algorithm, int guard, int middle, int exit) {
+        if ((algorithm & ~3) != 0) throw new IllegalArgumentException("Invalid algorithm: " + algorithm);
+        return ((long) algorithm << ALGORITHM_SHIFT) | (field(guard) << GUARD_SHIFT)
+                | (field(middle) << MIDDLE_SHIFT) | field(exit);
+    }
+
+    private static long field(int relay) {
+        if (relay < 0) return RELAY_MASK;
+        if (relay > MAX_RELAY) throw new IllegalArgumentException("Relay id too large: " + relay);
+        return relay;
+    }
+
+    private static int field(long circuit, int shift) {
+        int id = (int) ((circuit >>> shift) & RELAY_MASK);
+        return id == RELAY_MASK ? -1 : id;
+    }
+
+    public static int algorithm(long circuit) {return (int) (circuit >>> ALGORITHM_SHIFT) & 3;}
+    public static int guard(long circuit) {return field(circuit, GUARD_SHIFT);}
+    public static int middle(long circuit) {return field(circuit, MIDDLE_SHIFT);}
+    public static int exit(long circuit) {return field(circuit, 0);}
+
+    // Relay da posição (GUARD, MIDDLE ou EXIT de SelectionStats)
+    public static int relay(long circuit, int position) {
+        switch (position) {
+            case SelectionStats.GUARD: return guard(circuit);
+            case SelectionStats.MIDDLE: return middle(circuit);
+            case SelectionStats.EXIT: return exit(circuit);
+            default: throw new IllegalArgumentException("Invalid position: " + position);
+        }
+    }
+
+    public static boolean isComplete(long circuit) {
+        return guard(circuit) >= 0 && middle(circuit) >= 0 && exit(circuit) >= 0;
+    }
+
+    // Menor bandwidth do circuito (0 se estiver incompleto)
+    public static int minBandwidth(long circuit, RelayTable table) {
+        if (!isComplete(circuit)) return 0;
+        return Math.min(table.getBandwidth(guard(circuit)),
+                Math.min(table.getBandwidth(middle(circuit)), table.getBandwidth(exit(circuit))));
+    }
+
+    /**
+     * Vista {@link Circuit} com os nodes da tabela e o RTT esperado do modelo por omissão
+     * (só para circuitos completos).
+     */
+    public static Circuit toCircuit(int id, long circuit, RelayTable table) {
+        if (!isComplete(circuit)) return new Circuit(id, new Node[0], 0);
+        Node[] nodes = {table.node(guard(circuit)), table.node(middle(circuit)), table.node(exit(circuit))};
+        Circuit view = new Circuit(id, nodes, minBandwidth(circuit, table));
+        view.setExpectedRtt(LatencyModel.getDefault().circuitRttMicros(table,
+                guard(circuit), middle(circuit), exit(circuit)) / 1000.0);
+        return view;
+    }
+
+    public static String toString(long circuit) {
+        return algorithm(circuit) + ":" + guard(circuit) + "," + middle(circuit) + "," + exit(circuit);
+    }
+}
@@ -0,0 +1,141 @@
+package pt.unl.fct.pds.project2.simulation;
+
+import pt.unl.fct.pds.project2.model.RelayTable;
+import pt.unl.fct.pds.project2.utils.PathSelector;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Varrimento de uma grelha de valores de alpha e beta sobre um único consensus.
+ *
+ * O consensus é lido, geolocalizado e indexado uma vez (o {@link PathSelector}, só de
+ * leitura durante o varrimento) e os pontos da grelha são tarefas independentes
+ * distribuídas pelas threads. Todos os pontos usam os mesmos números aleatórios
+ * (números aleatórios comuns): o circuito i de cada ponto sai do mesmo gerador do
+ * bloco, como no {@link SimulationEngine}, e cada etapa da seleção consome
+ * exatamente um número. Assim as diferenças entre pontos vêm dos parâmetros e não
+ * do ruído da amostragem. O Original não depende dos parâmetros e corre uma só vez,
+ * com os mesmos números.
+ */
+public class ParameterSweep {
+
+    private final PathSelector selector;
+    private final int threads;
+
+    public ParameterSweep(PathSelector selector, int threads) {
+        this.selector = selector;
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Valores de um parâmetro: lista ("0,0.5,1") ou intervalo com o número de pontos
+     * ("início:fim:pontos", extremos incluídos).
+     */
+    public static double[] parseValues(String spec) {
+        String[] range = spec.split(":");
+        if (range.length == 3) {
+            double start = Double.parseDouble(range[0]);
+            double end = Double.parseDouble(range[1]);
+            int points = Integer.parseInt(range[2]);
+            if (points < 1) throw new IllegalArgumentException("Invalid number of points: " + spec);
+            double[] values = new double[points];
+            for (int k = 0; k < points; k++) {
+                values[k] = points == 1 ? start : start + (end - start) * k / (points - 1);
+            }
+            return values;
+        }
+        if (range.length != 1) throw new IllegalArgumentException("Invalid values: " + spec);
+        String[] items = spec.split(",");
+        double[] values = new double[items.length];
+        for (int k = 0; k < items.length; k++) values[k] = Double.parseDouble(items[k].trim());
+        return values;
+    }
+
+    /**
+     * Simula 'circuits' circuitos em cada ponto. O primeiro elemento é o Original; os
+     * seguintes são os pontos Geo-Aware, por ordem de alpha e depois de beta.
+     */
+    public List<SweepPoint> run(double[] alphas, double[] betas, long circuits, long seed) {
+        int points = alphas.length * betas.length;
+        SweepPoint[] results = new SweepPoint[points + 1];
+        AtomicInteger nextPoint = new AtomicInteger();
+
+        int workers = Math.max(1, Math.min(threads, points + 1));
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        try {
+            List<Future<Void>> futures = new ArrayList<>();
+            for (int w = 0; w < workers; w++) {
+                futures.add(pool.submit(new Worker(alphas, betas, circuits, seed, nextPoint, results)));
+            }
+            for (Future<Void> f : futures) f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Sweep interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Sweep failed", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+
+        List<SweepPoint> list = new ArrayList<>(results.length);
+        for (SweepPoint p : results) list.add(p);
+        return list;
+    }
+
+    private class Worker implements Callable<Void> {
+        private final double[] alphas;
+        private final double[] betas;
+        private final long circuits;
+        private final long seed;
+        private final AtomicInteger nextPoint;
+        private final SweepPoint[] results;
+
+        Worker(double[] alphas, double[] betas, long circuits, long seed,
+               AtomicInteger nextPoint, SweepPoint[] results) {
+            this.alphas = alphas;
+            this.betas = betas;
+            this.circuits = circuits;
+            this.seed = seed;
+            this.nextPoint = nextPoint;
+            this.results = results;
+        }
+
+        @Override
+        public Void call() {
+            RelayTable table = selector.getTable();
+            int[] path = new int[3];
+            int point;
+            // Ponto 0: Original; ponto k >= 1: (alphas[(k-1) / |betas|], betas[(k-1) % |betas|])
+            while ((point = nextPoint.getAndIncrement()) < results.length) {
+                boolean original = point == 0;
+                double alpha = original ? 0 : alphas[(point - 1) / betas.length];
+                double beta = original ? 0 : betas[(point - 1) % betas.length];
+
+                CircuitMetrics metrics = new CircuitMetrics(table.size());
+                long numChunks = (circuits + SimulationEngine.CHUNK_SIZE - 1) / SimulationEngine.CHUNK_SIZE;
+                for (long chunk = 0; chunk < numChunks; chunk++) {
+                    SplittableRandom rng = SimulationEngine.chunkRandom(seed, chunk);
+                    long end = Math.min(circuits, (chunk + 1) * SimulationEngine.CHUNK_SIZE);
+                    for (long i = chunk * SimulationEngine.CHUNK_SIZE; i < end; i++) {
+                        if (original) selector.selectPathIds(rng, path);
+                        else selector.selectPathGeoIds(rng, alpha, beta, path);
+                        if (path[0] < 0 || path[1] < 0 || path[2] < 0) continue;
+                        metrics.update(path[0], path[1], path[2], Math.min(table.getBandwidth(path[0]),
+                                Math.min(table.getBandwidth(path[1]), table.getBandwidth(path[2]))));
+                    }
+                }
+                results[point] = new SweepPoint(original ? SimulationEngine.ORIGINAL : SimulationEngine.GEO_AWARE,
+                        alpha, beta, metrics);
+            }
+            return null;
+        }
+    }
+}
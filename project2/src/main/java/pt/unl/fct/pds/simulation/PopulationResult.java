@@ -0,0 +1,140 @@
+package pt.unl.fct.pds.project2.simulation;
+
+import pt.unl.fct.pds.project2.model.CountryDictionary;
+import pt.unl.fct.pds.project2.model.RelayTable;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Métricas agregadas de um {@link PopulationSimulator}: exposição dos clientes aos
+ * guards (no fim da simulação) e as métricas dos circuitos de cada algoritmo.
+ */
+public class PopulationResult {
+
+    private final int clients;
+    private final int primaryGuards;
+    private final int days;
+    private final CircuitMetrics original;
+    private final CircuitMetrics geoAware;
+    private final long elapsedNanos;
+
+    // Clientes que têm cada relay entre os seus guards
+    private final long[] guardClients;
+    // Clientes com pelo menos um guard em cada país (id do CountryDictionary)
+    private final long[] countryClients;
+    private final long guardsUsed;
+
+    PopulationResult(RelayTable table, int clients, int primaryGuards, int days, int[] guards, byte[] used,
+                     CircuitMetrics original, CircuitMetrics geoAware, long elapsedNanos) {
+        this.clients = clients;
+        this.primaryGuards = primaryGuards;
+        this.days = days;
+        this.original = original;
+        this.geoAware = geoAware;
+        this.elapsedNanos = elapsedNanos;
+
+        guardClients = new long[table.size()];
+        countryClients = new long[CountryDictionary.size()];
+        short[] seenCountries = new short[primaryGuards];
+        long total = 0;
+        for (int c = 0; c < clients; c++) {
+            int base = c * primaryGuards;
+            int numCountries = 0;
+            for (int k = 0; k < primaryGuards; k++) {
+                int g = guards[base + k];
+                if (g < 0 || isRepeated(guards, base, k, g)) continue;
+                guardClients[g]++;
+                short country = table.getCountry(g);
+                if (!contains(seenCountries, numCountries, country)) {
+                    seenCountries[numCountries++] = country;
+                    if (country < countryClients.length) countryClients[country]++;
+                }
+            }
+            total += used[c] & 0xFF;
+        }
+        guardsUsed = total;
+    }
+
+    private static boolean isRepeated(int[] guards, int base, int k, int g) {
+        for (int j = 0; j < k; j++) if (guards[base + j] == g) return true;
+        return false;
+    }
+
+    private static boolean contains(short[] values, int n, short value) {
+        for (int j = 0; j < n; j++) if (values[j] == value) return true;
+        return false;
+    }
+
+    public int getClients() {return clients;}
+    public int getPrimaryGuards() {return primaryGuards;}
+    public int getDays() {return days;}
+    public CircuitMetrics getOriginal() {return original;}
+    public CircuitMetrics getGeoAware() {return geoAware;}
+    public long getElapsedNanos() {return elapsedNanos;}
+
+    public long guardClients(int relay) {return guardClients[relay];}
+
+    // Relays que são guard de pelo menos um cliente
+    public int guardDiversity() {
+        int distinct = 0;
+        for (long c : guardClients) if (c > 0) distinct++;
+        return distinct;
+    }
+
+    // Entropia (bits) da distribuição dos clientes pelos guards
+    public double guardEntropy() {
+        long total = 0;
+        for (long c : guardClients) total += c;
+        if (total == 0) return 0.0;
+        double entropy = 0.0;
+        for (long c : guardClients) {
+            if (c == 0) continue;
+            double p = (double) c / total;
+            entropy -= p * (Math.log(p) / Math.log(2));
+        }
+        return entropy;
+    }
+
+    // Fração de clientes que usam o guard mais popular
+    public double maxGuardExposure() {
+        long max = 0;
+        for (long c : guardClients) max = Math.max(max, c);
+        return (double) max / clients;
+    }
+
+    // Fração de clientes que usam pelo menos um dos k guards mais populares
+    // (limite superior: soma das exposições, limitada a 1)
+    public double topGuardsExposure(int k) {
+        long[] sorted = guardClients.clone();
+        Arrays.sort(sorted);
+        long sum = 0;
+        for (int j = sorted.length - 1; j >= 0 && j >= sorted.length - k; j--) sum += sorted[j];
+        return Math.min(1.0, (double) sum / clients);
+    }
+
+    // Fração de clientes com pelo menos um guard no país
+    public double countryExposure(short country) {
+        return country >= 0 && country < countryClients.length ? (double) countryClients[country] / clients : 0;
+    }
+
+    // Média de guards diferentes escolhidos por cliente ao longo da simulação
+    public double meanGuardsPerClient() {
+        return (double) guardsUsed / clients;
+    }
+
+    public String exposureSummary(int topCountries) {
+        Integer[] order = new Integer[countryClients.length];
+        for (int c = 0; c < order.length; c++) order[c] = c;
+        Arrays.sort(order, (a, b) -> Long.compare(countryClients[b], countryClients[a]));
+
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.ROOT, "guards=%d, entropy=%.4f, max=%.4f, top10=%.4f, guards/client=%.2f, countries:",
+                guardDiversity(), guardEntropy(), maxGuardExposure(), topGuardsExposure(10), meanGuardsPerClient()));
+        for (int j = 0; j < Math.min(topCountries, order.length) && countryClients[order[j]] > 0; j++) {
+            sb.append(String.format(Locale.ROOT, " %s=%.3f", CountryDictionary.code((short) (int) order[j]),
+                    countryExposure((short) (int) order[j])));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,246 @@
+package pt.unl.fct.pds.project2.simulation;
+
+import pt.unl.fct.pds.project2.instrumentation.SelectionProbe;
+import pt.unl.fct.pds.project2.model.RelayTable;
+import pt.unl.fct.pds.project2.utils.PathSelector;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Simulação de uma população de clientes com guards persistentes.
+ *
+ * Cada cliente mantém um pequeno conjunto de guards primários (2, como
+ * guard-n-primary-guards-to-use), todos em /16 diferentes, e constrói todos os
+ * circuitos através deles; cada guard tem um tempo de vida sorteado e é substituído
+ * quando expira ou deixa de ser guard. O estado de cada cliente são arrays primitivos (id e dia de
+ * expiração de cada guard, e o número de guards que já usou): 8 bytes por guard
+ * mais 1 byte, ou seja 17 bytes por cliente com 2 guards.
+ *
+ * Os dias são simulados em sequência; dentro de um dia os clientes são divididos em
+ * blocos processados em paralelo, cada bloco com um SplittableRandom derivado só da
+ * semente, do dia e do índice do bloco (resultado independente do número de threads).
+ * Os dois algoritmos usam os mesmos guards, de modo que só diferem no exit e no middle.
+ */
+public class PopulationSimulator {
+
+    public static final int DEFAULT_PRIMARY_GUARDS = 2;
+    // Tempo de vida de um guard escolhido (dias), como o sampled guard lifetime do Tor
+    public static final int DEFAULT_MIN_LIFETIME = 90;
+    public static final int DEFAULT_MAX_LIFETIME = 120;
+
+    private static final int CHUNK_SIZE = 1 << 12;
+    // Sorteios por guard novo quando há mais /16 a excluir do que o sampler suporta
+    private static final int MAX_GUARD_ATTEMPTS = 32;
+
+    private final PathSelector selector;
+    private final int clients;
+    private final int primaryGuards;
+    private final int threads;
+    private int minLifetime = DEFAULT_MIN_LIFETIME;
+    private int maxLifetime = DEFAULT_MAX_LIFETIME;
+
+    // Estado dos clientes: guard k do cliente c na posição c * primaryGuards + k
+    private final int[] guards;
+    private final int[] expiry;
+    private final byte[] guardsUsed;
+
+    public PopulationSimulator(PathSelector selector, int clients, int threads) {
+        this(selector, clients, DEFAULT_PRIMARY_GUARDS, threads);
+    }
+
+    public PopulationSimulator(PathSelector selector, int clients, int primaryGuards, int threads) {
+        if (clients <= 0 || primaryGuards <= 0 || (long) clients * primaryGuards > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid population: " + clients + " x " + primaryGuards);
+        }
+        this.selector = selector;
+        this.clients = clients;
+        this.primaryGuards = primaryGuards;
+        this.threads = Math.max(1, threads);
+        this.guards = new int[clients * primaryGuards];
+        this.expiry = new int[clients * primaryGuards];
+        this.guardsUsed = new byte[clients];
+        Arrays.fill(guards, -1);
+    }
+
+    public void setGuardLifetime(int minDays, int maxDays) {
+        if (minDays <= 0 || maxDays < minDays) throw new IllegalArgumentException("Invalid guard lifetime");
+        this.minLifetime = minDays;
+        this.maxLifetime = maxDays;
+    }
+
+    public int getClients() {return clients;}
+    public int getPrimaryGuards() {return primaryGuards;}
+
+    // Bytes de estado por cliente
+    public int bytesPerClient() {return 8 * primaryGuards + 1;}
+
+    /**
+     * Simula 'days' dias com 'circuitsPerDay' circuitos por cliente e por dia, para
+     * cada algoritmo.
+     */
+    public PopulationResult run(int days, int circuitsPerDay, long seed, double alpha, double beta) {
+        long start = System.nanoTime();
+        int numRelays = selector.getTable().size();
+        CircuitMetrics original = new CircuitMetrics(numRelays);
+        CircuitMetrics geoAware = new CircuitMetrics(numRelays);
+
+        long numChunks = (clients + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        int workers = (int) Math.max(1, Math.min(threads, numChunks));
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        try {
+            for (int day = 0; day < days; day++) {
+                AtomicLong nextChunk = new AtomicLong();
+                List<Future<CircuitMetrics[]>> futures = new ArrayList<>();
+                for (int w = 0; w < workers; w++) {
+                    futures.add(pool.submit(new Worker(day, numChunks, nextChunk, circuitsPerDay,
+                            seed, alpha, beta)));
+                }
+                for (Future<CircuitMetrics[]> f : futures) {
+                    CircuitMetrics[] partial = f.get();
+                    original.merge(partial[SimulationEngine.ORIGINAL]);
+                    geoAware.merge(partial[SimulationEngine.GEO_AWARE]);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Simulation interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Simulation failed", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+
+        return new PopulationResult(selector.getTable(), clients, primaryGuards, days,
+                guards, guardsUsed, original, geoAware, System.nanoTime() - start);
+    }
+
+    // Substitui os guards expirados ou que deixaram de ser guards
+    private void rotateGuards(SplittableRandom rng, int client, int day) {
+        int base = client * primaryGuards;
+        // Primeiro liberta as posições a substituir, para que não restrinjam os guards novos
+        boolean rotate = false;
+        for (int k = 0; k < primaryGuards; k++) {
+            int g = guards[base + k];
+            if (g >= 0 && expiry[base + k] > day && selector.isGuardUsable(g)) continue;
+            guards[base + k] = -1;
+            rotate = true;
+        }
+        if (!rotate) return;
+
+        for (int k = 0; k < primaryGuards; k++) {
+            if (guards[base + k] >= 0) continue;
+            guards[base + k] = selectGuard(rng, base, k);
+            expiry[base + k] = day + minLifetime + rng.nextInt(maxLifetime - minLifetime + 1);
+            if (guardsUsed[client] != (byte) 0xFF) guardsUsed[client]++;
+        }
+    }
+
+    /**
+     * Guard novo para a posição k fora das /16 de todos os outros guards do cliente
+     * (e portanto nunca um deles). O sampler exclui diretamente duas /16; as restantes
+     * (mais de 3 guards primários) são excluídas por rejeição. Se a rede não tiver /16
+     * suficientes fica o último sorteio.
+     */
+    private int selectGuard(SplittableRandom rng, int base, int k) {
+        RelayTable table = selector.getTable();
+        int first = -1;
+        int second = -1;
+        for (int j = 0; j < primaryGuards; j++) {
+            int g = guards[base + j];
+            if (j == k || g < 0) continue;
+            if (first < 0) first = g;
+            else if (second < 0 && !table.same16Subnet(first, g)) second = g;
+        }
+
+        int guard = -1;
+        for (int attempt = 0; attempt < MAX_GUARD_ATTEMPTS; attempt++) {
+            guard = selector.selectGuardId(rng, first, second);
+            if (guard < 0 || outsideOtherGuards(table, base, k, guard)) return guard;
+        }
+        return guard;
+    }
+
+    private boolean outsideOtherGuards(RelayTable table, int base, int k, int guard) {
+        for (int j = 0; j < primaryGuards; j++) {
+            int g = guards[base + j];
+            if (j != k && g >= 0 && table.same16Subnet(g, guard)) return false;
+        }
+        return true;
+    }
+
+    // Guards atuais de um cliente (-1: posição sem guard)
+    int[] guardsOf(int client) {
+        return Arrays.copyOfRange(guards, client * primaryGuards, (client + 1) * primaryGuards);
+    }
+
+    private class Worker implements Callable<CircuitMetrics[]> {
+        private final int day;
+        private final long numChunks;
+        private final AtomicLong nextChunk;
+        private final int circuitsPerDay;
+        private final long seed;
+        private final double alpha;
+        private final double beta;
+
+        Worker(int day, long numChunks, AtomicLong nextChunk, int circuitsPerDay,
+               long seed, double alpha, double beta) {
+            this.day = day;
+            this.numChunks = numChunks;
+            this.nextChunk = nextChunk;
+            this.circuitsPerDay = circuitsPerDay;
+            this.seed = seed;
+            this.alpha = alpha;
+            this.beta = beta;
+        }
+
+        @Override
+        public CircuitMetrics[] call() {
+            RelayTable table = selector.getTable();
+            CircuitMetrics original = new CircuitMetrics(table.size());
+            CircuitMetrics geoAware = new CircuitMetrics(table.size());
+            int[] path = new int[3];
+            long daySeed = seed + day * 0xD1B54A32D192ED03L;
+
+            SelectionProbe probe = selector.getProbe();
+            long chunk;
+            while ((chunk = nextChunk.getAndIncrement()) < numChunks) {
+                SplittableRandom rng = SimulationEngine.chunkRandom(daySeed, chunk);
+                int end = (int) Math.min(clients, (chunk + 1) * CHUNK_SIZE);
+                long recorded = original.getCircuits() + geoAware.getCircuits();
+                for (int c = (int) (chunk * CHUNK_SIZE); c < end; c++) {
+                    rotateGuards(rng, c, day);
+                    for (int k = 0; k < circuitsPerDay; k++) {
+                        int guard = guards[c * primaryGuards + rng.nextInt(primaryGuards)];
+                        if (guard < 0) continue;
+                        selector.selectPathIdsFromGuard(rng, guard, path);
+                        record(table, original, path);
+                        selector.selectPathGeoIdsFromGuard(rng, guard, alpha, beta, path);
+                        record(table, geoAware, path);
+                    }
+                }
+                if (probe != null) {
+                    long completed = original.getCircuits() + geoAware.getCircuits() - recorded;
+                    long attempted = 2L * circuitsPerDay * (end - chunk * CHUNK_SIZE);
+                    probe.recordCircuits(completed, attempted - completed);
+                }
+            }
+            return new CircuitMetrics[]{original, geoAware};
+        }
+
+        private void record(RelayTable table, CircuitMetrics metrics, int[] path) {
+            if (path[0] < 0 || path[1] < 0 || path[2] < 0) return;
+            int minBandwidth = Math.min(table.getBandwidth(path[0]),
+                    Math.min(table.getBandwidth(path[1]), table.getBandwidth(path[2])));
+            metrics.update(path[0], path[1], path[2], minBandwidth);
+        }
+    }
+}
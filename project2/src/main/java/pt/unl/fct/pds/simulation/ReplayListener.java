@@ -0,0 +1,11 @@
+package pt.unl.fct.pds.project2.simulation;
+
+import java.io.IOException;
+
+/**
+ * Recebe cada consensus aplicado pelo {@link ConsensusReplay}, por ordem.
+ */
+public interface ReplayListener {
+
+    void onStep(ReplayStep step) throws IOException;
+}
@@ -0,0 +1,74 @@
+package pt.unl.fct.pds.project2.simulation;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Locale;
+
+/**
+ * Resultado de aplicar um consensus no {@link ConsensusReplay}: o que mudou em relação
+ * ao anterior, quanto custou, e as métricas da simulação nesse consensus (se houver).
+ */
+public class ReplayStep {
+
+    public static final String CSV_HEADER = "Index,ValidAfter,Relays,Joined,Left,Changed,ParseMs,UpdateMs,"
+            + "OriginalGlobalDiversity,OriginalGlobalEntropy,OriginalMedianBandwidth,"
+            + "GeoAwareGlobalDiversity,GeoAwareGlobalEntropy,GeoAwareMedianBandwidth\n";
+
+    private final int index;
+    private final long validAfter;
+    private final int relays;
+    private final int joined;
+    private final int left;
+    private final int changed;
+    private final long parseNanos;
+    private final long updateNanos;
+    private SimulationResult result;
+
+    public ReplayStep(int index, long validAfter, int relays, int joined, int left, int changed,
+                      long parseNanos, long updateNanos) {
+        this.index = index;
+        this.validAfter = validAfter;
+        this.relays = relays;
+        this.joined = joined;
+        this.left = left;
+        this.changed = changed;
+        this.parseNanos = parseNanos;
+        this.updateNanos = updateNanos;
+    }
+
+    public int getIndex() {return index;}
+    public long getValidAfter() {return validAfter;}
+    public int getRelays() {return relays;}
+    // Relays novos ou que regressaram
+    public int getJoined() {return joined;}
+    // Relays do consensus anterior que deixaram de aparecer
+    public int getLeft() {return left;}
+    // Total de relays aplicados ao PathSelector (inclui joined e left)
+    public int getChanged() {return changed;}
+    public long getParseNanos() {return parseNanos;}
+    public long getUpdateNanos() {return updateNanos;}
+    public SimulationResult getResult() {return result;}
+
+    void setResult(SimulationResult result) {this.result = result;}
+
+    public String toCsv() {
+        StringBuilder sb = new StringBuilder(160);
+        sb.append(index).append(',')
+                .append(validAfter == 0 ? "" : LocalDateTime.ofEpochSecond(validAfter, 0, ZoneOffset.UTC)).append(',')
+                .append(relays).append(',').append(joined).append(',').append(left).append(',').append(changed).append(',')
+                .append(String.format(Locale.ROOT, "%.3f,%.3f", parseNanos / 1e6, updateNanos / 1e6));
+        appendMetrics(sb, result == null ? null : result.getOriginal());
+        appendMetrics(sb, result == null ? null : result.getGeoAware());
+        return sb.append('\n').toString();
+    }
+
+    private static void appendMetrics(StringBuilder sb, CircuitMetrics metrics) {
+        if (metrics == null) {
+            sb.append(",,,");
+            return;
+        }
+        sb.append(',').append(metrics.globalDiversity())
+                .append(',').append(String.format(Locale.ROOT, "%.4f", metrics.globalEntropy()))
+                .append(',').append(metrics.getBandwidths().percentile(50));
+    }
+}
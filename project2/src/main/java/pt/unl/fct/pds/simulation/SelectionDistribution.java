@@ -0,0 +1,333 @@
+package pt.unl.fct.pds.project2.simulation;
+
+import pt.unl.fct.pds.project2.model.RelayTable;
+import pt.unl.fct.pds.project2.utils.PathSelector;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Distribuições marginais exatas da seleção de caminhos (probabilidade de cada relay
+ * ser guard, middle ou exit) e a respetiva entropia, sem amostragem.
+ *
+ * O modelo é o do {@link PathSelector}: exit ponderado pelo seu peso de exit (bandwidth
+ * ou bandwidth-weights do consensus); guard fora da
+ * /16 do exit, com peso (1 + alpha) se for de outro país; middle fora das /16 do guard
+ * e do exit, com os multiplicadores de beta por país. O Original é o caso
+ * alpha = beta = 0 (os samplers dão exatamente as mesmas escolhas).
+ *
+ * Todos os fatores dependem só do bloco (país, /16) de cada relay, pelo que o cálculo
+ * é feito sobre blocos: para cada par (bloco do guard, bloco do exit) obtém-se a
+ * probabilidade do par e o denominador do middle em O(1), e as contribuições para os
+ * middles são acumuladas por /16 e por país e distribuídas no fim. O custo é
+ * O(blocos de guards x blocos de exits), sub-segundo para um consensus real, em vez
+ * de milhões de circuitos simulados. Circuitos sem candidatos (falhados na simulação)
+ * são descontados e as distribuições são condicionadas ao sucesso.
+ */
+public class SelectionDistribution {
+
+    private static final int NUM_SUBNETS = 1 << 16;
+
+    private final double alpha;
+    private final double beta;
+    private final RelayTable table;
+    // Probabilidade por relay em cada posição (GUARD, MIDDLE, EXIT de SelectionStats)
+    private final double[][] probabilities = new double[3][];
+    private final double success;
+    private final long computeNanos;
+
+    private SelectionDistribution(RelayTable table, double alpha, double beta, double[][] probabilities,
+                                  double success, long computeNanos) {
+        this.table = table;
+        this.alpha = alpha;
+        this.beta = beta;
+        System.arraycopy(probabilities, 0, this.probabilities, 0, 3);
+        this.success = success;
+        this.computeNanos = computeNanos;
+    }
+
+    /**
+     * Distribuições do modo Geo-Aware com estes parâmetros (0, 0 para o Original),
+     * sobre os pools atuais do selector.
+     */
+    public static SelectionDistribution compute(PathSelector selector, double alpha, double beta) {
+        long start = System.nanoTime();
+        RelayTable table = selector.getTable();
+        int numCountries = 1;
+        for (int i = 0; i < table.size(); i++) numCountries = Math.max(numCountries, countryOf(table, i) + 1);
+
+        Blocks guards = new Blocks(table, selector.getGuardPool(), selector.getWeights(SelectionStats.GUARD), numCountries);
+        Blocks middles = new Blocks(table, selector.getMiddlePool(), selector.getWeights(SelectionStats.MIDDLE), numCountries);
+        Blocks exits = new Blocks(table, selector.getExitPool(), selector.getWeights(SelectionStats.EXIT), numCountries);
+
+        double a1 = 1 + alpha;
+        double unique = 1 + 3 * beta;
+        double sharedOne = 1 + 2 * beta;
+        double sharedBoth = 1 + beta;
+
+        // Guard: para o bloco do exit, t = P(bloco do exit) / denominador do guard
+        double[] t = new double[exits.count];
+        for (int eb = 0; eb < exits.count; eb++) {
+            if (exits.total <= 0) break;
+            int ce = exits.country[eb];
+            int se = exits.subnet[eb];
+            double denominator = a1 * (guards.total - guards.subnetWeight[se])
+                    - alpha * (guards.countryWeight[ce] - guards.weightOf(ce, se));
+            if (denominator > 0) t[eb] = exits.weight[eb] / exits.total / denominator;
+        }
+
+        // Índices dos blocos de middles com o país de um e a /16 do outro
+        int[] guardMiddle = new int[guards.count];
+        for (int gb = 0; gb < guards.count; gb++) guardMiddle[gb] = middles.indexOf(guards.country[gb], guards.subnet[gb]);
+        int[] exitMiddle = new int[exits.count];
+        for (int eb = 0; eb < exits.count; eb++) exitMiddle[eb] = middles.indexOf(exits.country[eb], exits.subnet[eb]);
+        int[] guardCountryIndex = countryIndex(guards, numCountries);
+        int[] exitCountryIndex = countryIndex(exits, numCountries);
+        int[][] guardCountryExitSubnet = crossIndex(middles, guardCountryIndex, exits);
+        int[][] exitCountryGuardSubnet = crossIndex(middles, exitCountryIndex, guards);
+
+        // Pares (guard, exit): massa de cada bloco de guards e exits com sucesso, e as
+        // contribuições v = P(par) / denominador do middle acumuladas por /16 e por país
+        double[] guardMass = new double[guards.count];
+        double[] exitMass = new double[exits.count];
+        double total = 0;                                   // soma de v
+        double[] bySubnet = new double[NUM_SUBNETS];        // v dos pares que excluem a /16
+        double[] byCountry = new double[numCountries];      // v * (unique - mult) dos pares com o país
+        double[] byBlock = new double[middles.count];       // idem, com o país e a /16 excluída
+
+        for (int gb = 0; gb < guards.count; gb++) {
+            int cg = guards.country[gb];
+            int sg = guards.subnet[gb];
+            double wg = guards.weight[gb];
+            int mgg = guardMiddle[gb];
+            double middleInGuardBlock = mgg < 0 ? 0 : middles.weight[mgg];
+            double availableAfterGuard = middles.total - middles.subnetWeight[sg];
+
+            for (int eb = 0; eb < exits.count; eb++) {
+                int se = exits.subnet[eb];
+                if (t[eb] == 0 || se == sg) continue;
+                int ce = exits.country[eb];
+                double pair = t[eb] * (cg == ce ? 1 : a1) * wg;
+
+                // Denominador do middle: peso fora das duas /16, com os países do guard e do exit
+                int mge = guardCountryExitSubnet[guardCountryIndex[cg]][eb];
+                int meg = exitCountryGuardSubnet[exitCountryIndex[ce]][gb];
+                int mee = exitMiddle[eb];
+                double mult;
+                double special = middles.countryWeight[cg] - middleInGuardBlock - (mge < 0 ? 0 : middles.weight[mge]);
+                if (cg == ce) {
+                    mult = sharedBoth;
+                } else {
+                    mult = sharedOne;
+                    special += middles.countryWeight[ce] - (meg < 0 ? 0 : middles.weight[meg])
+                            - (mee < 0 ? 0 : middles.weight[mee]);
+                }
+                double denominator = unique * (availableAfterGuard - middles.subnetWeight[se])
+                        - (unique - mult) * special;
+                if (denominator <= 0) continue;
+
+                guardMass[gb] += pair;
+                exitMass[eb] += pair;
+                double v = pair / denominator;
+                double h = v * (unique - mult);
+                total += v;
+                bySubnet[sg] += v;
+                bySubnet[se] += v;
+                if (h == 0) continue;
+                byCountry[cg] += h;
+                if (mgg >= 0) byBlock[mgg] += h;
+                if (mge >= 0) byBlock[mge] += h;
+                if (ce != cg) {
+                    byCountry[ce] += h;
+                    if (meg >= 0) byBlock[meg] += h;
+                    if (mee >= 0) byBlock[mee] += h;
+                }
+            }
+        }
+
+        double[] middleMass = new double[middles.count];
+        double success = 0;
+        for (int eb = 0; eb < exits.count; eb++) success += exitMass[eb];
+        for (int mb = 0; mb < middles.count; mb++) {
+            double factor = unique * (total - bySubnet[middles.subnet[mb]])
+                    - (byCountry[middles.country[mb]] - byBlock[mb]);
+            middleMass[mb] = Math.max(0, middles.weight[mb] * factor);
+        }
+
+        double[][] probabilities = {
+                guards.spread(table, guardMass, success),
+                middles.spread(table, middleMass, success),
+                exits.spread(table, exitMass, success)};
+        return new SelectionDistribution(table, alpha, beta, probabilities, success, System.nanoTime() - start);
+    }
+
+    // País -> índice compacto entre os países dos blocos (-1 se não existir)
+    private static int[] countryIndex(Blocks blocks, int numCountries) {
+        int[] index = new int[numCountries];
+        Arrays.fill(index, -1);
+        int n = 0;
+        for (int b = 0; b < blocks.count; b++) {
+            if (index[blocks.country[b]] < 0) index[blocks.country[b]] = n++;
+        }
+        return index;
+    }
+
+    // [índice do país][bloco de subnets] -> bloco de middles com esse país e a /16 do bloco
+    private static int[][] crossIndex(Blocks middles, int[] countryIndex, Blocks subnets) {
+        int n = 0;
+        for (int i : countryIndex) n = Math.max(n, i + 1);
+        int[][] cross = new int[n][subnets.count];
+        for (int c = 0; c < countryIndex.length; c++) {
+            if (countryIndex[c] < 0) continue;
+            for (int b = 0; b < subnets.count; b++) cross[countryIndex[c]][b] = middles.indexOf(c, subnets.subnet[b]);
+        }
+        return cross;
+    }
+
+    private static int countryOf(RelayTable table, int relay) {
+        return Math.max(0, table.getCountry(relay));
+    }
+
+    public double getAlpha() {return alpha;}
+    public double getBeta() {return beta;}
+    public long getComputeNanos() {return computeNanos;}
+
+    // Probabilidade de um circuito ter guard, middle e exit
+    public double successProbability() {return success;}
+
+    /**
+     * Probabilidade de o relay ser escolhido na posição (GUARD, MIDDLE ou EXIT de
+     * {@link SelectionStats}); GLOBAL é a média das três (cada circuito tem 3 escolhas).
+     */
+    public double probability(int position, int relay) {
+        if (position == SelectionStats.GLOBAL) {
+            return (probabilities[0][relay] + probabilities[1][relay] + probabilities[2][relay]) / 3;
+        }
+        return probabilities[position][relay];
+    }
+
+    // Relays com probabilidade positiva
+    public int support(int position) {
+        int n = 0;
+        for (int i = 0; i < table.size(); i++) if (probability(position, i) > 0) n++;
+        return n;
+    }
+
+    // Entropia de Shannon (bits) da distribuição por relay
+    public double entropy(int position) {
+        double entropy = 0;
+        for (int i = 0; i < table.size(); i++) entropy -= plogp(probability(position, i));
+        return entropy;
+    }
+
+    // Entropia da /16 escolhida
+    public double subnetEntropy(int position) {
+        double[] bySubnet = new double[NUM_SUBNETS];
+        for (int i = 0; i < table.size(); i++) bySubnet[table.getSubnet16(i)] += probability(position, i);
+        double entropy = 0;
+        for (double p : bySubnet) entropy -= plogp(p);
+        return entropy;
+    }
+
+    // Entropia do país escolhido
+    public double countryEntropy(int position) {
+        Map<Integer, Double> byCountry = new HashMap<>();
+        for (int i = 0; i < table.size(); i++) {
+            double p = probability(position, i);
+            if (p > 0) byCountry.merge(countryOf(table, i), p, Double::sum);
+        }
+        double entropy = 0;
+        for (double p : byCountry.values()) entropy -= plogp(p);
+        return entropy;
+    }
+
+    /**
+     * Distância de variação total entre esta distribuição e a empírica de uma
+     * simulação (verificação Monte Carlo): metade da soma das diferenças absolutas.
+     */
+    public double totalVariation(SelectionStats stats, int position) {
+        long n = stats.selections(position);
+        if (n == 0) return 1;
+        double distance = 0;
+        for (int i = 0; i < table.size(); i++) {
+            distance += Math.abs((double) stats.count(position, i) / n - probability(position, i));
+        }
+        return distance / 2;
+    }
+
+    private static double plogp(double p) {
+        return p > 0 ? p * Math.log(p) / Math.log(2) : 0;
+    }
+
+    /**
+     * Pool de um papel agrupado em blocos (país, /16), com os pesos por bloco, por
+     * /16 e por país (relayWeights: peso de cada relay da tabela nesta posição).
+     */
+    private static final class Blocks {
+        final int[] pool;
+        final long[] relayWeights;
+        final int[] relayBlock;
+        final Map<Integer, Integer> index = new HashMap<>();
+        int count;
+        int[] country;
+        int[] subnet;
+        double[] weight;
+        final double[] subnetWeight = new double[NUM_SUBNETS];
+        final double[] countryWeight;
+        double total;
+
+        Blocks(RelayTable table, int[] pool, long[] relayWeights, int numCountries) {
+            this.pool = pool;
+            this.relayWeights = relayWeights;
+            this.relayBlock = new int[pool.length];
+            this.countryWeight = new double[numCountries];
+            country = new int[pool.length];
+            subnet = new int[pool.length];
+            weight = new double[pool.length];
+            for (int k = 0; k < pool.length; k++) {
+                int r = pool[k];
+                int c = countryOf(table, r);
+                int s = table.getSubnet16(r);
+                double w = Math.max(0, relayWeights[r]);
+                Integer b = index.get(key(c, s));
+                if (b == null) {
+                    b = count++;
+                    index.put(key(c, s), b);
+                    country[b] = c;
+                    subnet[b] = s;
+                }
+                relayBlock[k] = b;
+                weight[b] += w;
+                subnetWeight[s] += w;
+                countryWeight[c] += w;
+                total += w;
+            }
+        }
+
+        private static int key(int country, int subnet) {
+            return (country << 16) | subnet;
+        }
+
+        int indexOf(int c, int s) {
+            Integer b = index.get(key(c, s));
+            return b == null ? -1 : b;
+        }
+
+        double weightOf(int c, int s) {
+            int b = indexOf(c, s);
+            return b < 0 ? 0 : weight[b];
+        }
+
+        // Probabilidade por relay: massa do bloco repartida pelo peso, normalizada
+        double[] spread(RelayTable table, double[] mass, double normalization) {
+            double[] p = new double[table.size()];
+            if (normalization <= 0) return p;
+            for (int k = 0; k < pool.length; k++) {
+                int b = relayBlock[k];
+                if (weight[b] > 0) p[pool[k]] = mass[b] * Math.max(0, relayWeights[pool[k]]) / weight[b] / normalization;
+            }
+            return p;
+        }
+    }
+}
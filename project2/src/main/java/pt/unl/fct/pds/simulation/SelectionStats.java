@@ -0,0 +1,78 @@
+package pt.unl.fct.pds.project2.simulation;
+
+/**
+ * Contagens de seleção por relay e por posição (guard/middle/exit/global),
+ * guardadas em arrays primitivos indexados pelo id do relay na RelayTable.
+ * O registo de um circuito não aloca e a memória não depende do número de
+ * circuitos; instâncias de threads diferentes combinam-se somando os arrays.
+ */
+public class SelectionStats {
+
+    public static final int GUARD = 0;
+    public static final int MIDDLE = 1;
+    public static final int EXIT = 2;
+    public static final int GLOBAL = 3;
+
+    private final long[][] counts;
+    private final long[] selections;     // total de seleções por posição
+
+    public SelectionStats(int numRelays) {
+        counts = new long[4][numRelays];
+        selections = new long[4];
+    }
+
+    public int getNumRelays() {return counts[GLOBAL].length;}
+
+    public void record(int guard, int middle, int exit) {
+        counts[GUARD][guard]++;
+        counts[MIDDLE][middle]++;
+        counts[EXIT][exit]++;
+
+        long[] global = counts[GLOBAL];
+        global[guard]++;
+        global[middle]++;
+        global[exit]++;
+
+        selections[GUARD]++;
+        selections[MIDDLE]++;
+        selections[EXIT]++;
+        selections[GLOBAL] += 3;
+    }
+
+    public void merge(SelectionStats other) {
+        if (other.getNumRelays() != getNumRelays()) {
+            throw new IllegalArgumentException("SelectionStats de tabelas diferentes");
+        }
+        for (int pos = 0; pos < counts.length; pos++) {
+            long[] into = counts[pos];
+            long[] from = other.counts[pos];
+            for (int i = 0; i < into.length; i++) into[i] += from[i];
+            selections[pos] += other.selections[pos];
+        }
+    }
+
+    public long count(int position, int relay) {return counts[position][relay];}
+    public long selections(int position) {return selections[position];}
+
+    // Número de relays distintos escolhidos na posição
+    public int diversity(int position) {
+        int distinct = 0;
+        for (long c : counts[position]) {
+            if (c > 0) distinct++;
+        }
+        return distinct;
+    }
+
+    // Entropia de Shannon (bits) da distribuição empírica da posição
+    public double entropy(int position) {
+        long total = selections[position];
+        if (total == 0) return 0.0;
+        double entropy = 0.0;
+        for (long c : counts[position]) {
+            if (c == 0) continue;
+            double p = (double) c / total;
+            entropy -= p * (Math.log(p) / Math.log(2));
+        }
+        return entropy;
+    }
+}
@@ -0,0 +1,189 @@
+package pt.unl.fct.pds.project2.simulation;
+
+import pt.unl.fct.pds.project2.instrumentation.SelectionProbe;
+import pt.unl.fct.pds.project2.model.RelayTable;
+import pt.unl.fct.pds.project2.utils.LatencyModel;
+import pt.unl.fct.pds.project2.utils.PathSelector;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Simulação Monte Carlo Original vs Geo-Aware em várias threads.
+ *
+ * Os N circuitos são divididos em blocos de tamanho fixo; cada bloco tem o seu
+ * próprio SplittableRandom, derivado apenas da semente e do índice do bloco.
+ * As threads vão buscando blocos a um contador partilhado e acumulam métricas
+ * locais, combinadas no fim. Assim o resultado de uma semente é reprodutível
+ * e não depende do número de threads nem da ordem de execução.
+ */
+public class SimulationEngine {
+
+    public static final int ORIGINAL = 0;
+    public static final int GEO_AWARE = 1;
+
+    private static final String[] ALGORITHM_NAMES = {"Original", "GeoAware"};
+
+    public static final int CHUNK_SIZE = 1 << 14;
+
+    private final PathSelector selector;
+    private final int threads;
+    // Métricas de países e /16 partilhados (CorrelationMetrics) em cada execução
+    private boolean correlation = true;
+    // RTT esperado dos circuitos (null: não medido)
+    private LatencyModel latency = LatencyModel.getDefault();
+
+    public SimulationEngine(PathSelector selector) {
+        this(selector, Runtime.getRuntime().availableProcessors());
+    }
+
+    public SimulationEngine(PathSelector selector, int threads) {
+        this.selector = selector;
+        this.threads = Math.max(1, threads);
+    }
+
+    public static String algorithmName(int algorithm) {
+        return (algorithm >= 0 && algorithm < ALGORITHM_NAMES.length) ? ALGORITHM_NAMES[algorithm] : "Unknown";
+    }
+
+    public static int algorithmId(String name) {
+        for (int a = 0; a < ALGORITHM_NAMES.length; a++) {
+            if (ALGORITHM_NAMES[a].equalsIgnoreCase(name)) return a;
+        }
+        return -1;
+    }
+
+    public PathSelector getSelector() {return selector;}
+    public int getThreads() {return threads;}
+    public boolean isCorrelation() {return correlation;}
+    public void setCorrelation(boolean correlation) {this.correlation = correlation;}
+    public LatencyModel getLatency() {return latency;}
+    public void setLatency(LatencyModel latency) {this.latency = latency;}
+
+    public SimulationResult run(long numCircuits, long seed, double alpha, double beta) {
+        return run(numCircuits, seed, alpha, beta, null);
+    }
+
+    public SimulationResult run(long numCircuits, long seed, double alpha, double beta,
+                                CircuitListener listener) {
+        long start = System.nanoTime();
+        long numChunks = (numCircuits + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        AtomicLong nextChunk = new AtomicLong();
+        CorrelationMetrics.Ids ids = correlation ? CorrelationMetrics.Ids.of(selector.getTable()) : null;
+        LatencyModel.Table rtt = latency == null ? null : latency.forTable(selector.getTable());
+
+        int workers = (int) Math.max(1, Math.min(threads, numChunks));
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        try {
+            List<Future<CircuitMetrics[]>> futures = new ArrayList<>();
+            for (int w = 0; w < workers; w++) {
+                futures.add(pool.submit(new Worker(numCircuits, numChunks, nextChunk,
+                        seed, alpha, beta, listener, ids, rtt)));
+            }
+
+            int numRelays = selector.getTable().size();
+            CircuitMetrics original = new CircuitMetrics(numRelays, ids, rtt);
+            CircuitMetrics geoAware = new CircuitMetrics(numRelays, ids, rtt);
+            for (Future<CircuitMetrics[]> f : futures) {
+                CircuitMetrics[] partial = f.get();
+                original.merge(partial[ORIGINAL]);
+                geoAware.merge(partial[GEO_AWARE]);
+            }
+            return new SimulationResult(original, geoAware, System.nanoTime() - start);
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Simulation interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Simulation failed", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * RNG do bloco: a semente e o índice são misturados (SplitMix64) para que
+     * blocos vizinhos tenham sequências independentes.
+     */
+    public static SplittableRandom chunkRandom(long seed, long chunk) {
+        long z = seed + (chunk + 1) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return new SplittableRandom(z ^ (z >>> 31));
+    }
+
+    private class Worker implements Callable<CircuitMetrics[]> {
+        private final long numCircuits;
+        private final long numChunks;
+        private final AtomicLong nextChunk;
+        private final long seed;
+        private final double alpha;
+        private final double beta;
+        private final CircuitListener listener;
+        private final CorrelationMetrics.Ids ids;
+        private final LatencyModel.Table rtt;
+
+        Worker(long numCircuits, long numChunks, AtomicLong nextChunk, long seed, double alpha, double beta,
+               CircuitListener listener, CorrelationMetrics.Ids ids, LatencyModel.Table rtt) {
+            this.numCircuits = numCircuits;
+            this.numChunks = numChunks;
+            this.nextChunk = nextChunk;
+            this.seed = seed;
+            this.alpha = alpha;
+            this.beta = beta;
+            this.listener = listener;
+            this.ids = ids;
+            this.rtt = rtt;
+        }
+
+        @Override
+        public CircuitMetrics[] call() {
+            RelayTable table = selector.getTable();
+            CircuitMetrics original = new CircuitMetrics(table.size(), ids, rtt);
+            CircuitMetrics geoAware = new CircuitMetrics(table.size(), ids, rtt);
+            int[] path = new int[3];
+
+            SelectionProbe probe = selector.getProbe();
+            long chunk;
+            try {
+                while ((chunk = nextChunk.getAndIncrement()) < numChunks) {
+                    SplittableRandom rng = chunkRandom(seed, chunk);
+                    long end = Math.min(numCircuits, (chunk + 1) * CHUNK_SIZE);
+                    long recorded = original.getCircuits() + geoAware.getCircuits();
+                    for (long i = chunk * CHUNK_SIZE; i < end; i++) {
+                        selector.selectPathIds(rng, path);
+                        record(table, original, ORIGINAL, i, path);
+
+                        selector.selectPathGeoIds(rng, alpha, beta, path);
+                        record(table, geoAware, GEO_AWARE, i, path);
+                    }
+                    if (probe != null) {
+                        long completed = original.getCircuits() + geoAware.getCircuits() - recorded;
+                        probe.recordCircuits(completed, 2 * (end - chunk * CHUNK_SIZE) - completed);
+                    }
+                }
+            } finally {
+                // As threads do pool não são reutilizadas entre execuções: liberta o estado do listener
+                if (listener != null) listener.onThreadDone();
+            }
+            return new CircuitMetrics[]{original, geoAware};
+        }
+
+        private void record(RelayTable table, CircuitMetrics metrics, int algorithm, long index, int[] path) {
+            if (path[0] < 0 || path[1] < 0 || path[2] < 0) return;
+            int minBandwidth = Math.min(table.getBandwidth(path[0]),
+                    Math.min(table.getBandwidth(path[1]), table.getBandwidth(path[2])));
+            metrics.update(path[0], path[1], path[2], minBandwidth);
+            if (listener != null) {
+                listener.onCircuit(index, algorithm, path[0], path[1], path[2], minBandwidth);
+            }
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package pt.unl.fct.pds.project2.simulation;
+
+/**
+ * Métricas combinadas de uma execução do {@link SimulationEngine}.
+ */
+public class SimulationResult {
+
+    private final CircuitMetrics original;
+    private final CircuitMetrics geoAware;
+    private final long elapsedNanos;
+
+    public SimulationResult(CircuitMetrics original, CircuitMetrics geoAware, long elapsedNanos) {
+        this.original = original;
+        this.geoAware = geoAware;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public CircuitMetrics getOriginal() {return original;}
+    public CircuitMetrics getGeoAware() {return geoAware;}
+    public long getElapsedNanos() {return elapsedNanos;}
+
+    public double circuitsPerSecond() {
+        long circuits = original.getCircuits() + geoAware.getCircuits();
+        return elapsedNanos == 0 ? 0 : circuits * 1e9 / elapsedNanos;
+    }
+}
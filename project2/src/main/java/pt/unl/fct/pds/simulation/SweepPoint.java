@@ -0,0 +1,69 @@
+package pt.unl.fct.pds.project2.simulation;
+
+import java.util.Locale;
+
+/**
+ * Resumo das métricas de um ponto (alpha, beta) de um {@link ParameterSweep}.
+ * Só guarda os valores finais, para que uma grelha grande não mantenha as contagens
+ * por relay de todos os pontos.
+ */
+public class SweepPoint {
+
+    public static final String CSV_HEADER = "Algorithm,Alpha,Beta,Circuits,"
+            + "GuardDiversity,MiddleDiversity,ExitDiversity,GlobalDiversity,"
+            + "GuardEntropy,MiddleEntropy,ExitEntropy,GlobalEntropy,"
+            + "BandwidthP5,BandwidthP25,BandwidthP50,BandwidthP75,BandwidthP95,BandwidthMean\n";
+
+    private static final double[] PERCENTILES = {5, 25, 50, 75, 95};
+
+    private final int algorithm;
+    private final double alpha;
+    private final double beta;
+    private final long circuits;
+    private final int[] diversity = new int[4];
+    private final double[] entropy = new double[4];
+    private final long[] bandwidth = new long[PERCENTILES.length];
+    private final double meanBandwidth;
+
+    public SweepPoint(int algorithm, double alpha, double beta, CircuitMetrics metrics) {
+        this.algorithm = algorithm;
+        this.alpha = alpha;
+        this.beta = beta;
+        this.circuits = metrics.getCircuits();
+        SelectionStats selections = metrics.getSelections();
+        for (int pos = SelectionStats.GUARD; pos <= SelectionStats.GLOBAL; pos++) {
+            diversity[pos] = selections.diversity(pos);
+            entropy[pos] = selections.entropy(pos);
+        }
+        for (int k = 0; k < PERCENTILES.length; k++) bandwidth[k] = metrics.getBandwidths().percentile(PERCENTILES[k]);
+        this.meanBandwidth = metrics.getBandwidths().getMean();
+    }
+
+    public int getAlgorithm() {return algorithm;}
+    public double getAlpha() {return alpha;}
+    public double getBeta() {return beta;}
+    public long getCircuits() {return circuits;}
+
+    // Posições de SelectionStats (GUARD, MIDDLE, EXIT, GLOBAL)
+    public int diversity(int position) {return diversity[position];}
+    public double entropy(int position) {return entropy[position];}
+
+    public long bandwidthMedian() {return bandwidth[2];}
+    public double bandwidthMean() {return meanBandwidth;}
+
+    public String toCsv() {
+        StringBuilder sb = new StringBuilder(160);
+        sb.append(SimulationEngine.algorithmName(algorithm)).append(',');
+        if (algorithm == SimulationEngine.GEO_AWARE) {
+            sb.append(String.format(Locale.ROOT, "%.4f,%.4f", alpha, beta));
+        } else {
+            sb.append(',');
+        }
+        sb.append(',').append(circuits);
+        for (int d : diversity) sb.append(',').append(d);
+        for (double e : entropy) sb.append(',').append(String.format(Locale.ROOT, "%.4f", e));
+        for (long b : bandwidth) sb.append(',').append(b);
+        sb.append(',').append(String.format(Locale.ROOT, "%.2f", meanBandwidth));
+        return sb.append('\n').toString();
+    }
+}
@@ -0,0 +1,697 @@
+package pt.unl.fct.pds.project2.utils;
+
+import pt.unl.fct.pds.project2.model.BandwidthWeights;
+import pt.unl.fct.pds.project2.model.RelayTable;
+
+import java.util.Arrays;
+
+/**
+ * Amostragem ponderada por bandwidth com exclusão de sub-redes /16 em O(log n).
+ *
+ * Os relays do pool são guardados em "slots" ordenados por (país, /16), de modo que
+ * cada país ocupa um intervalo contíguo e, dentro dele, cada sub-rede um bloco
+ * contíguo. Uma Fenwick tree sobre os pesos dos slots dá somas de prefixo e a
+ * descida em O(log n); os subtotais por bloco permitem excluir uma ou duas
+ * sub-redes subtraindo o seu peso e saltando os blocos durante a descida, sem
+ * reconstruir listas. A distribuição resultante é a mesma de filtrar os relays
+ * das sub-redes excluídas e sortear pela bandwidth.
+ *
+ * Para o modo Geo-Aware os agregados por país permitem aplicar um multiplicador
+ * por país: escolhe-se primeiro o país (O(#países)) e depois o relay dentro do
+ * intervalo desse país (O(log n)).
+ *
+ * O pool pode mudar sem reconstruir a estrutura (replay de vários consensus):
+ * um relay que sai fica com o slot inativo e peso 0, e volta a ativá-lo se
+ * regressar com o mesmo (país, /16). Relays sem slot na sua posição atual (novos,
+ * ou que mudaram de endereço) entram num sampler secundário pequeno, sorteado em
+ * conjunto com o principal; quando este cresce, {@link #compact} reconstrói tudo.
+ *
+ * Com fatores por classe de flags (as classes de {@link BandwidthWeights}), o peso de
+ * cada relay é o peso dado vezes o fator da sua classe. Um consensus com outras
+ * bandwidth-weights só muda os fatores: {@link #setFactors} recalcula os pesos, a
+ * árvore e os subtotais numa passagem linear, sem reconstruir nem reordenar o pool.
+ *
+ * As leituras não alocam nem escrevem estado, logo podem ser concorrentes;
+ * as alterações ao pool não devem correr em paralelo com sorteios.
+ */
+public class BandwidthSampler {
+
+    private static final int NUM_SUBNETS = 1 << 16;
+    private static final long[] UNCLASSED = {1};
+
+    // Fator de cada classe de flags (um só: todos os relays na mesma classe)
+    private final long[] factors;
+
+    private final int[] slots;           // slot -> id do relay
+    private final int[] slotOf;          // id do relay -> slot (-1 se não pertence ao pool)
+    private final long[] rawWeights;     // peso dado de cada slot, sem o fator
+    private final byte[] slotClass;      // classe de flags de cada slot
+    private final long[] weights;        // peso de cada slot (rawWeights x fator da classe)
+    private final boolean[] active;      // false depois de remove (peso 0)
+    private int activeSlots;
+    private final long[] tree;           // Fenwick tree (1-based)
+    private final int highestStep;
+
+    // Blocos (país, /16); uma sub-rede pode aparecer em mais de um país
+    private final int[] firstBlock;      // /16 -> primeiro bloco (-1 se não existir)
+    private final int[] nextBlock;       // bloco -> próximo bloco da mesma /16, por ordem de slot
+    private final int[] slotBlock;       // slot -> bloco
+    private final int[] blockStart;
+    private final int[] blockEnd;        // exclusivo
+    private final int[] blockCountry;    // bloco -> índice do país
+    private final int[] blockSubnet;     // bloco -> /16
+    private final long[] blockWeight;
+    private final int[] blockCount;      // relays ativos do bloco
+
+    // Agregados por país (índice compacto, por ordem de slot)
+    private final short[] countryIds;
+    private final int[] countryIndex;    // id do país -> índice (-1 se não existir)
+    private final int[] countryStart;
+    private final int[] countryEnd;      // exclusivo
+    private final long[] countryWeight;
+    private final int[] countryCount;
+
+    // Relays que entraram depois da construção (ver addAll)
+    private BandwidthSampler overflow;
+
+    public BandwidthSampler(RelayTable table, int[] pool) {
+        this(table, pool, bandwidthsOf(table, pool));
+    }
+
+    public BandwidthSampler(RelayTable table, int[] pool, long[] poolWeights) {
+        this(table, pool, poolWeights, UNCLASSED);
+    }
+
+    /**
+     * Sampler com um fator por classe de flags de {@link BandwidthWeights}
+     * (FLAG_CLASSES fatores, ou um só para não separar por classes): o peso de cada
+     * relay é poolWeights x fator da sua classe.
+     */
+    public BandwidthSampler(RelayTable table, int[] pool, long[] poolWeights, long[] classFactors) {
+        if (classFactors.length != 1 && classFactors.length != BandwidthWeights.FLAG_CLASSES) {
+            throw new IllegalArgumentException("Invalid number of classes: " + classFactors.length);
+        }
+        factors = new long[classFactors.length];
+        for (int c = 0; c < factors.length; c++) factors[c] = Math.max(0, classFactors[c]);
+        int n = pool.length;
+
+        // Ordena o pool por (país, /16), mantendo a ordem original dentro de cada bloco
+        long[] keys = new long[n];
+        int maxCountry = 0;
+        for (int k = 0; k < n; k++) {
+            int country = Math.max(0, table.getCountry(pool[k]));
+            maxCountry = Math.max(maxCountry, country);
+            keys[k] = ((long) country << 48) | ((long) table.getSubnet16(pool[k]) << 32) | k;
+        }
+        Arrays.sort(keys);
+
+        slots = new int[n];
+        rawWeights = new long[n];
+        slotClass = new byte[n];
+        weights = new long[n];
+        active = new boolean[n];
+        Arrays.fill(active, true);
+        activeSlots = n;
+        slotOf = new int[table.size()];
+        Arrays.fill(slotOf, -1);
+        slotBlock = new int[n];
+
+        firstBlock = new int[NUM_SUBNETS];
+        Arrays.fill(firstBlock, -1);
+        int[] lastBlock = new int[NUM_SUBNETS];
+        int[] starts = new int[n];
+        int[] ends = new int[n];
+        int[] countries = new int[n];
+        int[] subnets = new int[n];
+        int[] next = new int[n];
+        long[] totals = new long[n];
+        int[] sizes = new int[n];
+        int numBlocks = 0;
+
+        countryIndex = new int[maxCountry + 1];
+        Arrays.fill(countryIndex, -1);
+        short[] cIds = new short[n];
+        int[] cStarts = new int[n];
+        int[] cEnds = new int[n];
+        long[] cTotals = new long[n];
+        int[] cSizes = new int[n];
+        int numCountries = 0;
+
+        int prevCountry = -1;
+        int prevSubnet = -1;
+        for (int s = 0; s < n; s++) {
+            int k = (int) keys[s];
+            int country = (int) (keys[s] >>> 48);
+            int subnet = (int) (keys[s] >>> 32) & 0xFFFF;
+            slots[s] = pool[k];
+            rawWeights[s] = Math.max(0, poolWeights[k]);
+            slotClass[s] = (byte) classOf(table, pool[k]);
+            weights[s] = rawWeights[s] * factors[slotClass[s]];
+            slotOf[pool[k]] = s;
+
+            if (country != prevCountry) {
+                countryIndex[country] = numCountries;
+                cIds[numCountries] = (short) country;
+                cStarts[numCountries] = s;
+                numCountries++;
+                prevSubnet = -1;
+            }
+            int c = numCountries - 1;
+            cEnds[c] = s + 1;
+            cTotals[c] += weights[s];
+            cSizes[c]++;
+
+            if (subnet != prevSubnet) {
+                starts[numBlocks] = s;
+                countries[numBlocks] = c;
+                subnets[numBlocks] = subnet;
+                next[numBlocks] = -1;
+                if (firstBlock[subnet] < 0) firstBlock[subnet] = numBlocks;
+                else next[lastBlock[subnet]] = numBlocks;
+                lastBlock[subnet] = numBlocks;
+                numBlocks++;
+            }
+            int b = numBlocks - 1;
+            ends[b] = s + 1;
+            totals[b] += weights[s];
+            sizes[b]++;
+            slotBlock[s] = b;
+
+            prevCountry = country;
+            prevSubnet = subnet;
+        }
+
+        blockStart = Arrays.copyOf(starts, numBlocks);
+        blockEnd = Arrays.copyOf(ends, numBlocks);
+        blockCountry = Arrays.copyOf(countries, numBlocks);
+        blockSubnet = Arrays.copyOf(subnets, numBlocks);
+        nextBlock = Arrays.copyOf(next, numBlocks);
+        blockWeight = Arrays.copyOf(totals, numBlocks);
+        blockCount = Arrays.copyOf(sizes, numBlocks);
+
+        countryIds = Arrays.copyOf(cIds, numCountries);
+        countryStart = Arrays.copyOf(cStarts, numCountries);
+        countryEnd = Arrays.copyOf(cEnds, numCountries);
+        countryWeight = Arrays.copyOf(cTotals, numCountries);
+        countryCount = Arrays.copyOf(cSizes, numCountries);
+
+        tree = new long[n + 1];
+        buildTree();
+        highestStep = n == 0 ? 0 : Integer.highestOneBit(n);
+    }
+
+    // Construção da Fenwick tree em O(n)
+    private void buildTree() {
+        int n = slots.length;
+        Arrays.fill(tree, 0);
+        for (int i = 1; i <= n; i++) {
+            tree[i] += weights[i - 1];
+            int parent = i + (i & -i);
+            if (parent <= n) tree[parent] += tree[i];
+        }
+    }
+
+    private int classOf(RelayTable table, int relay) {
+        return factors.length == 1 ? 0 : BandwidthWeights.classOf(table.getFlags(relay));
+    }
+
+    /**
+     * Muda os fatores das classes: pesos, árvore e subtotais são recalculados em O(n),
+     * sem reordenar nem reconstruir o pool (os slots inativos e o sampler secundário
+     * mantêm-se). Não pode correr em paralelo com sorteios.
+     */
+    public void setFactors(long[] classFactors) {
+        if (classFactors.length != factors.length) {
+            throw new IllegalArgumentException("Expected " + factors.length + " factors, got " + classFactors.length);
+        }
+        for (int c = 0; c < factors.length; c++) factors[c] = Math.max(0, classFactors[c]);
+        Arrays.fill(blockWeight, 0);
+        Arrays.fill(countryWeight, 0);
+        for (int s = 0; s < slots.length; s++) {
+            weights[s] = active[s] ? rawWeights[s] * factors[slotClass[s]] : 0;
+            blockWeight[slotBlock[s]] += weights[s];
+            countryWeight[blockCountry[slotBlock[s]]] += weights[s];
+        }
+        buildTree();
+        if (overflow != null) overflow.setFactors(classFactors);
+    }
+
+    private static long[] bandwidthsOf(RelayTable table, int[] pool) {
+        long[] w = new long[pool.length];
+        for (int k = 0; k < pool.length; k++) w[k] = table.getBandwidth(pool[k]);
+        return w;
+    }
+
+    // Número de relays no pool
+    public int size() {return activeSlots + (overflow == null ? 0 : overflow.size());}
+
+    public boolean contains(int relay) {
+        return activeSlot(relay) >= 0 || (overflow != null && overflow.contains(relay));
+    }
+
+    public long total() {
+        return localTotal() + (overflow == null ? 0 : overflow.total());
+    }
+
+    public long subnetWeight(int subnet) {
+        return localSubnetWeight(subnet) + (overflow == null ? 0 : overflow.subnetWeight(subnet));
+    }
+
+    public long countryWeight(short country) {
+        int c = indexOfCountry(country);
+        return (c < 0 ? 0 : countryWeight[c]) + (overflow == null ? 0 : overflow.countryWeight(country));
+    }
+
+    // Relays do pool na sub-rede /16 (os excluídos quando a sub-rede é excluída)
+    public int subnetSize(int subnet) {
+        int count = 0;
+        for (int b = firstBlockOf(subnet); b >= 0; b = nextBlock[b]) count += blockCount[b];
+        return count + (overflow == null ? 0 : overflow.subnetSize(subnet));
+    }
+
+    public int countrySize(short country) {
+        int c = indexOfCountry(country);
+        return (c < 0 ? 0 : countryCount[c]) + (overflow == null ? 0 : overflow.countrySize(country));
+    }
+
+    public long weight(int relay) {
+        int s = activeSlot(relay);
+        if (s >= 0) return weights[s];
+        return overflow == null ? 0 : overflow.weight(relay);
+    }
+
+    private long localTotal() {
+        return prefix(slots.length);
+    }
+
+    private long localSubnetWeight(int subnet) {
+        long sum = 0;
+        for (int b = firstBlockOf(subnet); b >= 0; b = nextBlock[b]) sum += blockWeight[b];
+        return sum;
+    }
+
+    private int slotIndex(int relay) {
+        return (relay >= 0 && relay < slotOf.length) ? slotOf[relay] : -1;
+    }
+
+    private int activeSlot(int relay) {
+        int s = slotIndex(relay);
+        return (s >= 0 && active[s]) ? s : -1;
+    }
+
+    private int indexOfCountry(int country) {
+        return (country >= 0 && country < countryIndex.length) ? countryIndex[country] : -1;
+    }
+
+    private int firstBlockOf(int subnet) {
+        return subnet < 0 ? -1 : firstBlock[subnet];
+    }
+
+    // Soma dos pesos dos slots [0, end)
+    private long prefix(int end) {
+        long sum = 0;
+        for (int i = end; i > 0; i -= i & -i) sum += tree[i];
+        return sum;
+    }
+
+    // Primeiro slot cujo peso acumulado ultrapassa target
+    private int descend(double target) {
+        int pos = 0;
+        for (int step = highestStep; step > 0; step >>= 1) {
+            int next = pos + step;
+            if (next <= slots.length && tree[next] <= target) {
+                pos = next;
+                target -= tree[next];
+            }
+        }
+        return pos;
+    }
+
+    // Primeiro bloco excluído (das duas cadeias) que começa em ou depois de 'from'
+    private int nextExcluded(int chainA, int chainB, int from) {
+        while (chainA >= 0 && blockStart[chainA] < from) chainA = nextBlock[chainA];
+        while (chainB >= 0 && blockStart[chainB] < from) chainB = nextBlock[chainB];
+        if (chainA < 0) return chainB;
+        if (chainB < 0) return chainA;
+        return blockStart[chainA] <= blockStart[chainB] ? chainA : chainB;
+    }
+
+    private boolean isExcluded(int slot, int subnetA, int subnetB) {
+        int block = slotBlock[slot];
+        for (int b = firstBlockOf(subnetA); b >= 0; b = nextBlock[b]) if (b == block) return true;
+        for (int b = firstBlockOf(subnetB); b >= 0; b = nextBlock[b]) if (b == block) return true;
+        return false;
+    }
+
+    /**
+     * Sorteia um relay com probabilidade proporcional ao peso, excluindo as sub-redes
+     * /16 subnetA e subnetB (-1 para não excluir).
+     *
+     * @param u número aleatório uniforme em [0, 1)
+     * @return id do relay, ou -1 se não houver candidatos
+     */
+    public int sample(double u, int subnetA, int subnetB) {
+        if (subnetB == subnetA) subnetB = -1;
+        if (overflow == null) return sampleLocal(u, subnetA, subnetB);
+
+        // Escolhe a estrutura (principal ou secundária) pelo peso disponível em cada uma
+        long own = available(subnetA, subnetB);
+        long extra = overflow.available(subnetA, subnetB);
+        if (own + extra <= 0) {
+            int relay = sampleLocal(u, subnetA, subnetB);
+            return relay >= 0 ? relay : overflow.sampleLocal(u, subnetA, subnetB);
+        }
+        double r = u * (own + extra);
+        if (r < own) return sampleLocal(r / own, subnetA, subnetB);
+        return overflow.sampleLocal((r - own) / extra, subnetA, subnetB);
+    }
+
+    private long available(int subnetA, int subnetB) {
+        return localTotal() - localSubnetWeight(subnetA) - localSubnetWeight(subnetB);
+    }
+
+    private int sampleLocal(double u, int subnetA, int subnetB) {
+        int chainA = firstBlockOf(subnetA);
+        int chainB = firstBlockOf(subnetB);
+
+        long total = available(subnetA, subnetB);
+        if (total <= 0) return firstOutside(0, slots.length, subnetA, subnetB);
+
+        // Mapeia r do espaço reduzido para o espaço completo, saltando os blocos excluídos
+        double target = u * total;
+        for (int b = nextExcluded(chainA, chainB, 0); b >= 0; b = nextExcluded(chainA, chainB, blockEnd[b])) {
+            if (target < prefix(blockStart[b])) break;
+            target += blockWeight[b];
+        }
+        return locate(target, 0, slots.length, subnetA, subnetB);
+    }
+
+    /**
+     * Sorteio em dois níveis para o modo Geo-Aware: o peso de cada relay é multiplicado
+     * por um fator do seu país — countryA/countryB recebem multA/multB e os restantes
+     * países baseMult. Escolhe-se primeiro o país pelos agregados (descontando as
+     * sub-redes excluídas) e depois o relay dentro do país.
+     *
+     * @param u número aleatório uniforme em [0, 1)
+     * @return id do relay, ou -1 se não houver candidatos
+     */
+    public int sample(double u, int subnetA, int subnetB, double baseMult,
+                      short countryA, double multA, short countryB, double multB) {
+        if (subnetB == subnetA) subnetB = -1;
+        if (overflow == null) return sampleLocal(u, subnetA, subnetB, baseMult, countryA, multA, countryB, multB);
+
+        double own = available(subnetA, subnetB, baseMult, countryA, multA, countryB, multB);
+        double extra = overflow.available(subnetA, subnetB, baseMult, countryA, multA, countryB, multB);
+        if (own + extra <= 0) {
+            int relay = sampleLocal(u, subnetA, subnetB, baseMult, countryA, multA, countryB, multB);
+            return relay >= 0 ? relay
+                    : overflow.sampleLocal(u, subnetA, subnetB, baseMult, countryA, multA, countryB, multB);
+        }
+        double r = u * (own + extra);
+        if (r < own) {
+            return sampleLocal(r / own, subnetA, subnetB, baseMult, countryA, multA, countryB, multB);
+        }
+        return overflow.sampleLocal((r - own) / extra, subnetA, subnetB, baseMult, countryA, multA, countryB, multB);
+    }
+
+    // Peso total com os multiplicadores por país, sem as sub-redes excluídas
+    private double available(int subnetA, int subnetB, double baseMult,
+                             short countryA, double multA, short countryB, double multB) {
+        int chainA = firstBlockOf(subnetA);
+        int chainB = firstBlockOf(subnetB);
+        int specialA = indexOfCountry(countryA);
+        int specialB = indexOfCountry(countryB);
+
+        double total = 0;
+        for (int c = 0; c < countryIds.length; c++) {
+            double m = c == specialA ? multA : (c == specialB ? multB : baseMult);
+            total += m * available(c, chainA, chainB);
+        }
+        return total;
+    }
+
+    private int sampleLocal(double u, int subnetA, int subnetB, double baseMult,
+                            short countryA, double multA, short countryB, double multB) {
+        int chainA = firstBlockOf(subnetA);
+        int chainB = firstBlockOf(subnetB);
+        int specialA = indexOfCountry(countryA);
+        int specialB = indexOfCountry(countryB);
+
+        double total = available(subnetA, subnetB, baseMult, countryA, multA, countryB, multB);
+        if (total <= 0) return firstOutside(0, slots.length, subnetA, subnetB);
+
+        // 1) País
+        double r = u * total;
+        int chosen = -1;
+        double m = 0;
+        long weightInCountry = 0;
+        for (int c = 0; c < countryIds.length; c++) {
+            double mc = c == specialA ? multA : (c == specialB ? multB : baseMult);
+            long wc = available(c, chainA, chainB);
+            double w = mc * wc;
+            if (w <= 0) continue;
+            chosen = c;
+            m = mc;
+            weightInCountry = wc;
+            if (r < w) break;
+            r -= w;
+        }
+        if (chosen < 0) return firstOutside(0, slots.length, subnetA, subnetB);
+
+        // 2) Relay dentro do país, no espaço de pesos original
+        int start = countryStart[chosen];
+        int end = countryEnd[chosen];
+        double target = prefix(start) + Math.min(r / m, weightInCountry);
+        for (int b = nextExcluded(chainA, chainB, start); b >= 0 && blockStart[b] < end;
+             b = nextExcluded(chainA, chainB, blockEnd[b])) {
+            if (target < prefix(blockStart[b])) break;
+            target += blockWeight[b];
+        }
+        return locate(target, start, end, subnetA, subnetB);
+    }
+
+    /**
+     * Sorteio em dois níveis com um multiplicador por país: o peso de cada relay é
+     * multiplicado por countryMult[país] (id do CountryDictionary; países fora
+     * do array ficam com 1). Usado na seleção penalizada pela latência.
+     *
+     * @param u número aleatório uniforme em [0, 1)
+     * @return id do relay, ou -1 se não houver candidatos
+     */
+    public int sample(double u, int subnetA, int subnetB, double[] countryMult) {
+        if (subnetB == subnetA) subnetB = -1;
+        if (overflow == null) return sampleLocal(u, subnetA, subnetB, countryMult);
+
+        double own = available(subnetA, subnetB, countryMult);
+        double extra = overflow.available(subnetA, subnetB, countryMult);
+        if (own + extra <= 0) {
+            int relay = sampleLocal(u, subnetA, subnetB, countryMult);
+            return relay >= 0 ? relay : overflow.sampleLocal(u, subnetA, subnetB, countryMult);
+        }
+        double r = u * (own + extra);
+        if (r < own) return sampleLocal(r / own, subnetA, subnetB, countryMult);
+        return overflow.sampleLocal((r - own) / extra, subnetA, subnetB, countryMult);
+    }
+
+    private double multiplier(int c, double[] countryMult) {
+        short country = countryIds[c];
+        return country >= 0 && country < countryMult.length ? countryMult[country] : 1;
+    }
+
+    private double available(int subnetA, int subnetB, double[] countryMult) {
+        int chainA = firstBlockOf(subnetA);
+        int chainB = firstBlockOf(subnetB);
+        double total = 0;
+        for (int c = 0; c < countryIds.length; c++) {
+            total += multiplier(c, countryMult) * available(c, chainA, chainB);
+        }
+        return total;
+    }
+
+    private int sampleLocal(double u, int subnetA, int subnetB, double[] countryMult) {
+        int chainA = firstBlockOf(subnetA);
+        int chainB = firstBlockOf(subnetB);
+
+        double total = available(subnetA, subnetB, countryMult);
+        if (total <= 0) return firstOutside(0, slots.length, subnetA, subnetB);
+
+        // 1) País
+        double r = u * total;
+        int chosen = -1;
+        double m = 0;
+        long weightInCountry = 0;
+        for (int c = 0; c < countryIds.length; c++) {
+            double mc = multiplier(c, countryMult);
+            long wc = available(c, chainA, chainB);
+            double w = mc * wc;
+            if (w <= 0) continue;
+            chosen = c;
+            m = mc;
+            weightInCountry = wc;
+            if (r < w) break;
+            r -= w;
+        }
+        if (chosen < 0) return firstOutside(0, slots.length, subnetA, subnetB);
+
+        // 2) Relay dentro do país, no espaço de pesos original
+        int start = countryStart[chosen];
+        int end = countryEnd[chosen];
+        double target = prefix(start) + Math.min(r / m, weightInCountry);
+        for (int b = nextExcluded(chainA, chainB, start); b >= 0 && blockStart[b] < end;
+             b = nextExcluded(chainA, chainB, blockEnd[b])) {
+            if (target < prefix(blockStart[b])) break;
+            target += blockWeight[b];
+        }
+        return locate(target, start, end, subnetA, subnetB);
+    }
+
+    // Peso do país c sem os blocos das sub-redes excluídas
+    private long available(int c, int chainA, int chainB) {
+        long w = countryWeight[c];
+        for (int b = chainA; b >= 0; b = nextBlock[b]) if (blockCountry[b] == c) w -= blockWeight[b];
+        for (int b = chainB; b >= 0; b = nextBlock[b]) if (blockCountry[b] == c) w -= blockWeight[b];
+        return w;
+    }
+
+    // Desce a árvore e corrige arredondamentos na fronteira de blocos excluídos ou do intervalo
+    private int locate(double target, int start, int end, int subnetA, int subnetB) {
+        int slot = Math.max(start, descend(target));
+        while (slot < end) {
+            if (isExcluded(slot, subnetA, subnetB)) slot = blockEnd[slotBlock[slot]];
+            else if (!active[slot]) slot++;
+            else break;
+        }
+        if (slot >= end) return lastOutside(start, end, subnetA, subnetB);
+        return slots[slot];
+    }
+
+    private int firstOutside(int start, int end, int subnetA, int subnetB) {
+        for (int s = start; s < end; s++) {
+            if (active[s] && !isExcluded(s, subnetA, subnetB)) return slots[s];
+        }
+        return -1;
+    }
+
+    private int lastOutside(int start, int end, int subnetA, int subnetB) {
+        for (int s = end - 1; s >= start; s--) {
+            if (weights[s] > 0 && active[s] && !isExcluded(s, subnetA, subnetB)) return slots[s];
+        }
+        return firstOutside(start, end, subnetA, subnetB);
+    }
+
+    /**
+     * Altera o peso de um relay já presente no pool (O(log n)).
+     */
+    public void update(int relay, long weight) {
+        int s = activeSlot(relay);
+        if (s >= 0) {
+            setSlot(s, weight, true);
+        } else if (overflow != null && overflow.contains(relay)) {
+            overflow.update(relay, weight);
+        } else {
+            throw new IllegalArgumentException("Relay " + relay + " não pertence ao pool");
+        }
+    }
+
+    /**
+     * Coloca o relay no pool com o peso dado, se já tiver um slot no seu (país, /16,
+     * classe de flags) atual (O(log n)). Devolve false se não tiver — o relay tem
+     * então de entrar por {@link #addAll}; um slot antigo noutra posição fica inativo.
+     */
+    public boolean tryUpdate(RelayTable table, int relay, long weight) {
+        boolean placed = false;
+        int s = slotIndex(relay);
+        if (s >= 0) {
+            placed = isLocated(s, table, relay);
+            setSlot(s, placed ? weight : 0, placed);
+        }
+        if (overflow != null) {
+            if (placed) overflow.remove(relay);
+            else placed = overflow.tryUpdate(table, relay, weight);
+        }
+        return placed;
+    }
+
+    // Retira o relay do pool (o slot fica para um eventual regresso)
+    public void remove(int relay) {
+        int s = slotIndex(relay);
+        if (s >= 0) setSlot(s, 0, false);
+        if (overflow != null) overflow.remove(relay);
+    }
+
+    /**
+     * Junta ao pool relays que não têm slot na sua posição atual (tryUpdate devolveu
+     * false). O sampler secundário é reconstruído com os membros que já tinha e os
+     * novos, em O(k log k) para os k relays fora da estrutura principal.
+     */
+    public void addAll(RelayTable table, int[] relays, long[] relayWeights, int count) {
+        if (count == 0) return;
+        int previous = overflow == null ? 0 : overflow.slots.length;
+        int[] pool = new int[previous + count];
+        long[] poolWeights = new long[previous + count];
+        int n = 0;
+        for (int s = 0; s < previous; s++) {
+            if (!overflow.active[s]) continue;
+            pool[n] = overflow.slots[s];
+            poolWeights[n++] = overflow.rawWeights[s];
+        }
+        for (int k = 0; k < count; k++) {
+            pool[n] = relays[k];
+            poolWeights[n++] = relayWeights[k];
+        }
+        overflow = new BandwidthSampler(table, Arrays.copyOf(pool, n), Arrays.copyOf(poolWeights, n), factors);
+    }
+
+    // Vale a pena reconstruir: secundário grande ou muitos slots inativos
+    public boolean needsCompaction() {
+        int extra = overflow == null ? 0 : overflow.slots.length;
+        return extra > Math.max(64, activeSlots / 8) || slots.length - activeSlots > Math.max(64, slots.length / 2);
+    }
+
+    /**
+     * Novo sampler só com os relays ativos das duas estruturas.
+     */
+    public BandwidthSampler compact(RelayTable table) {
+        int[] pool = new int[size()];
+        long[] poolWeights = new long[pool.length];
+        int n = collect(pool, poolWeights, 0);
+        if (overflow != null) n = overflow.collect(pool, poolWeights, n);
+        return new BandwidthSampler(table, Arrays.copyOf(pool, n), Arrays.copyOf(poolWeights, n), factors);
+    }
+
+    private int collect(int[] pool, long[] poolWeights, int n) {
+        for (int s = 0; s < slots.length; s++) {
+            if (!active[s]) continue;
+            pool[n] = slots[s];
+            poolWeights[n++] = rawWeights[s];
+        }
+        return n;
+    }
+
+    private boolean isLocated(int slot, RelayTable table, int relay) {
+        int b = slotBlock[slot];
+        return blockSubnet[b] == table.getSubnet16(relay)
+                && countryIds[blockCountry[b]] == (short) Math.max(0, table.getCountry(relay))
+                && slotClass[slot] == classOf(table, relay);
+    }
+
+    private void setSlot(int s, long weight, boolean isActive) {
+        if (active[s] != isActive) {
+            active[s] = isActive;
+            activeSlots += isActive ? 1 : -1;
+            int b = slotBlock[s];
+            blockCount[b] += isActive ? 1 : -1;
+            countryCount[blockCountry[b]] += isActive ? 1 : -1;
+        }
+        rawWeights[s] = isActive ? Math.max(0, weight) : 0;
+        weight = rawWeights[s] * factors[slotClass[s]];
+        long delta = weight - weights[s];
+        if (delta == 0) return;
+        weights[s] = weight;
+        for (int i = s + 1; i < tree.length; i += i & -i) tree[i] += delta;
+
+        int b = slotBlock[s];
+        blockWeight[b] += delta;
+        countryWeight[blockCountry[b]] += delta;
+    }
+}
@@ -1,34 +1,64 @@
 package pt.unl.fct.pds.project2.utils;
 
+import pt.unl.fct.pds.project2.model.BandwidthWeights;
 import pt.unl.fct.pds.project2.model.Node;
+import pt.unl.fct.pds.project2.model.RelayTable;
 
-import com.maxmind.geoip2.DatabaseReader;
-import com.maxmind.geoip2.exception.GeoIp2Exception;
-import com.maxmind.geoip2.model.CountryResponse;
-
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
-import java.net.InetAddress;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
-import java.util.ArrayList;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
 
+/**
+ * Parser do consensus ao nível do byte: o ficheiro é mapeado em memória e as linhas
+ * r/s/v/w/p (e a bandwidth-weights do rodapé) são lidas diretamente do buffer. Números, IPs, datas e flags são
+ * descodificados sem Strings intermédias; só se criam Strings para os valores
+ * guardados na tabela (nickname, fingerprint) e, uma vez por valor distinto,
+ * para versões e exit policies.
+ */
 public class ConsensusParser {
 
     private String filename;
-    private static DatabaseReader geoIpReader;
+    private GeoResolver geoResolver;
+
+    // Nomes das flags em bytes, agrupados pela inicial (bits de RelayTable)
+    private static final byte[][][] FLAG_NAMES = new byte[32][][];
+    private static final int[][] FLAG_BITS = new int[32][];
+    private static final byte[] BANDWIDTH = "Bandwidth=".getBytes(StandardCharsets.US_ASCII);
+
+    private static final byte[] VALID_AFTER = "valid-after ".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] ROUTER = "r ".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] BANDWIDTH_WEIGHTS = "bandwidth-weights ".getBytes(StandardCharsets.US_ASCII);
+
+    // Diretório dos snapshots por omissão (-Dproject2.snapshot.dir=<dir>)
+    public static final String SNAPSHOT_DIR_PROPERTY = "project2.snapshot.dir";
+
+    // Snapshot binário (por omissão num diretório de cache, ver getSnapshotFile)
+    private boolean snapshotEnabled = true;
+    private Path snapshotFile;
+
+    // Estatísticas do último parse
+    private long lastBytes;
+    private long lastParseNanos;
+    private boolean lastFromSnapshot;
 
-    // Inicializa o GeoIPReader de forma consistente
     static {
-        try {
-            File database = new File(ConsensusParser.class.getClassLoader()
-                    .getResource("GeoLite2-Country.mmdb").getFile());
-            geoIpReader = new DatabaseReader.Builder(database).build();
-        } catch (IOException e) {
-            e.printStackTrace();
-            System.err.println("Fail loading GeoLite2-Country.mmdb");
+        for (int b = 0; b < 14; b++) {
+            byte[] name = RelayTable.flagNames(1 << b)[0].getBytes(StandardCharsets.US_ASCII);
+            int initial = name[0] & 0x1F;
+            int n = FLAG_NAMES[initial] == null ? 0 : FLAG_NAMES[initial].length;
+            FLAG_NAMES[initial] = FLAG_NAMES[initial] == null ? new byte[1][] : Arrays.copyOf(FLAG_NAMES[initial], n + 1);
+            FLAG_BITS[initial] = FLAG_BITS[initial] == null ? new int[1] : Arrays.copyOf(FLAG_BITS[initial], n + 1);
+            FLAG_NAMES[initial][n] = name;
+            FLAG_BITS[initial][n] = 1 << b;
         }
     }
 
@@ -42,100 +72,470 @@ public class ConsensusParser {
 
     public void setFilename(String filename) { this.filename = filename; }
 
+    // Por omissão usa o resolver partilhado (base do classpath)
+    public GeoResolver getGeoResolver() { return geoResolver != null ? geoResolver : GeoResolver.getDefault(); }
+
+    public void setGeoResolver(GeoResolver geoResolver) { this.geoResolver = geoResolver; }
+
+    public boolean isSnapshotEnabled() { return snapshotEnabled; }
+
+    public void setSnapshotEnabled(boolean snapshotEnabled) { this.snapshotEnabled = snapshotEnabled; }
+
+    /**
+     * Snapshot do consensus: o definido com setSnapshotFile ou, por omissão, um ficheiro
+     * em {@link #getDefaultSnapshotDir()} (nunca ao lado do consensus, que pode estar nos
+     * resources e acabar no JAR). O nome inclui um hash do caminho absoluto para que
+     * consensus com o mesmo nome em diretórios diferentes não partilhem o snapshot.
+     */
+    public Path getSnapshotFile() {
+        if (!snapshotEnabled || filename == null) return null;
+        if (snapshotFile != null) return snapshotFile;
+        Path consensus = Paths.get(filename).toAbsolutePath().normalize();
+        return getDefaultSnapshotDir().resolve(consensus.getFileName() + "-"
+                + Integer.toHexString(consensus.toString().hashCode()) + ".snapshot");
+    }
+
+    // Valor de SNAPSHOT_DIR_PROPERTY, ou um diretório do utilizador em java.io.tmpdir
+    public static Path getDefaultSnapshotDir() {
+        String dir = System.getProperty(SNAPSHOT_DIR_PROPERTY);
+        if (dir != null) return Paths.get(dir);
+        return Paths.get(System.getProperty("java.io.tmpdir"), "project2-" + System.getProperty("user.name"),
+                "snapshots");
+    }
+
+    public void setSnapshotFile(Path snapshotFile) { this.snapshotFile = snapshotFile; }
+
+    // true se o último parseRelayTable veio de um snapshot válido
+    public boolean isLastFromSnapshot() { return lastFromSnapshot; }
+
+    public long getLastBytes() { return lastBytes; }
+
+    public long getLastParseNanos() { return lastParseNanos; }
+
+    // Débito do último parse (sem o GeoIP), em MB/s
+    public double getLastThroughput() {
+        return lastParseNanos == 0 ? 0 : (lastBytes / 1e6) / (lastParseNanos / 1e9);
+    }
+
     public Node[] parseConsensus() {
-        ArrayList<Node> nodes = new ArrayList<>();
-        Node currentNode = null;
-
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
-
-        try (BufferedReader br = new BufferedReader(new FileReader(this.filename))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                line = line.trim();
-                if (line.isEmpty()) continue;
-
-                if (line.startsWith("r ")) {
-                    String[] parts = line.split(" ");
-                    if (parts.length < 8) continue; // Ignorar linhas inválidas
-
-                    String nickname = parts[1];
-                    String fingerprint = parts[2];
-                    String pubTimeStr = parts[4];
-                    LocalDateTime timePublished;
-                    try {
-                        timePublished = LocalDateTime.parse(pubTimeStr, formatter);
-                    } catch (Exception e) {
-                        // fallback para ISO padrão
-                        try {
-                            timePublished = LocalDateTime.parse(pubTimeStr);
-                        } catch (Exception ex) {
-                            timePublished = LocalDateTime.now();
-                        }
-                    }
+        return parseRelayTable().toNodes();
+    }
 
-                    String ip = parts[5];
-                    int orPort = safeParseInt(parts[6]);
-                    int dirPort = safeParseInt(parts[7]);
-
-                    currentNode = new Node();
-                    currentNode.setNickname(nickname);
-                    currentNode.setFingerprint(fingerprint);
-                    currentNode.setTimePublished(timePublished);
-                    currentNode.setIpAddress(ip);
-                    currentNode.setOrPort(orPort);
-                    currentNode.setDirPort(dirPort);
-                    nodes.add(currentNode);
-
-                } else if (line.startsWith("s ") && currentNode != null) {
-                    String[] flags = line.substring(2).trim().split(" ");
-                    currentNode.setFlags(flags);
-
-                } else if (line.startsWith("v ") && currentNode != null) {
-                    currentNode.setVersion(line.substring(2).trim());
-
-                } else if (line.startsWith("w ") && currentNode != null) {
-                    try {
-                        String[] parts = line.split("=");
-                        currentNode.setBandwidth(safeParseInt(parts[1]));
-                    } catch (Exception e) {
-                        currentNode.setBandwidth(0);
-                    }
+    public RelayTable parseRelayTable() {
+        RelayTable table = new RelayTable();
+        lastFromSnapshot = false;
 
-                } else if (line.startsWith("p ") && currentNode != null) {
-                    currentNode.setExitPolicy(line.substring(2).trim());
+        try (FileChannel channel = FileChannel.open(Paths.get(this.filename), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Consensus too large to map: " + size + " bytes");
+            }
+            long start = System.nanoTime();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+            // Snapshot válido para este consensus e esta base GeoIP?
+            Path snapshot = getSnapshotFile();
+            long hash = 0;
+            long geoVersion = 0;
+            if (snapshot != null) {
+                hash = ConsensusSnapshot.contentHash(buffer);
+                // Com a base por omissão não é preciso abri-la para validar o snapshot
+                geoVersion = geoResolver != null ? geoResolver.getDatabaseVersion()
+                        : GeoResolver.getDefaultDatabaseVersion();
+                RelayTable cached = ConsensusSnapshot.read(snapshot, validAfter(buffer), hash, geoVersion);
+                if (cached != null) {
+                    lastParseNanos = System.nanoTime() - start;
+                    lastBytes = size;
+                    lastFromSnapshot = true;
+                    return cached;
                 }
             }
 
+            parse(buffer, table);
+            lastParseNanos = System.nanoTime() - start;
+            lastBytes = size;
+
             // Preencher country via GeoIP
-            for (Node node : nodes) {
-                node.setCountry(getCountry(node.getIpAddress()));
+            getGeoResolver().resolveAll(table);
+
+            if (snapshot != null) {
+                try {
+                    ConsensusSnapshot.write(snapshot, table, hash, geoVersion);
+                } catch (IOException e) {
+                    System.err.println("Could not write consensus snapshot " + snapshot + ": " + e.getMessage());
+                }
             }
 
         } catch (IOException e) {
             e.printStackTrace();
         }
 
-        return nodes.toArray(new Node[0]);
+        return table;
+    }
+
+    /**
+     * Lê as entradas de relays de um consensus em memória para a tabela
+     * (sem preencher os países).
+     */
+    public RelayTable parse(ByteBuffer buffer) {
+        RelayTable table = new RelayTable();
+        parse(buffer, table);
+        return table;
     }
 
-    private int safeParseInt(String str) {
-        try {
-            return Integer.parseInt(str);
-        } catch (Exception e) {
-            return 0;
+    /**
+     * valid-after do consensus (epoch seconds UTC), lido do cabeçalho; 0 se não existir.
+     */
+    public static long validAfter(ByteBuffer buffer) {
+        ByteBuffer buf = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        Cursor c = new Cursor(buf);
+        int limit = buf.limit();
+        int pos = buf.position();
+        while (pos < limit) {
+            int eol = indexOfNewline(buf, pos, limit);
+            c.reset(pos, eol);
+            pos = eol + 1;
+            c.skipSpaces();
+            if (startsWith(buf, c.pos, c.end, VALID_AFTER)) {
+                c.pos += VALID_AFTER.length;
+                long time = c.nextDateTime();
+                return c.invalid ? 0 : time;
+            }
+            if (startsWith(buf, c.pos, c.end, ROUTER)) break; // fim do cabeçalho
         }
+        return 0;
     }
 
-    private String getCountry(String ip) {
-        try {
-            InetAddress inet = InetAddress.getByName(ip);
-            CountryResponse response = geoIpReader.country(inet);
-            if (response.getCountry() != null && response.getCountry().getIsoCode() != null) {
-                return response.getCountry().getIsoCode();
+    private void parse(ByteBuffer buffer, RelayTable table) {
+        table.setValidAfter(validAfter(buffer));
+
+        // getLong em little-endian: o primeiro byte fica nos bits menos significativos
+        ByteBuffer buf = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        Cursor c = new Cursor(buf);
+        Interner versions = new Interner();
+        Interner policies = new Interner();
+        int current = -1;
+
+        int limit = buf.limit();
+        int pos = buf.position();
+        while (pos < limit) {
+            int eol = indexOfNewline(buf, pos, limit);
+            c.reset(pos, eol);
+            pos = eol + 1;
+
+            // equivalente ao trim() da linha
+            c.skipSpaces();
+            while (c.end > c.pos && buf.get(c.end - 1) <= ' ') c.end--;
+            if (c.pos < c.end && buf.get(c.pos) == 'b' && startsWith(buf, c.pos, c.end, BANDWIDTH_WEIGHTS)) {
+                c.pos += BANDWIDTH_WEIGHTS.length;
+                table.setBandwidthWeights(bandwidthWeights(buf, c));
+                continue;
+            }
+            if (c.end - c.pos < 2 || buf.get(c.pos + 1) != ' ') continue;
+
+            byte keyword = buf.get(c.pos);
+            c.pos += 2;
+
+            if (keyword == 'r') {
+                // r <nickname> <identity> <digest> <data> <hora> <IP> <ORPort> <DirPort>
+                String nickname = c.nextString();
+                String fingerprint = c.nextString();
+                c.skipToken();
+                long published = c.nextDateTime();
+                int ip = c.nextIpv4();
+                int orPort = (int) c.nextNumber();
+                int dirPort = (int) c.nextNumber();
+                if (c.invalid) continue; // Ignorar linhas inválidas
+
+                current = table.add(nickname, fingerprint, published, ip, orPort, dirPort);
+
+            } else if (keyword == 's' && current >= 0) {
+                int mask = 0;
+                while (c.nextToken()) mask |= flagBit(buf, c.tokenStart, c.tokenEnd);
+                table.setFlags(current, mask);
+
+            } else if (keyword == 'v' && current >= 0) {
+                c.skipSpaces();
+                table.setVersion(current, versions.intern(buf, c.pos, c.end));
+
+            } else if (keyword == 'w' && current >= 0) {
+                // w Bandwidth=N [Unmeasured=1]
+                int bandwidth = 0;
+                while (c.nextToken()) {
+                    if (startsWith(buf, c.tokenStart, c.tokenEnd, BANDWIDTH)) {
+                        bandwidth = (int) Cursor.number(buf, c.tokenStart + BANDWIDTH.length, c.tokenEnd);
+                    }
+                }
+                table.setBandwidth(current, bandwidth);
+
+            } else if (keyword == 'p' && current >= 0) {
+                c.skipSpaces();
+                table.setExitPolicy(current, policies.intern(buf, c.pos, c.end));
+            }
+        }
+    }
+
+    // bandwidth-weights Wbd=N Wbe=N ... (uma linha por consensus)
+    private static BandwidthWeights bandwidthWeights(ByteBuffer buf, Cursor c) {
+        Map<String, Integer> values = new TreeMap<>();
+        while (c.nextToken()) {
+            int eq = c.tokenStart;
+            while (eq < c.tokenEnd && buf.get(eq) != '=') eq++;
+            if (eq == c.tokenStart || eq + 1 >= c.tokenEnd) continue;
+            byte[] key = new byte[eq - c.tokenStart];
+            for (int k = 0; k < key.length; k++) key[k] = buf.get(c.tokenStart + k);
+            values.put(new String(key, StandardCharsets.US_ASCII), (int) Cursor.number(buf, eq + 1, c.tokenEnd));
+        }
+        return new BandwidthWeights(values);
+    }
+
+    // Procura '\n' 8 bytes de cada vez (SWAR); devolve limit se não houver
+    private static int indexOfNewline(ByteBuffer buf, int from, int limit) {
+        int p = from;
+        while (p + 8 <= limit) {
+            long word = buf.getLong(p) ^ 0x0A0A0A0A0A0A0A0AL;
+            long zero = (word - 0x0101010101010101L) & ~word & 0x8080808080808080L;
+            if (zero != 0) return p + (Long.numberOfTrailingZeros(zero) >>> 3);
+            p += 8;
+        }
+        while (p < limit && buf.get(p) != '\n') p++;
+        return p;
+    }
+
+    private static int flagBit(ByteBuffer buf, int start, int end) {
+        int initial = buf.get(start) & 0x1F;
+        byte[][] names = FLAG_NAMES[initial];
+        if (names == null) return 0;
+        int length = end - start;
+        for (int n = 0; n < names.length; n++) {
+            byte[] name = names[n];
+            if (name.length != length) continue;
+            int k = 1;
+            while (k < length && (buf.get(start + k) | 0x20) == (name[k] | 0x20)) k++;
+            if (k == length) return FLAG_BITS[initial][n];
+        }
+        return 0;
+    }
+
+    private static boolean startsWith(ByteBuffer buf, int start, int end, byte[] prefix) {
+        if (end - start < prefix.length) return false;
+        for (int k = 0; k < prefix.length; k++) {
+            if (buf.get(start + k) != prefix[k]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Cursor sobre uma linha do buffer; os tokens são separados por espaços.
+     * Um campo mal formado marca a linha como inválida em vez de lançar exceção.
+     */
+    private static final class Cursor {
+        private final ByteBuffer buf;
+        private final byte[] scratch = new byte[256];
+        int pos;
+        int end;
+        int tokenStart;
+        int tokenEnd;
+        boolean invalid;
+
+        Cursor(ByteBuffer buf) {
+            this.buf = buf;
+        }
+
+        void reset(int start, int end) {
+            this.pos = start;
+            this.end = end;
+            this.invalid = false;
+        }
+
+        // Os ciclos usam variáveis locais: o JIT não consegue manter em registo
+        // um campo lido e escrito a cada byte entre acessos ao buffer
+        void skipSpaces() {
+            int p = pos;
+            while (p < end && buf.get(p) <= ' ') p++;
+            pos = p;
+        }
+
+        boolean nextToken() {
+            int p = pos;
+            int e = end;
+            while (p < e && buf.get(p) <= ' ') p++;
+            if (p >= e) {
+                pos = p;
+                return false;
+            }
+            tokenStart = p;
+            while (p < e && buf.get(p) > ' ') p++;
+            tokenEnd = p;
+            pos = p;
+            return true;
+        }
+
+        void skipToken() {
+            if (!nextToken()) invalid = true;
+        }
+
+        String nextString() {
+            if (!nextToken()) {
+                invalid = true;
+                return null;
+            }
+            int length = Math.min(tokenEnd - tokenStart, scratch.length);
+            for (int k = 0; k < length; k++) scratch[k] = buf.get(tokenStart + k);
+            return new String(scratch, 0, length, StandardCharsets.ISO_8859_1);
+        }
+
+        // Inteiro não negativo; 0 se o token não for numérico (como o safeParseInt)
+        long nextNumber() {
+            if (!nextToken()) {
+                invalid = true;
+                return 0;
+            }
+            return number(buf, tokenStart, tokenEnd);
+        }
+
+        static long number(ByteBuffer buf, int start, int end) {
+            if (start >= end || end - start > 18) return 0;
+            long value = 0;
+            for (int k = start; k < end; k++) {
+                int d = buf.get(k) - '0';
+                if (d < 0 || d > 9) return 0;
+                value = value * 10 + d;
+            }
+            return value;
+        }
+
+        // "a.b.c.d" -> int; 0 se inválido (como RelayTable.parseIpv4)
+        int nextIpv4() {
+            if (!nextToken()) {
+                invalid = true;
+                return 0;
+            }
+            int value = 0;
+            int octet = 0;
+            int dots = 0;
+            int digits = 0;
+            for (int k = tokenStart; k < tokenEnd; k++) {
+                byte ch = buf.get(k);
+                if (ch >= '0' && ch <= '9') {
+                    octet = octet * 10 + (ch - '0');
+                    if (octet > 255 || ++digits > 3) return 0;
+                } else if (ch == '.' && digits > 0 && dots < 3) {
+                    value = (value << 8) | octet;
+                    octet = 0;
+                    digits = 0;
+                    dots++;
+                } else {
+                    return 0;
+                }
+            }
+            if (dots != 3 || digits == 0) return 0;
+            return (value << 8) | octet;
+        }
+
+        // "yyyy-MM-dd HH:mm:ss" -> epoch seconds (UTC); agora se a data for inválida
+        long nextDateTime() {
+            if (!nextToken()) {
+                invalid = true;
+                return 0;
+            }
+            int dateStart = tokenStart;
+            int dateEnd = tokenEnd;
+            if (!nextToken()) {
+                invalid = true;
+                return 0;
+            }
+            if (dateEnd - dateStart != 10 || tokenEnd - tokenStart != 8
+                    || buf.get(dateStart + 4) != '-' || buf.get(dateStart + 7) != '-'
+                    || buf.get(tokenStart + 2) != ':' || buf.get(tokenStart + 5) != ':') {
+                return System.currentTimeMillis() / 1000;
+            }
+            long year = number(buf, dateStart, dateStart + 4);
+            long month = number(buf, dateStart + 5, dateStart + 7);
+            long day = number(buf, dateStart + 8, dateStart + 10);
+            long hour = number(buf, tokenStart, tokenStart + 2);
+            long minute = number(buf, tokenStart + 3, tokenStart + 5);
+            long second = number(buf, tokenStart + 6, tokenStart + 8);
+            if (month < 1 || month > 12 || day < 1 || day > 31 || hour > 23 || minute > 59 || second > 59) {
+                return System.currentTimeMillis() / 1000;
+            }
+            return daysFromCivil(year, month, day) * 86400 + hour * 3600 + minute * 60 + second;
+        }
+
+        // Dias desde 1970-01-01 no calendário gregoriano proléptico
+        private static long daysFromCivil(long y, long m, long d) {
+            if (m <= 2) y--;
+            long era = Math.floorDiv(y, 400);
+            long yoe = y - era * 400;
+            long doy = (153 * (m + (m > 2 ? -3 : 9)) + 2) / 5 + d - 1;
+            long doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+            return era * 146097 + doe - 719468;
+        }
+    }
+
+    /**
+     * Tabela de hashing aberta de sequências de bytes para Strings: cada valor
+     * distinto (versão, exit policy) só é convertido em String uma vez.
+     */
+    private static final class Interner {
+        private int[] hashes = new int[64];
+        private byte[][] keys = new byte[64][];
+        private String[] values = new String[64];
+        private int size;
+
+        String intern(ByteBuffer buf, int start, int end) {
+            int length = end - start;
+            int hash = 1;
+            for (int k = start; k < end; k++) hash = 31 * hash + buf.get(k);
+
+            int mask = keys.length - 1;
+            for (int slot = mix(hash) & mask; ; slot = (slot + 1) & mask) {
+                byte[] key = keys[slot];
+                if (key == null) {
+                    byte[] bytes = new byte[length];
+                    for (int k = 0; k < length; k++) bytes[k] = buf.get(start + k);
+                    String value = new String(bytes, StandardCharsets.ISO_8859_1);
+                    keys[slot] = bytes;
+                    hashes[slot] = hash;
+                    values[slot] = value;
+                    if (++size * 2 > keys.length) grow();
+                    return value;
+                }
+                if (hashes[slot] == hash && key.length == length && equals(key, buf, start)) {
+                    return values[slot];
+                }
+            }
+        }
+
+        private static boolean equals(byte[] key, ByteBuffer buf, int start) {
+            for (int k = 0; k < key.length; k++) {
+                if (key[k] != buf.get(start + k)) return false;
+            }
+            return true;
+        }
+
+        private static int mix(int h) {
+            h *= 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+
+        private void grow() {
+            int[] oldHashes = hashes;
+            byte[][] oldKeys = keys;
+            String[] oldValues = values;
+            int capacity = oldKeys.length * 2;
+            hashes = new int[capacity];
+            keys = new byte[capacity][];
+            values = new String[capacity];
+            int mask = capacity - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] == null) continue;
+                int slot = mix(oldHashes[i]) & mask;
+                while (keys[slot] != null) slot = (slot + 1) & mask;
+                hashes[slot] = oldHashes[i];
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
             }
-        } catch (IOException | GeoIp2Exception e) {
-            // Ignorar e retornar "Unknown"
         }
-        return "Unknown";
     }
 }
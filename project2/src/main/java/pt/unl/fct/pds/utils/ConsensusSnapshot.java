@@ -0,0 +1,107 @@
+package pt.unl.fct.pds.project2.utils;
+
+import pt.unl.fct.pds.project2.model.RelayTable;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Snapshot binário de um consensus já lido e geolocalizado, para arranques rápidos.
+ *
+ * O cabeçalho guarda a chave do snapshot: valid-after do consensus, hash do seu
+ * conteúdo e versão da base GeoIP usada para os países. Um snapshot só é usado se
+ * a chave coincidir; caso contrário o consensus é lido de novo e o snapshot
+ * substituído. A escrita é feita num ficheiro temporário seguido de move atómico,
+ * pelo que vários processos podem partilhar o mesmo snapshot.
+ */
+public final class ConsensusSnapshot {
+
+    // "CSNP"
+    public static final int MAGIC = 0x43534E50;
+    public static final int VERSION = 2;
+    public static final int HEADER_SIZE = 32;
+
+    private ConsensusSnapshot() {}
+
+    /**
+     * Hash de 64 bits do conteúdo (8 bytes de cada vez, mistura ao estilo MurmurHash3).
+     */
+    public static long contentHash(ByteBuffer buffer) {
+        ByteBuffer buf = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int pos = buf.position();
+        int limit = buf.limit();
+        long h = 0x9E3779B97F4A7C15L ^ (limit - pos);
+        for (; pos + 8 <= limit; pos += 8) {
+            h = (h ^ mix(buf.getLong(pos))) * 0x9E3779B97F4A7C15L;
+            h = Long.rotateLeft(h, 29);
+        }
+        long tail = 0;
+        for (int shift = 0; pos < limit; pos++, shift += 8) tail |= (buf.get(pos) & 0xFFL) << shift;
+        h ^= mix(tail);
+        return mix(h);
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 33)) * 0xFF51AFD7ED558CCDL;
+        z = (z ^ (z >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return z ^ (z >>> 33);
+    }
+
+    /**
+     * Lê o snapshot se existir e a chave coincidir; null caso contrário.
+     */
+    public static RelayTable read(Path file, long validAfter, long contentHash, long geoVersion) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE + 4 || size > Integer.MAX_VALUE) return null;
+            MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+            if (buf.getInt() != MAGIC || buf.getInt() != VERSION) return null;
+            if (buf.getLong() != validAfter || buf.getLong() != contentHash || buf.getLong() != geoVersion) {
+                return null;
+            }
+            RelayTable table = RelayTable.readFrom(buf);
+            // marcador final: deteta ficheiros truncados
+            if (buf.remaining() != 4 || buf.getInt() != MAGIC) return null;
+            return table;
+
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException | RuntimeException e) {
+            // ficheiro corrompido ou de outro formato: volta-se a ler o consensus
+            System.err.println("Ignoring invalid consensus snapshot " + file + ": " + e);
+            return null;
+        }
+    }
+
+    public static void write(Path file, RelayTable table, long contentHash, long geoVersion) throws IOException {
+        Path dir = Files.createDirectories(file.toAbsolutePath().getParent());
+        Path tmp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream os = Files.newOutputStream(tmp);
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os, 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(table.getValidAfter());
+                out.writeLong(contentHash);
+                out.writeLong(geoVersion);
+                table.writeTo(out);
+                out.writeInt(MAGIC);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+}
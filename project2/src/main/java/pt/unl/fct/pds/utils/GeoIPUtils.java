@@ -1,41 +1,18 @@
 package pt.unl.fct.pds.project2.utils;
 
-import com.maxmind.geoip2.DatabaseReader;
-import com.maxmind.geoip2.model.CountryResponse;
-
-import java.io.File;
-import java.net.InetAddress;
+import pt.unl.fct.pds.project2.model.CountryDictionary;
+import pt.unl.fct.pds.project2.model.RelayTable;
 
 public class GeoIPUtils {
 
-    private static DatabaseReader reader;
-
-    static {
-        try {
-            File database = new File("src/main/resources/GeoLite2-Country.mmdb");
-            reader = new DatabaseReader.Builder(database).build();
-        } catch (Exception e) {
-            System.err.println("GeoIP ERROR: Unable to load GeoLite2-Country.mmdb");
-            reader = null;
-        }
-    }
-
     /**
      * Retorna o código do país (ISO2, ex: US, DE, PT)
      */
     public static String getCountryFromIP(String ip) {
+        int ipv4 = RelayTable.parseIpv4(ip);
+        if (ipv4 == 0) return "??";
 
-        if (reader == null) return "??";
-
-        try {
-            InetAddress ipAddr = InetAddress.getByName(ip);
-            CountryResponse response = reader.country(ipAddr);
-
-            String country = response.getCountry().getIsoCode();
-            return country != null ? country : "??";
-
-        } catch (Exception e) {
-            return "??";
-        }
+        short id = GeoResolver.getDefault().resolve(ipv4);
+        return id != CountryDictionary.UNKNOWN_ID ? CountryDictionary.code(id) : "??";
     }
 }
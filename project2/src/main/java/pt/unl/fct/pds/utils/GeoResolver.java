@@ -0,0 +1,383 @@
+package pt.unl.fct.pds.project2.utils;
+
+import pt.unl.fct.pds.project2.model.CountryDictionary;
+import pt.unl.fct.pds.project2.model.RelayTable;
+
+import com.maxmind.db.CHMCache;
+import com.maxmind.db.DatabaseRecord;
+import com.maxmind.db.MaxMindDbConstructor;
+import com.maxmind.db.MaxMindDbParameter;
+import com.maxmind.db.Reader;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.IntStream;
+
+/**
+ * Resolução IPv4 -> país (id do {@link CountryDictionary}) sobre a base GeoLite2-Country.
+ *
+ * A base é aberta uma única vez (memory-mapped quando está num ficheiro) e os IPs
+ * são passados como int. Cada resultado é guardado numa cache por prefixo /24
+ * (endereçamento aberto, sem locks), pelo que um consensus inteiro (ou um histórico com
+ * milhões de IPs) só chega ao leitor MaxMind uma vez por /24 distinto. Só se guarda
+ * o /24 quando a rede devolvida pela base o cobre por inteiro (prefixo <= 24).
+ */
+public class GeoResolver implements Closeable {
+
+    public static final String DATABASE = "GeoLite2-Country.mmdb";
+
+    private static final int DEFAULT_CACHE_BITS = 16;
+    private static final int PARALLEL_THRESHOLD = 4096;
+    private static final int MAX_PROBES = 8;
+
+    // Metadados MaxMind DB: depois da última ocorrência do marcador, nos últimos 128 KiB
+    private static final byte[] METADATA_MARKER = {(byte) 0xAB, (byte) 0xCD, (byte) 0xEF,
+            'M', 'a', 'x', 'M', 'i', 'n', 'd', '.', 'c', 'o', 'm'};
+    private static final int METADATA_MAX_SIZE = 128 * 1024;
+    private static final byte[] BUILD_EPOCH = "build_epoch".getBytes(StandardCharsets.US_ASCII);
+
+    // Entrada da cache: prefixo /24 nos bits 32-55, bit de validade, id do país nos 16 bits baixos
+    private static final long VALID = 1L << 16;
+
+    private final Reader reader;
+    private final AtomicLongArray cache;
+    private final int mask;
+
+    private static final class DefaultHolder {
+        static final GeoResolver INSTANCE = loadDefault();
+    }
+
+    public GeoResolver(File database) throws IOException {
+        this(new Reader(database, Reader.FileMode.MEMORY_MAPPED, new CHMCache()), DEFAULT_CACHE_BITS);
+    }
+
+    public GeoResolver(InputStream database) throws IOException {
+        this(new Reader(database, new CHMCache()), DEFAULT_CACHE_BITS);
+    }
+
+    private GeoResolver(Reader reader, int cacheBits) {
+        this.reader = reader;
+        this.cache = new AtomicLongArray(1 << cacheBits);
+        this.mask = (1 << cacheBits) - 1;
+    }
+
+    /**
+     * Resolver partilhado, carregado do classpath na primeira utilização.
+     * Se a base não existir, todos os IPs resolvem para {@link CountryDictionary#UNKNOWN_ID}.
+     */
+    public static GeoResolver getDefault() {
+        return DefaultHolder.INSTANCE;
+    }
+
+    private static GeoResolver loadDefault() {
+        try {
+            URL resource = GeoResolver.class.getClassLoader().getResource(DATABASE);
+            if (resource == null) throw new IOException(DATABASE + " not found in classpath");
+            if ("file".equals(resource.getProtocol())) {
+                return new GeoResolver(new File(resource.toURI()));
+            }
+            // Dentro de um JAR não é possível mapear: lê-se a base para memória
+            try (InputStream in = resource.openStream()) {
+                return new GeoResolver(in);
+            }
+        } catch (IOException | URISyntaxException e) {
+            System.err.println("Fail loading " + DATABASE + ": " + e.getMessage());
+            return new GeoResolver(null, 0);
+        }
+    }
+
+    /**
+     * Versão da base por omissão sem a abrir com o leitor MaxMind, para validar snapshots:
+     * a mesma data de construção que {@link #getDatabaseVersion()}, lida diretamente da
+     * secção de metadados no fim do ficheiro; 0 se a base não existir.
+     */
+    public static long getDefaultDatabaseVersion() {
+        return databaseVersion(GeoResolver.class.getClassLoader().getResource(DATABASE));
+    }
+
+    static long databaseVersion(URL resource) {
+        if (resource == null) return 0;
+        try {
+            if ("file".equals(resource.getProtocol())) {
+                return databaseVersion(new File(resource.toURI()));
+            }
+            try (InputStream in = resource.openStream()) {
+                return databaseVersion(in);
+            }
+        } catch (IOException | URISyntaxException e) {
+            return 0;
+        }
+    }
+
+    // Só os últimos METADATA_MAX_SIZE bytes do ficheiro
+    static long databaseVersion(File database) throws IOException {
+        try (FileChannel channel = FileChannel.open(database.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            ByteBuffer tail = ByteBuffer.allocate((int) Math.min(size, METADATA_MAX_SIZE));
+            long position = size - tail.capacity();
+            while (tail.hasRemaining()) {
+                if (channel.read(tail, position + tail.position()) < 0) break;
+            }
+            return buildEpoch(tail.array(), tail.position());
+        }
+    }
+
+    // Lê o stream inteiro guardando apenas os últimos METADATA_MAX_SIZE bytes
+    static long databaseVersion(InputStream in) throws IOException {
+        byte[] buffer = new byte[2 * METADATA_MAX_SIZE];
+        int length = 0;
+        int read;
+        while ((read = in.read(buffer, length, buffer.length - length)) > 0) {
+            length += read;
+            if (length == buffer.length) {
+                System.arraycopy(buffer, METADATA_MAX_SIZE, buffer, 0, METADATA_MAX_SIZE);
+                length = METADATA_MAX_SIZE;
+            }
+        }
+        return buildEpoch(buffer, length);
+    }
+
+    // build_epoch do mapa de metadados (depois da última ocorrência do marcador), 0 se não existir
+    private static long buildEpoch(byte[] data, int length) {
+        int start = -1;
+        for (int i = length - METADATA_MARKER.length; i >= 0 && start < 0; i--) {
+            int k = 0;
+            while (k < METADATA_MARKER.length && data[i + k] == METADATA_MARKER[k]) k++;
+            if (k == METADATA_MARKER.length) start = i + k;
+        }
+        if (start < 0) return 0;
+
+        try {
+            MetadataDecoder decoder = new MetadataDecoder(data, start);
+            int entries = decoder.control();
+            if (decoder.type != MetadataDecoder.MAP) return 0;
+            for (int e = 0; e < entries; e++) {
+                int keyLength = decoder.control();
+                if (decoder.type != MetadataDecoder.STRING) return 0;
+                boolean buildEpoch = keyLength == BUILD_EPOCH.length
+                        && regionMatches(data, decoder.pos, BUILD_EPOCH);
+                decoder.pos += keyLength;
+                if (!buildEpoch) {
+                    decoder.skip();
+                    continue;
+                }
+                int size = decoder.control();
+                return decoder.type == MetadataDecoder.UINT64 ? decoder.unsigned(size) : 0;
+            }
+        } catch (IOException | IndexOutOfBoundsException e) {
+            // metadados inválidos
+        }
+        return 0;
+    }
+
+    private static boolean regionMatches(byte[] data, int from, byte[] expected) {
+        for (int k = 0; k < expected.length; k++) {
+            if (data[from + k] != expected[k]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Descodificador mínimo do formato de dados MaxMind DB, só o necessário para
+     * percorrer o mapa de metadados (que não usa ponteiros).
+     */
+    private static final class MetadataDecoder {
+        static final int STRING = 2;
+        static final int MAP = 7;
+        static final int UINT64 = 9;
+        static final int ARRAY = 11;
+        static final int BOOLEAN = 14;
+
+        private final byte[] data;
+        int pos;
+        int type;
+
+        MetadataDecoder(byte[] data, int pos) {
+            this.data = data;
+            this.pos = pos;
+        }
+
+        // Lê o byte de controlo de um campo: guarda o tipo e devolve o tamanho
+        int control() throws IOException {
+            int ctrl = data[pos++] & 0xFF;
+            type = ctrl >>> 5;
+            if (type == 1) throw new IOException("Unexpected pointer in metadata");
+            if (type == 0) type = 7 + (data[pos++] & 0xFF);
+            int size = ctrl & 0x1F;
+            if (size == 29) return 29 + (int) unsigned(1);
+            if (size == 30) return 285 + (int) unsigned(2);
+            if (size == 31) return 65821 + (int) unsigned(3);
+            return size;
+        }
+
+        long unsigned(int size) {
+            long value = 0;
+            for (int k = 0; k < size; k++) value = (value << 8) | (data[pos++] & 0xFF);
+            return value;
+        }
+
+        void skip() throws IOException {
+            int size = control();
+            if (type == MAP) {
+                for (int e = 0; e < 2 * size; e++) skip();
+            } else if (type == ARRAY) {
+                for (int e = 0; e < size; e++) skip();
+            } else if (type != BOOLEAN) {
+                // o valor de um boolean é o próprio tamanho
+                pos += size;
+            }
+        }
+    }
+
+    public boolean isAvailable() {return reader != null;}
+
+    // Data de construção da base (epoch seconds), 0 se não estiver disponível;
+    // identifica a versão da base nas chaves dos snapshots (igual a getDefaultDatabaseVersion)
+    public long getDatabaseVersion() {
+        return reader == null ? 0 : reader.getMetadata().getBuildDate().getTime() / 1000;
+    }
+
+    /**
+     * País do IPv4 (a nos 8 bits mais significativos), ou UNKNOWN_ID se não for encontrado.
+     */
+    public short resolve(int ipv4) {
+        long entry = cached(ipv4 >>> 8);
+        return entry != 0 ? (short) entry : lookup(ipv4);
+    }
+
+    // Entrada da cache do prefixo /24, ou 0 se não estiver lá
+    private long cached(int prefix) {
+        int slot = mix(prefix);
+        for (int probe = 0; probe < MAX_PROBES; probe++, slot++) {
+            long entry = cache.get(slot & mask);
+            if (entry == 0) break;
+            if ((int) (entry >>> 32) == prefix) return entry;
+        }
+        return 0;
+    }
+
+    public String country(int ipv4) {
+        return CountryDictionary.code(resolve(ipv4));
+    }
+
+    /**
+     * Resolve um lote de IPs (em paralelo para lotes grandes).
+     */
+    public short[] resolveAll(int[] ips) {
+        short[] countries = new short[ips.length];
+        IntStream range = IntStream.range(0, ips.length);
+        if (ips.length >= PARALLEL_THRESHOLD) range = range.parallel();
+        range.forEach(i -> countries[i] = resolve(ips[i]));
+        return countries;
+    }
+
+    /**
+     * Preenche a coluna de países de todos os relays da tabela.
+     */
+    public void resolveAll(RelayTable table) {
+        int[] ips = new int[table.size()];
+        for (int i = 0; i < ips.length; i++) ips[i] = table.getIpv4(i);
+        short[] countries = resolveAll(ips);
+        for (int i = 0; i < ips.length; i++) table.setCountry(i, countries[i]);
+    }
+
+    private short lookup(int ipv4) {
+        if (reader == null) return CountryDictionary.UNKNOWN_ID;
+
+        short id = CountryDictionary.UNKNOWN_ID;
+        try {
+            DatabaseRecord<CountryRecord> record = record(ipv4);
+            id = CountryDictionary.intern(isoCode(record.getData()));
+            if (record.getNetwork().getPrefixLength() <= 24) {
+                store(ipv4 >>> 8, id);
+            }
+        } catch (IOException e) {
+            // Ignorar e retornar "Unknown"
+        }
+        return id;
+    }
+
+    private DatabaseRecord<CountryRecord> record(int ipv4) throws IOException {
+        byte[] address = {(byte) (ipv4 >>> 24), (byte) (ipv4 >>> 16), (byte) (ipv4 >>> 8), (byte) ipv4};
+        return reader.getRecord(InetAddress.getByAddress(address), CountryRecord.class);
+    }
+
+    private static String isoCode(CountryRecord data) {
+        return data == null ? null : data.getIsoCode();
+    }
+
+    // Para testes: país lido diretamente da base, sem passar pela cache
+    short resolveUncached(int ipv4) {
+        if (reader == null) return CountryDictionary.UNKNOWN_ID;
+        try {
+            return CountryDictionary.intern(isoCode(record(ipv4).getData()));
+        } catch (IOException e) {
+            return CountryDictionary.UNKNOWN_ID;
+        }
+    }
+
+    // Para testes: se o /24 do IPv4 já está na cache
+    boolean isCached(int ipv4) {
+        return cached(ipv4 >>> 8) != 0;
+    }
+
+    /**
+     * Campo country.iso_code de um registo (o mesmo que CountryResponse.getCountry().getIsoCode()),
+     * descodificado pelo leitor MaxMind sem Map intermédio; os restantes campos são ignorados.
+     * Públicas porque o leitor as instancia por reflexão.
+     */
+    public static final class CountryRecord {
+        private final String isoCode;
+
+        @MaxMindDbConstructor
+        public CountryRecord(@MaxMindDbParameter(name = "country") Country country) {
+            this.isoCode = country == null ? null : country.isoCode;
+        }
+
+        public String getIsoCode() {return isoCode;}
+    }
+
+    public static final class Country {
+        private final String isoCode;
+
+        @MaxMindDbConstructor
+        public Country(@MaxMindDbParameter(name = "iso_code") String isoCode) {
+            this.isoCode = isoCode;
+        }
+    }
+
+    // Ocupa a primeira posição livre da sequência de sondagem; se estiver cheia,
+    // substitui a posição inicial
+    private void store(int prefix, short id) {
+        long entry = ((long) prefix << 32) | VALID | (id & 0xFFFF);
+        int slot = mix(prefix);
+        for (int probe = 0; probe < MAX_PROBES; probe++, slot++) {
+            long current = cache.get(slot & mask);
+            if ((current != 0 && (int) (current >>> 32) == prefix)
+                    || (current == 0 && cache.compareAndSet(slot & mask, 0, entry))) {
+                return;
+            }
+        }
+        cache.set(mix(prefix) & mask, entry);
+    }
+
+    private static int mix(int prefix) {
+        int h = prefix * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (reader != null) reader.close();
+    }
+}
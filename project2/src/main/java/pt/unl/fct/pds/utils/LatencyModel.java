@@ -0,0 +1,229 @@
+package pt.unl.fct.pds.project2.utils;
+
+import pt.unl.fct.pds.project2.model.CountryDictionary;
+import pt.unl.fct.pds.project2.model.RelayTable;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Estimativa do RTT entre países a partir do centro geográfico de cada um (recurso
+ * country-centroids.csv, ao lado da base GeoLite2).
+ *
+ * Na construção calcula-se uma matriz densa de RTTs (microssegundos) indexada pelos ids
+ * do {@link CountryDictionary}: distância do grande círculo, percorrida na fibra (~2/3 c)
+ * com um fator de desvio das rotas reais, mais um custo fixo por hop. Dentro do mesmo
+ * país usa-se um RTT doméstico constante. Países sem centro conhecido (incluindo
+ * Unknown) recebem a média dos RTTs dos restantes.
+ *
+ * Para uma tabela de relays, {@link #forTable} converte o país de cada relay no início da
+ * sua linha e coluna da matriz, pelo que o RTT de um circuito são quatro leituras de
+ * arrays e uma soma.
+ */
+public final class LatencyModel {
+
+    public static final String CENTROIDS = "country-centroids.csv";
+
+    // Luz na fibra: ~200 km por ms
+    public static final double FIBER_KM_PER_MS = 200.0;
+    // Comprimento das rotas reais face ao grande círculo
+    public static final double ROUTE_STRETCH = 2.0;
+    // Custo fixo de cada hop (acesso, encaminhamento, processamento no relay)
+    public static final double HOP_RTT_MS = 5.0;
+    // RTT entre dois relays do mesmo país
+    public static final double DOMESTIC_RTT_MS = 10.0;
+
+    private static final double EARTH_RADIUS_KM = 6371.0;
+
+    private final int size;                 // linhas da matriz (ids 0..size-1)
+    private final int[] rtt;                // rtt[a * size + b], em microssegundos
+    private final boolean[] located;
+    private final double[] latitude;
+    private final double[] longitude;
+
+    private static final class DefaultHolder {
+        static final LatencyModel INSTANCE = loadDefault();
+    }
+
+    /**
+     * @param centroids código ISO -> {latitude, longitude} em graus
+     */
+    public LatencyModel(Map<String, double[]> centroids) {
+        for (String code : centroids.keySet()) CountryDictionary.intern(code);
+        this.size = CountryDictionary.size();
+        this.rtt = new int[size * size];
+        this.located = new boolean[size];
+        this.latitude = new double[size];
+        this.longitude = new double[size];
+        for (Map.Entry<String, double[]> e : centroids.entrySet()) {
+            short c = CountryDictionary.intern(e.getKey());
+            located[c] = true;
+            latitude[c] = e.getValue()[0];
+            longitude[c] = e.getValue()[1];
+        }
+        fill();
+    }
+
+    // Pares com os dois centros conhecidos e depois as médias para os restantes
+    private void fill() {
+        double total = 0;
+        long pairs = 0;
+        double[] columnSum = new double[size];
+        int numLocated = 0;
+        for (int a = 0; a < size; a++) {
+            if (!located[a]) continue;
+            numLocated++;
+            for (int b = 0; b < size; b++) {
+                if (!located[b]) continue;
+                double ms = a == b ? DOMESTIC_RTT_MS
+                        : HOP_RTT_MS + 2 * distanceKm(a, b) * ROUTE_STRETCH / FIBER_KM_PER_MS;
+                int micros = (int) Math.round(ms * 1000);
+                rtt[a * size + b] = micros;
+                columnSum[b] += micros;
+                total += micros;
+                pairs++;
+            }
+        }
+        int mean = pairs == 0 ? (int) Math.round(DOMESTIC_RTT_MS * 1000) : (int) Math.round(total / pairs);
+        for (int a = 0; a < size; a++) {
+            for (int b = 0; b < size; b++) {
+                if (located[a] && located[b]) continue;
+                int known = located[a] ? a : (located[b] ? b : -1);
+                rtt[a * size + b] = known < 0 ? mean : (int) Math.round(columnSum[known] / numLocated);
+            }
+        }
+    }
+
+    /**
+     * Modelo por omissão, lido do classpath na primeira utilização. Se o recurso não
+     * existir, todos os pares de países têm o mesmo RTT.
+     */
+    public static LatencyModel getDefault() {
+        return DefaultHolder.INSTANCE;
+    }
+
+    private static LatencyModel loadDefault() {
+        try (InputStream in = LatencyModel.class.getClassLoader().getResourceAsStream(CENTROIDS)) {
+            if (in == null) throw new IOException(CENTROIDS + " not found in classpath");
+            return load(in);
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Fail loading " + CENTROIDS + ": " + e.getMessage());
+            return new LatencyModel(new LinkedHashMap<>());
+        }
+    }
+
+    /**
+     * Lê "país,latitude,longitude[,nome]" por linha (cabeçalho e linhas com # ignorados).
+     */
+    public static LatencyModel load(InputStream in) throws IOException {
+        Map<String, double[]> centroids = new LinkedHashMap<>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#") || line.startsWith("country,")) continue;
+            String[] fields = line.split(",", 4);
+            if (fields.length < 3) throw new IllegalArgumentException("Invalid centroid line: " + line);
+            try {
+                centroids.put(fields[0].trim(), new double[]{
+                        Double.parseDouble(fields[1].trim()), Double.parseDouble(fields[2].trim())});
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid centroid line: " + line);
+            }
+        }
+        return new LatencyModel(centroids);
+    }
+
+    // Ids internados depois da construção contam como países sem centro
+    private int index(short country) {
+        return country >= 0 && country < size ? country : CountryDictionary.UNKNOWN_ID;
+    }
+
+    public int size() {return size;}
+
+    public boolean isLocated(short country) {return located[index(country)];}
+
+    // Distância do grande círculo entre os centros (haversine), 0 se algum não for conhecido
+    public double distanceKm(short a, short b) {
+        return distanceKm(index(a), index(b));
+    }
+
+    private double distanceKm(int a, int b) {
+        if (!located[a] || !located[b]) return 0;
+        double phi1 = Math.toRadians(latitude[a]);
+        double phi2 = Math.toRadians(latitude[b]);
+        double dPhi = phi2 - phi1;
+        double dLambda = Math.toRadians(longitude[b] - longitude[a]);
+        double h = Math.sin(dPhi / 2) * Math.sin(dPhi / 2)
+                + Math.cos(phi1) * Math.cos(phi2) * Math.sin(dLambda / 2) * Math.sin(dLambda / 2);
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1, Math.sqrt(h)));
+    }
+
+    public int rttMicros(short a, short b) {
+        return rtt[index(a) * size + index(b)];
+    }
+
+    public double rttMillis(short a, short b) {
+        return rttMicros(a, b) / 1000.0;
+    }
+
+    // RTT esperado (µs) dos hops guard-middle e middle-exit, diretamente sobre a tabela
+    public int circuitRttMicros(RelayTable table, int guard, int middle, int exit) {
+        return rttMicros(table.getCountry(guard), table.getCountry(middle))
+                + rttMicros(table.getCountry(middle), table.getCountry(exit));
+    }
+
+    public Table forTable(RelayTable table) {
+        return new Table(table);
+    }
+
+    /**
+     * Linha e coluna da matriz de cada relay de uma tabela, calculadas uma vez por execução
+     * e partilhadas por todas as threads.
+     */
+    public final class Table {
+        private final int[] row;
+        private final int[] column;
+
+        private Table(RelayTable table) {
+            int n = table.size();
+            this.row = new int[n];
+            this.column = new int[n];
+            for (int i = 0; i < n; i++) {
+                column[i] = index(table.getCountry(i));
+                row[i] = column[i] * size;
+            }
+        }
+
+        public int size() {return row.length;}
+
+        public LatencyModel getModel() {return LatencyModel.this;}
+
+        // RTT (µs) entre dois relays
+        public int rttMicros(int a, int b) {
+            return rtt[row[a] + column[b]];
+        }
+
+        /**
+         * RTT esperado (µs) do circuito: hops guard-middle e middle-exit. Os troços
+         * cliente-guard e exit-destino dependem de extremos que a simulação não modela.
+         */
+        public int circuitRttMicros(int guard, int middle, int exit) {
+            return rtt[row[guard] + column[middle]] + rtt[row[middle] + column[exit]];
+        }
+    }
+
+    @Override
+    public String toString() {
+        int n = 0;
+        for (boolean l : located) if (l) n++;
+        return String.format(Locale.ROOT, "LatencyModel(%d countries, stretch=%.1f, hop=%.1f ms, domestic=%.1f ms)",
+                n, ROUTE_STRETCH, HOP_RTT_MS, DOMESTIC_RTT_MS);
+    }
+}
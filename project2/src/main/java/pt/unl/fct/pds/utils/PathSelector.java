@@ -1,178 +1,641 @@
 package pt.unl.fct.pds.project2.utils;
 
+import pt.unl.fct.pds.project2.instrumentation.SelectionProbe;
+import pt.unl.fct.pds.project2.model.BandwidthWeights;
+import pt.unl.fct.pds.project2.model.CountryDictionary;
+import pt.unl.fct.pds.project2.model.ExitPolicy;
 import pt.unl.fct.pds.project2.model.Node;
+import pt.unl.fct.pds.project2.model.RelayTable;
 
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.List;
-import java.util.Random;
+import java.util.Map;
+import java.util.Objects;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.IntPredicate;
 
 public class PathSelector {
 
-    private List<Node> relays;
-    private Random random = new Random();
+    private final RelayTable table;
+
+    // Gerador para a API sem RNG explícito: um SplittableRandom por thread
+    private final SplittableRandom seedSource = new SplittableRandom();
+    private final ThreadLocal<SplittableRandom> random = ThreadLocal.withInitial(this::splitSeed);
+
+    // Peso de cada relay em cada posição (GUARD, MIDDLE, EXIT de BandwidthWeights):
+    // bandwidth x fator do bandwidth-weights do consensus para a classe de flags do
+    // relay; sem bandwidth-weights é a própria bandwidth
+    private BandwidthWeights weights;
+
+    // Samplers ponderados pelos pesos da posição (Fenwick tree + subtotais por /16),
+    // um por papel; guardam a bandwidth e a classe de flags de cada relay, com os
+    // fatores da posição. O pool de cada papel são os relays presentes no sampler
+    private BandwidthSampler exitSampler;
+    private BandwidthSampler guardSampler;
+    private BandwidthSampler middleSampler;
+
+    // Exits por porto de destino: um sampler por classe de policies (conjunto de
+    // policies que aceitam o porto), criado na primeira utilização e partilhado
+    // por todos os portos da mesma classe
+    private final AtomicReferenceArray<BandwidthSampler> exitSamplerByPort =
+            new AtomicReferenceArray<>(ExitPolicy.MAX_PORT + 1);
+    private final ConcurrentMap<BitSet, BandwidthSampler> exitSamplerByClass = new ConcurrentHashMap<>();
+    private int knownPolicies;
+
+    // Multiplicadores da penalização pela latência por par de países (null: por criar)
+    private volatile LatencyRows latencyRows;
+
+    // Instrumentação (null: desligada, o custo é um teste a null por caminho)
+    private SelectionProbe probe;
 
     public PathSelector(List<Node> relays) {
-        this.relays = relays;
+        this(RelayTable.fromNodes(relays));
+    }
+
+    public PathSelector(RelayTable table) {
+        this.table = table;
+        rebuild();
+    }
+
+    // Samplers de raiz para o estado atual da tabela
+    private void rebuild() {
+        latencyRows = null;
+        weights = table.getBandwidthWeights();
+        exitSampler = sampler(poolOf(this::isExit), BandwidthWeights.EXIT);
+        guardSampler = sampler(poolOf(this::isGuard), BandwidthWeights.GUARD);
+        middleSampler = sampler(poolOf(this::isMiddle), BandwidthWeights.MIDDLE);
+        exitSamplerByClass.clear();
+        for (int port = 0; port < exitSamplerByPort.length(); port++) exitSamplerByPort.set(port, null);
+        knownPolicies = table.getPolicies().size();
+    }
+
+    private long computeWeight(int position, int relay) {
+        return weights == null ? bandwidth(relay) : weights.weight(table, relay, position);
+    }
+
+    // Fator de cada classe de flags na posição (1 sem bandwidth-weights)
+    private long[] factors(int position) {
+        long[] factors = new long[BandwidthWeights.FLAG_CLASSES];
+        for (int c = 0; c < factors.length; c++) factors[c] = weights == null ? 1 : weights.classFactor(position, c);
+        return factors;
+    }
+
+    private long bandwidth(int relay) {
+        return Math.max(0, table.getBandwidth(relay));
+    }
+
+    private BandwidthSampler sampler(int[] pool, int position) {
+        long[] w = new long[pool.length];
+        for (int k = 0; k < pool.length; k++) w[k] = bandwidth(pool[k]);
+        return new BandwidthSampler(table, pool, w, factors(position));
     }
 
-    
-    private boolean hasFlag(Node n, String flag) {
-        for (String f : n.getFlags()) {
-            if (f.equalsIgnoreCase(flag)) return true;
+    public RelayTable getTable() {return table;}
+    public int[] getExitPool() {return poolOf(exitSampler);}
+    public int[] getGuardPool() {return poolOf(guardSampler);}
+    public int[] getMiddlePool() {return poolOf(middleSampler);}
+
+    public int[] getExitPool(int port) {
+        return poolOf(exitSampler(port));
+    }
+
+    public BandwidthWeights getBandwidthWeights() {return weights;}
+
+    // Peso do relay na posição (GUARD, MIDDLE ou EXIT de BandwidthWeights)
+    public long weight(int position, int relay) {return computeWeight(position, relay);}
+
+    // Vetor de pesos da posição, indexado por relay (calculado a cada chamada, O(n))
+    public long[] getWeights(int position) {
+        long[] w = new long[table.size()];
+        for (int i = 0; i < w.length; i++) w[i] = computeWeight(position, i);
+        return w;
+    }
+
+    public int getExitPoolSize() {return exitSampler.size();}
+    public int getGuardPoolSize() {return guardSampler.size();}
+    public int getMiddlePoolSize() {return middleSampler.size();}
+
+    public SelectionProbe getProbe() {return probe;}
+
+    /**
+     * Liga (ou desliga, com null) a instrumentação dos caminhos selecionados por
+     * selectPathIds, selectPathGeoIds e variantes. Deve ser definido antes de as
+     * threads de seleção começarem.
+     */
+    public void setProbe(SelectionProbe probe) {this.probe = probe;}
+
+    private boolean isExit(int i) {return table.hasFlag(i, RelayTable.FLAG_FAST) && table.canExit(i);}
+    private boolean isGuard(int i) {return table.hasFlag(i, RelayTable.FLAG_GUARD);}
+    private boolean isMiddle(int i) {return table.hasFlag(i, RelayTable.FLAG_FAST);}
+
+    private boolean isExit(int i, BitSet allowed) {
+        int policy = table.getExitPolicyId(i);
+        return policy >= 0 && allowed.get(policy) && table.hasFlag(i, RelayTable.FLAG_FAST);
+    }
+
+    private int[] poolOf(IntPredicate role) {
+        int[] pool = new int[table.size()];
+        int n = 0;
+        for (int i = 0; i < table.size(); i++) {
+            if (role.test(i)) pool[n++] = i;
         }
-        return false;
+        return Arrays.copyOf(pool, n);
     }
 
-    // Exit policy simplificada: aceita qualquer um com ExitPolicy != "reject"
-    private boolean canExit(Node n) {
-        return !n.getExitPolicy().toLowerCase().contains("reject");
+    private int[] poolOf(BandwidthSampler sampler) {
+        return poolOf(sampler::contains);
     }
 
-    private boolean same16Subnet(Node a, Node b) {
-        // compara os primeiros dois octetos
-        try {
-            String[] A = a.getIpAddress().split("\\.");
-            String[] B = b.getIpAddress().split("\\.");
-            return A[0].equals(B[0]) && A[1].equals(B[1]);
-        } catch (Exception e) {
-            return false;
+    // Número de classes de exit policies já usadas (samplers por porto distintos)
+    public int getExitClassCount() {return exitSamplerByClass.size();}
+
+    private BandwidthSampler exitSampler(int port) {
+        if (port < ExitPolicy.MIN_PORT || port > ExitPolicy.MAX_PORT) {
+            throw new IllegalArgumentException("Invalid port: " + port);
         }
+        BandwidthSampler sampler = exitSamplerByPort.get(port);
+        if (sampler == null) {
+            sampler = exitSamplerByClass.computeIfAbsent(policiesAllowing(port), this::buildExitSampler);
+            exitSamplerByPort.set(port, sampler);
+        }
+        return sampler;
     }
 
+    private BitSet policiesAllowing(int port) {
+        List<ExitPolicy> policies = table.getPolicies();
+        BitSet allowed = new BitSet(policies.size());
+        for (int p = 0; p < policies.size(); p++) {
+            if (policies.get(p).allows(port)) allowed.set(p);
+        }
+        return allowed;
+    }
+
+    private BandwidthSampler buildExitSampler(BitSet allowed) {
+        return sampler(poolOf(i -> isExit(i, allowed)), BandwidthWeights.EXIT);
+    }
 
-    private List<Node> filterExit() {
-        List<Node> list = new ArrayList<>();
-        for (Node n : relays) {
-            if (hasFlag(n, "Fast") && canExit(n)) {
-                list.add(n);
+
+    // ---------------- Atualização incremental ----------------
+
+    /**
+     * Aplica alterações já feitas na tabela a estes relays (novos, ausentes, ou com
+     * bandwidth, flags, endereço, país ou exit policy diferentes). Cada relay custa
+     * O(log n) por sampler, sem reconstruir os pools; os samplers só são refeitos
+     * quando a estrutura secundária cresce demasiado. Novas bandwidth-weights do
+     * consensus só mudam os fatores por classe de flags dos samplers (uma passagem
+     * linear por sampler, sem reconstruir nem reordenar os pools).
+     * Não pode correr em paralelo com seleções.
+     */
+    public void update(int[] relays, int count) {
+        latencyRows = null;
+        if (!Objects.equals(weights, table.getBandwidthWeights())) {
+            weights = table.getBandwidthWeights();
+            guardSampler.setFactors(factors(BandwidthWeights.GUARD));
+            middleSampler.setFactors(factors(BandwidthWeights.MIDDLE));
+            exitSampler.setFactors(factors(BandwidthWeights.EXIT));
+            for (BandwidthSampler sampler : exitSamplerByClass.values()) {
+                sampler.setFactors(factors(BandwidthWeights.EXIT));
             }
         }
-        return list;
-    }
 
-    private List<Node> filterGuard(Node exit) {
-        List<Node> list = new ArrayList<>();
-        for (Node n : relays) {
-            if (hasFlag(n, "Guard") && !same16Subnet(n, exit)) {
-                list.add(n);
+        guardSampler = refresh(guardSampler, relays, count, this::isGuard);
+        middleSampler = refresh(middleSampler, relays, count, this::isMiddle);
+        exitSampler = refresh(exitSampler, relays, count, this::isExit);
+
+        // Novas policies mudam as classes dos portos: recriadas na próxima utilização
+        boolean reset = table.getPolicies().size() != knownPolicies;
+        if (!reset) {
+            for (Map.Entry<BitSet, BandwidthSampler> entry : exitSamplerByClass.entrySet()) {
+                BitSet allowed = entry.getKey();
+                BandwidthSampler sampler = refresh(entry.getValue(), relays, count, i -> isExit(i, allowed));
+                if (sampler != entry.getValue()) reset = true;
             }
         }
-        return list;
+        if (reset) {
+            exitSamplerByClass.clear();
+            for (int port = 0; port < exitSamplerByPort.length(); port++) exitSamplerByPort.set(port, null);
+            knownPolicies = table.getPolicies().size();
+        }
     }
 
-    private List<Node> filterMiddle(Node guard, Node exit) {
-        List<Node> list = new ArrayList<>();
-        for (Node n : relays) {
-            if (hasFlag(n, "Fast") &&
-                    !same16Subnet(n, guard) &&
-                    !same16Subnet(n, exit)) {
-                list.add(n);
+    // Devolve o próprio sampler, ou um novo se tiver de ser compactado
+    private BandwidthSampler refresh(BandwidthSampler sampler, int[] relays, int count, IntPredicate role) {
+        int[] added = new int[count];
+        long[] bandwidths = new long[count];
+        int n = 0;
+        for (int k = 0; k < count; k++) {
+            int i = relays[k];
+            if (!role.test(i)) {
+                sampler.remove(i);
+            } else if (!sampler.tryUpdate(table, i, bandwidth(i))) {
+                added[n] = i;
+                bandwidths[n++] = bandwidth(i);
             }
         }
-        return list;
+        sampler.addAll(table, added, bandwidths, n);
+        return sampler.needsCompaction() ? sampler.compact(table) : sampler;
     }
 
 
-    private Node weightedRandomBandwidth(List<Node> list) {
-        double total = 0;
-        for (Node n : list) total += n.getBandwidth();
+    private SplittableRandom splitSeed() {
+        synchronized (seedSource) {
+            return seedSource.split();
+        }
+    }
 
-        double r = random.nextDouble() * total;
-        double accum = 0;
+    private Node view(int id) {
+        return id < 0 ? null : table.node(id);
+    }
 
-        for (Node n : list) {
-            accum += n.getBandwidth();
-            if (accum >= r) return n;
-        }
-        return list.get(list.size() - 1);
+    private int subnetOf(int id) {
+        return id < 0 ? -1 : table.getSubnet16(id);
+    }
+
+    private short countryOf(int id) {
+        return id < 0 ? -1 : table.getCountry(id);
+    }
+
+    private static int idOf(Node n) {
+        return n == null ? -1 : n.getId();
     }
 
-    private Node weightedRandomTemp(List<Node> list) {
-        double total = 0;
-        for (Node n : list) {
-            total += n.tempWeight;
-        }
 
-        double r = random.nextDouble() * total;
-        double accum = 0;
+    // ---------------- Seleção por id (caminho rápido) ----------------
+
+    public int selectExitId(SplittableRandom rng) {
+        return exitSampler.sample(rng.nextDouble(), -1, -1);
+    }
 
-        for (Node n : list) {
-            accum += n.tempWeight;
-            if (accum >= r) return n;
+    // Exit que aceita tráfego para o porto de destino
+    public int selectExitId(SplittableRandom rng, int port) {
+        return exitSampler(port).sample(rng.nextDouble(), -1, -1);
+    }
+
+    public int selectGuardId(SplittableRandom rng, int exit) {
+        return guardSampler.sample(rng.nextDouble(), subnetOf(exit), -1);
+    }
+
+    // Guard fora das /16 de dois relays (por exemplo, outros guards do mesmo cliente)
+    public int selectGuardId(SplittableRandom rng, int relayA, int relayB) {
+        return guardSampler.sample(rng.nextDouble(), subnetOf(relayA), subnetOf(relayB));
+    }
+
+    public int selectMiddleId(SplittableRandom rng, int guard, int exit) {
+        return middleSampler.sample(rng.nextDouble(), subnetOf(guard), subnetOf(exit));
+    }
+
+    /**
+     * Seleciona um caminho sem alocar: escreve {guard, middle, exit} em path.
+     */
+    public void selectPathIds(SplittableRandom rng, int[] path) {
+        if (probe != null) probedPath(rng, exitSampler, path);
+        else completePath(rng, selectExitId(rng), path);
+    }
+
+    public void selectPathIds(SplittableRandom rng, int port, int[] path) {
+        if (probe != null) probedPath(rng, exitSampler(port), path);
+        else completePath(rng, selectExitId(rng, port), path);
+    }
+
+    /**
+     * Caminho através de um guard já fixado (guards persistentes de um cliente):
+     * o exit é sorteado fora da /16 do guard e o middle fora das duas.
+     */
+    public void selectPathIdsFromGuard(SplittableRandom rng, int guard, int[] path) {
+        SelectionProbe probe = this.probe;
+        long start = probe == null ? 0 : System.nanoTime();
+        int exit = exitSampler.sample(rng.nextDouble(), subnetOf(guard), -1);
+        if (probe != null) {
+            probe.record(SelectionProbe.EXIT, System.nanoTime() - start, exitSampler.subnetSize(subnetOf(guard)), 0);
+            start = System.nanoTime();
         }
-        return list.get(list.size() - 1);
+        path[0] = guard;
+        path[1] = selectMiddleId(rng, guard, exit);
+        path[2] = exit;
+        if (probe != null) {
+            probe.record(SelectionProbe.MIDDLE, System.nanoTime() - start, excludedMiddles(guard, exit), 0);
+        }
+    }
+
+    // O relay continua a poder ser guard (para a rotação dos guards de um cliente)
+    public boolean isGuardUsable(int relay) {
+        return guardSampler.contains(relay);
+    }
+
+    // Completa o caminho a partir do exit já escolhido
+    private void completePath(SplittableRandom rng, int exit, int[] path) {
+        int guard = selectGuardId(rng, exit);
+        int middle = selectMiddleId(rng, guard, exit);
+        path[0] = guard;
+        path[1] = middle;
+        path[2] = exit;
     }
 
+    public int selectExitId() {
+        return selectExitId(random.get());
+    }
+
+    public int selectGuardId(int exit) {
+        return selectGuardId(random.get(), exit);
+    }
+
+    public int selectMiddleId(int guard, int exit) {
+        return selectMiddleId(random.get(), guard, exit);
+    }
+
+    public int[] selectPathIds() {
+        int[] path = new int[3];
+        selectPathIds(random.get(), path);
+        return path;
+    }
+
+    public int[] selectPathIds(int port) {
+        int[] path = new int[3];
+        selectPathIds(random.get(), port, path);
+        return path;
+    }
+
+
+    // ---------------- Seleção por Node (compatibilidade) ----------------
 
     public Node selectExit() {
-        List<Node> exits = filterExit();
-        return weightedRandomBandwidth(exits);
+        return view(selectExitId());
     }
 
     public Node selectGuard(Node exit) {
-        List<Node> guards = filterGuard(exit);
-        return weightedRandomBandwidth(guards);
+        return view(selectGuardId(idOf(exit)));
     }
 
     public Node selectMiddle(Node guard, Node exit) {
-        List<Node> mids = filterMiddle(guard, exit);
-        return weightedRandomBandwidth(mids);
+        return view(selectMiddleId(idOf(guard), idOf(exit)));
     }
 
     public Node[] selectPath() {
-        Node exit = selectExit();
-        Node guard = selectGuard(exit);
-        Node middle = selectMiddle(guard, exit);
-        return new Node[]{guard, middle, exit};
+        int[] ids = selectPathIds();
+        return new Node[]{view(ids[0]), view(ids[1]), view(ids[2])};
+    }
+
+    public Node selectExit(int port) {
+        return view(selectExitId(random.get(), port));
     }
 
+    public Node[] selectPath(int port) {
+        int[] ids = selectPathIds(port);
+        return new Node[]{view(ids[0]), view(ids[1]), view(ids[2])};
+    }
 
-    public Node selectGuardGeo(Node exit, double alpha) {
-        List<Node> guards = filterGuard(exit);
 
-        for (Node g : guards) {
-            double w = g.getBandwidth();
+    // ---------------- Geo-Aware ----------------
 
-            // aplica α se for país diferente
-            if (!g.getCountry().equalsIgnoreCase(exit.getCountry())) {
-                w *= (1 + alpha);
-            }
+    public int selectGuardGeoId(SplittableRandom rng, int exit, double alpha) {
+        // aplica α aos guards de país diferente do exit
+        short exitCountry = countryOf(exit);
+        return guardSampler.sample(rng.nextDouble(), subnetOf(exit), -1,
+                1 + alpha, exitCountry, 1, exitCountry, 1);
+    }
+
+    public int selectMiddleGeoId(SplittableRandom rng, int guard, int exit, double beta) {
+        short guardCountry = countryOf(guard);
+        short exitCountry = countryOf(exit);
+
+        // fator 3: país único; 2: partilha com 1; 1: partilha com 2
+        double unique = 1 + beta * 3;
+        double sharedOne = 1 + beta * 2;
+        double sharedBoth = 1 + beta;
+        double guardMult = guardCountry == exitCountry ? sharedBoth : sharedOne;
+
+        return middleSampler.sample(rng.nextDouble(), subnetOf(guard), subnetOf(exit),
+                unique, guardCountry, guardMult, exitCountry, guardMult);
+    }
+
+    /**
+     * Versão Geo-Aware de {@link #selectPathIds(SplittableRandom, int[])}.
+     */
+    public void selectPathGeoIds(SplittableRandom rng, double alpha, double beta, int[] path) {
+        if (probe != null) probedPathGeo(rng, exitSampler, alpha, beta, path);
+        else completePathGeo(rng, selectExitId(rng), alpha, beta, path);
+    }
+
+    public void selectPathGeoIds(SplittableRandom rng, int port, double alpha, double beta, int[] path) {
+        if (probe != null) probedPathGeo(rng, exitSampler(port), alpha, beta, path);
+        else completePathGeo(rng, selectExitId(rng, port), alpha, beta, path);
+    }
 
-            g.tempWeight = w;
+    /**
+     * Versão Geo-Aware de {@link #selectPathIdsFromGuard}: com o guard fixado, α passa a
+     * favorecer exits de país diferente do guard; o middle usa β como habitualmente.
+     */
+    public void selectPathGeoIdsFromGuard(SplittableRandom rng, int guard, double alpha, double beta, int[] path) {
+        SelectionProbe probe = this.probe;
+        long start = probe == null ? 0 : System.nanoTime();
+        short guardCountry = countryOf(guard);
+        int exit = exitSampler.sample(rng.nextDouble(), subnetOf(guard), -1,
+                1 + alpha, guardCountry, 1, guardCountry, 1);
+        if (probe != null) {
+            probe.record(SelectionProbe.EXIT_GEO, System.nanoTime() - start,
+                    exitSampler.subnetSize(subnetOf(guard)), alpha == 0 ? 0 : exitSampler.countrySize(guardCountry));
+            start = System.nanoTime();
         }
+        path[0] = guard;
+        path[1] = selectMiddleGeoId(rng, guard, exit, beta);
+        path[2] = exit;
+        if (probe != null) {
+            probe.record(SelectionProbe.MIDDLE_GEO, System.nanoTime() - start,
+                    excludedMiddles(guard, exit), beta == 0 ? 0 : weightedMiddles(guard, exit));
+        }
+    }
+
+    private void completePathGeo(SplittableRandom rng, int exit, double alpha, double beta, int[] path) {
+        int guard = selectGuardGeoId(rng, exit, alpha);
+        int middle = selectMiddleGeoId(rng, guard, exit, beta);
+        path[0] = guard;
+        path[1] = middle;
+        path[2] = exit;
+    }
+
+    public int selectGuardGeoId(int exit, double alpha) {
+        return selectGuardGeoId(random.get(), exit, alpha);
+    }
+
+    public int selectMiddleGeoId(int guard, int exit, double beta) {
+        return selectMiddleGeoId(random.get(), guard, exit, beta);
+    }
 
-        return weightedRandomTemp(guards);
+    public int[] selectPathGeoIds(double alpha, double beta) {
+        int[] path = new int[3];
+        selectPathGeoIds(random.get(), alpha, beta, path);
+        return path;
+    }
+
+    public int[] selectPathGeoIds(int port, double alpha, double beta) {
+        int[] path = new int[3];
+        selectPathGeoIds(random.get(), port, alpha, beta, path);
+        return path;
+    }
+
+    public Node selectGuardGeo(Node exit, double alpha) {
+        return view(selectGuardGeoId(idOf(exit), alpha));
     }
 
     public Node selectMiddleGeo(Node guard, Node exit, double beta) {
-        List<Node> mids = filterMiddle(guard, exit);
+        return view(selectMiddleGeoId(idOf(guard), idOf(exit), beta));
+    }
 
-        for (Node m : mids) {
-            double w = m.getBandwidth();
-            String c = m.getCountry();
+    public Node[] selectPathGeo(double alpha, double beta) {
+        int[] ids = selectPathGeoIds(alpha, beta);
+        return new Node[]{view(ids[0]), view(ids[1]), view(ids[2])};
+    }
 
-            int shared = 0;
-            if (c.equalsIgnoreCase(guard.getCountry())) shared++;
-            if (c.equalsIgnoreCase(exit.getCountry())) shared++;
+    public Node[] selectPathGeo(int port, double alpha, double beta) {
+        int[] ids = selectPathGeoIds(port, alpha, beta);
+        return new Node[]{view(ids[0]), view(ids[1]), view(ids[2])};
+    }
 
-            int factor;
 
-            if (shared == 0) factor = 3;      // país único
-            else if (shared == 1) factor = 2; // partilha com 1
-            else factor = 1;                  // partilha com 2
+    // ---------------- Penalização pela latência ----------------
 
-            w *= (1 + beta * factor);
+    // RTT que reduz o peso de um middle para 1 / (1 + gamma)
+    public static final double LATENCY_REFERENCE_MS = 100.0;
 
-            m.tempWeight = w;
+    /**
+     * Middle com o peso de cada país c multiplicado por 1 / (1 + gamma * rtt / referência),
+     * em que rtt é o RTT esperado guard-c-exit do {@link LatencyModel}. Com gamma = 0 é a
+     * seleção original.
+     */
+    public int selectMiddleLatencyId(SplittableRandom rng, int guard, int exit, LatencyModel latency, double gamma) {
+        short guardCountry = countryOf(guard);
+        short exitCountry = countryOf(exit);
+        double[] mult = latencyRow(guardCountry, exitCountry, latency, gamma);
+        return middleSampler.sample(rng.nextDouble(), subnetOf(guard), subnetOf(exit), mult);
+    }
+
+    // Linha de multiplicadores do par de países, da cache do modelo e gamma pedidos
+    private double[] latencyRow(short guardCountry, short exitCountry, LatencyModel latency, double gamma) {
+        LatencyRows cache = latencyRows;
+        int countries = CountryDictionary.size();
+        if (cache == null || cache.latency != latency || cache.gamma != gamma || cache.countries != countries) {
+            cache = new LatencyRows(latency, gamma, countries);
+            latencyRows = cache;
+        }
+        int key = (guardCountry + 1) * (cache.countries + 1) + exitCountry + 1;
+        double[] row = cache.rows.get(key);
+        if (row == null) {
+            // Duas threads podem calcular a mesma linha; o resultado é igual
+            row = cache.compute(guardCountry, exitCountry);
+            cache.rows.set(key, row);
+        }
+        return row;
+    }
+
+    /**
+     * Multiplicadores 1 / (1 + gamma * rtt / referência) por país do middle, uma linha
+     * por par (país do guard, país do exit) incluindo o país -1 dos ids -1. As linhas
+     * são criadas na primeira utilização e só dependem do modelo, de gamma e dos países
+     * conhecidos: a cache é refeita se algum mudar e descartada em update() e rebuild().
+     */
+    private static final class LatencyRows {
+        final LatencyModel latency;
+        final double gamma;
+        final int countries;
+        final AtomicReferenceArray<double[]> rows;
+
+        LatencyRows(LatencyModel latency, double gamma, int countries) {
+            this.latency = latency;
+            this.gamma = gamma;
+            this.countries = countries;
+            this.rows = new AtomicReferenceArray<>((countries + 1) * (countries + 1));
         }
 
-        return weightedRandomTemp(mids);
+        double[] compute(short guardCountry, short exitCountry) {
+            double[] mult = new double[countries];
+            double scale = gamma / (LATENCY_REFERENCE_MS * 1000);
+            for (int c = 0; c < mult.length; c++) {
+                int rtt = latency.rttMicros(guardCountry, (short) c) + latency.rttMicros((short) c, exitCountry);
+                mult[c] = 1 / (1 + scale * rtt);
+            }
+            return mult;
+        }
     }
 
-    public Node[] selectPathGeo(double alpha, double beta) {
-        Node exit = selectExit();
-        Node guard = selectGuardGeo(exit, alpha);
-        Node middle = selectMiddleGeo(guard, exit, beta);
-        return new Node[]{guard, middle, exit};
+    /**
+     * Terceiro modo de seleção: exit e guard como no algoritmo original e o middle
+     * penalizado pela latência ({@link #selectMiddleLatencyId}).
+     */
+    public void selectPathLatencyIds(SplittableRandom rng, LatencyModel latency, double gamma, int[] path) {
+        int exit = selectExitId(rng);
+        int guard = selectGuardId(rng, exit);
+        path[0] = guard;
+        path[1] = selectMiddleLatencyId(rng, guard, exit, latency, gamma);
+        path[2] = exit;
+    }
+
+    public Node[] selectPathLatency(LatencyModel latency, double gamma) {
+        int[] ids = new int[3];
+        selectPathLatencyIds(random.get(), latency, gamma, ids);
+        return new Node[]{view(ids[0]), view(ids[1]), view(ids[2])};
+    }
+
+
+    // ---------------- Instrumentação ----------------
+
+    // Como completePath, medindo cada etapa
+    private void probedPath(SplittableRandom rng, BandwidthSampler exits, int[] path) {
+        SelectionProbe probe = this.probe;
+        long start = System.nanoTime();
+        int exit = exits.sample(rng.nextDouble(), -1, -1);
+        probe.record(SelectionProbe.EXIT, System.nanoTime() - start, 0, 0);
+
+        start = System.nanoTime();
+        int guard = selectGuardId(rng, exit);
+        probe.record(SelectionProbe.GUARD, System.nanoTime() - start, guardSampler.subnetSize(subnetOf(exit)), 0);
+
+        start = System.nanoTime();
+        int middle = selectMiddleId(rng, guard, exit);
+        probe.record(SelectionProbe.MIDDLE, System.nanoTime() - start, excludedMiddles(guard, exit), 0);
+
+        path[0] = guard;
+        path[1] = middle;
+        path[2] = exit;
+    }
+
+    private void probedPathGeo(SplittableRandom rng, BandwidthSampler exits, double alpha, double beta, int[] path) {
+        SelectionProbe probe = this.probe;
+        long start = System.nanoTime();
+        int exit = exits.sample(rng.nextDouble(), -1, -1);
+        probe.record(SelectionProbe.EXIT_GEO, System.nanoTime() - start, 0, 0);
+
+        start = System.nanoTime();
+        int guard = selectGuardGeoId(rng, exit, alpha);
+        probe.record(SelectionProbe.GUARD_GEO, System.nanoTime() - start, guardSampler.subnetSize(subnetOf(exit)),
+                alpha == 0 ? 0 : guardSampler.countrySize(countryOf(exit)));
+
+        start = System.nanoTime();
+        int middle = selectMiddleGeoId(rng, guard, exit, beta);
+        probe.record(SelectionProbe.MIDDLE_GEO, System.nanoTime() - start, excludedMiddles(guard, exit),
+                beta == 0 ? 0 : weightedMiddles(guard, exit));
+
+        path[0] = guard;
+        path[1] = middle;
+        path[2] = exit;
+    }
+
+    // Middles excluídos pelas /16 do guard e do exit
+    private int excludedMiddles(int guard, int exit) {
+        int subnetGuard = subnetOf(guard);
+        int subnetExit = subnetOf(exit);
+        int excluded = middleSampler.subnetSize(subnetGuard);
+        return subnetExit == subnetGuard ? excluded : excluded + middleSampler.subnetSize(subnetExit);
+    }
+
+    // Middles com peso menor por partilharem o país do guard ou do exit
+    private int weightedMiddles(int guard, int exit) {
+        short guardCountry = countryOf(guard);
+        short exitCountry = countryOf(exit);
+        int weighted = middleSampler.countrySize(guardCountry);
+        return exitCountry == guardCountry ? weighted : weighted + middleSampler.countrySize(exitCountry);
     }
 }
@@ -0,0 +1,95 @@
+package pt.unl.fct.pds.project2.instrumentation;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import pt.unl.fct.pds.project2.model.CountryDictionary;
+import pt.unl.fct.pds.project2.model.RelayTable;
+import pt.unl.fct.pds.project2.simulation.SimulationEngine;
+import pt.unl.fct.pds.project2.utils.PathSelector;
+
+import java.util.SplittableRandom;
+
+/**
+ * Testes da instrumentação da seleção de caminhos.
+ */
+public class SelectionProbeTest
+    extends TestCase
+{
+    private static final String[] COUNTRIES = { "PT", "DE", "US" };
+
+    private PathSelector selector;
+
+    public SelectionProbeTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( SelectionProbeTest.class );
+    }
+
+    protected void setUp()
+    {
+        RelayTable table = new RelayTable();
+        for ( int i = 0; i < 40; i++ )
+        {
+            // 4 relays por /16
+            table.add( "relay" + i, "fp" + i, 0, ( 10 << 24 ) | ( ( i / 4 ) << 16 ) | i, 9001, 0 );
+            table.setBandwidth( i, 100 + i );
+            table.setFlags( i, RelayTable.FLAG_FAST | RelayTable.FLAG_GUARD );
+            table.setCountry( i, CountryDictionary.intern( COUNTRIES[i % COUNTRIES.length] ) );
+            table.setExitPolicy( i, "accept 1-65535" );
+        }
+        selector = new PathSelector( table );
+    }
+
+    public void testProbeDoesNotChangePaths()
+    {
+        int[] plain = new int[3];
+        int[] probed = new int[3];
+        SplittableRandom a = new SplittableRandom( 7 );
+        SplittableRandom b = new SplittableRandom( 7 );
+        SelectionProbe probe = new SelectionProbe();
+
+        for ( int k = 0; k < 1000; k++ )
+        {
+            selector.setProbe( null );
+            selector.selectPathGeoIds( a, 0.5, 0.2, plain );
+            selector.setProbe( probe );
+            selector.selectPathGeoIds( b, 0.5, 0.2, probed );
+            assertEquals( plain[0], probed[0] );
+            assertEquals( plain[1], probed[1] );
+            assertEquals( plain[2], probed[2] );
+        }
+
+        SelectionProbe.Snapshot snapshot = probe.snapshot();
+        assertEquals( 1000, snapshot.paths( true ) );
+        assertEquals( 0, snapshot.paths( false ) );
+        // O guard exclui a /16 do exit (4 relays) e o middle as duas /16 (8, ou 4 se forem a mesma)
+        assertEquals( 4 * 1000, snapshot.excludedBySubnet( SelectionProbe.GUARD_GEO ) );
+        assertTrue( snapshot.excludedBySubnet( SelectionProbe.MIDDLE_GEO ) > 4 * 1000 );
+        assertTrue( snapshot.weightedByCountry( SelectionProbe.GUARD_GEO ) > 0 );
+    }
+
+    public void testCircuitsAndPrometheusText()
+    {
+        SelectionMetrics metrics = new SelectionMetrics( selector );
+        new SimulationEngine( selector, 2 ).run( 5000, 42, 0.5, 0.2 );
+
+        assertEquals( 5000, metrics.getPaths() );
+        assertEquals( 5000, metrics.getGeoPaths() );
+        assertEquals( 10000, metrics.getCompletedCircuits() + metrics.getFailedCircuits() );
+        assertEquals( 40, metrics.getMiddlePoolSize() );
+
+        String text = metrics.prometheus();
+        assertTrue( text.contains( "# TYPE project2_selection_latency_seconds summary" ) );
+        assertTrue( text.contains( "project2_selection_latency_seconds_count{stage=\"middle\",mode=\"geo\"} 5000" ) );
+        assertTrue( text.contains( "project2_pool_relays{role=\"guard\"} 40" ) );
+
+        metrics.reset();
+        assertEquals( 0, metrics.getPaths() );
+    }
+}
@@ -0,0 +1,74 @@
+package pt.unl.fct.pds.project2.model;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.Arrays;
+
+/**
+ * Testes da compilação das exit policies em intervalos de portos.
+ */
+public class ExitPolicyTest
+    extends TestCase
+{
+    public ExitPolicyTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( ExitPolicyTest.class );
+    }
+
+    public void testAcceptList()
+    {
+        ExitPolicy policy = new ExitPolicy( "accept 20-21,43,80,443,6660-6669" );
+        assertTrue( policy.canExit() );
+        assertTrue( policy.allows( 20 ) );
+        assertTrue( policy.allows( 21 ) );
+        assertFalse( policy.allows( 22 ) );
+        assertTrue( policy.allows( 443 ) );
+        assertTrue( policy.allows( 6665 ) );
+        assertFalse( policy.allows( 6670 ) );
+        assertEquals( 2 + 1 + 1 + 1 + 10, policy.acceptedPorts() );
+    }
+
+    public void testRejectIsComplement()
+    {
+        ExitPolicy policy = new ExitPolicy( "reject 25,465,587,2525" );
+        assertTrue( policy.canExit() );
+        assertTrue( policy.allows( 1 ) );
+        assertFalse( policy.allows( 25 ) );
+        assertTrue( policy.allows( 443 ) );
+        assertFalse( policy.allows( 2525 ) );
+        assertTrue( policy.allows( 65535 ) );
+        assertEquals( 65535 - 4, policy.acceptedPorts() );
+
+        ExitPolicy none = new ExitPolicy( "reject 1-65535" );
+        assertFalse( none.canExit() );
+        assertFalse( none.allows( 80 ) );
+    }
+
+    public void testEquivalentSummariesShareOnePolicy()
+    {
+        assertEquals( new ExitPolicy( "accept 1-65535" ), new ExitPolicy( "accept 1-100,101-65535" ) );
+        assertEquals( new ExitPolicy( "accept 443,80,81" ), new ExitPolicy( "accept 80-81,443" ) );
+        assertFalse( new ExitPolicy( "accept banana" ).canExit() );
+
+        RelayTable table = new RelayTable();
+        for ( int i = 0; i < 3; i++ )
+        {
+            table.add( "relay" + i, "fp" + i, 0, 0, 9001, 0 );
+        }
+        table.setExitPolicy( 0, "accept 80-81,443" );
+        table.setExitPolicy( 1, "accept 443,80,81" );
+        table.setExitPolicy( 2, "reject 1-79,82-442,444-65535" );
+        assertEquals( 1, table.getPolicies().size() );
+        assertEquals( table.getExitPolicyId( 0 ), table.getExitPolicyId( 2 ) );
+        assertTrue( table.canExit( 1, 81 ) );
+        assertFalse( table.canExit( 1, 82 ) );
+        assertTrue( Arrays.equals( new int[]{ 80, 81, 443, 443 }, table.getExitPolicy( 2 ).getAcceptedRanges() ) );
+    }
+}
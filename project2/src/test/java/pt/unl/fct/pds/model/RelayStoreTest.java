@@ -0,0 +1,89 @@
+package pt.unl.fct.pds.project2.model;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.IOException;
+
+/**
+ * Testes do histórico compacto de consensus.
+ */
+public class RelayStoreTest
+    extends TestCase
+{
+    public RelayStoreTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( RelayStoreTest.class );
+    }
+
+    private static RelayTable consensus( long validAfter, String[] fingerprints, int bandwidthOffset )
+    {
+        RelayTable table = new RelayTable();
+        table.setValidAfter( validAfter );
+        for ( int k = 0; k < fingerprints.length; k++ )
+        {
+            int i = table.add( "nick" + fingerprints[k], fingerprints[k], 0, ( 10 << 24 ) | k, 9001, 0 );
+            table.setBandwidth( i, 100 * k + bandwidthOffset );
+            table.setFlags( i, RelayTable.FLAG_FAST | ( k % 2 == 0 ? RelayTable.FLAG_GUARD : 0 ) );
+            table.setVersion( i, "Tor 0.4.8." + ( k % 2 ) );
+            table.setCountry( i, CountryDictionary.intern( "PT" ) );
+            table.setExitPolicy( i, k % 2 == 0 ? "reject 1-65535" : "accept 80,443" );
+        }
+        return table;
+    }
+
+    public void testHoursShareIdsAndDictionaries() throws IOException
+    {
+        RelayStore store = new RelayStore();
+        assertEquals( 0, store.addConsensus( consensus( 3600, new String[]{ "C", "A", "B" }, 0 ) ) );
+        assertEquals( 1, store.addConsensus( consensus( 7200, new String[]{ "B", "D", "C" }, 5 ) ) );
+
+        assertEquals( 2, store.hours() );
+        assertEquals( 4, store.relays() );
+        assertEquals( 6, store.observations() );
+        assertEquals( 2, store.getVersions().size() );
+        assertEquals( 2, store.getPolicies().size() );
+        assertEquals( 7200, store.getValidAfter( 1 ) );
+
+        // "C" tem o mesmo id nas duas horas
+        int c = store.idOf( "C" );
+        int first = store.find( 0, c );
+        int second = store.find( 1, c );
+        assertEquals( 0, store.getBandwidth( 0, first ) );
+        assertEquals( 205, store.getBandwidth( 1, second ) );
+        assertEquals( -1, store.find( 1, store.idOf( "A" ) ) );
+        assertEquals( -1, store.idOf( "Z" ) );
+
+        int d = store.find( 1, store.idOf( "D" ) );
+        assertEquals( "Tor 0.4.8.1", store.getVersion( 1, d ) );
+        assertTrue( store.getExitPolicy( 1, d ).allows( 443 ) );
+        assertEquals( RelayTable.FLAG_FAST, store.getFlags( 1, d ) );
+        assertEquals( CountryDictionary.intern( "PT" ), store.getCountry( 1, d ) );
+    }
+
+    public void testToRelayTable() throws IOException
+    {
+        RelayStore store = new RelayStore();
+        RelayTable original = consensus( 3600, new String[]{ "X", "Y", "Z" }, 1 );
+        store.addConsensus( original );
+
+        RelayTable table = store.toRelayTable( 0 );
+        assertEquals( 3, table.size() );
+        assertEquals( 3600, table.getValidAfter() );
+        for ( int i = 0; i < table.size(); i++ )
+        {
+            int j = "XYZ".indexOf( table.getFingerprint( i ) );
+            assertEquals( original.getBandwidth( j ), table.getBandwidth( i ) );
+            assertEquals( original.getFlags( j ), table.getFlags( i ) );
+            assertEquals( original.getIpv4( j ), table.getIpv4( i ) );
+            assertEquals( original.getExitPolicy( j ), table.getExitPolicy( i ) );
+            assertEquals( original.getNickname( j ), table.getNickname( i ) );
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package pt.unl.fct.pds.project2.service;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import pt.unl.fct.pds.project2.model.CountryDictionary;
+import pt.unl.fct.pds.project2.model.RelayTable;
+import pt.unl.fct.pds.project2.simulation.SimulationEngine;
+import pt.unl.fct.pds.project2.utils.PathSelector;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Testes do serviço residente de seleção de caminhos.
+ */
+public class PathServiceTest
+    extends TestCase
+{
+    private static final String[] COUNTRIES = { "PT", "DE", "US" };
+
+    public PathServiceTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( PathServiceTest.class );
+    }
+
+    private static RelayTable table( int relays, long validAfter )
+    {
+        RelayTable table = new RelayTable();
+        for ( int i = 0; i < relays; i++ )
+        {
+            table.add( "relay" + i, "fp" + i, 0, ( 10 << 24 ) | ( ( i % 13 ) << 16 ) | i, 9001, 0 );
+            table.setBandwidth( i, 100 + i );
+            table.setFlags( i, RelayTable.FLAG_FAST | ( i % 3 == 0 ? RelayTable.FLAG_GUARD : 0 ) );
+            table.setCountry( i, CountryDictionary.intern( COUNTRIES[i % COUNTRIES.length] ) );
+            table.setExitPolicy( i, i % 4 == 1 ? "accept 1-65535" : "reject 1-65535" );
+        }
+        table.setValidAfter( validAfter );
+        return table;
+    }
+
+    public void testSamePathsForAnyThreadsAndBatch()
+    {
+        PathSelector selector = new PathSelector( table( 80, 1 ) );
+        PathRequest geo = PathRequest.parse( "geo 0.5 0.2 10000 42" );
+        PathRequest original = new PathRequest( SimulationEngine.ORIGINAL, 0, 0, 5000, 7 );
+
+        PathService one = new PathService( selector, 1 );
+        PathService four = new PathService( selector, 4 );
+        try
+        {
+            PathBatch single = one.selectPaths( geo );
+            List<PathBatch> batch = four.selectPaths( Arrays.asList( original, geo ) );
+
+            assertEquals( 10000, single.size() );
+            assertEquals( 10000, single.completed() );
+            for ( int k = 0; k < single.size(); k++ )
+            {
+                assertTrue( Arrays.equals( single.path( k ), batch.get( 1 ).path( k ) ) );
+            }
+            assertTrue( Arrays.equals( one.selectPaths( original ).path( 4999 ), batch.get( 0 ).path( 4999 ) ) );
+            assertEquals( 2, four.getRequests() );
+            assertEquals( 15000, four.getPaths() );
+        }
+        finally
+        {
+            one.close();
+            four.close();
+        }
+    }
+
+    public void testSwapServesNewConsensus()
+    {
+        PathService service = new PathService( new PathSelector( table( 30, 1 ) ), 2 );
+        try
+        {
+            assertEquals( 1, service.selectPaths( SimulationEngine.ORIGINAL, 0, 0, 10, 1 ).getValidAfter() );
+            service.swap( table( 60, 2 ) );
+
+            PathBatch batch = service.selectPaths( SimulationEngine.GEO_AWARE, 0.5, 0.2, 1000, 1 );
+            assertEquals( 2, batch.getValidAfter() );
+            assertEquals( 60, batch.getTable().size() );
+            assertEquals( 1, service.getSwaps() );
+        }
+        finally
+        {
+            service.close();
+        }
+    }
+}
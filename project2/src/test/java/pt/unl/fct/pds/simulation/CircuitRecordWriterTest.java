@@ -0,0 +1,161 @@
+package pt.unl.fct.pds.project2.simulation;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import pt.unl.fct.pds.project2.model.CountryDictionary;
+import pt.unl.fct.pds.project2.model.RelayTable;
+import pt.unl.fct.pds.project2.utils.PathSelector;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Testes da escrita, leitura e conversão dos registos de circuitos.
+ */
+public class CircuitRecordWriterTest
+    extends TestCase
+{
+    private static final int CIRCUITS = 20000;
+    private static final String[] COUNTRIES = { "PT", "DE", "US" };
+
+    private Path dir;
+
+    public CircuitRecordWriterTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( CircuitRecordWriterTest.class );
+    }
+
+    protected void setUp() throws IOException
+    {
+        dir = Files.createTempDirectory( "circuit-records" );
+    }
+
+    protected void tearDown() throws IOException
+    {
+        try ( java.util.stream.Stream<Path> files = Files.list( dir ) )
+        {
+            for ( Path file : (Iterable<Path>) files::iterator )
+            {
+                Files.delete( file );
+            }
+        }
+        Files.delete( dir );
+    }
+
+    private static PathSelector selector()
+    {
+        RelayTable table = new RelayTable();
+        for ( int i = 0; i < 60; i++ )
+        {
+            table.add( "relay" + i, "fp" + i, 0, ( 10 << 24 ) | ( ( i % 13 ) << 16 ) | i, 9001, 0 );
+            table.setBandwidth( i, 100 + i );
+            table.setFlags( i, RelayTable.FLAG_FAST | ( i % 3 == 0 ? RelayTable.FLAG_GUARD : 0 ) );
+            table.setCountry( i, CountryDictionary.intern( COUNTRIES[i % COUNTRIES.length] ) );
+            table.setExitPolicy( i, i % 4 == 1 ? "accept 1-65535" : "reject 1-65535" );
+        }
+        return new PathSelector( table );
+    }
+
+    /**
+     * Registos esperados, indexados por 2 * id + algoritmo: {guard, middle, exit, bandwidth}.
+     */
+    private static final class Expected implements CircuitListener
+    {
+        final int[][] records;
+        long count;
+
+        Expected( int size )
+        {
+            records = new int[size][];
+        }
+
+        @Override
+        public synchronized void onCircuit( long index, int algorithm, int guard, int middle, int exit,
+                                            int minBandwidth )
+        {
+            records[(int) ( 2 * index + algorithm )] = new int[]{ guard, middle, exit, minBandwidth };
+            count++;
+        }
+    }
+
+    // Escreve dois lotes com o mesmo writer e mais threads do que buffers
+    private Expected write( Path file, CircuitRecordWriter.Format format ) throws IOException
+    {
+        int threads = 2 * Runtime.getRuntime().availableProcessors() + 4;
+        Expected expected = new Expected( 4 * CIRCUITS );
+        try ( CircuitRecordWriter writer = new CircuitRecordWriter( file, format, 4096, 1 ) )
+        {
+            SimulationEngine engine = new SimulationEngine( selector(), threads );
+            engine.setCorrelation( false );
+            engine.setLatency( null );
+            for ( int run = 0; run < 2; run++ )
+            {
+                long base = run * CIRCUITS;
+                engine.run( CIRCUITS, 42 + run, 0.5, 0.2, new CircuitListener()
+                {
+                    @Override
+                    public void onCircuit( long index, int algorithm, int guard, int middle, int exit, int bw )
+                    {
+                        writer.onCircuit( base + index, algorithm, guard, middle, exit, bw );
+                        expected.onCircuit( base + index, algorithm, guard, middle, exit, bw );
+                    }
+
+                    @Override
+                    public void onThreadDone()
+                    {
+                        writer.onThreadDone();
+                    }
+                } );
+            }
+            writer.close();
+            assertEquals( expected.count, writer.getRecords() );
+        }
+        return expected;
+    }
+
+    private static void assertSameRecords( Expected expected, Path file ) throws IOException
+    {
+        Expected read = new Expected( expected.records.length );
+        assertEquals( expected.count, CircuitRecordReader.read( file, read ) );
+        for ( int k = 0; k < expected.records.length; k++ )
+        {
+            assertTrue( "record " + k, Arrays.equals( expected.records[k], read.records[k] ) );
+        }
+    }
+
+    public void testCsvRoundTripAndConvert() throws IOException
+    {
+        Path csv = dir.resolve( "circuits.csv" );
+        Expected expected = write( csv, CircuitRecordWriter.Format.CSV );
+        assertEquals( CircuitRecordWriter.Format.CSV, CircuitRecordReader.detectFormat( csv ) );
+        assertSameRecords( expected, csv );
+
+        Path bin = dir.resolve( "converted.bin" );
+        assertEquals( expected.count, CircuitRecordReader.convert( csv, bin, CircuitRecordWriter.Format.BINARY ) );
+        assertEquals( CircuitRecordWriter.Format.BINARY, CircuitRecordReader.detectFormat( bin ) );
+        assertSameRecords( expected, bin );
+    }
+
+    public void testBinaryRoundTripAndConvert() throws IOException
+    {
+        Path bin = dir.resolve( "circuits.bin" );
+        Expected expected = write( bin, CircuitRecordWriter.Format.BINARY );
+        assertEquals( CircuitRecordWriter.HEADER_SIZE + expected.count * CircuitRecordWriter.RECORD_SIZE,
+                Files.size( bin ) );
+        assertSameRecords( expected, bin );
+
+        Path csv = dir.resolve( "converted.csv" );
+        assertEquals( expected.count, CircuitRecordReader.convert( bin, csv, CircuitRecordWriter.Format.CSV ) );
+        assertEquals( CircuitRecordWriter.Format.CSV, CircuitRecordReader.detectFormat( csv ) );
+        assertSameRecords( expected, csv );
+    }
+}
@@ -0,0 +1,176 @@
+package pt.unl.fct.pds.project2.simulation;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import pt.unl.fct.pds.project2.model.CountryDictionary;
+import pt.unl.fct.pds.project2.model.RelayTable;
+import pt.unl.fct.pds.project2.utils.PathSelector;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.SplittableRandom;
+
+/**
+ * Testes da codificação compacta de circuitos e do CircuitStore.
+ */
+public class CircuitStoreTest
+    extends TestCase
+{
+    private static final String[] COUNTRIES = { "PT", "DE", "US" };
+
+    public CircuitStoreTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( CircuitStoreTest.class );
+    }
+
+    public void testPackedRoundTrip()
+    {
+        long c = PackedCircuit.encode( SimulationEngine.GEO_AWARE, 7, PackedCircuit.MAX_RELAY, -1 );
+        assertEquals( SimulationEngine.GEO_AWARE, PackedCircuit.algorithm( c ) );
+        assertEquals( 7, PackedCircuit.guard( c ) );
+        assertEquals( PackedCircuit.MAX_RELAY, PackedCircuit.middle( c ) );
+        assertEquals( -1, PackedCircuit.exit( c ) );
+        assertFalse( PackedCircuit.isComplete( c ) );
+        assertTrue( PackedCircuit.encode( 0, 1, 9, 9 ) < PackedCircuit.encode( 0, 2, 0, 0 ) );
+    }
+
+    public void testSortAndGroupByCountry()
+    {
+        RelayTable table = new RelayTable();
+        for ( int i = 0; i < 20; i++ )
+        {
+            table.add( "relay" + i, "fp" + i, 0, i, 9001, 0 );
+            table.setBandwidth( i, 10 * ( i + 1 ) );
+            table.setCountry( i, CountryDictionary.intern( COUNTRIES[i % COUNTRIES.length] ) );
+        }
+        CircuitStore store = new CircuitStore();
+        SplittableRandom rng = new SplittableRandom( 1 );
+        int n = ( 1 << 20 ) + 1000; // mais de um segmento
+        long[] byExit = new long[20];
+        for ( int k = 0; k < n; k++ )
+        {
+            int exit = k % 97 == 0 ? -1 : rng.nextInt( 20 );
+            if ( exit >= 0 ) byExit[exit]++;
+            store.add( k % 2, rng.nextInt( 20 ), rng.nextInt( 20 ), exit );
+        }
+        assertEquals( n, store.size() );
+
+        long[] counts = store.countBy( CircuitStore.Key.EXIT_COUNTRY, table );
+        long[] offsets = store.sortBy( CircuitStore.Key.EXIT, table );
+        assertEquals( n, offsets[offsets.length - 1] );
+        for ( int e = 0; e < 20; e++ )
+        {
+            assertEquals( byExit[e], offsets[e + 1] - offsets[e] );
+            assertEquals( e, PackedCircuit.exit( store.get( offsets[e] ) ) );
+            assertEquals( e, PackedCircuit.exit( store.get( offsets[e + 1] - 1 ) ) );
+        }
+        assertEquals( -1, PackedCircuit.exit( store.get( n - 1 ) ) );
+
+        long[] after = store.countBy( CircuitStore.Key.EXIT_COUNTRY, table );
+        short pt = CountryDictionary.intern( "PT" );
+        assertEquals( counts[pt], after[pt] );
+        assertEquals( byExit[0] + byExit[3] + byExit[6] + byExit[9] + byExit[12] + byExit[15] + byExit[18], after[pt] );
+        assertEquals( 3, store.circuit( offsets[3], table ).getNodes().length );
+    }
+
+    private static RelayTable table( int relays )
+    {
+        RelayTable table = new RelayTable();
+        for ( int i = 0; i < relays; i++ )
+        {
+            table.add( "relay" + i, "fp" + i, 0, i, 9001, 0 );
+            table.setCountry( i, CountryDictionary.intern( COUNTRIES[i % COUNTRIES.length] ) );
+        }
+        return table;
+    }
+
+    public void testFailedPathsAreNotCounted()
+    {
+        // Guards só na /16 10.0: os caminhos com o exit 10.0.0.1 falham, os com o exit 10.1.0.1 não
+        RelayTable table = new RelayTable();
+        for ( int i = 0; i < 12; i++ )
+        {
+            int subnet = i < 4 ? 0 : i < 6 ? 1 : 2;
+            table.add( "relay" + i, "fp" + i, 0, ( 10 << 24 ) | ( subnet << 16 ) | ( i + 1 ), 9001, 0 );
+            table.setBandwidth( i, 100 );
+            table.setFlags( i, RelayTable.FLAG_FAST | ( i < 3 ? RelayTable.FLAG_GUARD : 0 ) );
+            table.setCountry( i, CountryDictionary.intern( COUNTRIES[subnet] ) );
+            table.setExitPolicy( i, i == 3 || i == 4 ? "accept 1-65535" : "reject 1-65535" );
+        }
+        SimulationEngine engine = new SimulationEngine( new PathSelector( table ), 2 );
+        CircuitStore store = new CircuitStore();
+        int circuits = 20000;
+        SimulationResult result = engine.run( circuits, 5, 0.5, 0.2, store );
+
+        long completed = result.getOriginal().getCircuits() + result.getGeoAware().getCircuits();
+        assertTrue( completed > 0 && completed < 2 * circuits );
+        assertEquals( completed, store.count() );
+
+        // Só os guards 0-2 (e nunca o relay 0 por falhas) e só o exit 4
+        long[] byGuard = store.countBy( CircuitStore.Key.GUARD, table );
+        SelectionStats original = result.getOriginal().getSelections();
+        SelectionStats geoAware = result.getGeoAware().getSelections();
+        for ( int relay = 0; relay < table.size(); relay++ )
+        {
+            assertEquals( original.count( SelectionStats.GUARD, relay ) + geoAware.count( SelectionStats.GUARD, relay ),
+                byGuard[relay] );
+        }
+        long[] byCountry = store.countBy( CircuitStore.Key.EXIT_COUNTRY, table );
+        assertEquals( completed, byCountry[CountryDictionary.intern( COUNTRIES[1] )] );
+        assertEquals( 0, byCountry[CountryDictionary.intern( COUNTRIES[0] )] );
+
+        // As posições vazias ficam no fim da ordenação
+        long[] offsets = store.sortBy( CircuitStore.Key.EXIT, table );
+        assertEquals( completed, offsets[offsets.length - 1] );
+        assertEquals( completed, offsets[5] - offsets[4] );
+        for ( long k = completed; k < store.size(); k++ )
+        {
+            assertEquals( PackedCircuit.EMPTY, store.get( k ) );
+        }
+    }
+
+    public void testMappedStoreIsReopened() throws IOException
+    {
+        File file = File.createTempFile( "circuits", ".bin" );
+        try
+        {
+            try ( CircuitStore store = new CircuitStore( file.toPath() ) )
+            {
+                assertTrue( store.isMapped() );
+                store.onCircuit( 1, SimulationEngine.GEO_AWARE, 3, 4, 5, 0 );
+                store.onCircuit( 0, SimulationEngine.ORIGINAL, 0, 1, 2, 0 );
+            }
+            assertEquals( 4 * 8, file.length() );
+            try ( CircuitStore store = new CircuitStore( file.toPath() ) )
+            {
+                // Posições 1 e 2 nunca escritas: vazias, fora das contagens
+                assertEquals( 4, store.size() );
+                assertEquals( 2, store.count() );
+                assertEquals( PackedCircuit.encode( SimulationEngine.GEO_AWARE, 3, 4, 5 ), store.get( 3 ) );
+                assertEquals( 2, PackedCircuit.exit( store.get( 0 ) ) );
+                assertEquals( PackedCircuit.EMPTY, store.get( 1 ) );
+                assertEquals( PackedCircuit.EMPTY, store.get( 2 ) );
+
+                // Acrescentar depois de reabrir mantém as vazias
+                store.onCircuit( 3, SimulationEngine.GEO_AWARE, 0, 4, 5, 0 );
+                assertEquals( 8, store.size() );
+                assertEquals( 3, store.count() );
+                assertEquals( PackedCircuit.EMPTY, store.get( 6 ) );
+                long[] byGuard = store.countBy( CircuitStore.Key.GUARD, table( 6 ) );
+                assertEquals( 2, byGuard[0] );
+                assertEquals( 1, byGuard[3] );
+            }
+        }
+        finally
+        {
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,360 @@
+package pt.unl.fct.pds.project2.simulation;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import pt.unl.fct.pds.project2.model.BandwidthWeights;
+import pt.unl.fct.pds.project2.model.RelayTable;
+import pt.unl.fct.pds.project2.utils.PathSelector;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Testes do replay de consensus: alterações detetadas em cada passo e PathSelector
+ * atualizado igual a um construído de raiz sobre a mesma tabela.
+ */
+public class ConsensusReplayTest
+    extends TestCase
+{
+    private static final String WEIGHTS = "directory-footer\n"
+        + "bandwidth-weights Wbd=531 Wbe=0 Wbg=4022 Wbm=10000 Wdb=10000 Web=10000 Wed=8937 Wee=10000 Weg=8937"
+        + " Wem=10000 Wgb=10000 Wgd=531 Wgg=5978 Wgm=5978 Wmb=10000 Wmd=531 Wme=0 Wmg=4022 Wmm=10000\n";
+
+    // 1: A, B, C e D entram
+    private static final String FIRST = header( "10" )
+        + relay( "alpha", 'A', "10.1.0.1", "Exit Fast Guard Running Valid", 1000, "accept 80,443" )
+        + relay( "bravo", 'B', "10.2.0.1", "Fast Running Valid", 2000, "reject 1-65535" )
+        + relay( "charlie", 'C', "10.3.0.1", "Fast Guard Running Valid", 3000, "reject 1-65535" )
+        + relay( "delta", 'D', "10.4.0.1", "Fast Running Valid", 500, "reject 1-65535" );
+
+    // 2: B muda de bandwidth, C perde Guard, D sai, E entra; A repetido (ignorado)
+    private static final String SECOND = header( "11" )
+        + relay( "alpha", 'A', "10.1.0.1", "Exit Fast Guard Running Valid", 1000, "accept 80,443" )
+        + relay( "bravo", 'B', "10.2.0.1", "Fast Running Valid", 2500, "reject 1-65535" )
+        + relay( "charlie", 'C', "10.3.0.1", "Fast Running Valid", 3000, "reject 1-65535" )
+        + relay( "echo", 'E', "10.5.0.1", "Exit Fast Running Valid", 4000, "accept 1-65535" )
+        + relay( "alpha", 'A', "10.9.0.1", "Fast Running Valid", 9999, "reject 1-65535" )
+        + WEIGHTS;
+
+    // 3: A muda de endereço, D regressa
+    private static final String THIRD = header( "12" )
+        + relay( "alpha", 'A', "10.6.0.1", "Exit Fast Guard Running Valid", 1000, "accept 80,443" )
+        + relay( "bravo", 'B', "10.2.0.1", "Fast Running Valid", 2500, "reject 1-65535" )
+        + relay( "charlie", 'C', "10.3.0.1", "Fast Running Valid", 3000, "reject 1-65535" )
+        + relay( "delta", 'D', "10.4.0.1", "Fast Running Valid", 500, "reject 1-65535" )
+        + relay( "echo", 'E', "10.5.0.1", "Exit Fast Running Valid", 4000, "accept 1-65535" )
+        + WEIGHTS;
+
+    // 4 e 5: os mesmos relays com outras bandwidth-weights (uma por hora, como no Tor); em 5 B
+    // muda de bandwidth e os relays Guard+Exit (A) deixam de ser middles (Wmd=0)
+    private static final String FOURTH = THIRD.replace( "valid-after 2025-12-01 12", "valid-after 2025-12-01 13" )
+        .replace( "Wed=8937", "Wed=7012" ).replace( "Wmd=531", "Wmd=1494" ).replace( "Wgd=531", "Wgd=1494" )
+        .replace( "Wgg=5978", "Wgg=6840" ).replace( "Wmg=4022", "Wmg=3160" );
+    private static final String FIFTH = FOURTH.replace( "valid-after 2025-12-01 13", "valid-after 2025-12-01 14" )
+        .replace( "Wed=7012", "Wed=10000" ).replace( "Wmd=1494", "Wmd=0" ).replace( "Wgd=1494", "Wgd=0" )
+        .replace( "Bandwidth=2500", "Bandwidth=3500" );
+
+    // {relays, joined, left, changed} de cada passo
+    private static final int[][] EXPECTED = {
+        { 4, 4, 0, 4 },
+        { 4, 1, 1, 4 },
+        { 5, 1, 0, 2 },
+    };
+
+    private Path dir;
+
+    public ConsensusReplayTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( ConsensusReplayTest.class );
+    }
+
+    protected void setUp() throws IOException
+    {
+        dir = Files.createTempDirectory( "consensus-replay" );
+    }
+
+    protected void tearDown() throws IOException
+    {
+        try ( Stream<Path> walk = Files.walk( dir ) )
+        {
+            for ( Path path : (Iterable<Path>) walk.sorted( Comparator.reverseOrder() )::iterator )
+            {
+                Files.delete( path );
+            }
+        }
+    }
+
+    private static String header( String hour )
+    {
+        return "network-status-version 3 microdesc\n"
+            + "valid-after 2025-12-01 " + hour + ":00:00\n";
+    }
+
+    private static String relay( String nickname, char id, String ip, String flags, int bandwidth, String policy )
+    {
+        char[] fingerprint = new char[27];
+        Arrays.fill( fingerprint, id );
+        return "r " + nickname + " " + new String( fingerprint ) + " w59Of9XN3XizuKvrcWAkwMzJ69k"
+            + " 2025-12-01 08:58:50 " + ip + " 9001 0\n"
+            + "s " + flags + "\n"
+            + "v Tor 0.4.8.21\n"
+            + "w Bandwidth=" + bandwidth + "\n"
+            + "p " + policy + "\n";
+    }
+
+    private static byte[] bytes( String consensus )
+    {
+        return consensus.getBytes( StandardCharsets.US_ASCII );
+    }
+
+    /**
+     * Faz o replay e, depois de cada passo, compara o PathSelector atualizado com um
+     * construído de raiz; devolve {relays, joined, left, changed} de cada passo.
+     */
+    private static List<int[]> replay( ConsensusReplay replay, Path source ) throws IOException
+    {
+        List<int[]> steps = new ArrayList<>();
+        int done = replay.getSteps();
+        replay.replay( source, step ->
+        {
+            assertEquals( done + steps.size() + 1, step.getIndex() );
+            assertSameSelection( replay.getSelector() );
+            steps.add( new int[]{ step.getRelays(), step.getJoined(), step.getLeft(), step.getChanged() } );
+        } );
+        return steps;
+    }
+
+    private static void assertSameSelection( PathSelector replayed )
+    {
+        RelayTable table = replayed.getTable();
+        PathSelector fresh = new PathSelector( table );
+        for ( int position = BandwidthWeights.GUARD; position <= BandwidthWeights.EXIT; position++ )
+        {
+            for ( int i = 0; i < table.size(); i++ )
+            {
+                assertEquals( "weight " + position + "/" + i, fresh.weight( position, i ), replayed.weight( position, i ) );
+            }
+        }
+        assertSamePool( fresh.getGuardPool(), replayed.getGuardPool() );
+        assertSamePool( fresh.getMiddlePool(), replayed.getMiddlePool() );
+        assertSamePool( fresh.getExitPool(), replayed.getExitPool() );
+        assertSamePool( fresh.getExitPool( 22 ), replayed.getExitPool( 22 ) );
+        assertSamePool( fresh.getExitPool( 443 ), replayed.getExitPool( 443 ) );
+    }
+
+    private static void assertSamePool( int[] expected, int[] actual )
+    {
+        int[] a = expected.clone();
+        int[] b = actual.clone();
+        Arrays.sort( a );
+        Arrays.sort( b );
+        assertTrue( Arrays.toString( a ) + " != " + Arrays.toString( b ), Arrays.equals( a, b ) );
+    }
+
+    private static void assertExpectedSteps( List<int[]> steps )
+    {
+        assertEquals( EXPECTED.length, steps.size() );
+        for ( int k = 0; k < EXPECTED.length; k++ )
+        {
+            assertTrue( "step " + ( k + 1 ) + ": " + Arrays.toString( steps.get( k ) ),
+                    Arrays.equals( EXPECTED[k], steps.get( k ) ) );
+        }
+    }
+
+    private static int id( RelayTable table, char id )
+    {
+        char[] fingerprint = new char[27];
+        Arrays.fill( fingerprint, id );
+        for ( int i = 0; i < table.size(); i++ )
+        {
+            if ( table.getFingerprint( i ).equals( new String( fingerprint ) ) )
+            {
+                return i;
+            }
+        }
+        throw new AssertionError( "missing relay " + id );
+    }
+
+    public void testDirectoryReplay() throws IOException
+    {
+        Path consensuses = Files.createDirectory( dir.resolve( "consensuses" ) );
+        Files.write( consensuses.resolve( "2025-12-01-10-00-00-consensus" ), bytes( FIRST ) );
+        Files.write( consensuses.resolve( "2025-12-01-11-00-00-consensus" ), bytes( SECOND ) );
+        Files.write( consensuses.resolve( "2025-12-01-12-00-00-consensus" ), bytes( THIRD ) );
+
+        ConsensusReplay replay = new ConsensusReplay();
+        assertExpectedSteps( replay( replay, consensuses ) );
+
+        // Um id por fingerprint, estado do último consensus
+        RelayTable table = replay.getTable();
+        assertEquals( 5, table.size() );
+        int alpha = id( table, 'A' );
+        assertEquals( RelayTable.parseIpv4( "10.6.0.1" ), table.getIpv4( alpha ) );
+        assertEquals( 1000, table.getBandwidth( alpha ) );
+        assertTrue( table.hasFlag( alpha, RelayTable.FLAG_GUARD ) );
+        assertEquals( 2500, table.getBandwidth( id( table, 'B' ) ) );
+        assertFalse( table.hasFlag( id( table, 'C' ), RelayTable.FLAG_GUARD ) );
+        assertEquals( 500, table.getBandwidth( id( table, 'D' ) ) );
+        assertNotNull( table.getBandwidthWeights() );
+    }
+
+    public void testWeightsChangeKeepsIncrementalUpdate() throws IOException
+    {
+        Path consensuses = Files.createDirectory( dir.resolve( "consensuses" ) );
+        Files.write( consensuses.resolve( "2025-12-01-12-00-00-consensus" ), bytes( THIRD ) );
+        Files.write( consensuses.resolve( "2025-12-01-13-00-00-consensus" ), bytes( FOURTH ) );
+        Files.write( consensuses.resolve( "2025-12-01-14-00-00-consensus" ), bytes( FIFTH ) );
+
+        // Os samplers por porto só desaparecem se o PathSelector for reconstruído
+        ConsensusReplay replay = new ConsensusReplay();
+        List<BandwidthWeights> weights = new ArrayList<>();
+        replay.replay( consensuses, step ->
+        {
+            PathSelector selector = replay.getSelector();
+            if ( step.getIndex() > 1 )
+            {
+                assertEquals( "step " + step.getIndex(), 2, selector.getExitClassCount() );
+            }
+            weights.add( selector.getBandwidthWeights() );
+            assertSameSelection( selector );
+            assertSelectionFollowsWeights( selector, step.getIndex() );
+        } );
+        assertEquals( 3, weights.size() );
+        assertFalse( weights.get( 0 ).equals( weights.get( 1 ) ) );
+        assertFalse( weights.get( 1 ).equals( weights.get( 2 ) ) );
+        assertEquals( 0L, replay.getSelector().weight( BandwidthWeights.MIDDLE, id( replay.getTable(), 'A' ) ) );
+    }
+
+    // Frequência dos middles e dos exits sorteados igual ao peso de cada um na posição
+    private static void assertSelectionFollowsWeights( PathSelector selector, long seed )
+    {
+        int draws = 200000;
+        SplittableRandom rng = new SplittableRandom( seed );
+        RelayTable table = selector.getTable();
+        long[] middles = new long[table.size()];
+        long[] exits = new long[table.size()];
+        for ( int k = 0; k < draws; k++ )
+        {
+            middles[selector.selectMiddleId( rng, -1, -1 )]++;
+            exits[selector.selectExitId( rng )]++;
+        }
+        assertFrequencies( selector, BandwidthWeights.MIDDLE, selector.getMiddlePool(), middles, draws );
+        assertFrequencies( selector, BandwidthWeights.EXIT, selector.getExitPool(), exits, draws );
+    }
+
+    private static void assertFrequencies( PathSelector selector, int position, int[] pool, long[] counts, int draws )
+    {
+        double total = 0;
+        for ( int i : pool )
+        {
+            total += selector.weight( position, i );
+        }
+        for ( int i : pool )
+        {
+            assertEquals( "position " + position + ", relay " + i, selector.weight( position, i ) / total,
+                    counts[i] / (double) draws, 0.01 );
+        }
+    }
+
+    public void testAbsentRelaysLeaveThePools() throws IOException
+    {
+        ConsensusReplay replay = new ConsensusReplay();
+        Path first = dir.resolve( "first" );
+        Path second = dir.resolve( "second" );
+        Files.write( first, bytes( FIRST ) );
+        Files.write( second, bytes( SECOND ) );
+        replay( replay, first );
+        replay( replay, second );
+
+        RelayTable table = replay.getTable();
+        int delta = id( table, 'D' );
+        assertEquals( 0, table.getFlags( delta ) );
+        assertEquals( 0, table.getBandwidth( delta ) );
+        for ( int i : replay.getSelector().getMiddlePool() )
+        {
+            assertTrue( i != delta );
+        }
+    }
+
+    // Entrada ustar com o tamanho em octal com zeros à esquerda, ou com espaços (tar antigos)
+    private static void tarEntry( OutputStream out, String name, char type, byte[] data, boolean spaced )
+            throws IOException
+    {
+        byte[] header = new byte[512];
+        put( header, 0, name );
+        put( header, 100, "0000644\0" );
+        put( header, 108, "0000000\0" );
+        put( header, 116, "0000000\0" );
+        put( header, 124, spaced ? String.format( "%11o ", data.length ) : String.format( "%011o\0", data.length ) );
+        put( header, 136, "15120253400\0" );
+        header[156] = (byte) type;
+        put( header, 257, "ustar\0" );
+        put( header, 263, "00" );
+        Arrays.fill( header, 148, 156, (byte) ' ' );
+        int checksum = 0;
+        for ( byte b : header )
+        {
+            checksum += b & 0xff;
+        }
+        put( header, 148, String.format( "%06o\0", checksum ) );
+
+        out.write( header );
+        out.write( data );
+        out.write( new byte[( 512 - data.length % 512 ) % 512] );
+    }
+
+    private static void put( byte[] header, int offset, String value )
+    {
+        byte[] b = value.getBytes( StandardCharsets.US_ASCII );
+        System.arraycopy( b, 0, header, offset, b.length );
+    }
+
+    private static byte[] tar() throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        tarEntry( out, "consensuses-2025-12/", '5', new byte[0], false );
+        tarEntry( out, "consensuses-2025-12/01/2025-12-01-10-00-00-consensus", '0', bytes( FIRST ), false );
+        // Entrada não regular com dados: saltada
+        tarEntry( out, "consensuses-2025-12/README", 'x', bytes( "not a consensus\n" ), false );
+        tarEntry( out, "consensuses-2025-12/01/2025-12-01-11-00-00-consensus", '0', bytes( SECOND ), true );
+        tarEntry( out, "consensuses-2025-12/01/2025-12-01-12-00-00-consensus", '\0', bytes( THIRD ), false );
+        out.write( new byte[1024] );
+        return out.toByteArray();
+    }
+
+    public void testTarReplay() throws IOException
+    {
+        byte[] archive = tar();
+        Path tar = dir.resolve( "consensuses-2025-12.tar" );
+        Files.write( tar, archive );
+        ConsensusReplay replay = new ConsensusReplay();
+        assertExpectedSteps( replay( replay, tar ) );
+        assertEquals( 3, replay.getSteps() );
+        assertEquals( RelayTable.parseIpv4( "10.6.0.1" ), replay.getTable().getIpv4( id( replay.getTable(), 'A' ) ) );
+
+        Path gz = dir.resolve( "consensuses-2025-12.tar.gz" );
+        try ( OutputStream out = new GZIPOutputStream( Files.newOutputStream( gz ) ) )
+        {
+            out.write( archive );
+        }
+        assertExpectedSteps( replay( new ConsensusReplay(), gz ) );
+    }
+}
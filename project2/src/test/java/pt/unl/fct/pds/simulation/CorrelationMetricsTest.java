@@ -0,0 +1,68 @@
+package pt.unl.fct.pds.project2.simulation;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import pt.unl.fct.pds.project2.model.CountryDictionary;
+import pt.unl.fct.pds.project2.model.RelayTable;
+
+import java.util.List;
+
+/**
+ * Testes das métricas de países e /16 partilhados pelos hops.
+ */
+public class CorrelationMetricsTest
+    extends TestCase
+{
+    public CorrelationMetricsTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( CorrelationMetricsTest.class );
+    }
+
+    public void testRatesEntropyAndTopPairs()
+    {
+        // 0, 1: PT; 2: DE; 3: país desconhecido; 0 e 2 na mesma /16
+        String[] countries = { "PT", "PT", "DE", null };
+        RelayTable table = new RelayTable();
+        for ( int i = 0; i < countries.length; i++ )
+        {
+            table.add( "relay" + i, "fp" + i, 0, ( 10 << 24 ) | ( ( i == 2 ? 0 : i ) << 16 ), 9001, 0 );
+            table.setCountry( i, CountryDictionary.intern( countries[i] ) );
+        }
+        CorrelationMetrics.Ids ids = CorrelationMetrics.Ids.of( table );
+        assertEquals( 3, ids.numCountries() );
+        assertEquals( 3, ids.numSubnets() );
+
+        CorrelationMetrics a = new CorrelationMetrics( ids );
+        CorrelationMetrics b = new CorrelationMetrics( ids );
+        a.record( 0, 2, 1 );    // PT, DE, PT
+        a.record( 0, 1, 2 );    // PT, PT, DE
+        b.record( 3, 1, 3 );    // ?, PT, ?
+        b.record( 0, 2, 1 );
+        a.merge( b );
+
+        assertEquals( 4, a.getCircuits() );
+        assertEquals( 0.5, a.sameCountryRate( CorrelationMetrics.GUARD_EXIT ), 0.0 );
+        assertEquals( 0.25, a.sameCountryRate( CorrelationMetrics.GUARD_MIDDLE ), 0.0 );
+        assertEquals( 0.0, a.sameCountryRate( CorrelationMetrics.MIDDLE_EXIT ), 0.0 );
+        assertEquals( 0.0, a.allSameCountryRate(), 0.0 );
+        assertEquals( 0.5, a.sameSubnetRate( CorrelationMetrics.GUARD_MIDDLE ), 0.0 );
+        assertEquals( 0.5, a.sameSubnetRate( CorrelationMetrics.GUARD_EXIT ), 0.0 );
+        assertEquals( 0.0, a.sameSubnetRate( CorrelationMetrics.MIDDLE_EXIT ), 0.0 );
+        assertEquals( 1.5, a.countryPairEntropy(), 1e-12 );
+
+        short pt = CountryDictionary.intern( "PT" );
+        assertEquals( 2, a.pairCount( pt, pt ) );
+        List<CorrelationMetrics.CountryPair> top = a.topPairs( 1, false );
+        assertEquals( 1, top.size() );
+        assertTrue( top.get( 0 ).isSameCountry() );
+        assertEquals( 0.5, top.get( 0 ).getFraction(), 0.0 );
+        assertEquals( 1, a.topPairs( 5, true ).size() );
+    }
+}
@@ -0,0 +1,99 @@
+package pt.unl.fct.pds.project2.simulation;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import pt.unl.fct.pds.project2.model.CountryDictionary;
+import pt.unl.fct.pds.project2.model.RelayTable;
+import pt.unl.fct.pds.project2.utils.PathSelector;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Testes da fila de eventos e do simulador de carga com capacidade partilhada.
+ */
+public class LoadSimulatorTest
+    extends TestCase
+{
+    public LoadSimulatorTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( LoadSimulatorTest.class );
+    }
+
+    // Um guard (100 KB/s), um middle (200) e um exit (300) em /16 distintas: todos os
+    // circuitos passam pelos três e o guard é sempre o gargalo
+    private static PathSelector chain()
+    {
+        RelayTable table = new RelayTable();
+        int[] bandwidths = { 100, 200, 300 };
+        for ( int i = 0; i < 3; i++ )
+        {
+            table.add( "relay" + i, "fp" + i, 0, ( 10 << 24 ) | ( i << 16 ) | 1, 9001, 0 );
+            table.setBandwidth( i, bandwidths[i] );
+            table.setFlags( i, RelayTable.FLAG_FAST | ( i == 0 ? RelayTable.FLAG_GUARD : 0 ) );
+            table.setCountry( i, CountryDictionary.intern( "PT" ) );
+            table.setExitPolicy( i, i == 2 ? "accept 1-65535" : "reject 1-65535" );
+        }
+        return new PathSelector( table );
+    }
+
+    public void testEventQueueOrder()
+    {
+        Random random = new Random( 1 );
+        EventQueue queue = new EventQueue( 2 );
+        double[] times = new double[5000];
+        for ( int k = 0; k < times.length; k++ )
+        {
+            times[k] = random.nextDouble() * 100;
+            queue.push( times[k], k );
+        }
+        Arrays.sort( times );
+        for ( double time : times )
+        {
+            assertEquals( time, queue.peekTime(), 0.0 );
+            int k = queue.pop();
+            assertTrue( k >= 0 && k < times.length );
+        }
+        assertTrue( queue.isEmpty() );
+    }
+
+    public void testIdleNetworkGivesIsolatedThroughput()
+    {
+        LoadResult result = new LoadSimulator( chain(), SimulationEngine.ORIGINAL, 0, 0 )
+                .run( 0.001, 1, 200000, 1 );
+        assertTrue( result.getCircuits() > 100 );
+        assertEquals( 0, result.getFailed() );
+        assertEquals( 100, result.getIsolated().getMean(), 1e-9 );
+        assertTrue( result.throughputRatio() > 0.99 );
+        assertEquals( 0.001, result.utilization( 0 ), 0.0005 );
+    }
+
+    public void testCapacityIsShared()
+    {
+        double rate = 10;
+        LoadResult result = new LoadSimulator( chain(), SimulationEngine.ORIGINAL, 0, 0 )
+                .run( rate, 1, 2000, 7 );
+        assertEquals( rate * 2000, result.getCircuits(), 0.05 * rate * 2000 );
+        assertEquals( 10, result.getMeanActive(), 1 );
+        assertTrue( result.getPeakActive() > 10 );
+
+        // O guard está ocupado quase sempre (P[n > 0] = 1 - e^-10) e os outros entregam o mesmo volume
+        assertEquals( 1.0, result.utilization( 0 ), 0.01 );
+        assertEquals( 0.5, result.utilization( 1 ), 0.01 );
+        assertEquals( 1.0 / 3, result.utilization( 2 ), 0.01 );
+        assertTrue( result.throughputRatio() < 0.25 );
+        assertEquals( 3, result.usedRelays() );
+
+        // Mesma semente: mesma procura nos dois algoritmos
+        LoadResult geo = new LoadSimulator( chain(), SimulationEngine.GEO_AWARE, 0.5, 0.2 ).run( rate, 1, 2000, 7 );
+        assertEquals( result.getCircuits(), geo.getCircuits() );
+        assertEquals( result.getEvents(), geo.getEvents() );
+    }
+}
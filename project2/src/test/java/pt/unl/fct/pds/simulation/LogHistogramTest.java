@@ -0,0 +1,204 @@
+package pt.unl.fct.pds.project2.simulation;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.SplittableRandom;
+
+/**
+ * Testes do histograma logarítmico: erro dos percentis, média e variância exatas e
+ * merge independente da ordem.
+ */
+public class LogHistogramTest
+    extends TestCase
+{
+    // Erro relativo documentado dos percentis: 2^-SUB_BITS, SUB_BITS = 7
+    private static final double MAX_ERROR = 1.0 / 128;
+    private static final double[] PERCENTILES = { 0, 1, 5, 10, 25, 50, 75, 90, 95, 99, 99.9, 100 };
+
+    public LogHistogramTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( LogHistogramTest.class );
+    }
+
+    // Valores log-normais de 0 a ~10^12, com muitos abaixo de 256 (contados exatamente)
+    private static long[] values( int n, long seed )
+    {
+        SplittableRandom random = new SplittableRandom( seed );
+        long[] values = new long[n];
+        for ( int k = 0; k < n; k++ )
+        {
+            double gaussian = Math.sqrt( -2 * Math.log( 1 - random.nextDouble() ) )
+                    * Math.cos( 2 * Math.PI * random.nextDouble() );
+            values[k] = (long) Math.min( 1e12, Math.exp( 8 + 3 * gaussian ) );
+        }
+        return values;
+    }
+
+    private static LogHistogram histogram( long[] values, int from, int to )
+    {
+        LogHistogram histogram = new LogHistogram();
+        for ( int k = from; k < to; k++ )
+        {
+            histogram.record( values[k] );
+        }
+        return histogram;
+    }
+
+    // Percentil exato com a mesma definição de posição: ceil(p / 100 * n), a partir de 1
+    private static long exactPercentile( long[] sorted, double p )
+    {
+        long rank = (long) Math.ceil( p / 100.0 * sorted.length );
+        return sorted[(int) Math.max( 1, Math.min( sorted.length, rank ) ) - 1];
+    }
+
+    public void testPercentilesWithinDocumentedError()
+    {
+        long[] values = values( 200000, 1 );
+        LogHistogram histogram = histogram( values, 0, values.length );
+        long[] sorted = values.clone();
+        Arrays.sort( sorted );
+
+        assertEquals( sorted[0], histogram.getMin() );
+        assertEquals( sorted[sorted.length - 1], histogram.getMax() );
+        for ( double p : PERCENTILES )
+        {
+            long exact = exactPercentile( sorted, p );
+            long estimate = histogram.percentile( p );
+            if ( exact < 256 )
+            {
+                assertEquals( "p" + p, exact, estimate );
+            }
+            else
+            {
+                assertEquals( "p" + p, exact, estimate, exact * MAX_ERROR );
+            }
+        }
+
+        // Cada valor isolado, em toda a gama de long
+        for ( long value : new long[]{ 0, 1, 255, 256, 257, 1000, 123456789L, 1L << 40, ( 1L << 62 ) + 12345,
+            Long.MAX_VALUE } )
+        {
+            LogHistogram single = new LogHistogram();
+            single.record( value );
+            single.record( value );
+            assertEquals( value, single.percentile( 50 ) );
+        }
+        LogHistogram wide = new LogHistogram();
+        wide.record( 1000 );
+        wide.record( Long.MAX_VALUE / 3 );
+        assertEquals( Long.MAX_VALUE / 3, wide.percentile( 100 ), Long.MAX_VALUE / 3 * MAX_ERROR );
+        assertEquals( 1000, wide.percentile( 50 ), 1000 * MAX_ERROR );
+    }
+
+    public void testMeanAndVarianceAreExact()
+    {
+        long[] values = values( 100000, 2 );
+        LogHistogram histogram = histogram( values, 0, values.length );
+
+        // Duas passagens em vírgula flutuante
+        double sum = 0;
+        for ( long value : values )
+        {
+            sum += value;
+        }
+        double mean = sum / values.length;
+        double squares = 0;
+        for ( long value : values )
+        {
+            squares += ( value - mean ) * ( value - mean );
+        }
+        double variance = squares / ( values.length - 1 );
+
+        assertEquals( values.length, histogram.getCount() );
+        assertEquals( mean, histogram.getMean(), mean * 1e-9 );
+        assertEquals( variance, histogram.getVariance(), variance * 1e-9 );
+        assertEquals( Math.sqrt( variance ), histogram.getStdDev(), Math.sqrt( variance ) * 1e-9 );
+
+        // Valores pequenos: contas de cabeça
+        LogHistogram small = histogram( new long[]{ 2, 4, 4, 4, 5, 5, 7, 9 }, 0, 8 );
+        assertEquals( 5.0, small.getMean(), 1e-12 );
+        assertEquals( 32.0 / 7, small.getVariance(), 1e-12 );
+        assertEquals( 0.0, new LogHistogram().getVariance(), 0.0 );
+    }
+
+    public void testMergeIsOrderIndependent()
+    {
+        long[] values = values( 120000, 3 );
+        LogHistogram single = histogram( values, 0, values.length );
+        int[] cuts = { 0, 1000, 50000, 50001, 120000 };
+        LogHistogram[] parts = new LogHistogram[cuts.length - 1];
+        for ( int k = 0; k < parts.length; k++ )
+        {
+            parts[k] = histogram( values, cuts[k], cuts[k + 1] );
+        }
+
+        int[][] orders = { { 0, 1, 2, 3 }, { 3, 2, 1, 0 }, { 2, 0, 3, 1 } };
+        for ( int[] order : orders )
+        {
+            LogHistogram merged = new LogHistogram();
+            merged.merge( new LogHistogram() );
+            for ( int k : order )
+            {
+                merged.merge( parts[k] );
+            }
+            assertSame( single, merged );
+        }
+
+        // Em árvore: (0 + 1) + (2 + 3)
+        LogHistogram left = histogram( values, cuts[0], cuts[2] );
+        LogHistogram right = new LogHistogram();
+        right.merge( parts[2] );
+        right.merge( parts[3] );
+        left.merge( right );
+        assertSame( single, left );
+
+        // reset devolve o estado inicial
+        left.reset();
+        assertEquals( 0, left.getCount() );
+        assertEquals( 0, left.percentile( 50 ) );
+        left.merge( single );
+        assertSame( single, left );
+    }
+
+    public void testSummaryIgnoresDefaultLocale()
+    {
+        Locale previous = Locale.getDefault();
+        try
+        {
+            Locale.setDefault( Locale.GERMANY );
+            LogHistogram histogram = histogram( new long[]{ 1, 2 }, 0, 2 );
+            assertEquals( "min=1, max=2, avg=1.50, var=0.50, p1=1, p5=1, p50=1, p95=2, p99=2", histogram.summary() );
+
+            CircuitMetrics metrics = new CircuitMetrics( 3 );
+            metrics.update( 0, 1, 2, 1 );
+            metrics.update( 0, 1, 2, 2 );
+            assertEquals( histogram.summary(), metrics.bandwidthSummary() );
+        }
+        finally
+        {
+            Locale.setDefault( previous );
+        }
+    }
+
+    private static void assertSame( LogHistogram expected, LogHistogram actual )
+    {
+        assertEquals( expected.getCount(), actual.getCount() );
+        assertEquals( expected.getMin(), actual.getMin() );
+        assertEquals( expected.getMax(), actual.getMax() );
+        for ( double p : PERCENTILES )
+        {
+            assertEquals( "p" + p, expected.percentile( p ), actual.percentile( p ) );
+        }
+        assertEquals( expected.getMean(), actual.getMean(), expected.getMean() * 1e-12 );
+        assertEquals( expected.getVariance(), actual.getVariance(), expected.getVariance() * 1e-9 );
+    }
+}
@@ -0,0 +1,83 @@
+package pt.unl.fct.pds.project2.simulation;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import pt.unl.fct.pds.project2.model.CountryDictionary;
+import pt.unl.fct.pds.project2.model.RelayTable;
+import pt.unl.fct.pds.project2.utils.PathSelector;
+
+import java.util.List;
+
+/**
+ * Testes do varrimento de alpha e beta.
+ */
+public class ParameterSweepTest
+    extends TestCase
+{
+    private static final String[] COUNTRIES = { "PT", "DE", "US", "FR" };
+
+    private PathSelector selector;
+
+    public ParameterSweepTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( ParameterSweepTest.class );
+    }
+
+    protected void setUp()
+    {
+        RelayTable table = new RelayTable();
+        for ( int i = 0; i < 80; i++ )
+        {
+            table.add( "relay" + i, "fp" + i, 0, ( 10 << 24 ) | ( ( i % 13 ) << 16 ) | i, 9001, 0 );
+            table.setBandwidth( i, 100 + 10 * i );
+            table.setFlags( i, RelayTable.FLAG_FAST | ( i % 2 == 0 ? RelayTable.FLAG_GUARD : 0 ) );
+            table.setCountry( i, CountryDictionary.intern( COUNTRIES[i % COUNTRIES.length] ) );
+            table.setExitPolicy( i, i % 3 == 0 ? "accept 1-65535" : "reject 1-65535" );
+        }
+        selector = new PathSelector( table );
+    }
+
+    public void testParseValues()
+    {
+        double[] range = ParameterSweep.parseValues( "0:1:5" );
+        assertEquals( 5, range.length );
+        assertEquals( 0.0, range[0], 0.0 );
+        assertEquals( 0.25, range[1], 1e-12 );
+        assertEquals( 1.0, range[4], 0.0 );
+
+        double[] list = ParameterSweep.parseValues( "0.1, 0.5" );
+        assertEquals( 2, list.length );
+        assertEquals( 0.5, list[1], 0.0 );
+    }
+
+    public void testCommonRandomNumbers()
+    {
+        double[] alphas = { 0.0, 1.0 };
+        double[] betas = { 0.0, 0.5 };
+        List<SweepPoint> one = new ParameterSweep( selector, 1 ).run( alphas, betas, 20000, 7 );
+        List<SweepPoint> three = new ParameterSweep( selector, 3 ).run( alphas, betas, 20000, 7 );
+
+        assertEquals( 5, one.size() );
+        assertEquals( SimulationEngine.ORIGINAL, one.get( 0 ).getAlgorithm() );
+        assertEquals( 1.0, one.get( 4 ).getAlpha(), 0.0 );
+        assertEquals( 0.5, one.get( 4 ).getBeta(), 0.0 );
+
+        // Sem pesos por país o Geo-Aware escolhe exatamente os mesmos circuitos que o Original
+        assertEquals( one.get( 0 ).entropy( SelectionStats.GLOBAL ), one.get( 1 ).entropy( SelectionStats.GLOBAL ), 0.0 );
+        assertEquals( one.get( 0 ).bandwidthMean(), one.get( 1 ).bandwidthMean(), 0.0 );
+        assertTrue( one.get( 4 ).entropy( SelectionStats.MIDDLE ) != one.get( 0 ).entropy( SelectionStats.MIDDLE ) );
+
+        // Resultado independente do número de threads
+        for ( int k = 0; k < one.size(); k++ )
+        {
+            assertEquals( one.get( k ).toCsv(), three.get( k ).toCsv() );
+        }
+    }
+}
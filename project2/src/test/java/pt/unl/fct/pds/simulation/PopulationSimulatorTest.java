@@ -0,0 +1,102 @@
+package pt.unl.fct.pds.project2.simulation;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import pt.unl.fct.pds.project2.model.CountryDictionary;
+import pt.unl.fct.pds.project2.model.RelayTable;
+import pt.unl.fct.pds.project2.utils.PathSelector;
+
+/**
+ * Testes da simulação de clientes com guards persistentes.
+ */
+public class PopulationSimulatorTest
+    extends TestCase
+{
+    private static final String[] COUNTRIES = { "PT", "DE", "US" };
+
+    private PathSelector selector;
+
+    public PopulationSimulatorTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( PopulationSimulatorTest.class );
+    }
+
+    protected void setUp()
+    {
+        RelayTable table = new RelayTable();
+        for ( int i = 0; i < 60; i++ )
+        {
+            table.add( "relay" + i, "fp" + i, 0, ( 10 << 24 ) | ( ( i % 11 ) << 16 ) | i, 9001, 0 );
+            table.setBandwidth( i, 100 + i );
+            table.setFlags( i, RelayTable.FLAG_FAST | ( i % 3 == 0 ? RelayTable.FLAG_GUARD : 0 ) );
+            table.setCountry( i, CountryDictionary.intern( COUNTRIES[i % COUNTRIES.length] ) );
+            table.setExitPolicy( i, i % 4 == 1 ? "accept 1-65535" : "reject 1-65535" );
+        }
+        selector = new PathSelector( table );
+    }
+
+    public void testSameResultForAnyNumberOfThreads()
+    {
+        PopulationResult one = new PopulationSimulator( selector, 10000, 1 ).run( 3, 2, 42, 0.5, 0.2 );
+        PopulationResult four = new PopulationSimulator( selector, 10000, 4 ).run( 3, 2, 42, 0.5, 0.2 );
+
+        assertEquals( 10000 * 3 * 2, one.getOriginal().getCircuits() );
+        assertEquals( one.getGeoAware().getCircuits(), four.getGeoAware().getCircuits() );
+        assertEquals( one.guardEntropy(), four.guardEntropy(), 0.0 );
+        assertEquals( one.getGeoAware().exitEntropy(), four.getGeoAware().exitEntropy(), 0.0 );
+        for ( int i = 0; i < selector.getTable().size(); i++ )
+        {
+            assertEquals( one.guardClients( i ), four.guardClients( i ) );
+            // Só relays com a flag Guard são guards de clientes
+            if ( i % 3 != 0 ) assertEquals( 0, one.guardClients( i ) );
+        }
+        assertEquals( 2.0, one.meanGuardsPerClient(), 0.0 );
+    }
+
+    public void testGuardsRotateWhenTheyExpire()
+    {
+        PopulationSimulator population = new PopulationSimulator( selector, 1000, 2 );
+        population.setGuardLifetime( 1, 1 );
+        PopulationResult result = population.run( 5, 1, 7, 0.5, 0.2 );
+
+        // Um guard novo por posição e por dia
+        assertEquals( 2.0 * 5, result.meanGuardsPerClient(), 0.0 );
+        assertEquals( 17, population.bytesPerClient() );
+    }
+
+    public void testThreeGuardsInDifferentSubnets()
+    {
+        PopulationSimulator population = new PopulationSimulator( selector, 2000, 3, 2 );
+        population.setGuardLifetime( 1, 3 );
+        PopulationResult result = population.run( 6, 1, 11, 0.5, 0.2 );
+
+        RelayTable table = selector.getTable();
+        long guards = 0;
+        for ( int c = 0; c < population.getClients(); c++ )
+        {
+            int[] own = population.guardsOf( c );
+            for ( int k = 0; k < own.length; k++ )
+            {
+                assertTrue( own[k] >= 0 );
+                for ( int j = 0; j < k; j++ )
+                {
+                    // Nunca o mesmo relay nem a mesma /16 que outro guard do cliente
+                    assertFalse( "client " + c, table.same16Subnet( own[j], own[k] ) );
+                }
+            }
+        }
+        for ( int i = 0; i < table.size(); i++ )
+        {
+            guards += result.guardClients( i );
+        }
+        assertEquals( 3L * population.getClients(), guards );
+        assertEquals( 25, population.bytesPerClient() );
+    }
+}
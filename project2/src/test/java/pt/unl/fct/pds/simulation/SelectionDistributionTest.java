@@ -0,0 +1,130 @@
+package pt.unl.fct.pds.project2.simulation;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import pt.unl.fct.pds.project2.model.CountryDictionary;
+import pt.unl.fct.pds.project2.model.RelayTable;
+import pt.unl.fct.pds.project2.utils.PathSelector;
+
+/**
+ * Testes das distribuições exatas: enumeração de todos os circuitos numa tabela
+ * pequena e comparação com a simulação.
+ */
+public class SelectionDistributionTest
+    extends TestCase
+{
+    private static final String[] COUNTRIES = { "PT", "DE", "US" };
+
+    private RelayTable table;
+    private PathSelector selector;
+
+    public SelectionDistributionTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( SelectionDistributionTest.class );
+    }
+
+    protected void setUp()
+    {
+        table = new RelayTable();
+        for ( int i = 0; i < 30; i++ )
+        {
+            // /16 partilhadas entre países diferentes e entre papéis
+            table.add( "relay" + i, "fp" + i, 0, ( 10 << 24 ) | ( ( i % 7 ) << 16 ) | i, 9001, 0 );
+            table.setBandwidth( i, i == 5 ? 0 : 50 + 17 * ( i % 9 ) );
+            table.setFlags( i, RelayTable.FLAG_FAST | ( i % 2 == 0 ? RelayTable.FLAG_GUARD : 0 ) );
+            table.setCountry( i, CountryDictionary.intern( COUNTRIES[( i / 2 ) % COUNTRIES.length] ) );
+            table.setExitPolicy( i, i % 3 == 0 ? "accept 1-65535" : "reject 1-65535" );
+        }
+        selector = new PathSelector( table );
+    }
+
+    public void testMatchesEnumeration()
+    {
+        assertEnumeration( 0, 0 );
+        assertEnumeration( 0.7, 0.4 );
+        assertEnumeration( 2, 0 );
+    }
+
+    public void testMatchesSimulation()
+    {
+        SelectionDistribution exact = SelectionDistribution.compute( selector, 0.5, 0.3 );
+        SimulationResult result = new SimulationEngine( selector, 1 ).run( 400000, 11, 0.5, 0.3 );
+        SelectionStats sampled = result.getGeoAware().getSelections();
+        for ( int pos = SelectionStats.GUARD; pos <= SelectionStats.GLOBAL; pos++ )
+        {
+            assertTrue( exact.totalVariation( sampled, pos ) < 0.01 );
+            assertEquals( exact.entropy( pos ), sampled.entropy( pos ), 0.01 );
+        }
+        assertEquals( 1.0, exact.successProbability(), 1e-9 );
+        assertEquals( 0.0, exact.probability( SelectionStats.EXIT, 5 ), 0.0 );
+    }
+
+    // Soma explícita sobre todos os (exit, guard, middle)
+    private void assertEnumeration( double alpha, double beta )
+    {
+        int n = table.size();
+        double[][] expected = new double[3][n];
+        double exitTotal = 0;
+        for ( int e = 0; e < n; e++ ) exitTotal += isExit( e ) ? table.getBandwidth( e ) : 0;
+
+        for ( int e = 0; e < n; e++ )
+        {
+            if ( !isExit( e ) ) continue;
+            double pe = table.getBandwidth( e ) / exitTotal;
+            double guardTotal = 0;
+            for ( int g = 0; g < n; g++ ) guardTotal += guardWeight( g, e, alpha );
+            for ( int g = 0; g < n; g++ )
+            {
+                double pg = pe * guardWeight( g, e, alpha ) / guardTotal;
+                if ( pg == 0 ) continue;
+                double middleTotal = 0;
+                for ( int m = 0; m < n; m++ ) middleTotal += middleWeight( m, g, e, beta );
+                for ( int m = 0; m < n; m++ )
+                {
+                    double p = pg * middleWeight( m, g, e, beta ) / middleTotal;
+                    expected[0][g] += p;
+                    expected[1][m] += p;
+                    expected[2][e] += p;
+                }
+            }
+        }
+
+        SelectionDistribution exact = SelectionDistribution.compute( selector, alpha, beta );
+        double entropy = 0;
+        for ( int i = 0; i < n; i++ )
+        {
+            for ( int pos = 0; pos < 3; pos++ ) assertEquals( expected[pos][i], exact.probability( pos, i ), 1e-12 );
+            if ( expected[1][i] > 0 ) entropy -= expected[1][i] * Math.log( expected[1][i] ) / Math.log( 2 );
+        }
+        assertEquals( entropy, exact.entropy( SelectionStats.MIDDLE ), 1e-9 );
+    }
+
+    private boolean isExit( int i )
+    {
+        return i % 3 == 0;
+    }
+
+    private double guardWeight( int g, int e, double alpha )
+    {
+        if ( g % 2 != 0 || table.getSubnet16( g ) == table.getSubnet16( e ) ) return 0;
+        return table.getBandwidth( g ) * ( table.getCountry( g ) == table.getCountry( e ) ? 1 : 1 + alpha );
+    }
+
+    private double middleWeight( int m, int g, int e, double beta )
+    {
+        int subnet = table.getSubnet16( m );
+        if ( subnet == table.getSubnet16( g ) || subnet == table.getSubnet16( e ) ) return 0;
+        short country = table.getCountry( m );
+        boolean same = table.getCountry( g ) == table.getCountry( e );
+        double mult = country != table.getCountry( g ) && country != table.getCountry( e ) ? 1 + 3 * beta
+                : ( same ? 1 + beta : 1 + 2 * beta );
+        return table.getBandwidth( m ) * mult;
+    }
+}
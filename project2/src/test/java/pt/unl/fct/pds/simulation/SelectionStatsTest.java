@@ -0,0 +1,94 @@
+package pt.unl.fct.pds.project2.simulation;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.SplittableRandom;
+
+/**
+ * Testes das contagens de seleção: estatísticas parciais combinadas com merge são
+ * iguais às de uma única passagem.
+ */
+public class SelectionStatsTest
+    extends TestCase
+{
+    private static final int RELAYS = 500;
+    private static final int CIRCUITS = 50000;
+
+    public SelectionStatsTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( SelectionStatsTest.class );
+    }
+
+    public void testMergeEqualsSinglePass()
+    {
+        SelectionStats single = new SelectionStats( RELAYS );
+        SelectionStats first = new SelectionStats( RELAYS );
+        SelectionStats second = new SelectionStats( RELAYS );
+
+        // Guards concentrados nos primeiros relays; a segunda parte usa relays que a primeira não vê
+        SplittableRandom random = new SplittableRandom( 11 );
+        for ( int c = 0; c < CIRCUITS; c++ )
+        {
+            int guard = random.nextInt( c < CIRCUITS / 3 ? 50 : RELAYS / 2 );
+            int middle = random.nextInt( RELAYS );
+            int exit = c < CIRCUITS / 3 ? random.nextInt( RELAYS / 2 ) : RELAYS / 2 + random.nextInt( RELAYS / 2 );
+            single.record( guard, middle, exit );
+            ( c < CIRCUITS / 3 ? first : second ).record( guard, middle, exit );
+        }
+        assertTrue( first.diversity( SelectionStats.EXIT ) + second.diversity( SelectionStats.EXIT ) > RELAYS / 2 );
+
+        SelectionStats merged = new SelectionStats( RELAYS );
+        merged.merge( first );
+        merged.merge( second );
+        merged.merge( new SelectionStats( RELAYS ) );
+
+        for ( int position = SelectionStats.GUARD; position <= SelectionStats.GLOBAL; position++ )
+        {
+            assertEquals( single.selections( position ), merged.selections( position ) );
+            for ( int relay = 0; relay < RELAYS; relay++ )
+            {
+                assertEquals( single.count( position, relay ), merged.count( position, relay ) );
+            }
+            assertEquals( single.diversity( position ), merged.diversity( position ) );
+            assertEquals( single.entropy( position ), merged.entropy( position ), 0.0 );
+        }
+        assertEquals( 3L * CIRCUITS, merged.selections( SelectionStats.GLOBAL ) );
+        assertEquals( RELAYS, merged.diversity( SelectionStats.EXIT ) );
+
+        // Parcial depois do merge continua a somar
+        second.merge( first );
+        assertEquals( single.entropy( SelectionStats.GLOBAL ), second.entropy( SelectionStats.GLOBAL ), 0.0 );
+    }
+
+    public void testEntropyOfUniformSelection()
+    {
+        SelectionStats stats = new SelectionStats( 8 );
+        for ( int c = 0; c < 8 * 100; c++ )
+        {
+            stats.record( c % 8, ( c + 1 ) % 8, ( c + 2 ) % 8 );
+        }
+        assertEquals( 3.0, stats.entropy( SelectionStats.GUARD ), 1e-12 );
+        assertEquals( 3.0, stats.entropy( SelectionStats.GLOBAL ), 1e-12 );
+        assertEquals( 0.0, new SelectionStats( 8 ).entropy( SelectionStats.MIDDLE ), 0.0 );
+    }
+
+    public void testMergeRejectsOtherTables()
+    {
+        try
+        {
+            new SelectionStats( 10 ).merge( new SelectionStats( 11 ) );
+            fail( "merge of different tables" );
+        }
+        catch ( IllegalArgumentException e )
+        {
+            // esperado
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package pt.unl.fct.pds.project2.simulation;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import pt.unl.fct.pds.project2.model.CountryDictionary;
+import pt.unl.fct.pds.project2.model.RelayTable;
+import pt.unl.fct.pds.project2.utils.LatencyModel;
+import pt.unl.fct.pds.project2.utils.PathSelector;
+
+import java.util.Arrays;
+
+/**
+ * Testes do motor de simulação: com a mesma semente, o resultado não depende do
+ * número de threads.
+ */
+public class SimulationEngineTest
+    extends TestCase
+{
+    // Vários blocos, o último incompleto
+    private static final int CIRCUITS = 3 * SimulationEngine.CHUNK_SIZE + 123;
+    private static final String[] COUNTRIES = { "PT", "ES", "DE", "US" };
+
+    public SimulationEngineTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( SimulationEngineTest.class );
+    }
+
+    private static PathSelector selector()
+    {
+        RelayTable table = new RelayTable();
+        for ( int i = 0; i < 80; i++ )
+        {
+            table.add( "relay" + i, "fp" + i, 0, ( 10 << 24 ) | ( ( i % 17 ) << 16 ) | i, 9001, 0 );
+            table.setBandwidth( i, 50 + 7 * i );
+            table.setFlags( i, RelayTable.FLAG_FAST | ( i % 3 == 0 ? RelayTable.FLAG_GUARD : 0 ) );
+            table.setCountry( i, CountryDictionary.intern( COUNTRIES[i % COUNTRIES.length] ) );
+            table.setExitPolicy( i, i % 4 == 1 ? "accept 1-65535" : "reject 1-65535" );
+        }
+        return new PathSelector( table );
+    }
+
+    // Circuitos indexados por 2 * id + algoritmo: {guard, middle, exit, bandwidth}
+    private static final class Records implements CircuitListener
+    {
+        final int[][] records = new int[2 * CIRCUITS][];
+
+        @Override
+        public synchronized void onCircuit( long index, int algorithm, int guard, int middle, int exit,
+                                            int minBandwidth )
+        {
+            records[(int) ( 2 * index + algorithm )] = new int[]{ guard, middle, exit, minBandwidth };
+        }
+    }
+
+    private static SimulationResult run( PathSelector selector, int threads, Records records )
+    {
+        SimulationEngine engine = new SimulationEngine( selector, threads );
+        engine.setCorrelation( true );
+        engine.setLatency( LatencyModel.getDefault() );
+        return engine.run( CIRCUITS, 1234, 0.5, 0.2, records );
+    }
+
+    public void testSameSeedSameResultForAnyThreadCount()
+    {
+        PathSelector selector = selector();
+        Records single = new Records();
+        Records parallel = new Records();
+        SimulationResult one = run( selector, 1, single );
+        SimulationResult four = run( selector, 4, parallel );
+
+        for ( int k = 0; k < single.records.length; k++ )
+        {
+            assertNotNull( "record " + k, single.records[k] );
+            assertTrue( "record " + k, Arrays.equals( single.records[k], parallel.records[k] ) );
+        }
+        assertSameMetrics( one.getOriginal(), four.getOriginal() );
+        assertSameMetrics( one.getGeoAware(), four.getGeoAware() );
+    }
+
+    private static void assertSameMetrics( CircuitMetrics expected, CircuitMetrics actual )
+    {
+        assertEquals( CIRCUITS, expected.getCircuits() );
+        assertEquals( expected.getCircuits(), actual.getCircuits() );
+
+        // Contagens inteiras: iguais; somas em vírgula flutuante: a ordem do merge muda os últimos bits
+        SelectionStats a = expected.getSelections();
+        SelectionStats b = actual.getSelections();
+        for ( int position = SelectionStats.GUARD; position <= SelectionStats.GLOBAL; position++ )
+        {
+            assertEquals( a.selections( position ), b.selections( position ) );
+            assertEquals( a.diversity( position ), b.diversity( position ) );
+            for ( int relay = 0; relay < a.getNumRelays(); relay++ )
+            {
+                assertEquals( a.count( position, relay ), b.count( position, relay ) );
+            }
+            assertEquals( a.entropy( position ), b.entropy( position ), 1e-12 );
+        }
+        assertSameHistogram( expected.getBandwidths(), actual.getBandwidths() );
+        assertSameHistogram( expected.getRtts(), actual.getRtts() );
+
+        CorrelationMetrics x = expected.getCorrelation();
+        CorrelationMetrics y = actual.getCorrelation();
+        assertEquals( x.getCircuits(), y.getCircuits() );
+        for ( int pair = CorrelationMetrics.GUARD_MIDDLE; pair <= CorrelationMetrics.MIDDLE_EXIT; pair++ )
+        {
+            assertEquals( x.sameCountryRate( pair ), y.sameCountryRate( pair ), 0.0 );
+        }
+        assertEquals( x.allSameCountryRate(), y.allSameCountryRate(), 0.0 );
+    }
+
+    private static void assertSameHistogram( LogHistogram expected, LogHistogram actual )
+    {
+        assertEquals( expected.getCount(), actual.getCount() );
+        assertEquals( expected.getMin(), actual.getMin() );
+        assertEquals( expected.getMax(), actual.getMax() );
+        assertEquals( expected.getMean(), actual.getMean(), 1e-9 * Math.abs( expected.getMean() ) );
+        for ( double p : new double[]{ 1, 50, 90, 99, 99.9 } )
+        {
+            assertEquals( expected.percentile( p ), actual.percentile( p ) );
+        }
+    }
+}
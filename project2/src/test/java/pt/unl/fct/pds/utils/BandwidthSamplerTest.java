@@ -0,0 +1,261 @@
+package pt.unl.fct.pds.project2.utils;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import pt.unl.fct.pds.project2.model.BandwidthWeights;
+import pt.unl.fct.pds.project2.model.CountryDictionary;
+import pt.unl.fct.pds.project2.model.RelayTable;
+
+import java.util.Random;
+
+/**
+ * Testes do sampler ponderado com exclusão de /16.
+ */
+public class BandwidthSamplerTest
+    extends TestCase
+{
+    private static final int RELAYS = 50;
+    private static final int SUBNETS = 7;
+
+    private static final String[] COUNTRIES = { "PT", "DE", "US" };
+
+    private RelayTable table;
+    private int[] pool;
+
+    public BandwidthSamplerTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( BandwidthSamplerTest.class );
+    }
+
+    protected void setUp()
+    {
+        Random random = new Random( 1 );
+        table = new RelayTable();
+        pool = new int[RELAYS];
+        for ( int i = 0; i < RELAYS; i++ )
+        {
+            // 10.<i % 7>.0.<i>: sete /16 distintas, intercaladas no pool
+            int ip = ( 10 << 24 ) | ( ( i % SUBNETS ) << 16 ) | i;
+            table.add( "relay" + i, "fp" + i, 0, ip, 9001, 0 );
+            table.setBandwidth( i, 1 + random.nextInt( 100 ) );
+            table.setCountry( i, CountryDictionary.intern( COUNTRIES[i % COUNTRIES.length] ) );
+            pool[i] = i;
+        }
+    }
+
+    public void testExcludedSubnetsAreNeverSampled()
+    {
+        BandwidthSampler sampler = new BandwidthSampler( table, pool );
+        int excludedA = table.getSubnet16( 3 );
+        int excludedB = table.getSubnet16( 5 );
+        for ( int k = 0; k <= 1000; k++ )
+        {
+            int relay = sampler.sample( k / 1001.0, excludedA, excludedB );
+            assertTrue( relay >= 0 );
+            assertFalse( relay % SUBNETS == 3 || relay % SUBNETS == 5 );
+        }
+    }
+
+    public void testDistributionMatchesFilteredBandwidth()
+    {
+        BandwidthSampler sampler = new BandwidthSampler( table, pool );
+        int excluded = table.getSubnet16( 2 );
+
+        double total = 0;
+        for ( int i = 0; i < RELAYS; i++ )
+        {
+            if ( i % SUBNETS != 2 ) total += table.getBandwidth( i );
+        }
+
+        int draws = 1000000;
+        long[] counts = new long[RELAYS];
+        Random random = new Random( 7 );
+        for ( int k = 0; k < draws; k++ )
+        {
+            counts[sampler.sample( random.nextDouble(), excluded, -1 )]++;
+        }
+
+        for ( int i = 0; i < RELAYS; i++ )
+        {
+            double expected = ( i % SUBNETS == 2 ) ? 0 : table.getBandwidth( i ) / total;
+            assertEquals( expected, counts[i] / (double) draws, 0.002 );
+        }
+    }
+
+    public void testUpdateChangesWeights()
+    {
+        BandwidthSampler sampler = new BandwidthSampler( table, pool );
+        long before = sampler.total();
+        sampler.update( 4, 0 );
+        assertEquals( before - table.getBandwidth( 4 ), sampler.total() );
+        for ( int k = 0; k < 1000; k++ )
+        {
+            assertTrue( sampler.sample( k / 1000.0, -1, -1 ) != 4 );
+        }
+    }
+
+    public void testCountryMultipliers()
+    {
+        BandwidthSampler sampler = new BandwidthSampler( table, pool );
+        int excluded = table.getSubnet16( 1 );
+        short pt = CountryDictionary.intern( "PT" );
+        short de = CountryDictionary.intern( "DE" );
+
+        double[] expected = new double[RELAYS];
+        double total = 0;
+        for ( int i = 0; i < RELAYS; i++ )
+        {
+            if ( i % SUBNETS == 1 ) continue;
+            short c = table.getCountry( i );
+            double m = c == pt ? 1.0 : ( c == de ? 1.4 : 2.0 );
+            expected[i] = m * table.getBandwidth( i );
+            total += expected[i];
+        }
+
+        int draws = 1000000;
+        long[] counts = new long[RELAYS];
+        Random random = new Random( 11 );
+        for ( int k = 0; k < draws; k++ )
+        {
+            counts[sampler.sample( random.nextDouble(), excluded, -1, 2.0, pt, 1.0, de, 1.4 )]++;
+        }
+
+        for ( int i = 0; i < RELAYS; i++ )
+        {
+            assertEquals( expected[i] / total, counts[i] / (double) draws, 0.002 );
+        }
+    }
+
+    public void testClassFactorsMatchWeightedPool()
+    {
+        int[] flags = { 0, RelayTable.FLAG_GUARD, RelayTable.FLAG_EXIT, RelayTable.FLAG_GUARD | RelayTable.FLAG_EXIT };
+        for ( int i = 0; i < RELAYS; i++ )
+        {
+            table.setFlags( i, flags[i % flags.length] );
+        }
+        long[] before = { 10000, 5978, 0, 531 };
+        long[] after = { 10000, 4022, 8937, 0 };
+        BandwidthSampler sampler = new BandwidthSampler( table, pool, bandwidths( pool ), before );
+        sampler.setFactors( after );
+
+        // Os mesmos sorteios do sampler construído com os pesos bandwidth x novo fator
+        BandwidthSampler weighted = new BandwidthSampler( table, pool, weights( after ) );
+        short de = CountryDictionary.intern( "DE" );
+        for ( int k = 0; k < 1000; k++ )
+        {
+            double u = k / 1000.0;
+            int excluded = table.getSubnet16( 1 );
+            assertEquals( weighted.sample( u, excluded, -1 ), sampler.sample( u, excluded, -1 ) );
+            assertEquals( weighted.sample( u, -1, -1, 1.5, de, 1.0, de, 1.0 ),
+                sampler.sample( u, -1, -1, 1.5, de, 1.0, de, 1.0 ) );
+        }
+        assertEquals( 0, sampler.weight( 3 ) );
+
+        // O 7 (Guard+Exit) perde a flag Exit: muda de classe, passa para o secundário,
+        // que também recebe os novos fatores
+        table.setFlags( 7, RelayTable.FLAG_GUARD );
+        assertFalse( sampler.tryUpdate( table, 7, table.getBandwidth( 7 ) ) );
+        sampler.addAll( table, new int[]{ 7 }, new long[]{ table.getBandwidth( 7 ) }, 1 );
+        sampler.setFactors( before );
+        weighted = new BandwidthSampler( table, pool, weights( before ) );
+        for ( BandwidthSampler s : new BandwidthSampler[]{ sampler, sampler.compact( table ) } )
+        {
+            assertEquals( weighted.total(), s.total() );
+            for ( int subnet = 0; subnet < SUBNETS; subnet++ )
+            {
+                int s16 = table.getSubnet16( subnet );
+                assertEquals( weighted.subnetWeight( s16 ), s.subnetWeight( s16 ) );
+            }
+            for ( int i = 0; i < RELAYS; i++ )
+            {
+                assertEquals( weighted.weight( i ), s.weight( i ) );
+            }
+        }
+        assertEquals( table.getBandwidth( 7 ) * 5978L, sampler.weight( 7 ) );
+    }
+
+    // Peso de cada relay do pool: bandwidth x fator da classe
+    private long[] weights( long[] factors )
+    {
+        long[] weights = new long[RELAYS];
+        for ( int i = 0; i < RELAYS; i++ )
+        {
+            weights[i] = table.getBandwidth( i ) * factors[BandwidthWeights.classOf( table.getFlags( i ) )];
+        }
+        return weights;
+    }
+
+    private long[] bandwidths( int[] relays )
+    {
+        long[] weights = new long[relays.length];
+        for ( int k = 0; k < relays.length; k++ )
+        {
+            weights[k] = table.getBandwidth( relays[k] );
+        }
+        return weights;
+    }
+
+    public void testIncrementalChangesMatchRebuild()
+    {
+        // Pool inicial sem os últimos 10 relays
+        int[] initial = java.util.Arrays.copyOf( pool, 40 );
+        BandwidthSampler sampler = new BandwidthSampler( table, initial );
+
+        // Sai o 4, o 9 muda de /16 e país, o 12 muda de peso, entram 40..49
+        sampler.remove( 4 );
+        table.setIpv4( 9, ( 10 << 24 ) | ( 99 << 16 ) | 9 );
+        table.setCountry( 9, CountryDictionary.intern( "FR" ) );
+        assertFalse( sampler.tryUpdate( table, 9, table.getBandwidth( 9 ) ) );
+        table.setBandwidth( 12, 500 );
+        assertTrue( sampler.tryUpdate( table, 12, 500 ) );
+        int[] added = { 9, 40, 41, 42, 43, 44, 45, 46, 47, 48, 49 };
+        long[] weights = new long[added.length];
+        for ( int k = 0; k < added.length; k++ ) weights[k] = table.getBandwidth( added[k] );
+        sampler.addAll( table, added, weights, added.length );
+
+        int[] expectedPool = new int[RELAYS - 1];
+        for ( int i = 0, n = 0; i < RELAYS; i++ ) if ( i != 4 ) expectedPool[n++] = i;
+        BandwidthSampler rebuilt = new BandwidthSampler( table, expectedPool );
+        BandwidthSampler compacted = sampler.compact( table );
+
+        short fr = CountryDictionary.intern( "FR" );
+        int moved = table.getSubnet16( 9 );
+        for ( BandwidthSampler s : new BandwidthSampler[]{ sampler, compacted } )
+        {
+            assertEquals( rebuilt.size(), s.size() );
+            assertEquals( rebuilt.total(), s.total() );
+            assertEquals( rebuilt.subnetWeight( moved ), s.subnetWeight( moved ) );
+            assertEquals( rebuilt.subnetWeight( table.getSubnet16( 2 ) ), s.subnetWeight( table.getSubnet16( 2 ) ) );
+            assertEquals( rebuilt.countryWeight( fr ), s.countryWeight( fr ) );
+            assertFalse( s.contains( 4 ) );
+            assertTrue( s.contains( 9 ) && s.contains( 49 ) );
+        }
+
+        // Mesma distribuição que o sampler reconstruído, com exclusão e multiplicadores
+        int excluded = table.getSubnet16( 2 );
+        short pt = CountryDictionary.intern( "PT" );
+        int draws = 1000000;
+        long[] counts = new long[RELAYS];
+        long[] expected = new long[RELAYS];
+        Random random = new Random( 13 );
+        for ( int k = 0; k < draws; k++ )
+        {
+            double u = random.nextDouble();
+            counts[sampler.sample( u, excluded, moved, 2.0, pt, 1.0, fr, 1.0 )]++;
+            expected[rebuilt.sample( u, excluded, moved, 2.0, pt, 1.0, fr, 1.0 )]++;
+        }
+        assertEquals( 0, counts[4] );
+        assertEquals( 0, counts[9] );
+        for ( int i = 0; i < RELAYS; i++ )
+        {
+            assertEquals( expected[i] / (double) draws, counts[i] / (double) draws, 0.003 );
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package pt.unl.fct.pds.project2.utils;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import pt.unl.fct.pds.project2.model.BandwidthWeights;
+import pt.unl.fct.pds.project2.model.RelayTable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * Testes do parser do consensus ao nível do byte.
+ */
+public class ConsensusParserTest
+    extends TestCase
+{
+    private static final String CONSENSUS =
+        "network-status-version 3 microdesc\n"
+        + "valid-after 2025-12-01 17:00:00\n"
+        + "r lisdex AAAErLudKby6FyVrs1ko3b/Iq6k w59Of9XN3XizuKvrcWAkwMzJ69k 2025-12-01 08:58:50 152.53.144.50 8443 0\n"
+        + "s Fast Running Valid\n"
+        + "v Tor 0.4.8.21\n"
+        + "pr Conflux=1 Cons=1-2 Desc=1-2\n"
+        + "w Bandwidth=62000\n"
+        + "p reject 1-65535\n"
+        + "r broken AAB3U5aCNzT5U9IsI48P6F2285A\n"
+        + "r SharingIsCaring AAB3U5aCNzT5U9IsI48P6F2285A glL9zLUBDJiXWweALcyAtrVTQBk 2025-12-01 13:35:26 188.195.48.170 9001 80\r\n"
+        + "s Exit Fast Guard HSDir Running Stable V2Dir Valid\r\n"
+        + "v Tor 0.4.8.21\r\n"
+        + "w Bandwidth=1234 Unmeasured=1\r\n"
+        + "p accept 80,443\r\n"
+        + "directory-footer\n"
+        + "bandwidth-weights Wbd=531 Wbe=0 Wbg=4022 Wbm=10000 Wdb=10000 Web=10000 Wed=8937 Wee=10000 Weg=8937"
+        + " Wem=10000 Wgb=10000 Wgd=531 Wgg=5978 Wgm=5978 Wmb=10000 Wmd=531 Wme=0 Wmg=4022 Wmm=10000\n";
+
+    public ConsensusParserTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( ConsensusParserTest.class );
+    }
+
+    private RelayTable parse( String consensus )
+    {
+        byte[] bytes = consensus.getBytes( StandardCharsets.US_ASCII );
+        ByteBuffer direct = ByteBuffer.allocateDirect( bytes.length );
+        direct.put( bytes ).flip();
+        return new ConsensusParser().parse( direct );
+    }
+
+    public void testRelayFields()
+    {
+        RelayTable table = parse( CONSENSUS );
+        assertEquals( 2, table.size() );
+
+        assertEquals( "lisdex", table.getNickname( 0 ) );
+        assertEquals( "AAAErLudKby6FyVrs1ko3b/Iq6k", table.getFingerprint( 0 ) );
+        assertEquals( RelayTable.parseIpv4( "152.53.144.50" ), table.getIpv4( 0 ) );
+        assertEquals( 8443, table.getOrPort( 0 ) );
+        assertEquals( 0, table.getDirPort( 0 ) );
+        assertEquals( 62000, table.getBandwidth( 0 ) );
+        assertEquals( RelayTable.FLAG_FAST | RelayTable.FLAG_RUNNING | RelayTable.FLAG_VALID, table.getFlags( 0 ) );
+        assertEquals( "Tor 0.4.8.21", table.getVersion( 0 ) );
+        assertFalse( table.canExit( 0 ) );
+        assertEquals( LocalDateTime.of( 2025, 12, 1, 8, 58, 50 ), table.node( 0 ).getTimePublished() );
+    }
+
+    public void testCarriageReturnsAndSharedValues()
+    {
+        RelayTable table = parse( CONSENSUS );
+
+        assertEquals( "SharingIsCaring", table.getNickname( 1 ) );
+        assertEquals( 80, table.getDirPort( 1 ) );
+        assertEquals( 1234, table.getBandwidth( 1 ) );
+        assertTrue( table.hasFlag( 1, RelayTable.FLAG_EXIT ) );
+        assertTrue( table.hasFlag( 1, RelayTable.FLAG_GUARD ) );
+        assertTrue( table.hasFlag( 1, RelayTable.FLAG_V2DIR ) );
+        assertEquals( "accept 80,443", table.getExitPolicy( 1 ).getSummary() );
+        assertTrue( table.canExit( 1 ) );
+        assertSame( table.getVersion( 0 ), table.getVersion( 1 ) );
+        assertEquals( LocalDateTime.of( 2025, 12, 1, 13, 35, 26 ).toEpochSecond( ZoneOffset.UTC ),
+                      table.node( 1 ).getTimePublished().toEpochSecond( ZoneOffset.UTC ) );
+    }
+
+    public void testBandwidthWeights()
+    {
+        RelayTable table = parse( CONSENSUS );
+        BandwidthWeights weights = table.getBandwidthWeights();
+        assertNotNull( weights );
+        assertEquals( 19, weights.getValues().size() );
+        assertEquals( Integer.valueOf( 5978 ), weights.getValues().get( "Wgg" ) );
+
+        // Relay 0 não tem Guard nem Exit; o relay 1 tem os dois
+        PathSelector selector = new PathSelector( table );
+        assertEquals( 62000L * 10000, selector.weight( BandwidthWeights.MIDDLE, 0 ) );
+        assertEquals( 62000L * 5978, selector.weight( BandwidthWeights.GUARD, 0 ) );
+        assertEquals( 1234L * 531, selector.weight( BandwidthWeights.GUARD, 1 ) );
+        assertEquals( 1234L * 531, selector.weight( BandwidthWeights.MIDDLE, 1 ) );
+        assertEquals( 1234L * 8937, selector.weight( BandwidthWeights.EXIT, 1 ) );
+
+        // Exit sem Guard não é usado como guard; BadExit conta como não-exit
+        assertEquals( 0, weights.factor( BandwidthWeights.GUARD, RelayTable.FLAG_EXIT ) );
+        assertEquals( 0, weights.factor( BandwidthWeights.MIDDLE, RelayTable.FLAG_EXIT ) );
+        assertEquals( 10000, weights.factor( BandwidthWeights.MIDDLE, RelayTable.FLAG_EXIT | RelayTable.FLAG_BAD_EXIT ) );
+        assertEquals( weights, BandwidthWeights.parse( weights.toString() ) );
+    }
+
+    public void testSnapshotRoundTrip() throws IOException
+    {
+        File consensus = File.createTempFile( "consensus", ".txt" );
+        File snapshot = new File( consensus.getPath() + "-cache", "consensus.snapshot" );
+        try
+        {
+            Files.write( consensus.toPath(), CONSENSUS.getBytes( StandardCharsets.US_ASCII ) );
+            ConsensusParser parser = new ConsensusParser( consensus.getPath() );
+            parser.setSnapshotFile( snapshot.toPath() );
+
+            RelayTable parsed = parser.parseRelayTable();
+            assertFalse( parser.isLastFromSnapshot() );
+            assertTrue( snapshot.exists() );
+            assertEquals( LocalDateTime.of( 2025, 12, 1, 17, 0 ).toEpochSecond( ZoneOffset.UTC ), parsed.getValidAfter() );
+
+            RelayTable loaded = parser.parseRelayTable();
+            assertTrue( parser.isLastFromSnapshot() );
+            assertEquals( parsed.size(), loaded.size() );
+            assertEquals( parsed.getValidAfter(), loaded.getValidAfter() );
+            assertEquals( parsed.getBandwidthWeights(), loaded.getBandwidthWeights() );
+            for ( int i = 0; i < parsed.size(); i++ )
+            {
+                assertEquals( parsed.getFingerprint( i ), loaded.getFingerprint( i ) );
+                assertEquals( parsed.getIpv4( i ), loaded.getIpv4( i ) );
+                assertEquals( parsed.getFlags( i ), loaded.getFlags( i ) );
+                assertEquals( parsed.getBandwidth( i ), loaded.getBandwidth( i ) );
+                assertEquals( parsed.getVersion( i ), loaded.getVersion( i ) );
+                assertEquals( parsed.getCountry( i ), loaded.getCountry( i ) );
+                assertEquals( parsed.getExitPolicy( i ), loaded.getExitPolicy( i ) );
+            }
+
+            // Consensus alterado: o snapshot deixa de ser válido
+            Files.write( consensus.toPath(), CONSENSUS.replace( "62000", "62001" ).getBytes( StandardCharsets.US_ASCII ) );
+            assertEquals( 62001, parser.parseRelayTable().getBandwidth( 0 ) );
+            assertFalse( parser.isLastFromSnapshot() );
+        }
+        finally
+        {
+            consensus.delete();
+            snapshot.delete();
+            snapshot.getParentFile().delete();
+        }
+    }
+
+    public void testDefaultSnapshotOutsideConsensusDirectory()
+    {
+        ConsensusParser parser = new ConsensusParser( "src/main/resources/consensus.txt" );
+        Path snapshot = parser.getSnapshotFile();
+        assertEquals( ConsensusParser.getDefaultSnapshotDir(), snapshot.getParent() );
+        assertTrue( snapshot.getFileName().toString().startsWith( "consensus.txt-" ) );
+        assertTrue( snapshot.getFileName().toString().endsWith( ".snapshot" ) );
+        assertFalse( snapshot.toAbsolutePath().startsWith( Paths.get( "src" ).toAbsolutePath() ) );
+
+        // Mesmo nome noutro diretório: outro snapshot
+        assertFalse( snapshot.equals( new ConsensusParser( "other/consensus.txt" ).getSnapshotFile() ) );
+
+        parser.setSnapshotEnabled( false );
+        assertNull( parser.getSnapshotFile() );
+    }
+}
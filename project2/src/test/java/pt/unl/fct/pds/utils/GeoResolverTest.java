@@ -0,0 +1,299 @@
+package pt.unl.fct.pds.project2.utils;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import pt.unl.fct.pds.project2.model.CountryDictionary;
+import pt.unl.fct.pds.project2.model.RelayTable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+/**
+ * Testes do GeoResolver sobre uma base MaxMind sintética: a cache por /24 devolve o
+ * mesmo que a base e só guarda redes que cobrem o /24 inteiro.
+ */
+public class GeoResolverTest
+    extends TestCase
+{
+    // Redes da base (as mais específicas depois das que as contêm); null: registo sem country
+    private static final String[][] NETWORKS = {
+        { "10.0.0.0", "8", "PT" },
+        { "10.1.2.0", "25", "DE" },
+        { "192.168.0.0", "16", "US" },
+        { "8.8.8.0", "24", "US" },
+        { "100.64.0.0", "10", null },
+    };
+
+    public GeoResolverTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( GeoResolverTest.class );
+    }
+
+    private static int ip( String address )
+    {
+        return RelayTable.parseIpv4( address );
+    }
+
+    public void testCachedAndUncachedAgree() throws IOException
+    {
+        GeoResolver geo = new GeoResolver( new ByteArrayInputStream( database() ) );
+        assertTrue( geo.isAvailable() );
+
+        int[] ips = new int[20000];
+        SplittableRandom random = new SplittableRandom( 3 );
+        for ( int k = 0; k < ips.length; k++ )
+        {
+            String[] network = NETWORKS[random.nextInt( NETWORKS.length )];
+            int prefix = Integer.parseInt( network[1] );
+            int host = prefix > 16 ? random.nextInt( 1 << ( 32 - prefix ) ) : random.nextInt( 1 << 16 );
+            // Alguns endereços fora das redes da base
+            ips[k] = k % 10 == 0 ? random.nextInt() : ip( network[0] ) | host;
+        }
+
+        for ( int pass = 0; pass < 2; pass++ )
+        {
+            for ( int ipv4 : ips )
+            {
+                assertEquals( RelayTable.formatIpv4( ipv4 ), geo.resolveUncached( ipv4 ), geo.resolve( ipv4 ) );
+            }
+        }
+        short[] countries = new GeoResolver( new ByteArrayInputStream( database() ) ).resolveAll( ips );
+        for ( int k = 0; k < ips.length; k++ )
+        {
+            assertEquals( geo.resolve( ips[k] ), countries[k] );
+        }
+    }
+
+    public void testCacheIsPerSlash24() throws IOException
+    {
+        File file = File.createTempFile( "GeoLite2-Country", ".mmdb" );
+        try
+        {
+            Files.write( file.toPath(), database() );
+            try ( GeoResolver geo = new GeoResolver( file ) )
+            {
+                // Rede /8: o primeiro IP preenche a cache para todo o /24
+                assertFalse( geo.isCached( ip( "10.5.6.7" ) ) );
+                assertEquals( "PT", geo.country( ip( "10.5.6.7" ) ) );
+                assertTrue( geo.isCached( ip( "10.5.6.200" ) ) );
+                assertEquals( "PT", geo.country( ip( "10.5.6.200" ) ) );
+                assertFalse( geo.isCached( ip( "10.5.7.1" ) ) );
+
+                // Rede /24 exata: guardada
+                assertEquals( "US", geo.country( ip( "8.8.8.8" ) ) );
+                assertTrue( geo.isCached( ip( "8.8.8.1" ) ) );
+
+                // Rede /25 dentro do /24: nunca guardada, as duas metades resolvem de forma diferente
+                assertEquals( "DE", geo.country( ip( "10.1.2.5" ) ) );
+                assertEquals( "PT", geo.country( ip( "10.1.2.200" ) ) );
+                assertFalse( geo.isCached( ip( "10.1.2.5" ) ) );
+                assertEquals( "DE", geo.country( ip( "10.1.2.100" ) ) );
+
+                // Registo sem country e IP fora da base
+                assertEquals( CountryDictionary.UNKNOWN_ID, geo.resolve( ip( "100.64.1.1" ) ) );
+                assertEquals( CountryDictionary.UNKNOWN_ID, geo.resolve( ip( "1.1.1.1" ) ) );
+            }
+        }
+        finally
+        {
+            assertTrue( file.delete() );
+        }
+    }
+
+    public void testDefaultVersionMatchesReader() throws IOException
+    {
+        // build_epoch da base sintética
+        long version = 0x6553f100L;
+        File file = File.createTempFile( "GeoLite2-Country", ".mmdb" );
+        File copy = File.createTempFile( "GeoLite2-Country", ".mmdb" );
+        File jar = File.createTempFile( "geo", ".jar" );
+        try
+        {
+            Files.write( file.toPath(), database() );
+            try ( GeoResolver geo = new GeoResolver( file ) )
+            {
+                assertEquals( version, geo.getDatabaseVersion() );
+            }
+            assertEquals( version, GeoResolver.databaseVersion( file.toURI().toURL() ) );
+
+            // Uma cópia com outra data de modificação é a mesma base
+            Files.copy( file.toPath(), copy.toPath(), StandardCopyOption.REPLACE_EXISTING );
+            assertTrue( copy.setLastModified( file.lastModified() - 86400000L ) );
+            assertEquals( version, GeoResolver.databaseVersion( copy.toURI().toURL() ) );
+
+            // Dentro de um JAR (lida como stream)
+            try ( JarOutputStream out = new JarOutputStream( new FileOutputStream( jar ) ) )
+            {
+                out.putNextEntry( new JarEntry( GeoResolver.DATABASE ) );
+                out.write( database() );
+                out.closeEntry();
+            }
+            URL inJar = new URL( "jar:" + jar.toURI() + "!/" + GeoResolver.DATABASE );
+            assertEquals( version, GeoResolver.databaseVersion( inJar ) );
+
+            // Stream maior do que o buffer: só contam os últimos bytes
+            byte[] padded = concat( new byte[300 * 1024 + 7], database() );
+            assertEquals( version, GeoResolver.databaseVersion( new ByteArrayInputStream( padded ) ) );
+            assertEquals( 0, GeoResolver.databaseVersion( new ByteArrayInputStream( new byte[1000] ) ) );
+            assertEquals( 0, GeoResolver.databaseVersion( (URL) null ) );
+        }
+        finally
+        {
+            assertTrue( file.delete() );
+            assertTrue( copy.delete() );
+            assertTrue( jar.delete() );
+        }
+    }
+
+    // ---------------- Base MaxMind DB (IPv4, registos de 32 bits) ----------------
+
+    private static byte[] database() throws IOException
+    {
+        // Secção de dados: um registo por país
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        Map<String, Integer> offsets = new LinkedHashMap<>();
+        for ( String[] network : NETWORKS )
+        {
+            String code = network[2] == null ? "" : network[2];
+            if ( offsets.containsKey( code ) )
+            {
+                continue;
+            }
+            offsets.put( code, data.size() );
+            Map<String, byte[]> record = new LinkedHashMap<>();
+            if ( code.isEmpty() )
+            {
+                record.put( "continent", map( "code", string( "EU" ) ) );
+            }
+            else
+            {
+                record.put( "country", map( "iso_code", string( code ) ) );
+            }
+            data.write( map( record ) );
+        }
+
+        // Árvore binária: nó = {esquerda, direita}; >= 0 nó, < 0 -(1 + offset dos dados), missing sem dados
+        long missing = Long.MIN_VALUE;
+        List<long[]> nodes = new ArrayList<>();
+        nodes.add( new long[]{ missing, missing } );
+        for ( String[] network : NETWORKS )
+        {
+            int address = ip( network[0] );
+            int prefix = Integer.parseInt( network[1] );
+            long leaf = -1 - offsets.get( network[2] == null ? "" : network[2] );
+            int node = 0;
+            for ( int bit = 0; bit < prefix; bit++ )
+            {
+                int side = ( address >>> ( 31 - bit ) ) & 1;
+                long next = nodes.get( node )[side];
+                if ( bit == prefix - 1 )
+                {
+                    nodes.get( node )[side] = leaf;
+                }
+                else
+                {
+                    if ( next < 0 )
+                    {
+                        nodes.add( new long[]{ next, next } );
+                        next = nodes.size() - 1;
+                        nodes.get( node )[side] = next;
+                    }
+                    node = (int) next;
+                }
+            }
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int count = nodes.size();
+        for ( long[] node : nodes )
+        {
+            for ( long record : node )
+            {
+                long value = record == missing ? count : record >= 0 ? record : count + 16 + ( -1 - record );
+                out.write( new byte[]{ (byte) ( value >>> 24 ), (byte) ( value >>> 16 ), (byte) ( value >>> 8 ),
+                    (byte) value } );
+            }
+        }
+        out.write( new byte[16] );
+        data.writeTo( out );
+
+        Map<String, byte[]> metadata = new LinkedHashMap<>();
+        metadata.put( "node_count", unsigned( 6, count ) );
+        metadata.put( "record_size", unsigned( 5, 32 ) );
+        metadata.put( "ip_version", unsigned( 5, 4 ) );
+        metadata.put( "database_type", string( "GeoLite2-Country" ) );
+        metadata.put( "languages", concat( new byte[]{ 1, 4 }, string( "en" ) ) );
+        metadata.put( "binary_format_major_version", unsigned( 5, 2 ) );
+        metadata.put( "binary_format_minor_version", unsigned( 5, 0 ) );
+        metadata.put( "build_epoch", concat( new byte[]{ 4, 2 }, new byte[]{ 0x65, 0x53, (byte) 0xf1, 0x00 } ) );
+        metadata.put( "description", map( "en", string( "test" ) ) );
+        out.write( new byte[]{ (byte) 0xab, (byte) 0xcd, (byte) 0xef } );
+        out.write( "MaxMind.com".getBytes( StandardCharsets.US_ASCII ) );
+        out.write( map( metadata ) );
+        return out.toByteArray();
+    }
+
+    private static byte[] string( String value )
+    {
+        return concat( new byte[]{ (byte) ( ( 2 << 5 ) | value.length() ) }, value.getBytes( StandardCharsets.UTF_8 ) );
+    }
+
+    // uint16 (tipo 5) ou uint32 (tipo 6)
+    private static byte[] unsigned( int type, long value )
+    {
+        int length = value == 0 ? 0 : ( 64 - Long.numberOfLeadingZeros( value ) + 7 ) / 8;
+        byte[] bytes = new byte[1 + length];
+        bytes[0] = (byte) ( ( type << 5 ) | length );
+        for ( int k = 0; k < length; k++ )
+        {
+            bytes[1 + k] = (byte) ( value >>> ( 8 * ( length - 1 - k ) ) );
+        }
+        return bytes;
+    }
+
+    private static byte[] map( String key, byte[] value )
+    {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put( key, value );
+        return map( entries );
+    }
+
+    private static byte[] map( Map<String, byte[]> entries )
+    {
+        byte[] out = { (byte) ( ( 7 << 5 ) | entries.size() ) };
+        for ( Map.Entry<String, byte[]> entry : entries.entrySet() )
+        {
+            out = concat( out, concat( string( entry.getKey() ), entry.getValue() ) );
+        }
+        return out;
+    }
+
+    private static byte[] concat( byte[] a, byte[] b )
+    {
+        byte[] out = new byte[a.length + b.length];
+        System.arraycopy( a, 0, out, 0, a.length );
+        System.arraycopy( b, 0, out, a.length, b.length );
+        return out;
+    }
+}
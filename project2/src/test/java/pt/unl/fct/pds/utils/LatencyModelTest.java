@@ -0,0 +1,120 @@
+package pt.unl.fct.pds.project2.utils;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import pt.unl.fct.pds.project2.model.CountryDictionary;
+import pt.unl.fct.pds.project2.model.RelayTable;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.SplittableRandom;
+
+/**
+ * Testes do modelo de latência entre países e da seleção penalizada pela latência.
+ */
+public class LatencyModelTest
+    extends TestCase
+{
+    private static final String CENTROIDS = "# teste\n"
+            + "country,latitude,longitude,name\n"
+            + "PT,39.399872,-8.224454,Portugal\n"
+            + "ES,40.463667,-3.74922,Spain\n"
+            + "AU,-25.274398,133.775136,Australia\n";
+
+    private static final String[] COUNTRIES = { "PT", "ES", "AU" };
+
+    public LatencyModelTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( LatencyModelTest.class );
+    }
+
+    private static LatencyModel model() throws IOException
+    {
+        return LatencyModel.load( new ByteArrayInputStream( CENTROIDS.getBytes( StandardCharsets.UTF_8 ) ) );
+    }
+
+    private static short id( String code )
+    {
+        return CountryDictionary.intern( code );
+    }
+
+    public void testMatrix() throws IOException
+    {
+        LatencyModel model = model();
+        short pt = id( "PT" );
+        short es = id( "ES" );
+        short au = id( "AU" );
+
+        // Lisboa-Madrid ~ 400 km; Portugal-Austrália ~ 15000 km
+        assertEquals( 400, model.distanceKm( pt, es ), 100 );
+        assertEquals( 15000, model.distanceKm( pt, au ), 1500 );
+        assertEquals( model.rttMicros( pt, au ), model.rttMicros( au, pt ) );
+        assertEquals( LatencyModel.DOMESTIC_RTT_MS, model.rttMillis( pt, pt ), 1e-9 );
+        assertTrue( model.rttMicros( pt, es ) < model.rttMicros( pt, au ) );
+
+        // Sem centro: média da coluna ou de todos os pares
+        short unknown = CountryDictionary.UNKNOWN_ID;
+        assertFalse( model.isLocated( unknown ) );
+        int column = ( model.rttMicros( pt, au ) + model.rttMicros( es, au ) + model.rttMicros( au, au ) ) / 3;
+        assertEquals( column, model.rttMicros( unknown, au ), 1 );
+        assertEquals( model.rttMicros( unknown, unknown ), model.rttMicros( (short) 30000, unknown ) );
+    }
+
+    public void testCircuitRttAndPenalizedMiddles() throws IOException
+    {
+        LatencyModel model = model();
+        RelayTable table = new RelayTable();
+        for ( int i = 0; i < 60; i++ )
+        {
+            table.add( "relay" + i, "fp" + i, 0, ( 10 << 24 ) | ( i << 16 ) | i, 9001, 0 );
+            table.setBandwidth( i, 100 );
+            table.setFlags( i, RelayTable.FLAG_FAST | RelayTable.FLAG_GUARD );
+            table.setCountry( i, id( COUNTRIES[i % COUNTRIES.length] ) );
+            table.setExitPolicy( i, "accept 1-65535" );
+        }
+        LatencyModel.Table rtt = model.forTable( table );
+        assertEquals( model.circuitRttMicros( table, 0, 1, 2 ), rtt.circuitRttMicros( 0, 1, 2 ) );
+        assertEquals( model.rttMicros( id( "PT" ), id( "ES" ) ) + model.rttMicros( id( "ES" ), id( "AU" ) ),
+                rtt.circuitRttMicros( 0, 1, 2 ) );
+
+        // Guard e exit na Península Ibérica: com gamma alto quase não há middles na Austrália
+        PathSelector selector = new PathSelector( table );
+        SplittableRandom rng = new SplittableRandom( 1 );
+        int[] counts = new int[2];
+        for ( int k = 0; k < 3000; k++ )
+        {
+            counts[0] += selector.getTable().getCountry( selector.selectMiddleId( rng, 0, 1 ) ) == id( "AU" ) ? 1 : 0;
+            counts[1] += selector.getTable().getCountry(
+                    selector.selectMiddleLatencyId( rng, 0, 1, model, 20 ) ) == id( "AU" ) ? 1 : 0;
+        }
+        assertTrue( counts[0] > 800 );
+        assertTrue( counts[1] < counts[0] / 5 );
+
+        // As linhas em cache seguem gamma e as alterações aplicadas com update()
+        assertEquals( counts[0], australianMiddles( selector, model, 0 ), 150 );
+        table.setCountry( 0, id( "AU" ) );
+        table.setCountry( 1, id( "AU" ) );
+        selector.update( new int[]{ 0, 1 }, 2 );
+        assertTrue( australianMiddles( selector, model, 20 ) > 2000 );
+    }
+
+    private static int australianMiddles( PathSelector selector, LatencyModel model, double gamma )
+    {
+        SplittableRandom rng = new SplittableRandom( 2 );
+        int count = 0;
+        for ( int k = 0; k < 3000; k++ )
+        {
+            int middle = selector.selectMiddleLatencyId( rng, 0, 1, model, gamma );
+            count += selector.getTable().getCountry( middle ) == id( "AU" ) ? 1 : 0;
+        }
+        return count;
+    }
+}